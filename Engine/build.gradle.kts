@@ -5,6 +5,7 @@ plugins {
     alias(libs.plugins.kotlin.jvm)
     id("io.github.etieskrill.injection.shader.reflection")
     id("io.github.etieskrill.injection.shader.dsl")
+    alias(libs.plugins.jmh)
 
     `maven-publish`
 }
@@ -71,6 +72,16 @@ tasks.test {
     useJUnitPlatform()
 }
 
+//run with ./gradlew :engine:jmh, optionally narrowed down with -Pjmh.includes=<regex>, and profiled with e.g. -Pjmh.profilers=gc
+jmh {
+    jmhVersion = libs.versions.jmh
+    providers.gradleProperty("jmh.includes").orNull?.let { includes.add(it) }
+    providers.gradleProperty("jmh.profilers").orNull?.let { profilers.add(it) }
+    warmupIterations = 3
+    iterations = 5
+    fork = 1
+}
+
 publishing {
     publications {
         create<MavenPublication>("maven") {
@@ -0,0 +1,73 @@
+package org.etieskrill.engine.entity.service.impl
+
+import org.etieskrill.engine.entity.component.*
+import org.etieskrill.engine.entity.service.impl.PhysicsService.NarrowCollisionSolver.AABB_SOLVER
+import org.etieskrill.engine.entity.system.EntitySystem
+import org.joml.Vector3f
+import org.joml.primitives.AABBf
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Steps a pile of boxes falling onto a ground plane. Run with `-Pjmh.profilers=gc` to see the allocation rate, which
+ * should stay at zero bytes per operation apart from the entity system itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class PhysicsBenchmark {
+
+    @Param("1000", "10000")
+    @JvmField
+    var colliderCount = 0
+
+    @Param("SWEEP", "GRID")
+    @JvmField
+    var broadPhase = ""
+
+    private lateinit var entitySystem: EntitySystem
+
+    @Setup
+    fun setUp() {
+        entitySystem = EntitySystem()
+        val broadPhase = when (broadPhase) {
+            "SWEEP" -> SortAndSweepBroadPhase()
+            "GRID" -> UniformGridBroadPhase(2f)
+            else -> error("Unknown broad phase: $broadPhase")
+        }
+        entitySystem.addService(PhysicsService(AABB_SOLVER, broadPhase))
+        entitySystem.addService(BoundingBoxService())
+
+        entitySystem.createEntity {
+            +Transform()
+            +AABBf(-500f, -1f, -500f, 500f, 0f, 500f)
+            +WorldSpaceAABB()
+            +StaticCollider()
+        }
+
+        val random = Random(0)
+        repeat(colliderCount) {
+            entitySystem.createEntity {
+                +Transform(Vector3f(random.nextFloat() * 200f, random.nextFloat() * 50f, random.nextFloat() * 200f))
+                +AABBf(-.5f, -.5f, -.5f, .5f, .5f, .5f)
+                +WorldSpaceAABB()
+                +DynamicCollider()
+                +Friction(.5f)
+                +Acceleration(Vector3f(0f, -9.81f, 0f))
+                +OnGround(1f, 1f)
+            }
+        }
+        repeat(60) { entitySystem.update(DELTA) }
+    }
+
+    @Benchmark
+    fun step() {
+        entitySystem.update(DELTA)
+    }
+
+    private companion object {
+        const val DELTA = 1 / 60.0
+    }
+
+}
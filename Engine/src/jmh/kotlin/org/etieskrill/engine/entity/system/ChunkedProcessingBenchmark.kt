@@ -0,0 +1,64 @@
+package org.etieskrill.engine.entity.system
+
+import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.entity.component.WorldSpaceAABB
+import org.etieskrill.engine.entity.service.impl.BoundingBoxService
+import org.joml.Quaternionf
+import org.joml.Vector3f
+import org.joml.primitives.AABBf
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Measures how processing an [entity local](org.etieskrill.engine.entity.service.Service.isEntityLocal) service scales
+ * with the number of pool threads. Zero threads runs the system without a pool, i.e. fully sequentially.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class ChunkedProcessingBenchmark {
+
+    @Param("0", "1", "2", "4", "8", "16")
+    @JvmField
+    var threads = 0
+
+    @Param("50000")
+    @JvmField
+    var entityCount = 0
+
+    private var pool: ForkJoinPool? = null
+    private lateinit var entitySystem: EntitySystem
+
+    @Setup
+    fun setUp() {
+        pool = if (threads > 0) ForkJoinPool(threads) else null
+        entitySystem = EntitySystem(pool = pool)
+        entitySystem.addService(BoundingBoxService())
+
+        val random = Random(0)
+        repeat(entityCount) {
+            entitySystem.createEntity {
+                +Transform(
+                    Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).mul(1000f),
+                    Quaternionf().rotateXYZ(random.nextFloat(), random.nextFloat(), random.nextFloat())
+                )
+                +AABBf(-1f, -1f, -1f, 1f, 1f, 1f)
+                +WorldSpaceAABB()
+            }
+        }
+        entitySystem.update(0.0)
+    }
+
+    @TearDown
+    fun tearDown() {
+        pool?.shutdown()
+    }
+
+    @Benchmark
+    fun update() {
+        entitySystem.update(0.0)
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.etieskrill.engine.entity.system
+
+import org.etieskrill.engine.entity.component.DynamicCollider
+import org.etieskrill.engine.entity.component.Friction
+import org.etieskrill.engine.entity.component.OnGround
+import org.etieskrill.engine.entity.component.Transform
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+internal fun syntheticEntitySystem(mode: ComponentStorageMode, entityCount: Int) = EntitySystem(mode).apply {
+    repeat(entityCount) { i ->
+        createEntity {
+            +Transform()
+            +DynamicCollider()
+            +Friction(0.1f)
+            if (i % 3 == 0) +OnGround(1f, 1f) //some fragmentation, so there is more than one archetype
+        }
+    }
+    update(0.0)
+}
+
+/**
+ * Compares component access through the [Entity](org.etieskrill.engine.entity.Entity) facade across storage modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class EntityStorageBenchmark {
+
+    @Param("1000", "10000", "100000")
+    @JvmField
+    var entityCount = 0
+
+    @Param("MAP", "ARCHETYPE")
+    @JvmField
+    var mode = ComponentStorageMode.MAP
+
+    private lateinit var entitySystem: EntitySystem
+
+    @Setup
+    fun setUp() {
+        entitySystem = syntheticEntitySystem(mode, entityCount)
+    }
+
+    @Benchmark
+    fun facadeIteration(blackhole: Blackhole) {
+        for (entity in entitySystem.entities) {
+            val transform = entity.getComponent<Transform>()!!
+            val collider = entity.getComponent<DynamicCollider>()!!
+            val friction = entity.getComponent<Friction>()!!
+            blackhole.consume(transform.position.x + collider.previousPosition.x * friction.coefficient)
+        }
+    }
+
+}
+
+/**
+ * Iterates the archetype columns directly, which is the access pattern the archetype storage mode is laid out for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class ArchetypeColumnBenchmark {
+
+    @Param("1000", "10000", "100000")
+    @JvmField
+    var entityCount = 0
+
+    private lateinit var entitySystem: EntitySystem
+
+    @Setup
+    fun setUp() {
+        entitySystem = syntheticEntitySystem(ComponentStorageMode.ARCHETYPE, entityCount)
+    }
+
+    @Benchmark
+    fun columnIteration(blackhole: Blackhole) {
+        for (archetype in entitySystem.archetypesWith(Transform::class, DynamicCollider::class, Friction::class)) {
+            val transforms = archetype.column<Transform>()
+            val colliders = archetype.column<DynamicCollider>()
+            val frictions = archetype.column<Friction>()
+            for (row in 0..<archetype.size) {
+                val transform = transforms[row] as Transform
+                val collider = colliders[row] as DynamicCollider
+                val friction = frictions[row] as Friction
+                blackhole.consume(transform.position.x + collider.previousPosition.x * friction.coefficient)
+            }
+        }
+    }
+
+}
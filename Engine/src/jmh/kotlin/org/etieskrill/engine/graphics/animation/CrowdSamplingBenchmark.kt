@@ -0,0 +1,89 @@
+package org.etieskrill.engine.graphics.animation
+
+import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.graphics.model.Bone
+import org.joml.Quaternionf
+import org.joml.Vector3f
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Samples one frame of a crowd playing the same clip at random phases, either sampling every character's pose, or
+ * taking them from a shared [AnimationSampleCache]. The cached cost should stay nearly flat in the number of characters
+ * once every pose of the clip has been sampled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class CrowdSamplingBenchmark {
+
+    @Param("100", "1000")
+    @JvmField
+    var characterCount = 0
+
+    private lateinit var animation: Animation
+    private lateinit var baked: BakedAnimation
+    private lateinit var cache: AnimationSampleCache
+    private lateinit var phases: DoubleArray
+
+    private val position = Vector3f()
+    private val rotation = Quaternionf()
+    private val scale = Vector3f()
+    private var ticks = 0.0
+
+    @Setup
+    fun setUp() {
+        val random = Random(0)
+        val bones = List(BONES) { Bone("bone$it", it, Transform()) }
+        val boneAnimations = bones.map { bone ->
+            val times = DoubleArray(KEYS) { it * DURATION / (KEYS - 1) }
+            BoneAnimation(
+                bone,
+                List(KEYS) { Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()) }, times,
+                List(KEYS) { Quaternionf().rotateXYZ(random.nextFloat(), random.nextFloat(), random.nextFloat()) }, times.clone(),
+                List(KEYS) { Vector3f(1f) }, times.clone(),
+                Animation.Behaviour.DEFAULT, Animation.Behaviour.DEFAULT
+            )
+        }
+        baked = BakedAnimation.bake(boneAnimations, BONES)
+        animation = Animation("walk", DURATION.toInt(), TICKS_PER_SECOND, bones, boneAnimations, null, baked)
+        cache = AnimationSampleCache(30.0)
+        phases = DoubleArray(characterCount) { random.nextDouble(DURATION) }
+    }
+
+    private fun advance() {
+        ticks = (ticks + TICKS_PER_SECOND / 60) % DURATION
+    }
+
+    @Benchmark
+    fun sampled(blackhole: Blackhole) {
+        advance()
+        for (phase in phases) {
+            val characterTicks = (ticks + phase) % DURATION
+            for (id in 0..<BONES) {
+                baked.samplePosition(id, characterTicks, position, -1)
+                baked.sampleRotation(id, characterTicks, rotation, -1)
+                baked.sampleScaling(id, characterTicks, scale, -1)
+            }
+            blackhole.consume(position)
+        }
+    }
+
+    @Benchmark
+    fun cached(blackhole: Blackhole) {
+        advance()
+        for (phase in phases) {
+            blackhole.consume(cache.getPose(animation, (ticks + phase) % DURATION))
+        }
+    }
+
+    private companion object {
+        const val BONES = 60
+        const val KEYS = 120
+        const val DURATION = 48.0
+        const val TICKS_PER_SECOND = 24.0
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.etieskrill.engine.graphics.animation
+
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Compares keyframe lookup strategies for a single channel. Each operation looks up one frame's worth of time, either
+ * advancing by a fraction of a key as during playback, or jumping to a random time as when seeking.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class KeyframeLookupBenchmark {
+
+    @Param("10", "100", "1000", "10000")
+    @JvmField
+    var keyCount = 0
+
+    private lateinit var timings: DoubleArray
+    private lateinit var seekTimes: DoubleArray
+    private var duration = 0.0
+
+    private var ticks = 0.0
+    private var cursor = 0
+    private var seek = 0
+
+    @Setup
+    fun setUp() {
+        timings = DoubleArray(keyCount) { it.toDouble() }
+        duration = timings.last()
+        val random = Random(0)
+        seekTimes = DoubleArray(1024) { random.nextDouble(duration) }
+    }
+
+    private fun advance(): Double {
+        ticks = (ticks + 0.4) % duration
+        return ticks
+    }
+
+    @Benchmark
+    fun linearPlayback(blackhole: Blackhole) = blackhole.consume(linearScan(timings, advance()))
+
+    @Benchmark
+    fun cursorPlayback(blackhole: Blackhole) {
+        cursor = Keyframes.find(timings, advance(), cursor)
+        blackhole.consume(cursor)
+    }
+
+    @Benchmark
+    fun linearSeek(blackhole: Blackhole) =
+        blackhole.consume(linearScan(timings, seekTimes[seek++ and seekTimes.size - 1]))
+
+    @Benchmark
+    fun cursorSeek(blackhole: Blackhole) {
+        cursor = Keyframes.find(timings, seekTimes[seek++ and seekTimes.size - 1], cursor)
+        blackhole.consume(cursor)
+    }
+
+    /**
+     * The lookup as it was before cursors, for reference.
+     */
+    private fun linearScan(timings: DoubleArray, ticks: Double): Int {
+        for (i in 0..<timings.size - 1) {
+            if (timings[i] <= ticks && timings[i + 1] >= ticks) return i
+        }
+        return -1
+    }
+
+}
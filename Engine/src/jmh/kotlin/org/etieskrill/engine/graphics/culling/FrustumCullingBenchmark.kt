@@ -0,0 +1,82 @@
+package org.etieskrill.engine.graphics.culling
+
+import org.joml.Matrix4f
+import org.joml.Matrix4fc
+import org.joml.primitives.AABBf
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Culls a field of boxes for a camera and a directional light, either by testing every box against both frusta, or by
+ * traversing a [BoundingVolumeHierarchy] once. Moving a tenth of the boxes per frame shows the cost of keeping the
+ * hierarchy up to date.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class FrustumCullingBenchmark {
+
+    @Param("10000", "100000")
+    @JvmField
+    var objectCount = 0
+
+    private lateinit var boxes: Array<AABBf>
+    private lateinit var proxies: IntArray
+    private lateinit var hierarchy: BoundingVolumeHierarchy<AABBf>
+
+    private val views: List<Matrix4fc> = listOf(
+        Matrix4f().perspective(Math.toRadians(60.0).toFloat(), 16 / 9f, .1f, 200f)
+            .lookAt(0f, 10f, 0f, 100f, 0f, 100f, 0f, 1f, 0f),
+        Matrix4f().ortho(-100f, 100f, -100f, 100f, 1f, 500f)
+            .lookAt(-200f, 200f, -200f, 0f, 0f, 0f, 0f, 1f, 0f)
+    )
+
+    private val random = Random(0)
+    private var visible = 0
+    private val visitor = BoundingVolumeHierarchy.Visitor<AABBf> { _, _ -> visible++ }
+
+    @Setup
+    fun setUp() {
+        boxes = Array(objectCount) {
+            val x = random.nextFloat() * 2 * EXTENT - EXTENT
+            val z = random.nextFloat() * 2 * EXTENT - EXTENT
+            AABBf(x, 0f, z, x + 1, 2f, z + 1)
+        }
+        hierarchy = BoundingVolumeHierarchy()
+        proxies = IntArray(objectCount) { hierarchy.insert(boxes[it], boxes[it]) }
+    }
+
+    @Benchmark
+    fun bruteForce(blackhole: Blackhole) {
+        for (view in views) {
+            for (box in boxes) {
+                blackhole.consume(view.testAab(box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ))
+            }
+        }
+    }
+
+    @Benchmark
+    fun hierarchy(): Int {
+        visible = 0
+        hierarchy.cull(views, visitor)
+        return visible
+    }
+
+    @Benchmark
+    fun moveAndCull(): Int {
+        for (i in 0..<objectCount / 10) {
+            val index = random.nextInt(objectCount)
+            val box = boxes[index]
+            box.translate(random.nextFloat() - .5f, 0f, random.nextFloat() - .5f)
+            hierarchy.update(proxies[index], box)
+        }
+        return hierarchy()
+    }
+
+    private companion object {
+        const val EXTENT = 1000f
+    }
+
+}
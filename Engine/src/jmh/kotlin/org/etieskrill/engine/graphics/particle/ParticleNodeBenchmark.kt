@@ -0,0 +1,71 @@
+package org.etieskrill.engine.graphics.particle
+
+import org.etieskrill.engine.entity.component.Transform
+import org.joml.Vector3f
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+import kotlin.time.Duration.Companion.seconds
+
+/**
+ * Updates a tree of fire-like emitters, either on the calling thread, or in parallel on a pool with one thread per
+ * core. The emitters are warmed up to their steady particle count during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class ParticleNodeBenchmark {
+
+    @Param("8", "48")
+    @JvmField
+    var emitterCount = 0
+
+    private lateinit var serialTree: ParticleNode
+    private lateinit var parallelTree: ParticleNode
+    private lateinit var pool: ForkJoinPool
+
+    @Setup
+    fun setUp() {
+        pool = ForkJoinPool(Runtime.getRuntime().availableProcessors())
+        serialTree = tree()
+        parallelTree = tree()
+        repeat(WARMUP_FRAMES) {
+            serialTree.update(DELTA)
+            parallelTree.update(DELTA, pool)
+        }
+    }
+
+    @TearDown
+    fun tearDown() {
+        pool.shutdown()
+    }
+
+    @Benchmark
+    fun serial() = serialTree.update(DELTA)
+
+    @Benchmark
+    fun parallel() = parallelTree.update(DELTA, pool)
+
+    private fun tree(): ParticleNode {
+        val emitters = List(emitterCount) { i ->
+            ParticleEmitter(
+                transform = Transform(Vector3f(i.toFloat(), 0f, 0f)),
+                lifetime = 2.seconds,
+                lifetimeSpread = 0.5.seconds,
+                particlesPerSecond = 5000f,
+                randomVelocity = 1f,
+                scatter = Vector3f(0.5f),
+                rotationsPerSecond = 0.5f,
+                seed = i.toLong()
+            )
+        }
+        val children = emitters.chunked(4).map { ParticleNode(it, transform = Transform(Vector3f(0f, 1f, 0f))) }
+        return ParticleNode(children = children)
+    }
+
+    private companion object {
+        const val DELTA = 1 / 60.0
+        const val WARMUP_FRAMES = 180
+    }
+
+}
@@ -0,0 +1,147 @@
+package org.etieskrill.engine.graphics.particle
+
+import io.github.etieskrill.injection.extension.shader.Buffer
+import io.github.etieskrill.injection.extension.shader.BufferAccessor
+import org.etieskrill.engine.graphics.gl.VertexArrayAccessor
+import org.joml.Matrix2f
+import org.joml.Vector3f
+import org.joml.Vector4f
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Updates and serialises one frame of particles at a steady count, where every particle that dies is replaced right
+ * away. The object variant mirrors the emitter before it was backed by a [ParticlePool]: one object with its own
+ * vectors per particle, updated and filtered through a deque, and serialised field by field by a
+ * [VertexArrayAccessor].
+ *
+ * Only the CPU side is measured, the vertices are written to a direct buffer instead of a buffer object.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+open class ParticleUpdateBenchmark {
+
+    @Param("10000", "1000000")
+    @JvmField
+    var particleCount = 0
+
+    private lateinit var pool: ParticlePool
+    private lateinit var objects: ArrayDeque<ObjectParticle>
+    private lateinit var deadObjects: ArrayDeque<ObjectParticle>
+    private lateinit var objectBuffer: CpuBuffer
+    private lateinit var vertices: ByteBuffer
+
+    private val random = Random(0)
+    private val colour = Vector4f()
+
+    @Setup
+    fun setUp() {
+        pool = ParticlePool(particleCount)
+        repeat(particleCount) { spawn(pool) }
+
+        objects = ArrayDeque(particleCount)
+        deadObjects = ArrayDeque()
+        repeat(particleCount) { objects += ObjectParticle().also { spawn(it) } }
+        objectBuffer = CpuBuffer(particleCount)
+
+        vertices = ByteBuffer.allocateDirect(particleCount * ParticlePool.VERTEX_BYTE_SIZE)
+            .order(ByteOrder.nativeOrder())
+    }
+
+    @Benchmark
+    fun pooled(blackhole: Blackhole) {
+        pool.update(DELTA, 1f, 0f, 0f)
+        pool.updateColours(colour) { lifetime, outColour -> outColour.w = lifetime }
+        while (!pool.isFull) spawn(pool)
+
+        blackhole.consume(pool.writeVertices(vertices.clear()))
+    }
+
+    @Benchmark
+    fun perObject(blackhole: Blackhole) {
+        objects
+            .onEach { it.update(DELTA) }
+            .removeAll { particle -> (particle.lifetime <= 0).also { if (it) deadObjects += particle } }
+        while (deadObjects.isNotEmpty()) objects += deadObjects.removeLast().also { spawn(it) }
+
+        ObjectParticleAccessor.map(objects, objectBuffer)
+        blackhole.consume(objectBuffer.data)
+    }
+
+    private fun spawn(pool: ParticlePool) {
+        val i = pool.add()
+        for (j in 3 * i..<3 * i + 3) {
+            pool.relativePositions[j] = random.nextFloat()
+            pool.velocities[j] = random.nextFloat()
+        }
+        pool.rotations[i] = random.nextFloat()
+        pool.angularVelocities[i] = random.nextFloat()
+        pool.baseColours.fill(1f, 4 * i, 4 * i + 4)
+        pool.initialLifetimes[i] = 1 + 2 * random.nextFloat()
+        pool.lifetimes[i] = pool.initialLifetimes[i]
+    }
+
+    private fun spawn(particle: ObjectParticle) = particle.apply {
+        relativePosition.set(random.nextFloat(), random.nextFloat(), random.nextFloat())
+        velocity.set(random.nextFloat(), random.nextFloat(), random.nextFloat())
+        transform.rotation(random.nextFloat())
+        angularVelocity = random.nextFloat()
+        baseColour.set(1f)
+        initialLifetime = 1 + 2 * random.nextFloat()
+        lifetime = initialLifetime
+    }
+
+    private class ObjectParticle {
+        val position = Vector3f()
+        val relativePosition = Vector3f()
+        val velocity = Vector3f()
+        var angularVelocity = 0f
+        val transform = Matrix2f()
+        val baseColour = Vector4f(1f)
+        val colour = Vector4f(1f)
+        var initialLifetime = 0f
+        var lifetime = 0f
+
+        fun update(delta: Float) {
+            lifetime -= delta
+            relativePosition.fma(delta, velocity)
+            position.set(relativePosition).add(1f, 0f, 0f)
+            transform.rotate(angularVelocity * delta)
+            colour.set(baseColour).w = lifetime / initialLifetime
+        }
+    }
+
+    private object ObjectParticleAccessor : VertexArrayAccessor<ObjectParticle>() {
+        override fun registerFields() {
+            addField<Vector3f> { particle, buffer -> particle.position[buffer] }
+            addField<Matrix2f> { particle, buffer -> particle.transform[buffer] }
+            addField<Vector4f> { particle, buffer -> particle.colour[buffer] }
+        }
+    }
+
+    private class CpuBuffer(count: Int) : Buffer<ObjectParticle> {
+        override val buffer: ByteBuffer = ByteBuffer.allocateDirect(count * ObjectParticleAccessor.elementByteSize)
+            .order(ByteOrder.nativeOrder())
+        override val accessor: BufferAccessor<ObjectParticle> = ObjectParticleAccessor
+
+        var data: ByteBuffer = buffer
+
+        override fun setData(elements: Collection<ObjectParticle>) = accessor.map(elements, this)
+        override fun setData(data: ByteBuffer) {
+            this.data = data
+        }
+
+        override fun bind() {}
+        override fun unbind() {}
+    }
+
+    private companion object {
+        const val DELTA = 1 / 60f
+    }
+
+}
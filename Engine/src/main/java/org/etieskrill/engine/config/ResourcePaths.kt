@@ -4,6 +4,9 @@ const val FONT_PATH = "fonts/"
 
 const val MODEL_PATH = "models/"
 
+/** Relative to the working directory, as opposed to the other paths, which are looked up on the classpath. */
+const val MODEL_CACHE_PATH = "cache/models/"
+
 const val SHADER_PATH = "shaders/"
 const val SHADER_INCLUDE_PATH = SHADER_PATH + "include/"
 
@@ -1,52 +1,88 @@
 package org.etieskrill.engine.entity
 
 import org.etieskrill.engine.common.Disposable
+import org.etieskrill.engine.entity.system.Archetype
+import org.etieskrill.engine.entity.system.ComponentStorage
+import org.etieskrill.engine.entity.system.EntitySystem
+import org.etieskrill.engine.entity.system.MapComponentStorage
 import kotlin.reflect.KClass
 
+/**
+ * A bag of components, which are processed by the services of the [EntitySystem] owning the entity.
+ *
+ * Components may be added and removed at any time in [MAP](org.etieskrill.engine.entity.system.ComponentStorageMode.MAP)
+ * storage mode. In [ARCHETYPE](org.etieskrill.engine.entity.system.ComponentStorageMode.ARCHETYPE) storage mode however,
+ * doing so moves the entity between tables shared with other entities, which is not synchronised, so it must not
+ * happen while any service is processing on the pool of the system. This includes context bound services and the
+ * callbacks of services which run while others are still processing on the pool, and is checked on every change.
+ * Without a pool, or outside of [EntitySystem.update], components may always be added and removed. Entities created
+ * while services are processing on the pool are only moved into their table once they are added to the system.
+ */
 open class Entity(
     val id: Int
 ) : Disposable {
 
-    private val mutableComponents = mutableMapOf<KClass<*>, Any>()
-    val components: Map<KClass<*>, Any> = mutableComponents
+    internal var storage: ComponentStorage = MapComponentStorage()
+    internal var archetype: Archetype? = null
+    internal var archetypeRow = -1
+    internal var system: EntitySystem? = null
 
-    inline fun <reified T> getComponent() = components[T::class] as? T
+    /**
+     * All components of this entity by their type. Depending on the storage mode of the owning
+     * [EntitySystem], this may be a snapshot rather than a live view.
+     */
+    val components: Map<KClass<*>, Any> get() = storage.components(this)
+
+    @Suppress("UNCHECKED_CAST")
+    inline fun <reified T> getComponent() = getComponent(T::class as KClass<Any>) as? T
+
+    fun <T : Any> getComponent(type: KClass<T>): T? = storage.get(this, type) as? T
 
     @Deprecated(message = "Use getComponent() instead.", replaceWith = ReplaceWith("getComponent<T>()"))
-    fun <T : Any> getComponent(component: Class<T>) = components[component.kotlin] as? T
+    fun <T : Any> getComponent(component: Class<T>) = getComponent(component.kotlin)
 
     fun <T : Any> addComponent(component: T): T {
-        check(!mutableComponents.containsKey(component::class)) {
+        check(!hasComponent(component::class)) {
             "Entity already has component of type '${component::class.simpleName}'"
         }
 
-        mutableComponents[component::class] = component
+        system?.checkComponentsMutable(this)
+        storage.add(this, component)
+        system?.componentsChanged(this)
         return component
     }
 
-    fun withComponent(component: Any): Entity {
-        check(!mutableComponents.containsKey(component::class)) {
-            "Entity already has component of type '${component::class.simpleName}'"
-        }
+    inline fun <reified T : Any> removeComponent(): T? = removeComponent(T::class)
 
-        mutableComponents[component::class] = component
+    fun <T : Any> removeComponent(type: KClass<T>): T? {
+        if (!hasComponent(type)) return null
+        system?.checkComponentsMutable(this)
+        val component = storage.remove(this, type) ?: return null
+        system?.componentsChanged(this)
+        return component as T
+    }
+
+    fun withComponent(component: Any): Entity {
+        addComponent(component)
         return this
     }
 
     operator fun Any.unaryPlus() = addComponent(this)
 
+    fun hasComponent(type: KClass<*>): Boolean = storage.has(this, type)
+
     @Deprecated(message = "Use hasComponents<>() instead.", replaceWith = ReplaceWith("hasComponents<T>()"))
-    fun hasComponents(vararg components: Class<*>) = this.components.keys.containsAll(components.map { it.kotlin })
+    fun hasComponents(vararg components: Class<*>) = components.all { hasComponent(it.kotlin) }
 
     @JvmName(name = "hasComponents1")
-    inline fun <reified T1> hasComponents() = components.contains(T1::class)
+    inline fun <reified T1> hasComponents() = hasComponent(T1::class)
 
     @JvmName(name = "hasComponents2")
-    inline fun <reified T1, reified T2> hasComponents() = components.keys.containsAll(listOf(T1::class, T2::class))
+    inline fun <reified T1, reified T2> hasComponents() = hasComponent(T1::class) && hasComponent(T2::class)
 
     @JvmName(name = "hasComponents3")
     inline fun <reified T1, reified T2, reified T3> hasComponents() =
-        components.keys.containsAll(listOf(T1::class, T2::class, T3::class))
+        hasComponent(T1::class) && hasComponent(T2::class) && hasComponent(T3::class)
 
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
@@ -1,3 +1,10 @@
 package org.etieskrill.engine.entity.component
 
+import org.etieskrill.engine.entity.Entity
+
 class Enabled(var enabled: Boolean = true)
+
+/**
+ * Whether the entity is processed by services, which it is unless its [Enabled] component says otherwise.
+ */
+fun Entity.isEnabled() = getComponent<Enabled>()?.enabled != false
@@ -0,0 +1,34 @@
+package org.etieskrill.engine.entity.component
+
+import org.etieskrill.engine.entity.Entity
+
+/**
+ * The state of an entity's [Transform] before and after the last fixed simulation step, so it can be drawn at a point
+ * in between when the render rate does not line up with the simulation rate. Kept up to date by a
+ * [PhysicsService](org.etieskrill.engine.entity.service.impl.PhysicsService) running in fixed time step mode.
+ */
+class InterpolatedTransform(transform: TransformC) {
+
+    val previous = Transform(transform)
+    val current = Transform(transform)
+    val interpolated = Transform(transform)
+
+    /**
+     * Jumps to the given transform without interpolating, e.g. after teleporting the entity.
+     */
+    fun reset(transform: TransformC) {
+        previous.set(transform)
+        current.set(transform)
+        interpolated.set(transform)
+    }
+
+    fun interpolate(alpha: Float): Transform = previous.lerpInternal(current, alpha, interpolated)
+
+}
+
+/**
+ * The transform an entity should be drawn with, which is its [interpolated](InterpolatedTransform.interpolated)
+ * transform if it has one.
+ */
+val Entity.renderTransform: Transform?
+    get() = getComponent<InterpolatedTransform>()?.interpolated ?: getComponent<Transform>()
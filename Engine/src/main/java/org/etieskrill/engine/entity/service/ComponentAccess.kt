@@ -0,0 +1,19 @@
+package org.etieskrill.engine.entity.service
+
+import kotlin.reflect.KClass
+
+/**
+ * Declares which component types a [Service] reads and writes while processing entities.
+ *
+ * Two services conflict if either one writes a component type the other one reads or writes. Non-conflicting services
+ * may be run at the same time by the [EntitySystem](org.etieskrill.engine.entity.system.EntitySystem).
+ */
+data class ComponentAccess(
+    val reads: Set<KClass<*>> = setOf(),
+    val writes: Set<KClass<*>> = setOf()
+) {
+
+    infix fun conflictsWith(other: ComponentAccess): Boolean =
+        writes.any { it in other.reads || it in other.writes } || other.writes.any { it in reads }
+
+}
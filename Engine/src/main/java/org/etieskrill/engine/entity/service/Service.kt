@@ -11,12 +11,26 @@ interface Service : Disposable {
 
     /**
      * Asks this service whether a set of components belonging to a single [entity] qualifies the entity for
-     * processing by this service.
+     * processing by this service. Accepts every entity unless overridden.
+     *
+     * [requiredComponents] take precedence: if they are specified, the
+     * [EntitySystem](org.etieskrill.engine.entity.system.EntitySystem) only processes the entities possessing all of
+     * them, and does not consult this method at all.
      *
      * @param entity components belonging to an entity
      * @return whether the entity can be processed
      */
-    fun canProcess(entity: Entity): Boolean
+    fun canProcess(entity: Entity): Boolean = true
+
+    /**
+     * Optionally specifies the component types an entity must possess to be processed by this service. If set, the
+     * [EntitySystem](org.etieskrill.engine.entity.system.EntitySystem) keeps track of all matching entities as
+     * entities and components are added or removed, instead of filtering all entities through [canProcess] every
+     * frame.
+     *
+     * @return the set of required component types
+     */
+    val requiredComponents: Set<KClass<*>>? get() = null
 
     /**
      * Optionally specifies the order in which entities are [processed](process).
@@ -74,7 +88,8 @@ interface Service : Disposable {
     /**
      * Specifies a service's priority, which may be used to direct the
      * [EntitySystem](org.etieskrill.engine.entity.system.EntitySystem) to run this service at some specific stage
-     * <i>without</i> having to set absolute dependencies in every other service.
+     * <i>without</i> having to set absolute dependencies in every other service. Services with a higher priority are
+     * run earlier.
      *
      * This is not an absolute directive however, and will be overridden if a dependency in [runAfter] requires it.
      *
@@ -82,6 +97,41 @@ interface Service : Disposable {
      */
     val priority: Int get() = 0
 
+    /**
+     * Optionally specifies which component types this service reads and writes while [processing](process) entities.
+     * Services whose accesses do not conflict may be run at the same time, if the
+     * [EntitySystem](org.etieskrill.engine.entity.system.EntitySystem) is set up for parallel execution.
+     *
+     * If not set, the service is assumed to access just about anything, and is never run alongside another service.
+     *
+     * @return the components accessed by this service
+     */
+    val componentAccess: ComponentAccess? get() = null
+
+    /**
+     * Specifies whether this service must [process] entities on the thread owning the graphics context, which is the
+     * thread calling [EntitySystem.update](org.etieskrill.engine.entity.system.EntitySystem.update). This is the case
+     * for any service issuing graphics calls, and is assumed unless specified otherwise.
+     *
+     * [preProcess] and [postProcess] are always called on the context thread, so services may defer their graphics
+     * work to there.
+     *
+     * @return whether the service is bound to the context thread
+     */
+    val isContextBound: Boolean get() = true
+
+    /**
+     * Specifies whether [process] only ever touches the components of the entity it is given, in which case the
+     * [EntitySystem](org.etieskrill.engine.entity.system.EntitySystem) may split the entities into chunks and process
+     * them in parallel. All chunks are complete before [postProcess] is called.
+     *
+     * An entity local service may not add or remove components, and is only ever processed in chunks if it is not
+     * [context bound](isContextBound).
+     *
+     * @return whether processing one entity is independent of processing any other
+     */
+    val isEntityLocal: Boolean get() = false
+
     override fun dispose() = Unit
 
 }
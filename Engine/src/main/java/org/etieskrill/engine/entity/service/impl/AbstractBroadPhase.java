@@ -0,0 +1,155 @@
+package org.etieskrill.engine.entity.service.impl;
+
+import kotlin.reflect.KClass;
+import org.etieskrill.engine.entity.Entity;
+import org.etieskrill.engine.entity.component.DynamicCollider;
+import org.etieskrill.engine.entity.component.StaticCollider;
+import org.etieskrill.engine.entity.component.Transform;
+import org.etieskrill.engine.entity.component.WorldSpaceAABB;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static kotlin.jvm.JvmClassMappingKt.getKotlinClass;
+
+/**
+ * Sorts colliders into static and dynamic ones. Dynamic colliders are re-indexed on every update, while static ones
+ * are only re-indexed if any of them were added, removed, or moved since the last update.
+ */
+public abstract class AbstractBroadPhase implements BroadPhase {
+
+    private static final KClass<Transform> TRANSFORM = getKotlinClass(Transform.class);
+    private static final KClass<DynamicCollider> DYNAMIC_COLLIDER = getKotlinClass(DynamicCollider.class);
+    private static final KClass<StaticCollider> STATIC_COLLIDER = getKotlinClass(StaticCollider.class);
+    private static final KClass<WorldSpaceAABB> WORLD_SPACE_AABB = getKotlinClass(WorldSpaceAABB.class);
+
+    private final List<Entity> statics = new ArrayList<>();
+    private final List<WorldSpaceAABB> staticBounds = new ArrayList<>();
+    private final List<Entity> dynamics = new ArrayList<>();
+    private final List<WorldSpaceAABB> dynamicBounds = new ArrayList<>();
+
+    private Entity[] indexedStatics = new Entity[0];
+    private float[] indexedStaticBounds = new float[0];
+
+    private long[] candidateKeys = new long[0];
+    private Entity[] candidateBuffer = new Entity[0];
+
+    @Override
+    public final void update(List<? extends Entity> entities) {
+        statics.clear();
+        staticBounds.clear();
+        dynamics.clear();
+        dynamicBounds.clear();
+
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
+            WorldSpaceAABB bb = entity.getComponent(WORLD_SPACE_AABB);
+            if (bb == null || !entity.hasComponent(TRANSFORM)) continue;
+
+            if (entity.hasComponent(DYNAMIC_COLLIDER)) {
+                dynamics.add(entity);
+                dynamicBounds.add(bb);
+            } else if (entity.hasComponent(STATIC_COLLIDER)) {
+                statics.add(entity);
+                staticBounds.add(bb);
+            }
+        }
+
+        if (staticsChanged()) {
+            snapshotStatics();
+            indexStatics(statics, staticBounds);
+        }
+        indexDynamics(dynamics, dynamicBounds);
+    }
+
+    private boolean staticsChanged() {
+        if (statics.size() != indexedStatics.length) return true;
+        for (int i = 0; i < statics.size(); i++) {
+            if (statics.get(i) != indexedStatics[i]) return true;
+
+            WorldSpaceAABB bb = staticBounds.get(i);
+            int offset = 6 * i;
+            if (bb.minX != indexedStaticBounds[offset]
+                    || bb.minY != indexedStaticBounds[offset + 1]
+                    || bb.minZ != indexedStaticBounds[offset + 2]
+                    || bb.maxX != indexedStaticBounds[offset + 3]
+                    || bb.maxY != indexedStaticBounds[offset + 4]
+                    || bb.maxZ != indexedStaticBounds[offset + 5]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void snapshotStatics() {
+        indexedStatics = statics.toArray(new Entity[0]);
+        indexedStaticBounds = Arrays.copyOf(indexedStaticBounds, 6 * statics.size());
+        for (int i = 0; i < statics.size(); i++) {
+            WorldSpaceAABB bb = staticBounds.get(i);
+            int offset = 6 * i;
+            indexedStaticBounds[offset] = bb.minX;
+            indexedStaticBounds[offset + 1] = bb.minY;
+            indexedStaticBounds[offset + 2] = bb.minZ;
+            indexedStaticBounds[offset + 3] = bb.maxX;
+            indexedStaticBounds[offset + 4] = bb.maxY;
+            indexedStaticBounds[offset + 5] = bb.maxZ;
+        }
+    }
+
+    @Override
+    public final void collectCandidates(Entity entity, WorldSpaceAABB bb, List<Entity> candidates) {
+        candidates.clear();
+        queryStatics(entity, bb, candidates);
+        queryDynamics(entity, bb, candidates);
+        sortById(candidates);
+    }
+
+    /**
+     * Sorts the candidates by their id as packed keys in reused arrays, since {@link List#sort(java.util.Comparator)} may
+     * allocate.
+     */
+    private void sortById(List<Entity> candidates) {
+        int size = candidates.size();
+        if (size < 2) return;
+
+        if (candidateKeys.length < size) {
+            int capacity = Math.max(size, 2 * candidateKeys.length);
+            candidateKeys = new long[capacity];
+            candidateBuffer = new Entity[capacity];
+        }
+
+        for (int i = 0; i < size; i++) {
+            Entity candidate = candidates.get(i);
+            candidateBuffer[i] = candidate;
+            candidateKeys[i] = (long) candidate.getId() << 32 | i;
+        }
+        Arrays.sort(candidateKeys, 0, size);
+
+        for (int i = 0; i < size; i++) {
+            candidates.set(i, candidateBuffer[(int) candidateKeys[i]]);
+        }
+        Arrays.fill(candidateBuffer, 0, size, null);
+    }
+
+    /**
+     * Replaces the static index. Both lists are parallel, and are only valid for the duration of the call.
+     */
+    protected abstract void indexStatics(List<Entity> colliders, List<WorldSpaceAABB> bounds);
+
+    /**
+     * Replaces the dynamic index. Both lists are parallel, and are only valid for the duration of the call.
+     */
+    protected abstract void indexDynamics(List<Entity> colliders, List<WorldSpaceAABB> bounds);
+
+    /**
+     * Adds all indexed static colliders other than {@code entity} which intersect {@code bb} to {@code candidates}.
+     */
+    protected abstract void queryStatics(Entity entity, WorldSpaceAABB bb, List<Entity> candidates);
+
+    /**
+     * Adds all indexed dynamic colliders other than {@code entity} which intersect {@code bb} to {@code candidates}.
+     */
+    protected abstract void queryDynamics(Entity entity, WorldSpaceAABB bb, List<Entity> candidates);
+
+}
@@ -2,23 +2,63 @@ package org.etieskrill.engine.entity.service.impl;
 
 import org.etieskrill.engine.entity.Entity
 import org.etieskrill.engine.entity.component.Drawable
+import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.entity.component.isEnabled
+import org.etieskrill.engine.entity.service.ComponentAccess
 import org.etieskrill.engine.entity.service.Service
+import org.etieskrill.engine.graphics.animation.AnimationLod
 import org.etieskrill.engine.graphics.animation.Animator
+import org.etieskrill.engine.graphics.camera.Camera
 import kotlin.reflect.KClass
 
-class AnimationService : Service {
+/**
+ * Updates all [Animator]s. If a [camera] is given, animators further away from it are updated less often as decided by
+ * the [lod], where the updates of animators with the same interval are spread across frames by entity id.
+ */
+class AnimationService @JvmOverloads constructor(
+    private val camera: Camera? = null,
+    private val lod: AnimationLod = AnimationLod.NONE
+) : Service {
 
-    override fun canProcess(entity: Entity) = entity.hasComponents<Drawable, Animator>()
+    override val requiredComponents: Set<KClass<*>> = setOf(Drawable::class, Animator::class)
+
+    private var frame = 0
+
+    override fun preProcess(delta: Double, entities: List<Entity>) {
+        frame++
+    }
 
     override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
-        val drawable = targetEntity.getComponent<Drawable>()!!
         val animator = targetEntity.getComponent<Animator>()!!
 
-        animator.update(delta)
+        val interval = getUpdateInterval(targetEntity)
+        if (interval == 1 || (frame + targetEntity.id) % interval == 0) animator.update(delta)
+        else animator.skip(delta)
+    }
 
-        drawable.shader?.setUniformArray("boneMatrices", animator.transformMatricesArray)
+    private fun getUpdateInterval(entity: Entity): Int {
+        val camera = camera ?: return 1
+        val transform = entity.getComponent<Transform>() ?: return 1
+        return lod.getUpdateInterval(camera.position.distance(transform.position))
     }
 
+    override fun postProcess(entities: List<Entity>) {
+        //bone matrices are uploaded in one go on the context thread, so the animators themselves may be updated anywhere
+        for (entity in entities) {
+            //only the entities which were processed, i.e. enabled ones with all required components
+            if (!entity.isEnabled()) continue
+            val animator = entity.getComponent<Animator>() ?: continue
+            val drawable = entity.getComponent<Drawable>() ?: continue
+            drawable.shader?.setUniformMatrix4Array("boneMatrices", animator.boneMatrices, true)
+        }
+    }
+
+    override val componentAccess = ComponentAccess(reads = setOf(Drawable::class, Transform::class), writes = setOf(Animator::class))
+
+    override val isContextBound get() = false
+
+    override val isEntityLocal get() = true
+
     override val runBefore: Set<KClass<out Service>>
         get() = setOf(RenderService::class)
 
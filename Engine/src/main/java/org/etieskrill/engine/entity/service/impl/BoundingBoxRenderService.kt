@@ -23,7 +23,7 @@ class BoundingBoxRenderService(
     private val box = ModelFactory.box(Vector3f(1f))
     private val boundingBoxTransform = Transform()
 
-    override fun canProcess(entity: Entity) = entity.hasComponents<WorldSpaceAABB>()
+    override val requiredComponents: Set<KClass<*>> = setOf(WorldSpaceAABB::class)
 
     override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
         if (!renderBoundingBoxes) return
@@ -3,12 +3,14 @@ package org.etieskrill.engine.entity.service.impl
 import org.etieskrill.engine.entity.Entity
 import org.etieskrill.engine.entity.component.Transform
 import org.etieskrill.engine.entity.component.WorldSpaceAABB
+import org.etieskrill.engine.entity.service.ComponentAccess
 import org.etieskrill.engine.entity.service.Service
 import org.joml.primitives.AABBf
+import kotlin.reflect.KClass
 
 class BoundingBoxService : Service {
 
-    override fun canProcess(entity: Entity) = entity.hasComponents<Transform, AABBf, WorldSpaceAABB>()
+    override val requiredComponents: Set<KClass<*>> = setOf(Transform::class, AABBf::class, WorldSpaceAABB::class)
 
     override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
         val transform = targetEntity.getComponent<Transform>()!!
@@ -18,4 +20,14 @@ class BoundingBoxService : Service {
         aabb.transform(transform.matrix, worldSpaceAABB)
     }
 
+    //the transform matrix is updated lazily when read, so reading a transform is writing to it
+    override val componentAccess = ComponentAccess(
+        reads = setOf(AABBf::class),
+        writes = setOf(Transform::class, WorldSpaceAABB::class)
+    )
+
+    override val isContextBound get() = false
+
+    override val isEntityLocal get() = true
+
 }
@@ -0,0 +1,38 @@
+package org.etieskrill.engine.entity.service.impl;
+
+import org.etieskrill.engine.entity.Entity;
+import org.etieskrill.engine.entity.component.*;
+
+import java.util.List;
+
+/**
+ * Finds the colliders which may touch a given collider, so that the {@link PhysicsService.NarrowCollisionSolver} only
+ * needs to look at those instead of at every other entity.
+ * <p>
+ * Colliders are all entities with a {@link Transform}, a {@link WorldSpaceAABB} and either a {@link DynamicCollider} or
+ * a {@link StaticCollider}. The index is built from the bounding boxes as they are when {@link #update(List)} is
+ * called, and is not expected to reflect any changes made to them before the next update.
+ *
+ * @see SortAndSweepBroadPhase
+ * @see UniformGridBroadPhase
+ */
+public interface BroadPhase {
+
+    /**
+     * Re-indexes the colliders among the given entities.
+     *
+     * @param entities all entities of the system
+     */
+    void update(List<? extends Entity> entities);
+
+    /**
+     * Collects all colliders whose bounding box intersects the given one into {@code candidates}, in order of their
+     * id. The querying entity itself is never included.
+     *
+     * @param entity     the querying entity
+     * @param bb         the bounding box to test against
+     * @param candidates the list to collect colliders into, which is cleared beforehand
+     */
+    void collectCandidates(Entity entity, WorldSpaceAABB bb, List<Entity> candidates);
+
+}
@@ -0,0 +1,148 @@
+package org.etieskrill.engine.entity.service.impl
+
+import org.etieskrill.engine.entity.Entity
+import org.etieskrill.engine.entity.component.DirectionalLightComponent
+import org.etieskrill.engine.entity.component.Drawable
+import org.etieskrill.engine.entity.component.WorldSpaceAABB
+import org.etieskrill.engine.entity.service.ComponentAccess
+import org.etieskrill.engine.entity.service.Service
+import org.etieskrill.engine.graphics.camera.Camera
+import org.etieskrill.engine.graphics.culling.BoundingVolumeHierarchy
+import org.joml.Matrix4fc
+import org.joml.primitives.AABBfc
+import java.util.*
+import kotlin.reflect.KClass
+
+/**
+ * Keeps the bounds of all drawable entities in a [BoundingVolumeHierarchy], and finds the entities visible to every
+ * view in a single traversal per frame, which the render and shadow mapping services then look up instead of testing
+ * every entity themselves.
+ *
+ * The views are all cameras [added][addView] to the service, and the camera of every directional light with a shadow
+ * map.
+ */
+class CullingService(margin: Float = BoundingVolumeHierarchy.DEFAULT_MARGIN) : Service {
+
+    val hierarchy = BoundingVolumeHierarchy<Entity>(margin)
+
+    private var proxies = IntArray(0)
+    private var lastProcessed = IntArray(0)
+    private val tracked = BitSet()
+    private var frame = 0
+
+    private val addedViews = mutableListOf<Camera>()
+    private val views = mutableListOf<Camera>()
+    private val viewMatrices = mutableListOf<Matrix4fc>()
+    private val visibleSets = mutableListOf<BitSet>()
+    private val visitor = BoundingVolumeHierarchy.Visitor<Entity> { entity, view -> visibleSets[view].set(entity.id) }
+
+    override val requiredComponents: Set<KClass<*>> = setOf(Drawable::class, WorldSpaceAABB::class)
+
+    /**
+     * Adds a camera to the views culled for, starting with the next frame. A camera may be added several times, and
+     * remains a view until it is removed as often.
+     */
+    fun addView(camera: Camera) {
+        addedViews += camera
+    }
+
+    fun removeView(camera: Camera) {
+        addedViews.remove(camera)
+    }
+
+    /**
+     * @return whether the camera was culled for this frame
+     */
+    fun hasView(camera: Camera) = views.any { it === camera }
+
+    /**
+     * Entities which are not in the hierarchy, such as ones which were only added this frame, are always considered
+     * visible, as are all entities if the camera is not a [view][hasView].
+     *
+     * @return whether the entity may be visible to the camera
+     */
+    fun isVisible(camera: Camera, entity: Entity): Boolean {
+        if (!tracked[entity.id]) return true
+        val view = views.indexOfFirst { it === camera }
+        return view == -1 || visibleSets[view][entity.id]
+    }
+
+    /**
+     * Collects the ids of all entities in the hierarchy whose bounds may intersect the given bounds.
+     *
+     * @param dest the set of ids, which is cleared beforehand
+     */
+    fun query(bounds: AABBfc, dest: BitSet) {
+        dest.clear()
+        hierarchy.query(bounds) { dest.set(it.id) }
+    }
+
+    /**
+     * @return whether the entity is in the hierarchy
+     */
+    fun isTracked(entity: Entity) = tracked[entity.id]
+
+    override fun preProcess(delta: Double, entities: List<Entity>) {
+        frame++
+    }
+
+    override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
+        val bounds = targetEntity.getComponent<WorldSpaceAABB>()!!
+        val id = targetEntity.id
+        if (id >= proxies.size) {
+            val size = maxOf(id + 1, 2 * proxies.size)
+            proxies = proxies.copyOf(size)
+            lastProcessed = lastProcessed.copyOf(size)
+        }
+
+        //Ids are reused, so the entity in the hierarchy may have been removed in the meantime
+        if (tracked[id] && hierarchy.getItem(proxies[id]) !== targetEntity) untrack(id)
+
+        if (tracked[id]) {
+            hierarchy.update(proxies[id], bounds)
+        } else {
+            proxies[id] = hierarchy.insert(targetEntity, bounds)
+            tracked.set(id)
+        }
+        lastProcessed[id] = frame
+    }
+
+    override fun postProcess(entities: List<Entity>) {
+        //Entities which were removed, or lost their drawable or bounds, are no longer processed
+        var id = tracked.nextSetBit(0)
+        while (id >= 0) {
+            if (lastProcessed[id] != frame) untrack(id)
+            id = tracked.nextSetBit(id + 1)
+        }
+
+        views.clear()
+        for (camera in addedViews) if (views.none { it === camera }) views += camera
+        for (entity in entities) {
+            val light = entity.getComponent<DirectionalLightComponent>() ?: continue
+            if (light.shadowMap != null && light.camera != null) views += light.camera
+        }
+
+        viewMatrices.clear()
+        views.mapTo(viewMatrices) { it.combined }
+        while (visibleSets.size < views.size) visibleSets += BitSet()
+        visibleSets.forEach { it.clear() }
+
+        hierarchy.cull(viewMatrices, visitor)
+    }
+
+    private fun untrack(id: Int) {
+        hierarchy.remove(proxies[id])
+        tracked.clear(id)
+    }
+
+    override val componentAccess = ComponentAccess(reads = setOf(Drawable::class, WorldSpaceAABB::class))
+
+    override val isContextBound get() = false
+
+    override val runAfter: Set<KClass<out Service>>
+        get() = setOf(BoundingBoxService::class)
+
+    override val runBefore: Set<KClass<out Service>>
+        get() = setOf(RenderService::class, DirectionalShadowMappingService::class, PointShadowMappingService::class)
+
+}
@@ -25,6 +25,7 @@ import org.etieskrill.engine.graphics.texture.Texture2D
 import org.joml.Vector2ic
 import org.lwjgl.opengl.GL11C.*
 import kotlin.math.PI
+import kotlin.reflect.KClass
 
 class DeferredRenderService(
     private val renderer: Renderer,
@@ -62,7 +63,7 @@ class DeferredRenderService(
     private val deferredShader = DeferredShader()
     private val deferredPipeline = PostPassPipeline(deferredShader, screenBuffer)
 
-    override fun canProcess(entity: Entity) = entity.hasComponents<Transform, Drawable>()
+    override val requiredComponents: Set<KClass<*>> = setOf(Transform::class, Drawable::class)
 
     override fun preProcess(delta: Double, entities: List<Entity>) {
         gBuffer.clear()
@@ -3,87 +3,90 @@ package org.etieskrill.engine.entity.service.impl
 import org.etieskrill.engine.entity.Entity
 import org.etieskrill.engine.entity.component.DirectionalLightComponent
 import org.etieskrill.engine.entity.component.Drawable
-import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.entity.component.WorldSpaceAABB
+import org.etieskrill.engine.entity.component.renderTransform
 import org.etieskrill.engine.entity.service.Service
 import org.etieskrill.engine.graphics.Renderer
 import org.etieskrill.engine.graphics.animation.Animator
+import org.etieskrill.engine.graphics.camera.Camera
+import org.etieskrill.engine.graphics.gl.framebuffer.DirectionalShadowMap
 import org.etieskrill.engine.graphics.gl.shader.Shaders
 import org.etieskrill.engine.graphics.gl.shader.impl.DepthAnimatedShader
-import org.etieskrill.engine.graphics.gl.shader.impl.boneMatrices
-
-const val DEFAULT_UPDATE_FREQUENCY = 2
-//const val DEFAULT_ENTITY_UPDATE_FREQUENCY = 4
-
+import java.util.*
+import kotlin.reflect.KClass
+
+/**
+ * Renders the shadow map of every directional light. Only the casters within the light camera's frustum are drawn, and
+ * the static ones among them only once into a cached layer, which is then copied into the shadow map every frame before
+ * the dynamic casters are drawn on top. See [ShadowCasterCache] for when the cached layer is redrawn.
+ */
 class DirectionalShadowMappingService(
     val renderer: Renderer,
     val depthShader: Shaders.DepthShader = Shaders.DepthShader(),
-    val animatedDepthShader: DepthAnimatedShader = DepthAnimatedShader()
+    val animatedDepthShader: DepthAnimatedShader = DepthAnimatedShader(),
+    val cullingService: CullingService? = null
 ) : Service {
 
-    //TODO make superclass for sparsely executed services and entity round robin services
-    private val updateFrequency = DEFAULT_UPDATE_FREQUENCY;
-    private var cycle = 0;
-
-//    private final int entityUpdateFrequency = DEFAULT_UPDATE_FREQUENCY;
-//    private final Map<Entity, Map<Entity, Integer>> updateCycleMaps = new HashMap<>();
-//    private int newEntitySpread = 0;
-//    private int entityCycle = 0;
+    private val casters = mutableListOf<Entity>()
+    private val casterCaches = IdentityHashMap<DirectionalShadowMap, ShadowCasterCache>()
+    private val staticLayers = IdentityHashMap<DirectionalShadowMap, DirectionalShadowMap>()
 
-    override fun canProcess(entity: Entity) = entity.hasComponents<DirectionalLightComponent>()
+    override val requiredComponents: Set<KClass<*>> = setOf(DirectionalLightComponent::class)
 
     override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
-        //TODO "rendered camera" component to derive view frustum
-//        DirectionalLight light = (DirectionalLight) target.get(DirectionalLight.class).getComponent();
-        val shadowMapComponent = targetEntity.getComponent<DirectionalLightComponent>()!!
+        val lightComponent = targetEntity.getComponent<DirectionalLightComponent>()!!
+        val shadowMap = lightComponent.shadowMap ?: return
+        val camera = lightComponent.camera ?: return
 
-        if (++cycle >= updateFrequency) {
-            cycle = 0;
-        } else {
-            return;
+        casters.clear()
+        for (entity in entities) {
+            if (entity.id == targetEntity.id || !isCaster(entity)) continue
+            if (cullingService != null) {
+                if (!cullingService.isVisible(camera, entity)) continue
+            } else {
+                val bounds = entity.getComponent<WorldSpaceAABB>()
+                if (bounds != null && !camera.frustumTestAABB(bounds)) continue
+            }
+            casters += entity
         }
 
-        val shadowMap = shadowMapComponent.shadowMap ?: return
-        shadowMap.clear()
-        shadowMap.bind()
+        val cache = casterCaches.getOrPut(shadowMap) { ShadowCasterCache() }
+        val staticLayer = staticLayers.getOrPut(shadowMap) { DirectionalShadowMap(shadowMap.size) }
 
-//        var updateCycles = updateCycleMaps.computeIfAbsent(targetEntity, entity -> new HashMap<>());
-        for (entity in entities) {
-            //TODO this would need at least a secondary buffer for swapping, and maybe even more for blending over time
-//            if (!isEntityUpdateCycle(updateCycles, entity)) continue;
-
-            //TODO abstracted access object for all components, buffering of components (and combinations thereof), can also help with the bloody casts
-            if (entity.id == targetEntity.id) continue
-            val transform = entity.getComponent<Transform>() ?: continue
-            val drawable = entity.getComponent<Drawable>() ?: continue
+        val redrawStatics = cache.update(casters, camera.combined)
+        if (redrawStatics) shadowMap.clear()
+        shadowMap.bind()
+        if (redrawStatics) {
+            cache.staticCasters.forEach { render(it, camera) }
+            shadowMap.texture.copyLayersTo(staticLayer.texture, shadowMap.size, 0, 1)
+        } else {
+            staticLayer.texture.copyLayersTo(shadowMap.texture, shadowMap.size, 0, 1)
+        }
+        cache.dynamicCasters.forEach { render(it, camera) }
+        shadowMap.unbind()
+    }
 
-            val shader = when (val animator = entity.getComponent<Animator>()) {
-                null -> depthShader
-                else -> animatedDepthShader.apply { boneMatrices = animator.transformMatricesArray }
-            }
+    private fun isCaster(entity: Entity) = entity.renderTransform != null && entity.hasComponents<Drawable>()
 
-            renderer.render(
-                transform,
-                drawable.model,
-                shader,
-                shadowMapComponent.camera
-            )
+    private fun render(entity: Entity, camera: Camera) {
+        val shader = when (val animator = entity.getComponent<Animator>()) {
+            null -> depthShader
+            else -> animatedDepthShader.apply { setUniformMatrix4Array("boneMatrices", animator.boneMatrices, false) }
         }
 
-        shadowMap.unbind()
+        renderer.render(entity.renderTransform!!, entity.getComponent<Drawable>()!!.model, shader, camera)
+    }
+
+    override fun entityRemoved(entity: Entity) {
+        val shadowMap = entity.getComponent<DirectionalLightComponent>()?.shadowMap ?: return
+        casterCaches.remove(shadowMap)
+        staticLayers.remove(shadowMap)?.dispose()
     }
 
-//    private boolean isEntityUpdateCycle(Map<Entity, Integer> updateCycles, Entity entity) {
-//        Integer updateCycle = updateCycles.get(entity);
-//        if (updateCycle == null) {
-//            updateCycles.put(entity, newEntitySpread);
-//            newEntitySpread = ++newEntitySpread % updateFrequency;
-//        } else if (++updateCycle >= updateFrequency) {
-//            updateCycles.put(entity, 0);
-//        } else {
-//            updateCycles.put(entity, updateCycle);
-//            return false;
-//        }
-//        return true;
-//    }
+    override fun dispose() {
+        staticLayers.values.forEach { it.dispose() }
+        staticLayers.clear()
+        casterCaches.clear()
+    }
 
 }
@@ -3,45 +3,92 @@ package org.etieskrill.engine.entity.service.impl;
 import kotlin.reflect.KClass;
 import org.etieskrill.engine.entity.Entity;
 import org.etieskrill.engine.entity.component.*;
+import org.etieskrill.engine.entity.service.ComponentAccess;
 import org.etieskrill.engine.entity.service.Service;
+import org.etieskrill.engine.time.FixedTimeStep;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.joml.Vector3f;
-import org.joml.primitives.AABBf;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 
+import static kotlin.jvm.JvmClassMappingKt.getKotlinClass;
+
 public class PhysicsService implements Service {
 
+    private static final KClass<Transform> TRANSFORM = getKotlinClass(Transform.class);
+    private static final KClass<DynamicCollider> DYNAMIC_COLLIDER = getKotlinClass(DynamicCollider.class);
+    private static final KClass<StaticCollider> STATIC_COLLIDER = getKotlinClass(StaticCollider.class);
+    private static final KClass<WorldSpaceAABB> WORLD_SPACE_AABB = getKotlinClass(WorldSpaceAABB.class);
+    private static final KClass<OnGround> ON_GROUND = getKotlinClass(OnGround.class);
+    private static final KClass<Friction> FRICTION = getKotlinClass(Friction.class);
+    private static final KClass<DirectionalForceComponent> DIRECTIONAL_FORCE = getKotlinClass(DirectionalForceComponent.class);
+    private static final KClass<Acceleration> ACCELERATION = getKotlinClass(Acceleration.class);
+    private static final KClass<InterpolatedTransform> INTERPOLATED_TRANSFORM = getKotlinClass(InterpolatedTransform.class);
+
     private final NarrowCollisionSolver solver;
+    private final BroadPhase broadPhase;
+    private final List<Entity> candidates = new ArrayList<>();
     private double lastDelta = 0;
     private boolean firstCall = true;
 
+    private final @Nullable FixedTimeStep fixedTimeStep;
+    private final List<Entity> bodies = new ArrayList<>();
+    private float[] stepStartPositions = new float[0];
+    private double frameDelta;
+
     public PhysicsService(@NotNull NarrowCollisionSolver solver) {
+        this(solver, new SortAndSweepBroadPhase());
+    }
+
+    public PhysicsService(@NotNull NarrowCollisionSolver solver, @NotNull BroadPhase broadPhase) {
+        this(solver, broadPhase, null);
+    }
+
+    /**
+     * @param fixedTimeStep if not null, the simulation is advanced in steps of this fixed length instead of by the
+     *                      frame time, running as many steps per frame as are due. Bodies with an
+     *                      {@link InterpolatedTransform} get it updated after every frame.
+     */
+    public PhysicsService(@NotNull NarrowCollisionSolver solver,
+                          @NotNull BroadPhase broadPhase,
+                          @Nullable FixedTimeStep fixedTimeStep) {
         this.solver = solver;
+        this.broadPhase = broadPhase;
+        this.fixedTimeStep = fixedTimeStep;
     }
 
     @Override
     public boolean canProcess(Entity entity) {
-        return entity.hasComponents(Transform.class, DynamicCollider.class, WorldSpaceAABB.class);
+        return entity.hasComponent(TRANSFORM) && entity.hasComponent(DYNAMIC_COLLIDER) && entity.hasComponent(WORLD_SPACE_AABB);
     }
 
     @Override
     public void process(@NotNull Entity targetEntity, @NotNull List<? extends @NotNull Entity> entities, double delta) {
+        if (fixedTimeStep != null) {
+            bodies.add(targetEntity);
+            return;
+        }
+
+        step(targetEntity, delta);
+    }
+
+    private void step(Entity targetEntity, double delta) {
         if (firstCall) {
             lastDelta = delta;
             firstCall = false;
         }
 
-        Transform transform = targetEntity.getComponent(Transform.class);
-        DynamicCollider collider = targetEntity.getComponent(DynamicCollider.class);
-        OnGround onGround = targetEntity.getComponent(OnGround.class);
+        Transform transform = targetEntity.getComponent(TRANSFORM);
+        DynamicCollider collider = targetEntity.getComponent(DYNAMIC_COLLIDER);
+        OnGround onGround = targetEntity.getComponent(ON_GROUND);
 
         updatePosition(targetEntity, transform, collider, onGround, delta);
 
-        solveCollisions(entities, targetEntity, transform, collider, onGround);
+        solveCollisions(targetEntity, transform, collider, onGround);
     }
 
     private void updatePosition(Entity targetEntity,
@@ -49,68 +96,74 @@ public class PhysicsService implements Service {
                                 DynamicCollider collider,
                                 OnGround onGround,
                                 double delta) {
-        Vector3f velocity = new Vector3f(transform.getPosition())
-                .sub(collider.getPreviousPosition());
+        Vector3f position = transform.getPosition();
+        Vector3f previousPosition = collider.getPreviousPosition();
+        float velocityX = position.x - previousPosition.x;
+        float velocityY = position.y - previousPosition.y;
+        float velocityZ = position.z - previousPosition.z;
 
-        Friction friction = targetEntity.getComponent(Friction.class);
+        Friction friction = targetEntity.getComponent(FRICTION);
         if (friction != null) {
-            float verticalVelocity = velocity.y();
-            velocity.mul((float) (1f - (friction.getCoefficient() * delta)));
-            velocity.y = verticalVelocity;
+            float factor = (float) (1f - (friction.getCoefficient() * delta));
+            velocityX *= factor;
+            velocityZ *= factor;
         }
 
-        if (lastDelta > 0) velocity.mul((float) (delta / lastDelta));
+        if (lastDelta > 0) {
+            float factor = (float) (delta / lastDelta);
+            velocityX *= factor;
+            velocityY *= factor;
+            velocityZ *= factor;
+        }
 
-        Vector3f newPosition = velocity.add(transform.getPosition());
+        float newX = velocityX + position.x;
+        float newY = velocityY + position.y;
+        float newZ = velocityZ + position.z;
 
         float correctedAccelDelta = (float) (delta * ((delta + lastDelta) / 2));
 
-        DirectionalForceComponent force = targetEntity.getComponent(DirectionalForceComponent.class);
+        DirectionalForceComponent force = targetEntity.getComponent(DIRECTIONAL_FORCE);
         if (force != null) {
-            newPosition.add(new Vector3f(force.getForce()).mul(correctedAccelDelta));
+            Vector3f forceVector = force.getForce();
+            newX += forceVector.x * correctedAccelDelta;
+            newY += forceVector.y * correctedAccelDelta;
+            newZ += forceVector.z * correctedAccelDelta;
         }
 
-        Acceleration acceleration = targetEntity.getComponent(Acceleration.class);
+        Acceleration acceleration = targetEntity.getComponent(ACCELERATION);
         if (acceleration != null) {
+            Vector3f accelerationVector = acceleration.getForce();
             if (onGround != null && !onGround.isOnGround()) {
-                acceleration.getForce().y = 0;
+                accelerationVector.y = 0;
             }
-            newPosition.add(new Vector3f(acceleration.getForce()).mul(acceleration.getFactor() * correctedAccelDelta));
+            float factor = acceleration.getFactor() * correctedAccelDelta;
+            newX += accelerationVector.x * factor;
+            newY += accelerationVector.y * factor;
+            newZ += accelerationVector.z * factor;
         }
 
         lastDelta = delta;
-        collider.setPreviousPosition(transform.getPosition());
-        transform.setPosition(newPosition);
+        collider.setPreviousPosition(position);
+        position.set(newX, newY, newZ);
     }
 
-    private void solveCollisions(List<? extends Entity> entities,
-                                 Entity targetEntity,
+    private void solveCollisions(Entity targetEntity,
                                  Transform transform,
                                  DynamicCollider collider,
                                  OnGround onGround) {
-        WorldSpaceAABB bb = targetEntity.getComponent(WorldSpaceAABB.class);
-
-        for (Entity entity : entities) {
-            if (entity == targetEntity) {
-                continue;
-            }
+        WorldSpaceAABB bb = targetEntity.getComponent(WORLD_SPACE_AABB);
 
-            DynamicCollider dynamicCollider = entity.getComponent(DynamicCollider.class);
-            StaticCollider staticCollider = entity.getComponent(StaticCollider.class);
-            if (dynamicCollider == null && staticCollider == null) {
-                continue;
-            }
-
-            WorldSpaceAABB otherBB = entity.getComponent(WorldSpaceAABB.class);
-            Transform otherTransform = entity.getComponent(Transform.class);
-            if (otherBB == null || otherTransform == null) continue;
-            if (!bb.intersectsAABB(otherBB)) {
-                continue;
-            }
+        broadPhase.collectCandidates(targetEntity, bb, candidates);
+        for (int i = 0; i < candidates.size(); i++) {
+            Entity entity = candidates.get(i);
+            WorldSpaceAABB otherBB = entity.getComponent(WORLD_SPACE_AABB);
+            Transform otherTransform = entity.getComponent(TRANSFORM);
 
+            DynamicCollider dynamicCollider = entity.getComponent(DYNAMIC_COLLIDER);
             if (dynamicCollider != null) {
                 solver.solveDynamic(transform, otherTransform, bb, otherBB, collider, dynamicCollider, targetEntity, entity);
             } else {
+                StaticCollider staticCollider = entity.getComponent(STATIC_COLLIDER);
                 solver.solveStatic(transform, otherTransform, bb, otherBB, collider, staticCollider, targetEntity, entity, onGround);
             }
         }
@@ -137,6 +190,9 @@ public class PhysicsService implements Service {
                           Entity entity,
                           Entity otherEntity);
 
+        /**
+         * Resolves collisions by pushing colliders apart along the axis of least overlap. Does not allocate.
+         */
         NarrowCollisionSolver AABB_SOLVER = new NarrowCollisionSolver() {
             @Override
             public void solveStatic(Transform transform,
@@ -148,20 +204,18 @@ public class PhysicsService implements Service {
                                     Entity entity,
                                     Entity otherEntity,
                                     OnGround onGround) {
-                Vector3f overlap = bb.intersection(otherBB, new AABBf()).getSize(new Vector3f());
-
-                int component = overlap.minComponent();
-                float overlapComponent = overlap.get(component);
+                int component = minOverlapComponent(bb, otherBB);
+                float overlapComponent = overlap(bb, otherBB, component);
                 if (overlapComponent <= 0) return;
-                if (bb.center(new Vector3f()).get(component) < otherBB.center(new Vector3f()).get(component)) {
+                if (isBelow(bb, otherBB, component)) {
                     overlapComponent = -overlapComponent;
                 }
                 if (component == 1 && onGround != null) {
                     onGround.setOnGround(true);
                 }
-                transform.getPosition().setComponent(component,
-                        transform.getPosition().get(component) + overlapComponent);
-                collider.getPreviousPosition().setComponent(component, transform.getPosition().get(component));
+                Vector3f position = transform.getPosition();
+                position.setComponent(component, position.get(component) + overlapComponent);
+                collider.getPreviousPosition().setComponent(component, position.get(component));
             }
 
             @Override
@@ -175,33 +229,124 @@ public class PhysicsService implements Service {
                                      Entity otherEntity) {
                 if (collider.isStaticOnly() || otherCollider.isStaticOnly()) return;
 
-                Vector3f overlap = bb.intersection(otherBB, new AABBf()).getSize(new Vector3f());
-
-                int component = overlap.minComponent();
-                float overlapComponent = overlap.get(component);
+                int component = minOverlapComponent(bb, otherBB);
+                float overlapComponent = overlap(bb, otherBB, component);
                 if (overlapComponent <= 0)
                     return;
-                if (bb.center(new Vector3f()).get(component) < otherBB.center(new Vector3f()).get(component)) {
+                if (isBelow(bb, otherBB, component)) {
                     overlapComponent = -overlapComponent;
                 }
-                transform.getPosition().setComponent(component,
-                        transform.getPosition().get(component) + overlapComponent / 2);
-                otherTransform.getPosition().setComponent(component,
-                        otherTransform.getPosition().get(component) - overlapComponent / 2);
+                Vector3f position = transform.getPosition();
+                Vector3f otherPosition = otherTransform.getPosition();
+                position.setComponent(component, position.get(component) + overlapComponent / 2);
+                otherPosition.setComponent(component, otherPosition.get(component) - overlapComponent / 2);
 //                TODO introduce simple elasticity - multiply previous position correction with factor
 //                collider.getPreviousPosition().setComponent(component, transform.getPosition().get(component));
 //                otherCollider.getPreviousPosition().setComponent(component, otherTransform.getPosition().get(component));
             }
+
+            private float overlap(WorldSpaceAABB bb, WorldSpaceAABB otherBB, int component) {
+                return switch (component) {
+                    case 0 -> Math.min(bb.maxX, otherBB.maxX) - Math.max(bb.minX, otherBB.minX);
+                    case 1 -> Math.min(bb.maxY, otherBB.maxY) - Math.max(bb.minY, otherBB.minY);
+                    default -> Math.min(bb.maxZ, otherBB.maxZ) - Math.max(bb.minZ, otherBB.minZ);
+                };
+            }
+
+            /**
+             * Same as {@link Vector3f#minComponent()} on the size of the intersection.
+             */
+            private int minOverlapComponent(WorldSpaceAABB bb, WorldSpaceAABB otherBB) {
+                float x = Math.abs(overlap(bb, otherBB, 0));
+                float y = Math.abs(overlap(bb, otherBB, 1));
+                float z = Math.abs(overlap(bb, otherBB, 2));
+                if (x < y && x < z) return 0;
+                return y < z ? 1 : 2;
+            }
+
+            private boolean isBelow(WorldSpaceAABB bb, WorldSpaceAABB otherBB, int component) {
+                return switch (component) {
+                    case 0 -> bb.minX + bb.maxX < otherBB.minX + otherBB.maxX;
+                    case 1 -> bb.minY + bb.maxY < otherBB.minY + otherBB.maxY;
+                    default -> bb.minZ + bb.maxZ < otherBB.minZ + otherBB.maxZ;
+                };
+            }
         };
 
     }
 
     @Override
     public void preProcess(double delta, @NotNull List<? extends @NotNull Entity> entities) {
+        if (fixedTimeStep == null) {
+            broadPhase.update(entities);
+            return;
+        }
+
+        frameDelta = delta;
+        bodies.clear();
     }
 
     @Override
     public void postProcess(@NotNull List<? extends @NotNull Entity> entities) {
+        if (fixedTimeStep == null) return;
+
+        int steps = fixedTimeStep.advance(frameDelta);
+        for (int i = 0; i < steps; i++) {
+            if (i == steps - 1) {
+                for (int j = 0; j < bodies.size(); j++) {
+                    Entity body = bodies.get(j);
+                    InterpolatedTransform interpolated = body.getComponent(INTERPOLATED_TRANSFORM);
+                    if (interpolated != null) interpolated.getPrevious().set(body.getComponent(TRANSFORM));
+                }
+            }
+
+            fixedStep(entities);
+        }
+
+        float alpha = (float) fixedTimeStep.getAlpha();
+        for (int i = 0; i < bodies.size(); i++) {
+            Entity body = bodies.get(i);
+            InterpolatedTransform interpolated = body.getComponent(INTERPOLATED_TRANSFORM);
+            if (interpolated == null) continue;
+            if (steps > 0) interpolated.getCurrent().set(body.getComponent(TRANSFORM));
+            interpolated.interpolate(alpha);
+        }
+    }
+
+    /**
+     * Runs a single step over all bodies. Since the bounding boxes are otherwise only updated once per frame, they are
+     * moved along with their bodies, so the next step sees where the bodies actually are.
+     */
+    private void fixedStep(List<? extends Entity> entities) {
+        if (stepStartPositions.length < 3 * bodies.size()) {
+            stepStartPositions = new float[3 * bodies.size()];
+        }
+        for (int i = 0; i < bodies.size(); i++) {
+            Vector3f position = bodies.get(i).getComponent(TRANSFORM).getPosition();
+            stepStartPositions[3 * i] = position.x;
+            stepStartPositions[3 * i + 1] = position.y;
+            stepStartPositions[3 * i + 2] = position.z;
+        }
+
+        broadPhase.update(entities);
+        for (int i = 0; i < bodies.size(); i++) {
+            step(bodies.get(i), fixedTimeStep.getStepTimeSeconds());
+        }
+
+        for (int i = 0; i < bodies.size(); i++) {
+            Entity body = bodies.get(i);
+            Vector3f position = body.getComponent(TRANSFORM).getPosition();
+            WorldSpaceAABB bb = body.getComponent(WORLD_SPACE_AABB);
+            float dx = position.x - stepStartPositions[3 * i];
+            float dy = position.y - stepStartPositions[3 * i + 1];
+            float dz = position.z - stepStartPositions[3 * i + 2];
+            bb.minX += dx;
+            bb.minY += dy;
+            bb.minZ += dz;
+            bb.maxX += dx;
+            bb.maxY += dy;
+            bb.maxZ += dz;
+        }
     }
 
     @Override
@@ -209,6 +354,15 @@ public class PhysicsService implements Service {
         return null;
     }
 
+    @Override
+    public @NotNull Set<@NotNull KClass<?>> getRequiredComponents() {
+        return Set.of(
+                TRANSFORM,
+                DYNAMIC_COLLIDER,
+                WORLD_SPACE_AABB
+        );
+    }
+
     @Override
     public void entityRemoved(@NotNull Entity entity) {
     }
@@ -228,6 +382,52 @@ public class PhysicsService implements Service {
         return 0;
     }
 
+    @Override
+    public @NotNull ComponentAccess getComponentAccess() {
+        if (fixedTimeStep != null) {
+            return new ComponentAccess(
+                    Set.of(
+                            STATIC_COLLIDER,
+                            FRICTION,
+                            DIRECTIONAL_FORCE
+                    ),
+                    Set.of(
+                            TRANSFORM,
+                            DYNAMIC_COLLIDER,
+                            ON_GROUND,
+                            ACCELERATION,
+                            WORLD_SPACE_AABB,
+                            INTERPOLATED_TRANSFORM
+                    )
+            );
+        }
+
+        return new ComponentAccess(
+                Set.of(
+                        WORLD_SPACE_AABB,
+                        STATIC_COLLIDER,
+                        FRICTION,
+                        DIRECTIONAL_FORCE
+                ),
+                Set.of(
+                        TRANSFORM,
+                        DYNAMIC_COLLIDER,
+                        ON_GROUND,
+                        ACCELERATION
+                )
+        );
+    }
+
+    @Override
+    public boolean isContextBound() {
+        return false;
+    }
+
+    @Override
+    public boolean isEntityLocal() {
+        return false;
+    }
+
     @Override
     public void dispose() {
     }
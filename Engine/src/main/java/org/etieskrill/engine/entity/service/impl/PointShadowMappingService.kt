@@ -3,10 +3,12 @@ package org.etieskrill.engine.entity.service.impl
 import org.etieskrill.engine.entity.Entity
 import org.etieskrill.engine.entity.component.Drawable
 import org.etieskrill.engine.entity.component.PointLightComponent
-import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.entity.component.WorldSpaceAABB
+import org.etieskrill.engine.entity.component.renderTransform
 import org.etieskrill.engine.entity.service.Service
 import org.etieskrill.engine.graphics.Renderer
 import org.etieskrill.engine.graphics.animation.Animator
+import org.etieskrill.engine.graphics.gl.framebuffer.PointShadowMapArray
 import org.etieskrill.engine.graphics.gl.shader.impl.DepthCubeMapArrayShader
 import org.etieskrill.engine.graphics.gl.shader.impl.farPlane
 import org.etieskrill.engine.graphics.gl.shader.impl.index
@@ -14,26 +16,35 @@ import org.etieskrill.engine.graphics.gl.shader.impl.light
 import org.etieskrill.engine.graphics.gl.shader.impl.shadowCombined
 import org.joml.Matrix4f
 import org.joml.Matrix4fc
-
+import org.joml.primitives.AABBf
+import java.util.*
+
+/**
+ * Renders the shadow maps of all point lights which have one. Only the casters within a light's shadow range are drawn,
+ * and the static ones among them only once into a cached layer per light, which is then copied into the shadow map
+ * every frame before the dynamic casters are drawn on top. See [ShadowCasterCache] for when the cached layer is redrawn.
+ */
 class PointShadowMappingService(
     private val renderer: Renderer,
-    private val shader: DepthCubeMapArrayShader
+    private val shader: DepthCubeMapArrayShader,
+    private val cullingService: CullingService? = null
 ) : Service {
 
     private val DUMMY_MATRIX: Matrix4fc = Matrix4f()
 
-    private val updateFrequency = 2
-    private var cycle = 0
+    private val lightTransform = Matrix4f()
+    private val lightBounds = AABBf()
+    private val entitiesInRange = BitSet()
+
+    private val casters = mutableListOf<Entity>()
+    private val casterCaches = IdentityHashMap<PointLightComponent, ShadowCasterCache>()
+    private val staticLayers = IdentityHashMap<PointShadowMapArray, PointShadowMapArray>()
 
     override fun canProcess(entity: Entity) =
         entity.hasComponents<PointLightComponent>()
                 && entity.getComponent<PointLightComponent>()!!.shadowMap != null
 
     override fun preProcess(delta: Double, entities: List<Entity>) {
-        if (++cycle >= updateFrequency) {
-            cycle = 0
-        } else return
-
         entities.mapNotNull { it.getComponent<PointLightComponent>() }
             .mapNotNull { it.shadowMap }
             .distinct()
@@ -41,34 +52,72 @@ class PointShadowMappingService(
     }
 
     override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
-        if (cycle++ != 0) return
-
         val component = targetEntity.getComponent<PointLightComponent>()!!
+        val shadowMap = component.shadowMap!!
+        val index = component.shadowMapIndex!!
+        val position = component.light.position
+        val range = component.shadowFarPlane!!
 
         shader.apply {
             light = component.light
-            index = component.shadowMapIndex!!
+            this.index = index
             shadowCombined = component.shadowCombinedMatrices!! as Array<Matrix4fc>
-            farPlane = component.shadowFarPlane!!
+            farPlane = range
+        }
+
+        if (cullingService != null) {
+            lightBounds.setMin(position.x - range, position.y - range, position.z - range)
+                .setMax(position.x + range, position.y + range, position.z + range)
+            cullingService.query(lightBounds, entitiesInRange)
         }
 
-        component.shadowMap!!.bind()
+        casters.clear()
+        for (entity in entities) {
+            if (entity.id == targetEntity.id) continue
+            if (entity.renderTransform == null || !entity.hasComponents<Drawable>()) continue
+            if (cullingService != null && cullingService.isTracked(entity) && !entitiesInRange[entity.id]) continue
+            val bounds = entity.getComponent<WorldSpaceAABB>()
+            if (bounds != null && !ShadowCasterCache.isInRange(bounds, position, range)) continue
+            casters += entity
+        }
 
-        entities.filterNot { it.id == targetEntity.id }
-            .forEach { entity ->
-                val transform = entity.getComponent<Transform>() ?: return@forEach
-                val drawable = entity.getComponent<Drawable>() ?: return@forEach
+        val cache = casterCaches.getOrPut(component) { ShadowCasterCache() }
+        val staticLayer = staticLayers.getOrPut(shadowMap) { PointShadowMapArray(shadowMap.size, shadowMap.length) }
+
+        shadowMap.bind()
+        //Moving the light or changing its range is all that changes its shadow
+        lightTransform.translation(position).scale(range)
+        if (cache.update(casters, lightTransform)) {
+            cache.staticCasters.forEach { render(it) }
+            shadowMap.texture.copyLayersTo(staticLayer.texture, shadowMap.size, 6 * index, 6)
+        } else {
+            staticLayer.texture.copyLayersTo(shadowMap.texture, shadowMap.size, 6 * index, 6)
+        }
+        cache.dynamicCasters.forEach { render(it) }
+        shadowMap.unbind()
+    }
 
-                entity.getComponent<Animator>()?.let { //TODO animated shader
-                    shader.setUniformArrayNonStrict("boneMatrices", it.transformMatricesArray)
-                }
+    private fun render(entity: Entity) {
+        entity.getComponent<Animator>()?.let { //TODO animated shader
+            shader.setUniformMatrix4Array("boneMatrices", it.boneMatrices, false)
+        }
 
-                renderer.render(transform, drawable.model, shader, DUMMY_MATRIX)
-            }
+        renderer.render(entity.renderTransform!!, entity.getComponent<Drawable>()!!.model, shader, DUMMY_MATRIX)
+    }
 
-        component.shadowMap.unbind()
+    override fun entityRemoved(entity: Entity) {
+        val component = entity.getComponent<PointLightComponent>() ?: return
+        casterCaches.remove(component) ?: return
+        //The static layer is shared by all lights in the same shadow map array
+        val shadowMap = component.shadowMap ?: return
+        if (casterCaches.keys.none { it.shadowMap === shadowMap }) staticLayers.remove(shadowMap)?.dispose()
     }
 
-    override fun dispose() = shader.dispose()
+    override fun dispose() {
+        shader.dispose()
+        staticLayers.values.forEach { it.dispose() }
+        staticLayers.clear()
+        casterCaches.clear()
+    }
 
 }
@@ -7,9 +7,13 @@ import lombok.experimental.Accessors;
 import org.etieskrill.engine.common.Disposable;
 import org.etieskrill.engine.entity.Entity;
 import org.etieskrill.engine.entity.component.*;
+import org.etieskrill.engine.entity.service.ComponentAccess;
 import org.etieskrill.engine.entity.service.Service;
 import org.etieskrill.engine.graphics.camera.Camera;
+import org.etieskrill.engine.graphics.data.FrameUniforms;
+import org.etieskrill.engine.graphics.data.FrameUniformsAccessor;
 import org.etieskrill.engine.graphics.data.PointLight;
+import org.etieskrill.engine.graphics.gl.UniformBufferObject;
 import org.etieskrill.engine.graphics.gl.framebuffer.FrameBuffer;
 import org.etieskrill.engine.graphics.gl.framebuffer.FrameBufferAttachmentType;
 import org.etieskrill.engine.graphics.gl.framebuffer.RenderBuffer;
@@ -18,13 +22,16 @@ import org.etieskrill.engine.graphics.gl.renderer.GLRenderer;
 import org.etieskrill.engine.graphics.gl.shader.ShaderProgram;
 import org.etieskrill.engine.graphics.gl.shader.impl.*;
 import org.etieskrill.engine.graphics.model.CubeMapModel;
+import org.etieskrill.engine.graphics.model.Model;
 import org.etieskrill.engine.graphics.pipeline.PostPassPipeline;
+import org.etieskrill.engine.graphics.queue.RenderQueue;
 import org.etieskrill.engine.graphics.texture.AbstractTexture;
 import org.etieskrill.engine.graphics.texture.Texture2D;
 import org.etieskrill.engine.graphics.texture.Textures;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.joml.*;
+import org.joml.primitives.AABBf;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -32,6 +39,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.max;
+import static kotlin.jvm.JvmClassMappingKt.getKotlinClass;
 import static org.etieskrill.engine.graphics.gl.framebuffer.FrameBufferAttachmentType.COLOUR0;
 import static org.etieskrill.engine.graphics.gl.framebuffer.FrameBufferAttachmentType.COLOUR1;
 import static org.etieskrill.engine.graphics.gl.framebuffer.RenderBuffer.Type.DEPTH_STENCIL;
@@ -59,6 +67,8 @@ public class RenderService implements Service, Disposable {
     private @Getter
     @Accessors(fluent = true)
     @Setter Camera cullingCamera;
+    private @Nullable CullingService cullingService;
+    private @Nullable Camera cullingView;
     private final Vector2ic windowSize;
     private @Accessors(fluent = true)
     @Setter
@@ -80,8 +90,28 @@ public class RenderService implements Service, Disposable {
     private @Accessors(fluent = true)
     @Setter boolean blur = true;
 
+    /**
+     * How far in pixels a level of detail may deviate from the full mesh on screen, where zero always draws the full
+     * meshes. Only entities with a {@link WorldSpaceAABB} are drawn at a lower level of detail.
+     */
+    private @Accessors(fluent = true)
+    @Setter float lodPixelError = 1;
+    private final Vector3f aabbCenter = new Vector3f();
+
     private final ShaderParams shaderParams;
 
+    /**
+     * Uploaded once per frame, and bound to every shader declaring the {@code Frame} block in place of the uniforms in
+     * {@link #shaderParams}.
+     */
+    private final FrameUniforms frameUniforms;
+    private final UniformBufferObject<FrameUniforms> frameUniformBuffer;
+
+    /**
+     * Collects all drawables during {@link #process(Entity, List, double)}, and is drawn in one go, sorted by state.
+     */
+    protected final @Getter RenderQueue renderQueue;
+
     //TODO remove jury-rigged service
     // - "inner services"?
     // - service groups?
@@ -104,6 +134,9 @@ public class RenderService implements Service, Disposable {
         this.lightSourceShader = new LightSourceShader();
 
         this.shaderParams = new ShaderParams(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashSet<>());
+        this.frameUniforms = new FrameUniforms();
+        this.frameUniformBuffer = new UniformBufferObject<>(FrameUniformsAccessor.INSTANCE);
+        this.renderQueue = new RenderQueue();
 
         this.boundingBoxRenderService = new BoundingBoxRenderService(renderer, camera);
         this.particleRenderService = new ParticleRenderService(new GLParticleRenderer(), camera);
@@ -157,6 +190,17 @@ public class RenderService implements Service, Disposable {
         }
     }
 
+    /**
+     * Sets a service to look up which entities are visible to the {@link #cullingCamera() culling camera}, instead of
+     * testing each one individually. The culling camera is added as one of its views.
+     */
+    public RenderService cullingService(@Nullable CullingService cullingService) {
+        if (this.cullingService != null && cullingView != null) this.cullingService.removeView(cullingView);
+        this.cullingService = cullingService;
+        this.cullingView = null;
+        return this;
+    }
+
     @Override
     public boolean canProcess(Entity entity) {
         return entity.hasComponents(Transform.class, Drawable.class);
@@ -173,6 +217,14 @@ public class RenderService implements Service, Disposable {
         renderer.prepare();
 
         shaderParams.clear();
+        frameUniforms.clear();
+        renderQueue.clear();
+
+        if (cullingService != null && cullingView != cullingCamera) {
+            if (cullingView != null) cullingService.removeView(cullingView);
+            cullingService.addView(cullingCamera);
+            cullingView = cullingCamera;
+        }
 
         if (skybox != null) {
             renderer.render(skybox, (ShaderProgram) skyboxShader.getShader(), camera.getCombined());
@@ -183,11 +235,14 @@ public class RenderService implements Service, Disposable {
             if (directionalLightComponent == null) continue;
             //TODO expand to multiple directional lights
             shaderParams.addUniform("hasShadowMap", directionalLightComponent.getShadowMap() != null);
+            frameUniforms.setHasShadowMap(directionalLightComponent.getShadowMap() != null);
             if (directionalLightComponent.getShadowMap() != null) {
                 shaderParams.addTexture("shadowMap", directionalLightComponent.getShadowMap().getTexture());
                 shaderParams.addUniform("lightCombined", directionalLightComponent.getCamera().getCombined());
+                frameUniforms.getLightCombined().set(directionalLightComponent.getCamera().getCombined());
             }
             shaderParams.addUniformArray("globalLights", directionalLightComponent.getDirectionalLight());
+            frameUniforms.getDirectionalLights().add(directionalLightComponent.getDirectionalLight());
             break;
         }
 
@@ -201,6 +256,16 @@ public class RenderService implements Service, Disposable {
                     .map(PointLightComponent::getLight)
                     .toArray(PointLight[]::new));
         }
+        //there is only one far plane for all point shadows, so the first light casting shadows decides it
+        boolean hasPointShadowFarPlane = false;
+        for (PointLightComponent pointLightComponent : pointLightComponents) {
+            frameUniforms.getPointLights().add(pointLightComponent.getLight());
+            if (pointLightComponent.getShadowFarPlane() != null && !hasPointShadowFarPlane) {
+                hasPointShadowFarPlane = true;
+                shaderParams.addUniform("pointShadowFarPlane", pointLightComponent.getShadowFarPlane()); //TODO make per-light?
+                frameUniforms.setPointShadowFarPlane(pointLightComponent.getShadowFarPlane());
+            }
+        }
 
         AtomicBoolean hasPointShadowMap = new AtomicBoolean(false);
         AtomicInteger numPointShadowMaps = new AtomicInteger();
@@ -215,8 +280,13 @@ public class RenderService implements Service, Disposable {
                             pointShadowMapArray.getTexture());
                 });
         shaderParams.addUniform("hasPointShadowMaps", hasPointShadowMap.get());
+        frameUniforms.setHasPointShadowMaps(hasPointShadowMap.get());
 
         shaderParams.addUniform("viewPosition", camera.getViewPosition());
+        frameUniforms.getViewPosition().set(camera.getViewPosition());
+
+        frameUniformBuffer.setData(frameUniforms);
+        frameUniformBuffer.bind(FrameUniforms.BINDING);
 
         for (Entity entity : entities) {
             if (boundingBoxRenderService.canProcess(entity)) {
@@ -233,13 +303,57 @@ public class RenderService implements Service, Disposable {
         Drawable drawable = targetEntity.getComponent(Drawable.class);
         if (!drawable.isVisible()) return;
 
-        Transform transform = targetEntity.getComponent(Transform.class);
+        Transform transform = InterpolatedTransformKt.getRenderTransform(targetEntity);
 
         WorldSpaceAABB aabb = targetEntity.getComponent(WorldSpaceAABB.class);
-        if (aabb != null && !cullingCamera.frustumTestAABB(aabb)) { //TODO check if relevant service is even present
+        if (aabb != null && !isVisible(targetEntity, aabb)) { //TODO check if relevant service is even present
             return;
         }
 
+        ShaderProgram shader = getConfiguredShader(targetEntity, drawable);
+        if (shader == lightSourceShader || shader instanceof MissingShader) {
+            //The light source shader is set up per entity, so it cannot wait for the queue
+            renderImmediately(transform, drawable, shader);
+        } else {
+            int flags = 0;
+            if (drawable.isOutlineEnabled()) flags |= RenderQueue.OUTLINE;
+            if (drawable.isWireframeEnabled()) flags |= RenderQueue.WIREFRAME;
+            if (shader == this.shader) flags |= RenderQueue.INSTANCEABLE; //Only the default shader reads instances
+            float depth = camera.getViewPosition().distance(transform.getPosition()) / abs(camera.getFar());
+            renderQueue.add(transform, drawable.getModel(), shader, depth, drawable.getTextureScale(), flags,
+                    getMaxLodError(drawable.getModel(), aabb));
+        }
+
+        lastDelta = delta;
+    }
+
+    /**
+     * Converts the {@link #lodPixelError} to model space by comparing the size of the model to that of its bounding
+     * box on screen.
+     */
+    private float getMaxLodError(Model model, @Nullable WorldSpaceAABB aabb) {
+        AABBf modelBox = model.getBoundingBox();
+        if (lodPixelError <= 0 || aabb == null || !aabb.isValid() || modelBox == null || !modelBox.isValid()) return 0;
+
+        aabb.center(aabbCenter);
+        float radius = Vector3f.distance(aabb.minX, aabb.minY, aabb.minZ, aabb.maxX, aabb.maxY, aabb.maxZ) / 2;
+        float pixels = camera.projectedRadius(aabbCenter, radius);
+        if (!Float.isFinite(pixels) || pixels <= 0) return 0;
+
+        float modelRadius = Vector3f.distance(modelBox.minX, modelBox.minY, modelBox.minZ,
+                modelBox.maxX, modelBox.maxY, modelBox.maxZ) / 2;
+        return lodPixelError * modelRadius / pixels;
+    }
+
+    private boolean isVisible(Entity entity, WorldSpaceAABB aabb) {
+        //The culling camera only becomes a view of the culling service the frame after it is added
+        if (cullingService != null && cullingService.hasView(cullingCamera)) {
+            return cullingService.isVisible(cullingCamera, entity);
+        }
+        return cullingCamera.frustumTestAABB(aabb);
+    }
+
+    private void renderImmediately(Transform transform, Drawable drawable, ShaderProgram shader) {
         glEnable(GL_DEPTH_TEST);
 
         if (drawable.isOutlineEnabled()) {
@@ -252,14 +366,11 @@ public class RenderService implements Service, Disposable {
             glStencilMask(0x00);
         }
 
-        ShaderProgram shader = getConfiguredShader(targetEntity, drawable);
         if (!drawable.isWireframeEnabled()) {
             renderer.render(transform, drawable.getModel(), shader, camera);
         } else {
             renderer.renderWireframe(transform, drawable.getModel(), shader, camera);
         }
-
-        lastDelta = delta;
     }
 
     protected ShaderProgram getConfiguredShader(Entity entity, Drawable drawable) {
@@ -275,12 +386,9 @@ public class RenderService implements Service, Disposable {
             return lightSourceShader;
         } else if (pointLightComponent != null) {
             LightSourceShaderKt.setLight(lightSourceShader, pointLightComponent.getLight());
-            if (pointLightComponent.getShadowFarPlane() != null)
-                StaticShaderKt.setPointShadowFarPlane(shader, pointLightComponent.getShadowFarPlane()); //TODO make per-light?
             return lightSourceShader;
         } else {
-            configureShader(shader, shaderParams);
-            StaticShaderKt.setTextureScale(shader, drawable.getTextureScale());
+            configureShader(shader, shaderParams); //The texture scale is set per mesh by the render queue
             return shader;
         }
     }
@@ -288,8 +396,10 @@ public class RenderService implements Service, Disposable {
     private void configureShader(ShaderProgram shader, ShaderParams params) {
         if (params.isConfigured(shader)) return;
 
-        params.uniformBindings.forEach(shader::setUniformNonStrict);
-        params.uniformArrayBindings.forEach(shader::setUniformArrayNonStrict);
+        if (!shader.bindUniformBlock(FrameUniforms.BLOCK_NAME, FrameUniforms.BINDING)) {
+            params.uniformBindings.forEach(shader::setUniformNonStrict);
+            params.uniformArrayBindings.forEach(shader::setUniformArrayNonStrict);
+        }
         params.textureBindings.forEach((name, texture) -> renderer.bindNextFreeTexture(shader, name, texture));
     }
 
@@ -299,6 +409,8 @@ public class RenderService implements Service, Disposable {
 
     @Override
     public void postProcess(@NotNull List<? extends @NotNull Entity> entities) {
+        renderQueue.submit(camera, renderer.getQueueBackend());
+
         for (Entity entity : entities) { //FIXME particle rendering is suddenly really fucking slow for some reason
             if (particleRenderService.canProcess(entity)) {
                 particleRenderService.process(entity, entities, lastDelta);
@@ -334,6 +446,14 @@ public class RenderService implements Service, Disposable {
         return null;
     }
 
+    @Override
+    public @NotNull Set<@NotNull KClass<?>> getRequiredComponents() {
+        return Set.of(
+                getKotlinClass(Transform.class),
+                getKotlinClass(Drawable.class)
+        );
+    }
+
     @Override
     public void entityRemoved(@NotNull Entity entity) {
     }
@@ -354,12 +474,28 @@ public class RenderService implements Service, Disposable {
         return 0;
     }
 
+    @Override
+    public @Nullable ComponentAccess getComponentAccess() {
+        return null;
+    }
+
+    @Override
+    public boolean isContextBound() {
+        return true;
+    }
+
+    @Override
+    public boolean isEntityLocal() {
+        return false;
+    }
+
     @Override
     public void dispose() {
         renderer.dispose();
         gaussBlurPostBuffers.dispose();
         shader.dispose();
         lightSourceShader.dispose();
+        frameUniformBuffer.dispose();
     }
 
 }
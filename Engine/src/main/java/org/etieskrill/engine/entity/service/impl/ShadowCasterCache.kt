@@ -0,0 +1,131 @@
+package org.etieskrill.engine.entity.service.impl
+
+import org.etieskrill.engine.entity.Entity
+import org.etieskrill.engine.entity.component.Drawable
+import org.etieskrill.engine.entity.component.DynamicCollider
+import org.etieskrill.engine.entity.component.WorldSpaceAABB
+import org.etieskrill.engine.entity.component.renderTransform
+import org.etieskrill.engine.graphics.animation.Animator
+import org.joml.Matrix4f
+import org.joml.Matrix4fc
+import org.joml.Vector3fc
+import org.joml.primitives.AABBfc
+import java.util.*
+
+/**
+ * Splits the shadow casters of a single light into static and dynamic ones, and keeps track of whether the depth of
+ * the static casters, which is drawn once and then reused, is still valid.
+ *
+ * A caster is dynamic if it is animated, is a [DynamicCollider], or has no [WorldSpaceAABB] to notice movement by.
+ * The static casters must be drawn again whenever one of them is added, removed, moves, is rotated or scaled, or has
+ * its model swapped, or when the light changes.
+ */
+class ShadowCasterCache {
+
+    private val _staticCasters = mutableListOf<Entity>()
+    private val _dynamicCasters = mutableListOf<Entity>()
+
+    val staticCasters: List<Entity> get() = _staticCasters
+    val dynamicCasters: List<Entity> get() = _dynamicCasters
+
+    private val cachedCasters = mutableListOf<Entity>()
+    private var cachedBounds = FloatArray(0)
+    private var cachedTransforms = FloatArray(0)
+    private val cachedModels = mutableListOf<Any?>()
+    private val casterTransform = FloatArray(16)
+    private val cachedLight = Matrix4f()
+    private var valid = false
+
+    /**
+     * Sorts the given casters, and compares the static ones and the light to those of the last cached depth. The
+     * cache is assumed to be valid again afterward, so the static casters must be drawn if this returns `true`.
+     *
+     * @param casters the casters which may cast a shadow from the light
+     * @param light the combined matrix of the light, or any matrix which changes together with the light
+     * @return whether the static casters must be drawn again
+     */
+    fun update(casters: Iterable<Entity>, light: Matrix4fc): Boolean {
+        _staticCasters.clear()
+        _dynamicCasters.clear()
+        for (caster in casters) {
+            if (isDynamic(caster)) _dynamicCasters += caster
+            else _staticCasters += caster
+        }
+
+        if (valid && !staticsChanged() && cachedLight.equals(light, 0f)) return false
+
+        snapshotStatics()
+        cachedLight.set(light)
+        valid = true
+        return true
+    }
+
+    /**
+     * Forces the static casters to be drawn again on the next [update], e.g. after the shadow map was resized.
+     */
+    fun invalidate() {
+        valid = false
+    }
+
+    private fun staticsChanged(): Boolean {
+        if (_staticCasters.size != cachedCasters.size) return true
+        for ((i, caster) in _staticCasters.withIndex()) {
+            if (caster !== cachedCasters[i]) return true
+            val bounds = caster.getComponent<WorldSpaceAABB>()!!
+            val offset = 6 * i
+            if (bounds.minX != cachedBounds[offset] || bounds.minY != cachedBounds[offset + 1]
+                || bounds.minZ != cachedBounds[offset + 2] || bounds.maxX != cachedBounds[offset + 3]
+                || bounds.maxY != cachedBounds[offset + 4] || bounds.maxZ != cachedBounds[offset + 5]
+            ) return true
+            if (caster.getComponent<Drawable>()?.model !== cachedModels[i]) return true
+            getTransform(caster, casterTransform, 0)
+            if (!Arrays.equals(casterTransform, 0, 16, cachedTransforms, 16 * i, 16 * (i + 1))) return true
+        }
+        return false
+    }
+
+    private fun snapshotStatics() {
+        cachedCasters.clear()
+        cachedCasters += _staticCasters
+        cachedModels.clear()
+        if (cachedBounds.size < 6 * _staticCasters.size) cachedBounds = FloatArray(6 * _staticCasters.size)
+        if (cachedTransforms.size < 16 * _staticCasters.size) cachedTransforms = FloatArray(16 * _staticCasters.size)
+        for ((i, caster) in _staticCasters.withIndex()) {
+            val bounds = caster.getComponent<WorldSpaceAABB>()!!
+            val offset = 6 * i
+            cachedBounds[offset] = bounds.minX
+            cachedBounds[offset + 1] = bounds.minY
+            cachedBounds[offset + 2] = bounds.minZ
+            cachedBounds[offset + 3] = bounds.maxX
+            cachedBounds[offset + 4] = bounds.maxY
+            cachedBounds[offset + 5] = bounds.maxZ
+            cachedModels += caster.getComponent<Drawable>()?.model
+            getTransform(caster, cachedTransforms, 16 * i)
+        }
+    }
+
+    private fun getTransform(caster: Entity, target: FloatArray, offset: Int) {
+        val transform = caster.renderTransform
+        if (transform != null) transform.matrix.get(target, offset)
+        else Arrays.fill(target, offset, offset + 16, 0f)
+    }
+
+    companion object {
+        @JvmStatic
+        fun isDynamic(caster: Entity) = caster.hasComponent(Animator::class)
+                || caster.hasComponent(DynamicCollider::class)
+                || !caster.hasComponent(WorldSpaceAABB::class)
+
+        /**
+         * @return whether any point of the bounds lies within the given range of the position
+         */
+        @JvmStatic
+        fun isInRange(bounds: AABBfc, position: Vector3fc, range: Float): Boolean {
+            val dx = maxOf(bounds.minX() - position.x(), 0f, position.x() - bounds.maxX())
+            val dy = maxOf(bounds.minY() - position.y(), 0f, position.y() - bounds.maxY())
+            val dz = maxOf(bounds.minZ() - position.z(), 0f, position.z() - bounds.maxZ())
+            return dx * dx + dy * dy + dz * dz <= range * range
+        }
+    }
+
+}
@@ -3,13 +3,24 @@ package org.etieskrill.engine.entity.service.impl
 import org.etieskrill.engine.entity.Entity
 import org.etieskrill.engine.entity.component.Scripts
 import org.etieskrill.engine.entity.service.Service
+import kotlin.reflect.KClass
 
-class SnippetsService : Service {
+/**
+ * @param threadSafeScripts whether all scripts only ever touch their own entity and issue no graphics calls, which
+ * allows them to be run in parallel
+ */
+class SnippetsService @JvmOverloads constructor(
+    private val threadSafeScripts: Boolean = false
+) : Service {
 
-    override fun canProcess(entity: Entity) = entity.hasComponents<Scripts>()
+    override val requiredComponents: Set<KClass<*>> = setOf(Scripts::class)
 
     override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
         targetEntity.getComponent<Scripts>()!!.update(delta)
     }
 
+    override val isContextBound get() = !threadSafeScripts
+
+    override val isEntityLocal get() = threadSafeScripts
+
 }
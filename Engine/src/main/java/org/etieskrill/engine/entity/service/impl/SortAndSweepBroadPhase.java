@@ -0,0 +1,139 @@
+package org.etieskrill.engine.entity.service.impl;
+
+import org.etieskrill.engine.entity.Entity;
+import org.etieskrill.engine.entity.component.WorldSpaceAABB;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps colliders sorted by the lower bound of their bounding box along one axis. A query only needs to look at the
+ * colliders whose lower bound lies within the queried box, widened by the largest extent of any indexed collider.
+ * <p>
+ * Works best if colliders are of similar size, as a single very large collider widens the search window for all
+ * queries. Prefer the {@link UniformGridBroadPhase} for scenes where this is not the case.
+ */
+public class SortAndSweepBroadPhase extends AbstractBroadPhase {
+
+    private final int axis;
+
+    private final SweepList statics = new SweepList();
+    private final SweepList dynamics = new SweepList();
+
+    /**
+     * Sweeps along the x-axis.
+     */
+    public SortAndSweepBroadPhase() {
+        this(0);
+    }
+
+    /**
+     * @param axis the axis to sort along, where {@code 0} is x, {@code 1} is y and {@code 2} is z
+     */
+    public SortAndSweepBroadPhase(int axis) {
+        if (axis < 0 || axis > 2) throw new IllegalArgumentException("Axis must be between 0 and 2, but was " + axis);
+        this.axis = axis;
+    }
+
+    @Override
+    protected void indexStatics(List<Entity> colliders, List<WorldSpaceAABB> bounds) {
+        statics.build(colliders, bounds);
+    }
+
+    @Override
+    protected void indexDynamics(List<Entity> colliders, List<WorldSpaceAABB> bounds) {
+        dynamics.build(colliders, bounds);
+    }
+
+    @Override
+    protected void queryStatics(Entity entity, WorldSpaceAABB bb, List<Entity> candidates) {
+        statics.query(entity, bb, candidates);
+    }
+
+    @Override
+    protected void queryDynamics(Entity entity, WorldSpaceAABB bb, List<Entity> candidates) {
+        dynamics.query(entity, bb, candidates);
+    }
+
+    private float min(WorldSpaceAABB bb) {
+        return switch (axis) {
+            case 0 -> bb.minX;
+            case 1 -> bb.minY;
+            default -> bb.minZ;
+        };
+    }
+
+    private float max(WorldSpaceAABB bb) {
+        return switch (axis) {
+            case 0 -> bb.maxX;
+            case 1 -> bb.maxY;
+            default -> bb.maxZ;
+        };
+    }
+
+    private class SweepList {
+        private Entity[] entities = new Entity[0];
+        private WorldSpaceAABB[] bounds = new WorldSpaceAABB[0];
+        private float[] lowerBounds = new float[0];
+        private long[] keys = new long[0];
+        private int size;
+        private float maxExtent;
+
+        void build(List<Entity> colliders, List<WorldSpaceAABB> colliderBounds) {
+            size = colliders.size();
+            if (keys.length < size) {
+                int capacity = Math.max(size, 2 * keys.length);
+                entities = new Entity[capacity];
+                bounds = new WorldSpaceAABB[capacity];
+                lowerBounds = new float[capacity];
+                keys = new long[capacity];
+            }
+
+            maxExtent = 0;
+            for (int i = 0; i < size; i++) {
+                WorldSpaceAABB bb = colliderBounds.get(i);
+                maxExtent = Math.max(maxExtent, max(bb) - min(bb));
+                keys[i] = (long) sortableBits(min(bb)) << 32 | i;
+            }
+            Arrays.sort(keys, 0, size);
+
+            for (int i = 0; i < size; i++) {
+                int index = (int) keys[i];
+                entities[i] = colliders.get(index);
+                bounds[i] = colliderBounds.get(index);
+                lowerBounds[i] = min(bounds[i]);
+            }
+            Arrays.fill(entities, size, entities.length, null);
+            Arrays.fill(bounds, size, bounds.length, null);
+        }
+
+        void query(Entity entity, WorldSpaceAABB bb, List<Entity> candidates) {
+            int from = lowerBound(min(bb) - maxExtent);
+            float to = max(bb);
+            for (int i = from; i < size && lowerBounds[i] <= to; i++) {
+                if (entities[i] != entity && bounds[i].intersectsAABB(bb)) {
+                    candidates.add(entities[i]);
+                }
+            }
+        }
+
+        private int lowerBound(float value) {
+            int low = 0, high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (lowerBounds[mid] < value) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Maps a float to an int with the same ordering, so sort keys can be compared as plain integers.
+     */
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ (bits >> 31 & 0x7FFFFFFF);
+    }
+
+}
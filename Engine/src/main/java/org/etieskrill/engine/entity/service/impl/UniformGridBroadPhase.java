@@ -0,0 +1,230 @@
+package org.etieskrill.engine.entity.service.impl;
+
+import org.etieskrill.engine.entity.Entity;
+import org.etieskrill.engine.entity.component.WorldSpaceAABB;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hashes colliders into the cells of an unbounded uniform grid. A query only needs to look at the colliders sharing a
+ * cell with the queried box.
+ * <p>
+ * The cell size should be somewhat larger than the typical collider. Colliders spanning more than
+ * {@link #MAX_CELLS_PER_COLLIDER} cells, such as a ground plane, are not hashed, but tested against every query
+ * instead.
+ */
+public class UniformGridBroadPhase extends AbstractBroadPhase {
+
+    public static final int MAX_CELLS_PER_COLLIDER = 64;
+
+    private final float cellSize;
+
+    private final Grid statics = new Grid();
+    private final Grid dynamics = new Grid();
+
+    public UniformGridBroadPhase(float cellSize) {
+        if (!(cellSize > 0)) throw new IllegalArgumentException("Cell size must be positive, but was " + cellSize);
+        this.cellSize = cellSize;
+    }
+
+    @Override
+    protected void indexStatics(List<Entity> colliders, List<WorldSpaceAABB> bounds) {
+        statics.build(colliders, bounds);
+    }
+
+    @Override
+    protected void indexDynamics(List<Entity> colliders, List<WorldSpaceAABB> bounds) {
+        dynamics.build(colliders, bounds);
+    }
+
+    @Override
+    protected void queryStatics(Entity entity, WorldSpaceAABB bb, List<Entity> candidates) {
+        statics.query(entity, bb, candidates);
+    }
+
+    @Override
+    protected void queryDynamics(Entity entity, WorldSpaceAABB bb, List<Entity> candidates) {
+        dynamics.query(entity, bb, candidates);
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int x, int y, int z) {
+        return (x & 0x1FFFFFL) << 42 | (y & 0x1FFFFFL) << 21 | z & 0x1FFFFFL;
+    }
+
+    private class Grid {
+        private Entity[] entities = new Entity[0];
+        private WorldSpaceAABB[] bounds = new WorldSpaceAABB[0];
+        private int size;
+
+        private int[] oversized = new int[0];
+        private int oversizedCount;
+
+        private final CellTable cells = new CellTable();
+
+        /**
+         * The query each collider was last visited by, to skip colliders which share multiple cells with the queried
+         * box.
+         */
+        private int[] visited = new int[0];
+        private int query;
+
+        void build(List<Entity> colliders, List<WorldSpaceAABB> colliderBounds) {
+            size = colliders.size();
+            if (entities.length < size) {
+                int capacity = Math.max(size, 2 * entities.length);
+                entities = new Entity[capacity];
+                bounds = new WorldSpaceAABB[capacity];
+                oversized = new int[capacity];
+                visited = new int[capacity];
+            }
+
+            cells.clear();
+            oversizedCount = 0;
+            for (int i = 0; i < size; i++) {
+                WorldSpaceAABB bb = colliderBounds.get(i);
+                entities[i] = colliders.get(i);
+                bounds[i] = bb;
+
+                int minX = cell(bb.minX), minY = cell(bb.minY), minZ = cell(bb.minZ);
+                int maxX = cell(bb.maxX), maxY = cell(bb.maxY), maxZ = cell(bb.maxZ);
+                long cellCount = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+                if (cellCount > MAX_CELLS_PER_COLLIDER) {
+                    oversized[oversizedCount++] = i;
+                    continue;
+                }
+
+                for (int x = minX; x <= maxX; x++)
+                    for (int y = minY; y <= maxY; y++)
+                        for (int z = minZ; z <= maxZ; z++)
+                            cells.insert(key(x, y, z), i);
+            }
+            Arrays.fill(entities, size, entities.length, null);
+            Arrays.fill(bounds, size, bounds.length, null);
+        }
+
+        void query(Entity entity, WorldSpaceAABB bb, List<Entity> candidates) {
+            if (size == 0) return;
+            if (++query == 0) {
+                Arrays.fill(visited, 0);
+                query = 1;
+            }
+
+            for (int i = 0; i < oversizedCount; i++) {
+                test(oversized[i], entity, bb, candidates);
+            }
+
+            int minX = cell(bb.minX), minY = cell(bb.minY), minZ = cell(bb.minZ);
+            int maxX = cell(bb.maxX), maxY = cell(bb.maxY), maxZ = cell(bb.maxZ);
+            long cellCount = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+            if (cellCount > size) {
+                for (int i = 0; i < size; i++) test(i, entity, bb, candidates);
+                return;
+            }
+
+            for (int x = minX; x <= maxX; x++)
+                for (int y = minY; y <= maxY; y++)
+                    for (int z = minZ; z <= maxZ; z++)
+                        for (int entry = cells.head(key(x, y, z)); entry != -1; entry = cells.next(entry))
+                            test(cells.collider(entry), entity, bb, candidates);
+        }
+
+        private void test(int collider, Entity entity, WorldSpaceAABB bb, List<Entity> candidates) {
+            if (visited[collider] == query) return;
+            visited[collider] = query;
+            if (entities[collider] != entity && bounds[collider].intersectsAABB(bb)) {
+                candidates.add(entities[collider]);
+            }
+        }
+    }
+
+    /**
+     * An open-addressing hash table from cell keys to singly linked lists of collider indices. Clearing is constant
+     * time, as slots are only considered occupied if they were written since the last clear.
+     */
+    private static class CellTable {
+        private long[] keys = new long[64];
+        private int[] heads = new int[64];
+        private int[] generations = new int[64];
+        private int generation = 1;
+        private int occupied;
+
+        private int[] colliders = new int[64];
+        private int[] nexts = new int[64];
+        private int entries;
+
+        void clear() {
+            if (++generation == 0) {
+                Arrays.fill(generations, 0);
+                generation = 1;
+            }
+            occupied = 0;
+            entries = 0;
+        }
+
+        void insert(long key, int collider) {
+            if (2 * (occupied + 1) > keys.length) grow();
+
+            int slot = slot(key);
+            if (generations[slot] != generation) {
+                generations[slot] = generation;
+                keys[slot] = key;
+                heads[slot] = -1;
+                occupied++;
+            }
+
+            if (entries == colliders.length) {
+                colliders = Arrays.copyOf(colliders, 2 * entries);
+                nexts = Arrays.copyOf(nexts, 2 * entries);
+            }
+            colliders[entries] = collider;
+            nexts[entries] = heads[slot];
+            heads[slot] = entries++;
+        }
+
+        int head(long key) {
+            int slot = slot(key);
+            return generations[slot] == generation ? heads[slot] : -1;
+        }
+
+        int next(int entry) {
+            return nexts[entry];
+        }
+
+        int collider(int entry) {
+            return colliders[entry];
+        }
+
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) (key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+            while (generations[slot] == generation && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldHeads = heads;
+            int[] oldGenerations = generations;
+
+            keys = new long[2 * oldKeys.length];
+            heads = new int[keys.length];
+            generations = new int[keys.length];
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldGenerations[i] != generation) continue;
+                int slot = slot(oldKeys[i]);
+                generations[slot] = generation;
+                keys[slot] = oldKeys[i];
+                heads[slot] = oldHeads[i];
+            }
+        }
+    }
+
+}
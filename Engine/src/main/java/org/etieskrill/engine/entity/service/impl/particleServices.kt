@@ -2,15 +2,21 @@ package org.etieskrill.engine.entity.service.impl
 
 import org.etieskrill.engine.entity.Entity
 import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.entity.service.ComponentAccess
 import org.etieskrill.engine.entity.service.Service
 import org.etieskrill.engine.graphics.camera.Camera
 import org.etieskrill.engine.graphics.particle.ParticleNode
 import org.etieskrill.engine.graphics.particle.ParticleRenderer
+import java.util.concurrent.ForkJoinPool
 import kotlin.reflect.KClass
 
-class ParticleUpdateService : Service {
+/**
+ * @param pool if set, the emitters of each [ParticleNode] are simulated in parallel on this pool, which may be the
+ * same one the entity system runs on
+ */
+class ParticleUpdateService @JvmOverloads constructor(private val pool: ForkJoinPool? = null) : Service {
 
-    override fun canProcess(entity: Entity) = entity.hasComponents<ParticleNode>()
+    override val requiredComponents: Set<KClass<*>> = setOf(ParticleNode::class)
 
     override fun process(
         targetEntity: Entity,
@@ -19,8 +25,16 @@ class ParticleUpdateService : Service {
     ) {
         val node = targetEntity.getComponent<ParticleNode>()!!
 
-        node.update(delta)
+        node.update(delta, pool)
     }
+
+    //emitter transforms are commonly shared with the entity's transform component
+    override val componentAccess = ComponentAccess(writes = setOf(ParticleNode::class, Transform::class))
+
+    override val isContextBound get() = false
+
+    override val isEntityLocal get() = true
+
 }
 
 class ParticleRenderService(
@@ -28,7 +42,7 @@ class ParticleRenderService(
     private val camera: Camera
 ) : Service {
 
-    override fun canProcess(entity: Entity) = entity.hasComponents<Transform, ParticleNode>()
+    override val requiredComponents: Set<KClass<*>> = setOf(Transform::class, ParticleNode::class)
 
     override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
         //FIXME use transform in as additional base transform
@@ -0,0 +1,99 @@
+package org.etieskrill.engine.entity.system
+
+import org.etieskrill.engine.entity.Entity
+import kotlin.reflect.KClass
+
+private const val INITIAL_CAPACITY = 16
+
+/**
+ * A table of all entities sharing the exact same set of component [types]. Each component type is stored in its own
+ * contiguous column, where row `i` of every column belongs to [entity] `i`.
+ *
+ * Rows are kept dense; removing an entity moves the last row into the freed slot, so row indices are only stable
+ * between structural changes.
+ */
+class Archetype internal constructor(types: Collection<KClass<*>>) {
+
+    val types: Set<KClass<*>> = types.toSet()
+
+    private val typeArray = types.toTypedArray()
+    private val columnIndices: IntArray
+
+    private var columns: Array<Array<Any?>> = Array(typeArray.size) { arrayOfNulls(INITIAL_CAPACITY) }
+    private var entities: Array<Entity?> = arrayOfNulls(INITIAL_CAPACITY)
+
+    var size = 0
+        private set
+
+    internal val addEdges = HashMap<KClass<*>, Archetype>()
+    internal val removeEdges = HashMap<KClass<*>, Archetype>()
+
+    init {
+        val typeIds = typeArray.map { ComponentTypes.idOf(it) }
+        columnIndices = IntArray((typeIds.maxOrNull() ?: -1) + 1) { -1 }
+        typeIds.forEachIndexed { column, typeId -> columnIndices[typeId] = column }
+    }
+
+    internal fun columnIndexOf(type: KClass<*>): Int {
+        val typeId = ComponentTypes.idOf(type)
+        return if (typeId < columnIndices.size) columnIndices[typeId] else -1
+    }
+
+    fun has(type: KClass<*>) = columnIndexOf(type) >= 0
+
+    /**
+     * Returns the backing column for a component [type]. Only the first [size] elements are valid, and the array is
+     * replaced whenever the table grows, so it should not be held across structural changes.
+     */
+    fun column(type: KClass<*>): Array<Any?> {
+        val index = columnIndexOf(type)
+        require(index >= 0) { "Archetype does not contain component of type '${type.simpleName}'" }
+        return columns[index]
+    }
+
+    inline fun <reified T : Any> column(): Array<Any?> = column(T::class)
+
+    fun entity(row: Int): Entity = entities[row]!!
+
+    internal operator fun get(row: Int, column: Int): Any? = columns[column][row]
+
+    internal operator fun set(row: Int, column: Int, component: Any?) {
+        columns[column][row] = component
+    }
+
+    internal fun typeAt(column: Int) = typeArray[column]
+
+    internal val columnCount get() = typeArray.size
+
+    internal fun addRow(entity: Entity): Int {
+        if (size == entities.size) grow()
+
+        val row = size++
+        entities[row] = entity
+        entity.archetype = this
+        entity.archetypeRow = row
+        return row
+    }
+
+    internal fun removeRow(row: Int) {
+        val last = --size
+        if (row != last) {
+            val moved = entities[last]!!
+            entities[row] = moved
+            moved.archetypeRow = row
+            for (column in columns) column[row] = column[last]
+        }
+
+        entities[last] = null
+        for (column in columns) column[last] = null
+    }
+
+    private fun grow() {
+        val capacity = entities.size * 2
+        entities = entities.copyOf(capacity)
+        for (i in columns.indices) columns[i] = columns[i].copyOf(capacity)
+    }
+
+    override fun toString() = "Archetype(types=${types.map { it.simpleName }}, size=$size)"
+
+}
@@ -0,0 +1,105 @@
+package org.etieskrill.engine.entity.system
+
+import org.etieskrill.engine.entity.Entity
+import kotlin.reflect.KClass
+
+/**
+ * Component storage which groups entities into [Archetype] tables by their component set. Entities are moved between
+ * tables as components are added or removed, and the transitions are cached as edges on the tables themselves.
+ */
+internal class ArchetypeStorage : ComponentStorage {
+
+    private val internalArchetypes = mutableMapOf<Set<KClass<*>>, Archetype>()
+    val archetypes: Collection<Archetype> get() = internalArchetypes.values
+
+    private fun archetypeOf(types: Set<KClass<*>>): Archetype =
+        internalArchetypes[types] ?: Archetype(types).also { internalArchetypes[it.types] = it }
+
+    /**
+     * Moves all components the entity currently holds into an archetype table, and routes any further component
+     * access through this storage.
+     */
+    fun adopt(entity: Entity) {
+        if (entity.storage === this) return
+
+        val components = entity.components
+        val archetype = archetypeOf(components.keys)
+        val row = archetype.addRow(entity)
+        for (column in 0..<archetype.columnCount) {
+            archetype[row, column] = components[archetype.typeAt(column)]
+        }
+
+        entity.storage = this
+    }
+
+    /**
+     * Moves the entity's components back into a standalone map, so the entity stays usable after it has left the
+     * system.
+     */
+    fun release(entity: Entity) {
+        if (entity.storage !== this) return
+
+        val components = components(entity)
+        val archetype = entity.archetype!!
+        archetype.removeRow(entity.archetypeRow)
+        entity.archetype = null
+        entity.archetypeRow = -1
+
+        entity.storage = MapComponentStorage().apply { components.values.forEach { add(entity, it) } }
+    }
+
+    override fun get(entity: Entity, type: KClass<*>): Any? {
+        val archetype = entity.archetype!!
+        val column = archetype.columnIndexOf(type)
+        return if (column >= 0) archetype[entity.archetypeRow, column] else null
+    }
+
+    override fun has(entity: Entity, type: KClass<*>) = entity.archetype!!.has(type)
+
+    override fun add(entity: Entity, component: Any) {
+        val type = component::class
+        val source = entity.archetype!!
+        val target = source.addEdges.getOrPut(type) { archetypeOf(source.types + type) }
+
+        val row = move(entity, source, target)
+        target[row, target.columnIndexOf(type)] = component
+    }
+
+    override fun remove(entity: Entity, type: KClass<*>): Any? {
+        val source = entity.archetype!!
+        val column = source.columnIndexOf(type)
+        if (column < 0) return null
+
+        val component = source[entity.archetypeRow, column]
+        val target = source.removeEdges.getOrPut(type) { archetypeOf(source.types - type) }
+        move(entity, source, target)
+        return component
+    }
+
+    private fun move(entity: Entity, source: Archetype, target: Archetype): Int {
+        val sourceRow = entity.archetypeRow
+        val targetRow = target.addRow(entity)
+        for (column in 0..<target.columnCount) {
+            val sourceColumn = source.columnIndexOf(target.typeAt(column))
+            if (sourceColumn >= 0) target[targetRow, column] = source[sourceRow, sourceColumn]
+        }
+
+        source.removeRow(sourceRow)
+        return targetRow
+    }
+
+    override fun components(entity: Entity): Map<KClass<*>, Any> {
+        val archetype = entity.archetype!!
+        val row = entity.archetypeRow
+        return buildMap(archetype.columnCount) {
+            for (column in 0..<archetype.columnCount) put(archetype.typeAt(column), archetype[row, column]!!)
+        }
+    }
+
+    /**
+     * @return all non-empty archetypes containing at least the given component types
+     */
+    fun matching(types: Collection<KClass<*>>): List<Archetype> =
+        internalArchetypes.values.filter { archetype -> archetype.size > 0 && types.all { archetype.has(it) } }
+
+}
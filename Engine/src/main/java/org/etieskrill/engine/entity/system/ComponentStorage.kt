@@ -0,0 +1,70 @@
+package org.etieskrill.engine.entity.system
+
+import org.etieskrill.engine.entity.Entity
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.reflect.KClass
+
+/**
+ * Specifies how an [EntitySystem] lays out the components of its entities in memory.
+ */
+enum class ComponentStorageMode {
+    /**
+     * Every entity keeps its own map of components. Adding and removing components is cheap, but every component access
+     * is a hash lookup.
+     */
+    MAP,
+
+    /**
+     * Entities with the same set of components share an [Archetype] table, which stores one contiguous column per
+     * component type. Component access is a pair of array lookups, and services may iterate the columns directly.
+     * Adding or removing a component moves the entity to a different table.
+     */
+    ARCHETYPE
+}
+
+/**
+ * Backing store behind the component API of an [Entity].
+ */
+internal interface ComponentStorage {
+    fun get(entity: Entity, type: KClass<*>): Any?
+    fun has(entity: Entity, type: KClass<*>): Boolean
+    fun add(entity: Entity, component: Any)
+    fun remove(entity: Entity, type: KClass<*>): Any?
+    fun components(entity: Entity): Map<KClass<*>, Any>
+}
+
+/**
+ * The default, per-entity component storage. Each instance belongs to exactly one entity.
+ */
+internal class MapComponentStorage : ComponentStorage {
+
+    private val components = mutableMapOf<KClass<*>, Any>()
+
+    override fun get(entity: Entity, type: KClass<*>) = components[type]
+    override fun has(entity: Entity, type: KClass<*>) = components.containsKey(type)
+    override fun add(entity: Entity, component: Any) {
+        components[component::class] = component
+    }
+
+    override fun remove(entity: Entity, type: KClass<*>) = components.remove(type)
+    override fun components(entity: Entity): Map<KClass<*>, Any> = components
+
+}
+
+/**
+ * Assigns every component type a small, dense id, so that archetypes can resolve columns by array index instead of by
+ * hashing the type.
+ */
+internal object ComponentTypes {
+
+    private val nextId = AtomicInteger()
+    private val ids = object : ClassValue<Int>() {
+        override fun computeValue(type: Class<*>) = nextId.getAndIncrement()
+    }
+
+    //javaObjectType, so that e.g. Boolean::class and true::class resolve to the same id
+    fun idOf(type: KClass<*>): Int = ids.get(type.javaObjectType)
+
+    val count: Int get() = nextId.get()
+
+}
@@ -0,0 +1,61 @@
+package org.etieskrill.engine.entity.system
+
+import org.etieskrill.engine.entity.Entity
+import java.util.*
+import kotlin.reflect.KClass
+
+/**
+ * The set of entities possessing all of a given set of component types, which is kept up to date incrementally as
+ * entities and components come and go, rather than being re-filtered every frame.
+ *
+ * Members are kept in order of their id, unless a [comparator] is set, in which case they are appended and are
+ * expected to be [sorted](sort) before being iterated.
+ */
+internal class EntityQuery(
+    types: Set<KClass<*>>,
+    private val comparator: Comparator<Entity>? = null
+) {
+
+    private val types = types.toTypedArray()
+    private val memberIds = BitSet()
+
+    private val internalMembers = ArrayList<Entity>()
+    val members: List<Entity> get() = internalMembers
+
+    fun matches(entity: Entity) = types.all { entity.hasComponent(it) }
+
+    /**
+     * Adds the entity to, or removes it from this query, depending on whether its components currently match.
+     */
+    fun update(entity: Entity) {
+        val isMember = memberIds[entity.id]
+        val matches = matches(entity)
+        when {
+            matches && !isMember -> add(entity)
+            !matches && isMember -> remove(entity)
+        }
+    }
+
+    private fun add(entity: Entity) {
+        memberIds.set(entity.id)
+
+        if (comparator != null) {
+            internalMembers.add(entity)
+            return
+        }
+
+        val index = internalMembers.binarySearch { it.id.compareTo(entity.id) }
+        internalMembers.add(-index - 1, entity)
+    }
+
+    fun remove(entity: Entity) {
+        if (!memberIds[entity.id]) return
+        memberIds.clear(entity.id)
+        internalMembers.remove(entity)
+    }
+
+    fun sort() {
+        comparator?.let { internalMembers.sortWith(it) }
+    }
+
+}
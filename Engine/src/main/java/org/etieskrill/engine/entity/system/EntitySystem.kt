@@ -3,45 +3,92 @@ package org.etieskrill.engine.entity.system;
 import io.github.oshai.kotlinlogging.KotlinLogging
 import org.etieskrill.engine.common.Disposable
 import org.etieskrill.engine.entity.Entity
-import org.etieskrill.engine.entity.component.Enabled
+import org.etieskrill.engine.entity.component.isEnabled
 import org.etieskrill.engine.entity.service.Service
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinWorkerThread
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RecursiveAction
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.math.max
+import kotlin.reflect.KClass
 
 private val logger = KotlinLogging.logger {}
 
-class EntitySystem : Disposable {
+private const val MIN_CHUNK_SIZE = 256
+private const val CHUNKS_PER_THREAD = 4
+
+/**
+ * Holds all entities and runs the registered services over them.
+ *
+ * @param storageMode how the components of entities are laid out in memory
+ * @param pool if set, services which are not [context bound](Service.isContextBound) are processed on this pool,
+ * alongside any other services they do not conflict with, and [entity local](Service.isEntityLocal) services are
+ * split into chunks processed in parallel
+ */
+class EntitySystem @JvmOverloads constructor(
+    val storageMode: ComponentStorageMode = ComponentStorageMode.MAP,
+    private val pool: ForkJoinPool? = null
+) : Disposable {
+
+    private val archetypeStorage = if (storageMode == ComponentStorageMode.ARCHETYPE) ArchetypeStorage() else null
+
+    /**
+     * All component tables of this system, which is empty unless the [storageMode] is
+     * [ARCHETYPE](ComponentStorageMode.ARCHETYPE).
+     */
+    val archetypes: Collection<Archetype> get() = archetypeStorage?.archetypes ?: emptyList()
 
     private val internalEntities = mutableListOf<Entity>()
     val entities: List<Entity> get() = internalEntities
 
-    private val services = mutableListOf<Service>() //TODO replace with set when execution plan is established
-    private val serviceExecutionPlan = mutableListOf<Service>()
+    private val services = mutableListOf<Service>()
+    private var executionPlan = ServiceExecutionPlan(services)
+    private var parallelExecution: ParallelExecution? = null
     private val orderedEntities = mutableMapOf<Service, MutableList<Entity>>()
+    private val queries = mutableMapOf<Service, EntityQuery>()
+    private val changedEntities = LinkedHashSet<Entity>()
 
     private var nextEntityIndex = 0
     private val freeIndices = mutableListOf<Int>()
     private val addedEntities = mutableListOf<Entity>()
     private val markedForRemoval = mutableListOf<Entity>()
 
+    //services and chunks currently processing on the pool, during which the archetype tables must not change
+    private val parallelProcessing = AtomicInteger()
+
     private var disposed = false
 
+    @Synchronized
     fun <T : Entity> constructEntity(block: (Int) -> T): T {
         val entity = block(getNextId())
         logger.debug { "New entity with id '${entity.id}'" }
 
+        entity.system = this
+        adopt(entity)
         addedEntities += entity
 
         return entity
     }
 
+    @Synchronized
     fun createEntity(block: Entity.() -> Unit): Entity {
         val entity = Entity(getNextId()).apply(block)
         logger.debug { "New entity with id '${entity.id}'" }
 
+        entity.system = this
+        adopt(entity)
         addedEntities += entity
 
         return entity
     }
 
+    private fun adopt(entity: Entity) {
+        //otherwise adopted together with the other added entities once nothing is processing on the pool
+        if (parallelProcessing.get() == 0) archetypeStorage?.adopt(entity)
+    }
+
     private fun getNextId(): Int {
         val nextId = when {
             freeIndices.isNotEmpty() -> freeIndices.removeFirst()
@@ -56,18 +103,36 @@ class EntitySystem : Disposable {
 
     fun entityExists(entity: Entity?): Boolean = internalEntities.contains(entity)
 
+    @Synchronized
     fun removeEntity(entity: Entity) = markedForRemoval.add(entity)
 
+    @Synchronized
     fun removeEntity(entityId: Int) = markedForRemoval.add(
         internalEntities.find { it.id == entityId } ?: error("Entity with id $entityId does not exist")
     )
 
     fun isMarkedForRemoval(entity: Entity) = entity in markedForRemoval
 
+    /**
+     * Returns all non-empty component tables whose entities have at least the given component [types]. Only available
+     * in [ARCHETYPE](ComponentStorageMode.ARCHETYPE) storage mode.
+     */
+    fun archetypesWith(vararg types: KClass<*>): List<Archetype> {
+        checkNotNull(archetypeStorage) { "Archetypes are only available in ${ComponentStorageMode.ARCHETYPE} storage mode" }
+        return archetypeStorage.matching(types.asList())
+    }
+
     fun addService(service: Service) {
         services += service
+        val requiredComponents = service.requiredComponents
+        if (requiredComponents != null) {
+            queries[service] = EntityQuery(requiredComponents, service.comparator).apply {
+                internalEntities.forEach { update(it) }
+            }
+        }
+        //the callbacks always see all entities, in order even if only the query members are processed
         service.comparator?.let {
-            orderedEntities[service] = mutableListOf()
+            orderedEntities[service] = internalEntities.toMutableList()
         }
         createServiceExecutionPlan()
     }
@@ -76,42 +141,264 @@ class EntitySystem : Disposable {
 
     fun removeService(service: Service) {
         services -= service
+        queries -= service
+        orderedEntities -= service
         createServiceExecutionPlan()
     }
 
     private fun createServiceExecutionPlan() {
-        //TODO implement
-        serviceExecutionPlan.clear()
-        serviceExecutionPlan.addAll(services)
+        executionPlan = ServiceExecutionPlan(services)
+        parallelExecution = pool?.let { ParallelExecution(executionPlan, it) }
+    }
+
+    internal fun checkComponentsMutable(entity: Entity) = check(
+        entity.storage !== archetypeStorage || parallelProcessing.get() == 0
+    ) { "Components of entity ${entity.id} may not be added or removed while services are processing in parallel" }
+
+    internal fun componentsChanged(entity: Entity) {
+        if (queries.isEmpty()) return
+        synchronized(changedEntities) { changedEntities += entity }
     }
 
     fun update(delta: Double) {
-        //TODO processable caching
-        serviceExecutionPlan.forEach { service ->
-            val entities =
-                (service.comparator?.let { orderedEntities[service]!!.sortedWith(it) }
-                    ?: this.internalEntities.toList())
-
-            service.preProcess(delta, entities)
-            entities.filterNot { it.getComponent<Enabled>()?.enabled == false }
-                .filter { service.canProcess(it) }
-                .forEach { service.process(it, entities, delta) }
-            service.postProcess(entities)
+        updateChangedEntities()
+
+        val parallelExecution = parallelExecution
+        if (parallelExecution != null) parallelExecution.run(delta)
+        else {
+            val services = executionPlan.services
+            for (i in services.indices) {
+                runService(services[i], delta)
+                //applied between services, so no service sees a membership change halfway through its own iteration
+                updateChangedEntities()
+            }
         }
 
+        archetypeStorage?.let { storage -> addedEntities.forEach(storage::adopt) }
         internalEntities.addAll(addedEntities)
         internalEntities.sortBy(Entity::id)
         orderedEntities.forEach { _, entities -> entities.addAll(addedEntities) }
+        queries.values.forEach { query -> addedEntities.forEach { query.update(it) } }
         addedEntities.clear()
+        updateChangedEntities()
 
         internalEntities.removeAll(markedForRemoval)
         internalEntities.sortBy(Entity::id)
         orderedEntities.forEach { _, entities -> entities.removeAll(markedForRemoval) }
+        queries.values.forEach { query -> markedForRemoval.forEach { query.remove(it) } }
         freeIndices.addAll(markedForRemoval.map(Entity::id))
+        services.forEach { service -> markedForRemoval.forEach(service::entityRemoved) }
+        markedForRemoval.forEach {
+            it.system = null
+            archetypeStorage?.release(it)
+        }
         markedForRemoval.forEach(Entity::dispose)
         markedForRemoval.clear()
     }
 
+    private fun runService(service: Service, delta: Double) {
+        val entities = prepareEntities(service)
+        service.preProcess(delta, entities)
+        processEntities(service, entities, delta)
+        service.postProcess(entities)
+    }
+
+    /**
+     * Brings the entities of a service into order, and returns the list which is passed to its callbacks.
+     */
+    private fun prepareEntities(service: Service): List<Entity> {
+        queries[service]?.sort()
+
+        val comparator = service.comparator ?: return internalEntities
+        return orderedEntities[service]!!.apply { sortWith(comparator) }
+    }
+
+    private fun processEntities(service: Service, entities: List<Entity>, delta: Double) {
+        val query = queries[service]
+        val targets = query?.members ?: entities
+        val filter = query == null
+
+        if (pool != null && service.isEntityLocal && !service.isContextBound && targets.size > MIN_CHUNK_SIZE) {
+            val chunkSize = max(MIN_CHUNK_SIZE, targets.size / (pool.parallelism * CHUNKS_PER_THREAD))
+            val chunks = ChunkedProcessing(service, targets, filter, entities, delta, 0, targets.size, chunkSize)
+            parallelProcessing.incrementAndGet()
+            try {
+                if ((Thread.currentThread() as? ForkJoinWorkerThread)?.pool === pool) chunks.invoke()
+                else pool.invoke(chunks)
+            } finally {
+                parallelProcessing.decrementAndGet()
+            }
+            return
+        }
+
+        processRange(service, targets, filter, entities, delta, 0, targets.size)
+    }
+
+    private fun processRange(
+        service: Service,
+        targets: List<Entity>,
+        filter: Boolean,
+        entities: List<Entity>,
+        delta: Double,
+        from: Int,
+        to: Int
+    ) {
+        for (i in from..<to) {
+            val entity = targets[i]
+            if (!entity.isEnabled() || filter && !service.canProcess(entity)) continue
+            service.process(entity, entities, delta)
+        }
+    }
+
+    /**
+     * Recursively halves a range of entities until it is small enough to be processed in one go. The root task only
+     * completes once all of its chunks have.
+     */
+    private inner class ChunkedProcessing(
+        private val service: Service,
+        private val targets: List<Entity>,
+        private val filter: Boolean,
+        private val entities: List<Entity>,
+        private val delta: Double,
+        private val from: Int,
+        private val to: Int,
+        private val chunkSize: Int
+    ) : RecursiveAction() {
+        override fun compute() {
+            if (to - from <= chunkSize) {
+                processRange(service, targets, filter, entities, delta, from, to)
+                return
+            }
+
+            val middle = (from + to) ushr 1
+            invokeAll(
+                ChunkedProcessing(service, targets, filter, entities, delta, from, middle, chunkSize),
+                ChunkedProcessing(service, targets, filter, entities, delta, middle, to, chunkSize)
+            )
+        }
+    }
+
+    private fun updateChangedEntities() {
+        synchronized(changedEntities) {
+            if (changedEntities.isEmpty()) return
+
+            for (entity in changedEntities) {
+                if (entity in addedEntities || entity.system !== this) continue
+                queries.values.forEach { it.update(entity) }
+            }
+            changedEntities.clear()
+        }
+    }
+
+    /**
+     * Runs an [execution plan](ServiceExecutionPlan) with as many services at once as their dependencies allow.
+     *
+     * The calling thread drives the plan: it runs all context bound services itself, and calls [Service.preProcess]
+     * and [Service.postProcess] for the others, whose entity processing is handed off to the pool in between. Entity
+     * membership changes are only applied while no service is processing on the pool, and neither may components be
+     * added or removed in [ARCHETYPE](ComponentStorageMode.ARCHETYPE) storage mode, see [Entity].
+     */
+    private inner class ParallelExecution(
+        private val plan: ServiceExecutionPlan,
+        private val pool: ForkJoinPool
+    ) {
+
+        private val services = plan.services
+        private val remainingDependencies = IntArray(services.size)
+        private val entityLists = arrayOfNulls<List<Entity>>(services.size)
+
+        private val readyOnContext = ArrayDeque<Int>()
+        private val finished = LinkedBlockingQueue<Int>()
+        private val failure = AtomicReference<Throwable>()
+        private var inFlight = 0
+        private var completed = 0
+
+        private var delta = 0.0
+
+        private val tasks = Array(services.size) { index ->
+            Runnable {
+                try {
+                    processEntities(services[index], entityLists[index]!!, delta)
+                } catch (throwable: Throwable) {
+                    failure.compareAndSet(null, throwable)
+                } finally {
+                    finished.put(index)
+                }
+            }
+        }
+
+        fun run(delta: Double) {
+            this.delta = delta
+            completed = 0
+            for (i in services.indices) remainingDependencies[i] = plan.dependencies[i].size
+            for (i in services.indices) if (remainingDependencies[i] == 0) schedule(i)
+
+            while (completed < services.size) {
+                val finishedIndex = if (readyOnContext.isEmpty()) finished.take() else finished.poll()
+                if (finishedIndex != null) {
+                    inFlight--
+                    parallelProcessing.decrementAndGet()
+                    failure.get()?.let { abort(it) }
+                    guarded { services[finishedIndex].postProcess(entityLists[finishedIndex]!!) }
+                    complete(finishedIndex)
+                } else {
+                    val index = readyOnContext.removeFirst()
+                    guarded { runService(services[index], delta) }
+                    complete(index)
+                }
+            }
+        }
+
+        private fun schedule(index: Int) {
+            val service = services[index]
+            if (service.isContextBound) {
+                readyOnContext.addLast(index)
+                return
+            }
+
+            guarded {
+                val entities = prepareEntities(service)
+                entityLists[index] = entities
+                service.preProcess(delta, entities)
+            }
+            inFlight++
+            parallelProcessing.incrementAndGet()
+            pool.execute(tasks[index])
+        }
+
+        private fun complete(index: Int) {
+            completed++
+            entityLists[index] = null
+            if (inFlight == 0) updateChangedEntities()
+
+            for (dependent in plan.dependents[index]) {
+                if (--remainingDependencies[dependent] == 0) schedule(dependent)
+            }
+        }
+
+        private inline fun guarded(block: () -> Unit) {
+            try {
+                block()
+            } catch (throwable: Throwable) {
+                abort(throwable)
+            }
+        }
+
+        /**
+         * Waits for all services still processing on the pool, so the next run starts from a clean slate.
+         */
+        private fun abort(throwable: Throwable): Nothing {
+            repeat(inFlight) { finished.take() }
+            parallelProcessing.addAndGet(-inFlight)
+            inFlight = 0
+            failure.set(null)
+            readyOnContext.clear()
+            entityLists.fill(null)
+            throw throwable
+        }
+
+    }
+
     override fun dispose() {
         if (disposed) return
         internalEntities.forEach(Entity::dispose)
@@ -0,0 +1,90 @@
+package org.etieskrill.engine.entity.system
+
+import org.etieskrill.engine.entity.service.Service
+import java.util.*
+
+/**
+ * A dependency graph over a set of services. Services are sorted topologically by their
+ * [runAfter](Service.runAfter) and [runBefore](Service.runBefore) constraints, with ties broken by
+ * [priority](Service.priority) and then by the order in which they were added.
+ *
+ * On top of the declared constraints, any two services with [conflicting](Service.componentAccess) component access
+ * are ordered as they appear in the sorted sequence, so running the graph in parallel yields the same result as
+ * running the [services] one after another.
+ */
+internal class ServiceExecutionPlan(services: List<Service>) {
+
+    /**
+     * All services in a valid sequential execution order.
+     */
+    val services: List<Service>
+
+    /**
+     * For each service, the indices of the services which must be complete before it may run.
+     */
+    val dependencies: Array<IntArray>
+
+    /**
+     * For each service, the indices of the services depending on it.
+     */
+    val dependents: Array<IntArray>
+
+    init {
+        val edges = List(services.size) { mutableSetOf<Int>() }
+        services.forEachIndexed { i, service ->
+            services.forEachIndexed { j, other ->
+                if (i == j) return@forEachIndexed
+                if (service.runAfter.any { it.isInstance(other) }) edges[j] += i
+                if (service.runBefore.any { it.isInstance(other) }) edges[i] += j
+            }
+        }
+
+        val order = sort(services, edges)
+        this.services = order.map { services[it] }
+
+        val position = IntArray(services.size).apply { order.forEachIndexed { index, service -> this[service] = index } }
+        val sortedDependencies = List(services.size) { sortedSetOf<Int>() }
+        edges.forEachIndexed { from, targets -> targets.forEach { sortedDependencies[position[it]] += position[from] } }
+
+        for (i in this.services.indices) {
+            for (j in i + 1..<this.services.size) {
+                if (conflicts(this.services[i], this.services[j])) sortedDependencies[j] += i
+            }
+        }
+
+        dependencies = Array(services.size) { sortedDependencies[it].toIntArray() }
+        dependents = Array(services.size) { i -> dependencies.indices.filter { i in dependencies[it] }.toIntArray() }
+    }
+
+    private fun sort(services: List<Service>, edges: List<Set<Int>>): List<Int> {
+        val inDegree = IntArray(services.size)
+        edges.forEach { targets -> targets.forEach { inDegree[it]++ } }
+
+        val ready = PriorityQueue(
+            compareByDescending<Int> { services[it].priority }.thenBy { it }
+        )
+        services.indices.filterTo(ready) { inDegree[it] == 0 }
+
+        val order = mutableListOf<Int>()
+        while (ready.isNotEmpty()) {
+            val next = ready.poll()
+            order += next
+            edges[next].forEach { if (--inDegree[it] == 0) ready += it }
+        }
+
+        check(order.size == services.size) {
+            "Services have cyclic dependencies: " + services.indices
+                .filter { inDegree[it] > 0 }
+                .joinToString { services[it]::class.simpleName.toString() }
+        }
+
+        return order
+    }
+
+    private fun conflicts(service: Service, other: Service): Boolean {
+        val access = service.componentAccess ?: return true
+        val otherAccess = other.componentAccess ?: return true
+        return access conflictsWith otherAccess
+    }
+
+}
@@ -1,6 +1,7 @@
 package org.etieskrill.engine.graphics.animation;
 
 import org.etieskrill.engine.graphics.model.Bone;
+import org.jetbrains.annotations.Nullable;
 import org.lwjgl.assimp.AINodeAnim;
 
 import java.util.Arrays;
@@ -36,6 +37,8 @@ public class Animation {
 
     private final Map<Bone, BoneAnimation> bonerMap;
 
+    private @Nullable BakedAnimation baked;
+
     /**
      * Constructs a new instance of an animation.
      *
@@ -46,6 +49,16 @@ public class Animation {
      * @param meshChannels
      */
     public Animation(String name, int duration, double ticksPerSecond, List<Bone> bones, List<BoneAnimation> boneAnimations, List<MeshAnimation> meshChannels) {
+        this(name, duration, ticksPerSecond, bones, boneAnimations, meshChannels, null);
+    }
+
+    /**
+     * Constructs a new instance of an animation, which is sampled from the given baked keys instead of the bone
+     * animations if present.
+     *
+     * @param baked the bone animations in a {@link BakedAnimation baked} form
+     */
+    public Animation(String name, int duration, double ticksPerSecond, List<Bone> bones, List<BoneAnimation> boneAnimations, List<MeshAnimation> meshChannels, @Nullable BakedAnimation baked) {
         this.name = name;
 
         this.duration = duration;
@@ -60,6 +73,7 @@ public class Animation {
             Bone bone = bones.stream().filter(_bone -> boneAnimation.bone().equals(_bone)).findAny().orElse(null);
             bonerMap.put(bone, boneAnimation);
         }
+        this.baked = baked;
     }
 
     public enum Behaviour {
@@ -115,4 +129,21 @@ public class Animation {
         return boneAnimations;
     }
 
+    public @Nullable BakedAnimation getBaked() {
+        return baked;
+    }
+
+    /**
+     * Resamples the baked keys at a fixed rate, so that finding the keys to interpolate between takes constant time.
+     * This trades accuracy for speed where the original keys do not line up with the samples, and memory where they
+     * were further apart.
+     *
+     * @param samplesPerSecond the rate at which to sample
+     * @throws IllegalStateException if the animation is not baked
+     */
+    public void resample(double samplesPerSecond) {
+        if (baked == null) throw new IllegalStateException("Animation '" + name + "' is not baked");
+        baked = baked.resample(duration, ticksPerSecond / samplesPerSecond);
+    }
+
 }
@@ -1,9 +1,11 @@
 package org.etieskrill.engine.graphics.animation;
 
-import org.etieskrill.engine.entity.component.Transform;
 import org.etieskrill.engine.entity.component.TransformC;
 import org.etieskrill.engine.graphics.model.Bone;
 import org.etieskrill.engine.graphics.model.Node;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Quaternionfc;
+import org.joml.Vector3fc;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -11,44 +13,192 @@ import java.util.List;
 /**
  * Translates all bone-space transforms into model space.
  * <p>
- * May only be used by one {@link Animator} at a time, as the {@code AnimationAssembler} is not thread safe.
+ * The node hierarchy is flattened once on construction, such that every node's parent precedes it. Local transforms
+ * are kept as flat position, rotation and scale components, and model-space matrices are then computed in a single
+ * pass over the nodes, without recursion or decomposing any intermediate matrix.
+ * <p>
+ * The {@code AnimationAssembler} itself is immutable, so it may be shared between any number of {@link Animator
+ * Animators} of the same model, on any number of threads. All intermediate results are kept in a {@link Workspace},
+ * of which each caller must bring their own.
  */
 public final class AnimationAssembler {
 
-    private final List<Transform> transformPool;
-    private int currentTransform;
+    /**
+     * The number of floats in a local transform: position, rotation as a quaternion, and scale.
+     */
+    static final int TRS_SIZE = 10;
+    static final int MATRIX_SIZE = 16;
+
+    private final int numNodes;
+    private final int[] parents;
+    private final int[] bones;
+
+    private final float[] nodeTransforms;
+    private final float[] boneOffsets;
+
+    public AnimationAssembler(@NotNull Node rootNode) {
+        List<Node> nodes = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        nodes.add(rootNode);
+        parents.add(-1);
+        for (int i = 0; i < nodes.size(); i++) { //Breadth-first, so parents always precede their children
+            for (Node child : nodes.get(i).getChildren()) {
+                nodes.add(child);
+                parents.add(i);
+            }
+        }
+
+        this.numNodes = nodes.size();
+        this.parents = new int[numNodes];
+        this.bones = new int[numNodes];
+        this.nodeTransforms = new float[TRS_SIZE * numNodes];
 
-    public AnimationAssembler(int numNodes) {
-        numNodes++; //Root transform
-        this.transformPool = new ArrayList<>(numNodes);
-        for (int i = 0; i < numNodes; i++) transformPool.add(new Transform());
+        int numBones = 0;
+        for (Node node : nodes) {
+            if (node.getBone() != null) numBones = Math.max(numBones, node.getBone().id() + 1);
+        }
+        this.boneOffsets = new float[MATRIX_SIZE * numBones];
+
+        for (int i = 0; i < numNodes; i++) {
+            Node node = nodes.get(i);
+            Bone bone = node.getBone();
+            this.parents[i] = parents.get(i);
+            this.bones[i] = bone != null ? bone.id() : -1;
+
+            //Nodes without bones are never animated, so their local transform only needs to be set once
+            putLocalTransform(nodeTransforms, i, node.getTransform());
+            if (bone != null) bone.offset().getMatrix().get(boneOffsets, MATRIX_SIZE * bone.id());
+        }
     }
 
-    public synchronized void transformToModelSpace(List<Transform> boneLocalTransforms, Node node) {
-        currentTransform = 1;
-        transformPool.forEach(Transform::identity);
-        transformToModelSpace(boneLocalTransforms, node, transformPool.getFirst());
+    /**
+     * @return a new workspace for use with this assembler
+     */
+    public Workspace createWorkspace() {
+        return new Workspace(this);
     }
 
-    private void transformToModelSpace(List<Transform> boneLocalTransforms, Node node, TransformC transform) {
-        Bone bone = node.getBone();
-        TransformC localTransform = node.getTransform();
+    /**
+     * Computes the model-space matrices of all bones from their local transforms.
+     *
+     * @param boneLocalTransforms the local transforms by bone id
+     * @param boneMatrices        the column-major matrices to write by bone id, sixteen floats each
+     * @param workspace           a workspace {@link #createWorkspace() created} by this assembler, which may not be
+     *                            used by any other thread at the same time
+     */
+    public void transformToModelSpace(List<? extends TransformC> boneLocalTransforms, float[] boneMatrices,
+                                      @NotNull Workspace workspace) {
+        if (workspace.assembler != this)
+            throw new IllegalArgumentException("Workspace was not created by this assembler");
+
+        float[] localTransforms = workspace.localTransforms;
+        float[] modelMatrices = workspace.modelMatrices;
+        float[] localMatrix = workspace.localMatrix;
+
+        for (int i = 0; i < numNodes; i++) {
+            int bone = bones[i];
+            if (bone != -1) putLocalTransform(localTransforms, i, boneLocalTransforms.get(bone));
+        }
+
+        for (int i = 0; i < numNodes; i++) {
+            int modelMatrix = MATRIX_SIZE * i;
+            int parent = parents[i];
+            if (parent == -1) {
+                toMatrix(localTransforms, TRS_SIZE * i, modelMatrices, modelMatrix);
+            } else {
+                toMatrix(localTransforms, TRS_SIZE * i, localMatrix, 0);
+                mulAffine(modelMatrices, MATRIX_SIZE * parent, localMatrix, 0, modelMatrices, modelMatrix);
+            }
+
+            int bone = bones[i];
+            if (bone != -1)
+                mulAffine(modelMatrices, modelMatrix, boneOffsets, MATRIX_SIZE * bone, boneMatrices, MATRIX_SIZE * bone);
+        }
+    }
 
-        if (bone != null)
-            localTransform = boneLocalTransforms.get(bone.id());
+    private static void putLocalTransform(float[] localTransforms, int node, TransformC transform) {
+        int offset = TRS_SIZE * node;
+        Vector3fc position = transform.getPosition();
+        Quaternionfc rotation = transform.getRotation();
+        Vector3fc scale = transform.getScale();
+        localTransforms[offset] = position.x();
+        localTransforms[offset + 1] = position.y();
+        localTransforms[offset + 2] = position.z();
+        localTransforms[offset + 3] = rotation.x();
+        localTransforms[offset + 4] = rotation.y();
+        localTransforms[offset + 5] = rotation.z();
+        localTransforms[offset + 6] = rotation.w();
+        localTransforms[offset + 7] = scale.x();
+        localTransforms[offset + 8] = scale.y();
+        localTransforms[offset + 9] = scale.z();
+    }
 
-        var nodeTransform = transformPool.get(currentTransform++);
-        nodeTransform.set(transform);
-        nodeTransform.apply(localTransform);
+    /**
+     * The intermediate results of an {@link AnimationAssembler}.
+     */
+    public static final class Workspace {
+        private final AnimationAssembler assembler;
+        private final float[] localTransforms;
+        private final float[] modelMatrices;
+        private final float[] localMatrix;
 
-        if (bone != null) {
-            var boneLocalTransform = boneLocalTransforms.get(bone.id());
-            boneLocalTransform.set(nodeTransform);
-            boneLocalTransform.apply(bone.offset());
+        private Workspace(AnimationAssembler assembler) {
+            this.assembler = assembler;
+            this.localTransforms = assembler.nodeTransforms.clone();
+            this.modelMatrices = new float[MATRIX_SIZE * assembler.numNodes];
+            this.localMatrix = new float[MATRIX_SIZE];
         }
+    }
+
+    /**
+     * Equivalent to {@link org.joml.Matrix4f#translationRotateScale(float, float, float, float, float, float, float,
+     * float, float, float) Matrix4f#translationRotateScale}.
+     */
+    static void toMatrix(float[] trs, int src, float[] dest, int dst) {
+        float tx = trs[src], ty = trs[src + 1], tz = trs[src + 2];
+        float qx = trs[src + 3], qy = trs[src + 4], qz = trs[src + 5], qw = trs[src + 6];
+        float sx = trs[src + 7], sy = trs[src + 8], sz = trs[src + 9];
+
+        float dqx = qx + qx, dqy = qy + qy, dqz = qz + qz;
+        float q00 = dqx * qx, q11 = dqy * qy, q22 = dqz * qz;
+        float q01 = dqx * qy, q02 = dqx * qz, q03 = dqx * qw;
+        float q12 = dqy * qz, q13 = dqy * qw, q23 = dqz * qw;
 
-        for (Node child : node.getChildren())
-            transformToModelSpace(boneLocalTransforms, child, nodeTransform);
+        dest[dst] = sx - (q11 + q22) * sx;
+        dest[dst + 1] = (q01 + q23) * sx;
+        dest[dst + 2] = (q02 - q13) * sx;
+        dest[dst + 3] = 0;
+        dest[dst + 4] = (q01 - q23) * sy;
+        dest[dst + 5] = sy - (q22 + q00) * sy;
+        dest[dst + 6] = (q12 + q03) * sy;
+        dest[dst + 7] = 0;
+        dest[dst + 8] = (q02 + q13) * sz;
+        dest[dst + 9] = (q12 - q03) * sz;
+        dest[dst + 10] = sz - (q11 + q00) * sz;
+        dest[dst + 11] = 0;
+        dest[dst + 12] = tx;
+        dest[dst + 13] = ty;
+        dest[dst + 14] = tz;
+        dest[dst + 15] = 1;
+    }
+
+    /**
+     * Multiplies two column-major affine matrices, {@code dest = left * right}. The destination must not overlap either
+     * factor.
+     */
+    static void mulAffine(float[] left, int l, float[] right, int r, float[] dest, int dst) {
+        for (int column = 0; column < 4; column++) {
+            int rc = r + 4 * column;
+            float x = right[rc], y = right[rc + 1], z = right[rc + 2];
+            float w = column == 3 ? 1 : 0;
+            for (int row = 0; row < 3; row++) {
+                dest[dst + 4 * column + row] = left[l + row] * x
+                        + left[l + 4 + row] * y
+                        + left[l + 8 + row] * z
+                        + left[l + 12 + row] * w;
+            }
+            dest[dst + 4 * column + 3] = w;
+        }
     }
 
 }
@@ -0,0 +1,36 @@
+package org.etieskrill.engine.graphics.animation
+
+/**
+ * Decides how often an [Animator] is updated by its distance to the camera. An animator which is at least as far away
+ * as one of the [distances] is only updated every n-th frame, as given by the interval at the same index, and skips
+ * the frames in between.
+ *
+ * @param distances the distances at which the update interval changes, in ascending order
+ * @param intervals the number of frames between updates at each distance, at least one
+ */
+class AnimationLod(private val distances: FloatArray, private val intervals: IntArray) {
+
+    init {
+        require(distances.size == intervals.size) { "There must be exactly one interval for each distance" }
+        require(distances.asList().zipWithNext().all { (a, b) -> a < b }) { "Distances must be in ascending order" }
+        require(intervals.all { it >= 1 }) { "Intervals must be at least one" }
+    }
+
+    fun getUpdateInterval(distance: Float): Int {
+        var interval = 1
+        for (i in distances.indices) {
+            if (distance < distances[i]) break
+            interval = intervals[i]
+        }
+        return interval
+    }
+
+    companion object {
+        /**
+         * Updates every animator on every frame.
+         */
+        @JvmField
+        val NONE = AnimationLod(floatArrayOf(), intArrayOf())
+    }
+
+}
@@ -17,7 +17,7 @@ import static org.etieskrill.engine.graphics.animation.Animation.MAX_BONES;
  * <p>
  * This class has an internal state in order to store the final transforms without creating a new list of potentially
  * hundreds of new single-use objects. Because of this, a given {@code AnimationMixer} may only be bound to exacly one
- * {@link Animator}.
+ * {@link Animator}, but mixers of different animators may be used on different threads at the same time.
  */
 public class AnimationMixer {
 
@@ -5,6 +5,7 @@ import org.etieskrill.engine.graphics.model.Bone;
 import org.etieskrill.engine.graphics.model.Model;
 import org.etieskrill.engine.graphics.model.Node;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.joml.Quaternionf;
 import org.joml.Quaternionfc;
 import org.joml.Vector3f;
@@ -12,15 +13,18 @@ import org.joml.Vector3fc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
 
+import static org.etieskrill.engine.graphics.animation.Animation.MAX_BONES;
+import static org.etieskrill.engine.graphics.animation.AnimationAssembler.TRS_SIZE;
+
 /**
  * The {@code AnimationProvider} is an instance of an {@link Animation}, which is bound to the skeleton of a specific
  * {@link Model}.
  * <p>
  * Other than the bounds described above, an {@code AnimationProvider} may be reused across any number of
- * {@link Animator Animators}, so long as the referenced {@link Model Model's} skeleton is compatible.
+ * {@link Animator Animators}, so long as the referenced {@link Model Model's} skeleton is compatible. Sampling writes
+ * only into the transforms passed by the caller, so this holds even if the animators are updated on different threads.
  */
 public class AnimationProvider {
 
@@ -28,9 +32,13 @@ public class AnimationProvider {
     private final Node rootNode;
 
     private double playbackSpeed;
+    private @Nullable AnimationSampleCache sampleCache;
 
-    private final List<Transform> transformPool;
-    private int currentTransform;
+    /**
+     * The last key found in each channel per bone, from which the next lookup starts. These are mere hints, which are
+     * validated on every lookup, so a stale or concurrently written cursor only costs a longer search.
+     */
+    private final int[] positionCursors, rotationCursors, scaleCursors;
 
     private static final Logger logger = LoggerFactory.getLogger(AnimationProvider.class);
 
@@ -43,8 +51,9 @@ public class AnimationProvider {
 
         this.playbackSpeed = 1;
 
-        this.transformPool = new ArrayList<>(model.getNodes().size());
-        for (int i = 0; i < model.getNodes().size(); i++) transformPool.add(new Transform());
+        this.positionCursors = new int[MAX_BONES];
+        this.rotationCursors = new int[MAX_BONES];
+        this.scaleCursors = new int[MAX_BONES];
     }
 
     public Animation getAnimation() {
@@ -59,85 +68,94 @@ public class AnimationProvider {
         this.playbackSpeed = playbackSpeed;
     }
 
+    public @Nullable AnimationSampleCache getSampleCache() {
+        return sampleCache;
+    }
+
+    /**
+     * Sets a cache of sampled poses, which is shared with other providers, in place of sampling the animation at the
+     * exact current time. Has no effect if the animation is not {@link Animation#getBaked() baked}.
+     *
+     * @param sampleCache the cache to take poses from, or {@code null} to always sample
+     */
+    public void setSampleCache(@Nullable AnimationSampleCache sampleCache) {
+        this.sampleCache = sampleCache;
+    }
+
     List<Transform> getLocalBoneTransforms(List<Transform> localBoneTransforms, double currentTimeSeconds) {
         //TODO get performance counters going, then
         // - pass uniform arrays with single call
-        // - bake bone animations into bones / create a map here or in model
         double currentTicks = currentTimeSeconds * animation.getTicksPerSecond() * playbackSpeed;
         switch (animation.getBehaviour()) {
             case REPEAT -> currentTicks %= animation.getDurationTicks();
             default -> throw new IllegalArgumentException("Unexpected behaviour: " + animation.getBehaviour());
         }
 
-        currentTransform = 0;
+        float[] pose = sampleCache != null ? sampleCache.getPose(animation, currentTicks) : null;
+
         localBoneTransforms.forEach(Transform::identity);
-        updateBoneTransforms(localBoneTransforms, currentTicks, rootNode);
+        updateBoneTransforms(localBoneTransforms, currentTicks, pose, rootNode);
         return localBoneTransforms;
     }
 
-    private void updateBoneTransforms(List<Transform> localBoneTransforms, double currentTicks, Node node) {
+    private void updateBoneTransforms(List<Transform> localBoneTransforms, double currentTicks, float @Nullable [] pose, Node node) {
         Bone bone = node.getBone();
-        Transform localTransform = transformPool.get(currentTransform++); //Set node transform as default
-        localTransform.set(node.getTransform());
+        Transform localTransform = null;
+        if (bone != null) { //Set node transform as default
+            localTransform = localBoneTransforms.get(bone.id());
+            localTransform.set(node.getTransform());
+        }
 
-        if (bone != null) { //If node has bone, try to find animation
+        BakedAnimation baked = animation.getBaked();
+        if (bone != null && baked != null) { //Sample baked keys by bone id, no lookup required
+            int id = bone.id();
+            if (pose != null && baked.isAnimated(id)) {
+                int offset = TRS_SIZE * id;
+                localTransform.getPosition().set(pose[offset], pose[offset + 1], pose[offset + 2]);
+                localTransform.getRotation().set(pose[offset + 3], pose[offset + 4], pose[offset + 5], pose[offset + 6]);
+                localTransform.getScale().set(pose[offset + 7], pose[offset + 8], pose[offset + 9]);
+            } else if (baked.isAnimated(id)) {
+                positionCursors[id] = baked.samplePosition(id, currentTicks, localTransform.getPosition(), positionCursors[id]);
+                rotationCursors[id] = baked.sampleRotation(id, currentTicks, localTransform.getRotation(), rotationCursors[id]);
+                scaleCursors[id] = baked.sampleScaling(id, currentTicks, localTransform.getScale(), scaleCursors[id]);
+            }
+        } else if (bone != null) { //If node has bone, try to find animation
             BoneAnimation boneAnim = animation.getBoneAnimation(bone);
 
             if (boneAnim != null) { //If bone is animated, replace node transform
-                interpolateVector(currentTicks, boneAnim.positionTimes(), boneAnim.positions(), localTransform.getPosition());
-                interpolateQuaternion(currentTicks, boneAnim.rotationTimes(), boneAnim.rotations(), localTransform.getRotation());
-                interpolateVector(currentTicks, boneAnim.scaleTimes(), boneAnim.scalings(), localTransform.getScale());
+                int id = bone.id();
+                positionCursors[id] = interpolateVector(currentTicks, boneAnim.positionTimes(), boneAnim.positions(), localTransform.getPosition(), positionCursors[id]);
+                rotationCursors[id] = interpolateQuaternion(currentTicks, boneAnim.rotationTimes(), boneAnim.rotations(), localTransform.getRotation(), rotationCursors[id]);
+                scaleCursors[id] = interpolateVector(currentTicks, boneAnim.scaleTimes(), boneAnim.scalings(), localTransform.getScale(), scaleCursors[id]);
             }
-
-            localBoneTransforms
-                    .get(bone.id())
-                    .set(localTransform);
         }
 
         for (int i = 0; i < node.getChildren().size(); i++)
-            updateBoneTransforms(localBoneTransforms, currentTicks, node.getChildren().get(i));
+            updateBoneTransforms(localBoneTransforms, currentTicks, pose, node.getChildren().get(i));
     }
 
-    private void interpolateVector(double currentTicks, double[] timings, List<Vector3fc> vectors, Vector3f target) {
-        int numTimings = timings.length;
-
-        int index = -1;
-        for (int i = 0; i < numTimings; i++) {
-            if (i < numTimings - 1
-                    && timings[i] <= currentTicks
-                    && timings[i + 1] >= currentTicks) {
-                index = i;
-                break;
-            }
-        }
+    private int interpolateVector(double currentTicks, double[] timings, List<Vector3fc> vectors, Vector3f target, int cursor) {
+        int index = Keyframes.find(timings, currentTicks, cursor);
 
         if (index == -1) {
             target.set(vectors.getFirst());
-            return;
+            return cursor;
         }
         double t = (currentTicks - timings[index]) / (timings[index + 1] - timings[index]);
         vectors.get(index).lerp(vectors.get(index + 1), (float) t, target);
+        return index;
     }
 
-    private void interpolateQuaternion(double currentTicks, double[] timings, List<Quaternionfc> quaternions, Quaternionf target) {
-        int numTimings = timings.length;
-
-        int index = -1;
-        for (int i = 0; i < numTimings; i++) {
-            if (i < numTimings - 1
-                    && timings[i] <= currentTicks
-                    && timings[i + 1] >= currentTicks) {
-                index = i;
-                break;
-            }
-        }
+    private int interpolateQuaternion(double currentTicks, double[] timings, List<Quaternionfc> quaternions, Quaternionf target, int cursor) {
+        int index = Keyframes.find(timings, currentTicks, cursor);
 
         if (index == -1) {
             target.set(quaternions.getFirst());
-            return;
+            return cursor;
         }
         double t = (currentTicks - timings[index]) / (timings[index + 1] - timings[index]);
         quaternions.get(index).slerp(quaternions.get(index + 1), (float) t, target);
+        return index;
     }
 
     private <T> @NotNull T interpolate(double currentTicks, BoneAnimation anim, List<Double> timings, List<T> values) {
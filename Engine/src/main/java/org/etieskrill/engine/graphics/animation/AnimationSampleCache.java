@@ -0,0 +1,125 @@
+package org.etieskrill.engine.graphics.animation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.etieskrill.engine.graphics.animation.AnimationAssembler.TRS_SIZE;
+
+/**
+ * Poses of {@link BakedAnimation baked animations} sampled at a fixed rate, which any number of
+ * {@link AnimationProvider AnimationProviders} may share, e.g. a crowd playing the same walk cycle.
+ * <p>
+ * A pose holds the local position, rotation and scale of every animated bone by bone id, and is sampled the first
+ * time any provider requests a time closest to it. Playback is thereby quantised to the sample rate, which is the
+ * price paid for each pose being sampled only once, no matter how many providers play the animation.
+ * <p>
+ * The cache is thread safe. Two providers requesting the same missing pose at once may both sample it, of which one
+ * result is kept.
+ */
+public final class AnimationSampleCache {
+
+    private final double samplesPerSecond;
+    private final Map<BakedAnimation, AtomicReferenceArray<float[]>> poses;
+
+    private final LongAdder hits, misses;
+
+    /**
+     * @param samplesPerSecond the rate at which animations are sampled
+     */
+    public AnimationSampleCache(double samplesPerSecond) {
+        if (!(samplesPerSecond > 0))
+            throw new IllegalArgumentException("Sample rate must be positive: " + samplesPerSecond);
+
+        this.samplesPerSecond = samplesPerSecond;
+        this.poses = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Gets the pose of the sample closest to the given time, sampling it if it is not cached yet.
+     *
+     * @param animation the animation to sample
+     * @param ticks     the time in ticks, within the duration of the animation
+     * @return the local transforms by bone id, {@value AnimationAssembler#TRS_SIZE} floats each, which must not be
+     * modified, or {@code null} if the animation is not baked
+     */
+    public float @Nullable [] getPose(@NotNull Animation animation, double ticks) {
+        BakedAnimation baked = animation.getBaked();
+        if (baked == null) return null;
+
+        double step = animation.getTicksPerSecond() / samplesPerSecond;
+        AtomicReferenceArray<float[]> samples = poses.computeIfAbsent(baked,
+                key -> new AtomicReferenceArray<>((int) Math.ceil(animation.getDurationTicks() / step) + 1));
+
+        int sample = Math.clamp(Math.round(ticks / step), 0, samples.length() - 1);
+        float[] pose = samples.get(sample);
+        if (pose != null) {
+            hits.increment();
+            return pose;
+        }
+
+        misses.increment();
+        pose = samplePose(baked, Math.min(sample * step, animation.getDurationTicks()));
+        return samples.compareAndSet(sample, null, pose) ? pose : samples.get(sample);
+    }
+
+    private static float[] samplePose(BakedAnimation baked, double ticks) {
+        float[] pose = new float[TRS_SIZE * baked.getNumBones()];
+        Vector3f vector = new Vector3f();
+        Quaternionf rotation = new Quaternionf();
+        for (int id = 0; id < baked.getNumBones(); id++) {
+            if (!baked.isAnimated(id)) continue;
+            int offset = TRS_SIZE * id;
+
+            baked.samplePosition(id, ticks, vector, -1);
+            pose[offset] = vector.x;
+            pose[offset + 1] = vector.y;
+            pose[offset + 2] = vector.z;
+
+            baked.sampleRotation(id, ticks, rotation, -1);
+            pose[offset + 3] = rotation.x;
+            pose[offset + 4] = rotation.y;
+            pose[offset + 5] = rotation.z;
+            pose[offset + 6] = rotation.w;
+
+            baked.sampleScaling(id, ticks, vector, -1);
+            pose[offset + 7] = vector.x;
+            pose[offset + 8] = vector.y;
+            pose[offset + 9] = vector.z;
+        }
+        return pose;
+    }
+
+    public double getSamplesPerSecond() {
+        return samplesPerSecond;
+    }
+
+    /**
+     * @return how many poses were found in the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return how many poses had to be sampled
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void clear() {
+        poses.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+}
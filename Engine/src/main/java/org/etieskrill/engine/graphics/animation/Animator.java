@@ -5,6 +5,8 @@ import org.etieskrill.engine.entity.component.TransformC;
 import org.etieskrill.engine.graphics.model.Model;
 import org.etieskrill.engine.graphics.model.Node;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
 import org.joml.Matrix4fc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +16,7 @@ import java.util.List;
 import java.util.function.Consumer;
 
 import static org.etieskrill.engine.graphics.animation.Animation.MAX_BONES;
+import static org.etieskrill.engine.graphics.animation.AnimationAssembler.MATRIX_SIZE;
 
 
 /**
@@ -22,17 +25,24 @@ import static org.etieskrill.engine.graphics.animation.Animation.MAX_BONES;
  * <p>The {@code Animator} acts as the primary control unit in any animation workflow - it also offers the more usable
  * side of the animation api as a whole right now.</p>
  * <p>Every model which beckons for animation should have at most one animator influencing it's skinned skeleton.</p>
+ * <p>All state which changes during an {@link #update(double) update} is owned by the {@code Animator}, so different
+ * animators may be updated on different threads at the same time, even if they share an {@link AnimationAssembler} or
+ * {@link AnimationProvider AnimationProviders}. A single {@code Animator} is not thread safe.</p>
  */
 //TODO in-detail description of animation workflow
 public class Animator {
 
     private final List<AnimationProvider> animationProviders;
     private final List<List<Transform>> providerTransforms;
+    private final float[] boneMatrices;
     private final List<TransformC> transforms;
-    private Matrix4fc[] transformsArray;
+    private Matrix4f[] transformsArray;
+    private boolean transformsDirty, transformsArrayDirty;
+    private final Matrix4f decomposedMatrix = new Matrix4f();
 
     private final AnimationMixer animationMixer;
     private final AnimationAssembler animationAssembler;
+    private final AnimationAssembler.Workspace assemblerWorkspace;
 
     private final Model model;
     private final List<Node> nodes;
@@ -40,6 +50,9 @@ public class Animator {
     private boolean playing;
     private double currentTimeSeconds;
     private double playbackSpeed;
+    private double skippedSeconds;
+
+    private @Nullable AnimationSampleCache sampleCache;
 
     private static final Logger logger = LoggerFactory.getLogger(Animator.class);
 
@@ -50,7 +63,7 @@ public class Animator {
      * @param model the model influenced by added animations
      */
     public Animator(@NotNull Model model) {
-        this(new ArrayList<>(), new AnimationMixer(), new AnimationAssembler(model.getNodes().size()), model);
+        this(new ArrayList<>(), new AnimationMixer(), new AnimationAssembler(model.getNodes().getFirst()), model);
     }
 
     /**
@@ -61,7 +74,8 @@ public class Animator {
      * instances instead.
      *
      * @param animationProviders the animations in this group
-     * @param animationMixer
+     * @param animationMixer     the mixer, which must not be bound to any other {@code Animator}
+     * @param animationAssembler the assembler, which may be shared by all animators of the same model
      * @param model              the model influenced by added animations
      * @see Animator#Animator(Model)
      */
@@ -81,11 +95,14 @@ public class Animator {
         this.providerTransforms = new ArrayList<>(animationProviders.size());
         for (int i = 0; i < animationProviders.size(); i++) addNewProviderTransformList();
 
+        this.boneMatrices = new float[MATRIX_SIZE * MAX_BONES];
+        for (int i = 0; i < MAX_BONES; i++) new Matrix4f().get(boneMatrices, MATRIX_SIZE * i);
         this.transforms = new ArrayList<>(MAX_BONES);
         for (int i = 0; i < MAX_BONES; i++) transforms.add(new Transform());
 
         this.animationMixer = animationMixer;
         this.animationAssembler = animationAssembler;
+        this.assemblerWorkspace = animationAssembler.createWorkspace();
 
         this.model = model;
         this.nodes = new ArrayList<>(model.getNodes().size());
@@ -146,14 +163,15 @@ public class Animator {
 
     /**
      * Updates the current animation time and retrieves all transforms for bound {@link Animation Animations} at the
-     * new time, combines them using the provided {@link AnimationMixer}, and updates the list of
-     * {@link Transform Transforms}, which can be retrieved with {@link Animator#getTransforms()}.
+     * new time, combines them using the provided {@link AnimationMixer}, and updates the bone matrices, which can be
+     * retrieved with {@link Animator#getBoneMatrices()}.
      *
      * @param delta time since the last animation frame
      */
     public void update(double delta) {
         if (!playing) return;
-        currentTimeSeconds += delta * playbackSpeed;
+        currentTimeSeconds += (skippedSeconds + delta) * playbackSpeed;
+        skippedSeconds = 0;
 
         for (int i = 0; i < animationProviders.size(); i++)
             animationProviders.get(i).getLocalBoneTransforms(providerTransforms.get(i), currentTimeSeconds);
@@ -176,11 +194,34 @@ public class Animator {
 //                    String.format("%7.1f", currentTimeSeconds), animation.getDuration(),
 //                    String.format("%5.1f", animation.getTicksPerSecond()));
 
-        animationAssembler.transformToModelSpace(transforms, model.getNodes().getFirst());
+        animationAssembler.transformToModelSpace(transforms, boneMatrices, assemblerWorkspace);
+        transformsDirty = true;
+        transformsArrayDirty = true;
+    }
 
-        for (int i = 0; i < this.transforms.size(); i++) {
-            ((Transform) this.transforms.get(i)).set(transforms.get(i));
-        }
+    /**
+     * Skips an update, e.g. if the animated model is too far away for every frame to be noticeable. The skipped time is
+     * added onto the next {@link #update(double) update}, so the animation stays in step with the ones being updated.
+     *
+     * @param delta time since the last animation frame
+     */
+    public void skip(double delta) {
+        if (!playing) return;
+        skippedSeconds += delta;
+    }
+
+    /**
+     * Shares a cache of sampled poses between this and other {@code Animators}, which is used by all present and future
+     * animations in place of sampling each at the exact current time.
+     *
+     * @param sampleCache the cache to take poses from, or {@code null} to always sample
+     * @return the {@code Animator} for chaining
+     * @see AnimationSampleCache
+     */
+    public Animator sampleCache(@Nullable AnimationSampleCache sampleCache) {
+        this.sampleCache = sampleCache;
+        for (AnimationProvider provider : animationProviders) provider.setSampleCache(sampleCache);
+        return this;
     }
 
     /**
@@ -234,6 +275,7 @@ public class Animator {
     private Animator add(Animation animation, AnimationMixer.AnimationLayer layer) {
         AnimationProvider provider = new AnimationProvider(animation, model);
         provider.setPlaybackSpeed(layer.getPlaybackSpeed());
+        provider.setSampleCache(sampleCache);
         animationProviders.add(provider);
         animationMixer.addAnimationLayer(layer);
 
@@ -270,20 +312,45 @@ public class Animator {
         return animationProviders;
     }
 
+    /**
+     * @return the model-space bone matrices by bone id, in column-major order with sixteen floats each, which must not
+     * be modified
+     */
+    public float[] getBoneMatrices() {
+        return boneMatrices;
+    }
+
+    /**
+     * The bone matrices decomposed into {@link Transform Transforms}, which is only done on request, so prefer
+     * {@link #getBoneMatrices()} where the matrices suffice.
+     */
     public List<TransformC> getTransforms() {
+        if (transformsDirty) {
+            for (int i = 0; i < transforms.size(); i++) {
+                Transform transform = (Transform) transforms.get(i);
+                decomposedMatrix.set(boneMatrices, MATRIX_SIZE * i);
+                decomposedMatrix.getTranslation(transform.getPosition());
+                decomposedMatrix.getUnnormalizedRotation(transform.getRotation());
+                decomposedMatrix.getScale(transform.getScale());
+            }
+            transformsDirty = false;
+        }
         return transforms;
     }
 
     public List<Matrix4fc> getTransformMatrices() {
-        return transforms.stream().map(TransformC::getMatrix).toList();
+        return List.of(getTransformMatricesArray());
     }
 
     public Matrix4fc[] getTransformMatricesArray() {
         if (transformsArray == null) {
-            transformsArray = new Matrix4fc[MAX_BONES];
+            transformsArray = new Matrix4f[MAX_BONES];
+            for (int i = 0; i < MAX_BONES; i++) transformsArray[i] = new Matrix4f();
+            transformsArrayDirty = true;
         }
-        for (int i = 0; i < transforms.size(); i++) {
-            transformsArray[i] = transforms.get(i).getMatrix();
+        if (transformsArrayDirty) {
+            for (int i = 0; i < MAX_BONES; i++) transformsArray[i].set(boneMatrices, MATRIX_SIZE * i);
+            transformsArrayDirty = false;
         }
         return transformsArray;
     }
@@ -0,0 +1,332 @@
+package org.etieskrill.engine.graphics.animation;
+
+import org.jetbrains.annotations.NotNull;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.util.List;
+
+/**
+ * The keys of an {@link Animation} in flat arrays, indexed by {@link org.etieskrill.engine.graphics.model.Bone#id()
+ * bone id}, so that sampling a bone neither goes through a map nor dereferences any boxed keys.
+ * <p>
+ * Each channel concatenates the keys of all bones, and a bone's keys lie between its offset and the next bone's. A
+ * baked animation either keeps the original keys, or is {@link #resample(double, double) resampled} to a fixed step,
+ * in which case the key to interpolate from is found by a single division instead of a search.
+ */
+public final class BakedAnimation {
+
+    private final int numBones;
+    private final boolean[] animated;
+
+    private final Channel positions;
+    private final Channel rotations;
+    private final Channel scalings;
+
+    /**
+     * The time between two samples in ticks, or zero if the original keys are kept.
+     */
+    private final double step;
+    private final double durationTicks;
+
+    private BakedAnimation(int numBones, boolean[] animated, Channel positions, Channel rotations, Channel scalings,
+                           double step, double durationTicks) {
+        this.numBones = numBones;
+        this.animated = animated;
+        this.positions = positions;
+        this.rotations = rotations;
+        this.scalings = scalings;
+        this.step = step;
+        this.durationTicks = durationTicks;
+    }
+
+    /**
+     * Bakes the keys of the given bone animations as they are.
+     *
+     * @param boneAnimations the bone animations of a clip
+     * @param numBones       the number of bones in the rig, must be greater than any animated bone's id
+     * @throws IllegalArgumentException if a bone id is out of range, or more than one animation targets the same id
+     */
+    public static BakedAnimation bake(@NotNull List<BoneAnimation> boneAnimations, int numBones) {
+        BoneAnimation[] byBone = new BoneAnimation[numBones];
+        boolean[] animated = new boolean[numBones];
+        for (BoneAnimation boneAnimation : boneAnimations) {
+            int id = boneAnimation.bone().id();
+            if (id < 0 || id >= numBones)
+                throw new IllegalArgumentException("Bone id " + id + " is out of range for " + numBones + " bones");
+            if (byBone[id] != null)
+                throw new IllegalArgumentException("Bone id " + id + " is animated more than once");
+            byBone[id] = boneAnimation;
+            animated[id] = true;
+        }
+
+        Channel positions = new Channel(numBones, 3), rotations = new Channel(numBones, 4), scalings = new Channel(numBones, 3);
+        for (BoneAnimation boneAnimation : byBone) {
+            if (boneAnimation == null) continue;
+            positions.keys += boneAnimation.positionTimes().length;
+            rotations.keys += boneAnimation.rotationTimes().length;
+            scalings.keys += boneAnimation.scaleTimes().length;
+        }
+        positions.allocate(true);
+        rotations.allocate(true);
+        scalings.allocate(true);
+
+        for (int id = 0; id < numBones; id++) {
+            BoneAnimation boneAnimation = byBone[id];
+            if (boneAnimation == null) {
+                positions.skip(id);
+                rotations.skip(id);
+                scalings.skip(id);
+                continue;
+            }
+
+            positions.offsets[id] = positions.keys;
+            for (int i = 0; i < boneAnimation.positionTimes().length; i++) {
+                positions.times[positions.keys] = boneAnimation.positionTimes()[i];
+                positions.put(boneAnimation.positions().get(i));
+            }
+            rotations.offsets[id] = rotations.keys;
+            for (int i = 0; i < boneAnimation.rotationTimes().length; i++) {
+                rotations.times[rotations.keys] = boneAnimation.rotationTimes()[i];
+                rotations.put(boneAnimation.rotations().get(i));
+            }
+            scalings.offsets[id] = scalings.keys;
+            for (int i = 0; i < boneAnimation.scaleTimes().length; i++) {
+                scalings.times[scalings.keys] = boneAnimation.scaleTimes()[i];
+                scalings.put(boneAnimation.scalings().get(i));
+            }
+        }
+        positions.offsets[numBones] = positions.keys;
+        rotations.offsets[numBones] = rotations.keys;
+        scalings.offsets[numBones] = scalings.keys;
+
+        return new BakedAnimation(numBones, animated, positions, rotations, scalings, 0, 0);
+    }
+
+    /**
+     * Samples every animated bone at a fixed step from zero up to and including the duration. Between two samples, the
+     * result is interpolated linearly, so the resampled animation only approximates the original keys, and more
+     * closely the smaller the step is.
+     *
+     * @param durationTicks the duration of the animation in ticks
+     * @param step          the time between two samples in ticks
+     * @return the resampled animation
+     */
+    public BakedAnimation resample(double durationTicks, double step) {
+        if (!(step > 0)) throw new IllegalArgumentException("Step must be positive: " + step);
+        int numSamples = (int) Math.ceil(durationTicks / step) + 1;
+
+        Channel positions = new Channel(numBones, 3), rotations = new Channel(numBones, 4), scalings = new Channel(numBones, 3);
+        for (int id = 0; id < numBones; id++) {
+            if (isAnimated(id)) {
+                positions.keys += numSamples;
+                rotations.keys += numSamples;
+                scalings.keys += numSamples;
+            }
+        }
+        positions.allocate(false);
+        rotations.allocate(false);
+        scalings.allocate(false);
+
+        Vector3f vector = new Vector3f();
+        Quaternionf quaternion = new Quaternionf();
+        for (int id = 0; id < numBones; id++) {
+            if (!isAnimated(id)) {
+                positions.skip(id);
+                rotations.skip(id);
+                scalings.skip(id);
+                continue;
+            }
+
+            positions.offsets[id] = positions.keys;
+            rotations.offsets[id] = rotations.keys;
+            scalings.offsets[id] = scalings.keys;
+            int positionCursor = -1, rotationCursor = -1, scaleCursor = -1;
+            for (int i = 0; i < numSamples; i++) {
+                double ticks = Math.min(i * step, durationTicks);
+                positionCursor = samplePosition(id, ticks, vector, positionCursor);
+                positions.put(vector);
+                rotationCursor = sampleRotation(id, ticks, quaternion, rotationCursor);
+                rotations.put(quaternion);
+                scaleCursor = sampleScaling(id, ticks, vector, scaleCursor);
+                scalings.put(vector);
+            }
+        }
+        positions.offsets[numBones] = positions.keys;
+        rotations.offsets[numBones] = rotations.keys;
+        scalings.offsets[numBones] = scalings.keys;
+
+        return new BakedAnimation(numBones, animated, positions, rotations, scalings, step, durationTicks);
+    }
+
+    public int getNumBones() {
+        return numBones;
+    }
+
+    public boolean isResampled() {
+        return step != 0;
+    }
+
+    public double getStep() {
+        return step;
+    }
+
+    /**
+     * @return whether the bone with the given id has any keys
+     */
+    public boolean isAnimated(int boneId) {
+        return boneId < numBones && animated[boneId];
+    }
+
+    /**
+     * Interpolates the position of a bone at the given time.
+     *
+     * @param boneId the id of an {@link #isAnimated(int) animated} bone
+     * @param ticks  the time in ticks
+     * @param target the vector to store the position in
+     * @param cursor the result of the last call for this bone, or any value if there was none
+     * @return the cursor to pass on to the next call for this bone
+     */
+    public int samplePosition(int boneId, double ticks, Vector3f target, int cursor) {
+        return sampleVector(positions, boneId, ticks, target, cursor);
+    }
+
+    /**
+     * Interpolates the scaling of a bone at the given time, like {@link #samplePosition(int, double, Vector3f, int)}.
+     */
+    public int sampleScaling(int boneId, double ticks, Vector3f target, int cursor) {
+        return sampleVector(scalings, boneId, ticks, target, cursor);
+    }
+
+    /**
+     * Interpolates the rotation of a bone at the given time, like {@link #samplePosition(int, double, Vector3f, int)}.
+     */
+    public int sampleRotation(int boneId, double ticks, Quaternionf target, int cursor) {
+        int from = rotations.offsets[boneId];
+        int index = find(rotations, boneId, ticks, cursor);
+        float[] values = rotations.values;
+
+        if (index == -1) {
+            int first = 4 * from;
+            target.set(values[first], values[first + 1], values[first + 2], values[first + 3]);
+            return cursor;
+        }
+
+        float t = interpolationFactor(rotations, from, index, ticks);
+        int a = 4 * index, b = a + 4;
+        slerp(values[a], values[a + 1], values[a + 2], values[a + 3],
+                values[b], values[b + 1], values[b + 2], values[b + 3],
+                t, target);
+        return index;
+    }
+
+    private int sampleVector(Channel channel, int boneId, double ticks, Vector3f target, int cursor) {
+        int from = channel.offsets[boneId];
+        int index = find(channel, boneId, ticks, cursor);
+        float[] values = channel.values;
+
+        if (index == -1) {
+            int first = 3 * from;
+            target.set(values[first], values[first + 1], values[first + 2]);
+            return cursor;
+        }
+
+        float t = interpolationFactor(channel, from, index, ticks);
+        int a = 3 * index, b = a + 3;
+        target.set(
+                Math.fma(values[b] - values[a], t, values[a]),
+                Math.fma(values[b + 1] - values[a + 1], t, values[a + 1]),
+                Math.fma(values[b + 2] - values[a + 2], t, values[a + 2])
+        );
+        return index;
+    }
+
+    private int find(Channel channel, int boneId, double ticks, int cursor) {
+        int from = channel.offsets[boneId], to = channel.offsets[boneId + 1];
+        if (step == 0) return Keyframes.find(channel.times, from, to, ticks, cursor);
+
+        if (to - from < 2 || ticks < 0) return -1;
+        return from + Math.min((int) (ticks / step), to - from - 2);
+    }
+
+    private float interpolationFactor(Channel channel, int from, int index, double ticks) {
+        if (step == 0) {
+            double[] times = channel.times;
+            return (float) ((ticks - times[index]) / (times[index + 1] - times[index]));
+        }
+        //the last sample lies on the duration, which need not be a whole step after the one before it
+        double start = (index - from) * step;
+        return (float) Math.min((ticks - start) / (Math.min(start + step, durationTicks) - start), 1);
+    }
+
+    /**
+     * Spherical linear interpolation as done by {@link Quaternionf#slerp(Quaternionfc, float, Quaternionf)}, without
+     * requiring either key to be an object.
+     */
+    private static void slerp(float ax, float ay, float az, float aw,
+                              float bx, float by, float bz, float bw,
+                              float alpha, Quaternionf target) {
+        float cosom = Math.fma(ax, bx, Math.fma(ay, by, Math.fma(az, bz, aw * bw)));
+        float absCosom = Math.abs(cosom);
+        float scale0, scale1;
+        if (1.0f - absCosom > 1E-6f) {
+            float sinSqr = 1.0f - absCosom * absCosom;
+            float sinom = (float) (1.0 / Math.sqrt(sinSqr));
+            float omega = (float) Math.atan2(sinSqr * sinom, absCosom);
+            scale0 = (float) (Math.sin((1.0 - alpha) * omega) * sinom);
+            scale1 = (float) (Math.sin(alpha * omega) * sinom);
+        } else {
+            scale0 = 1.0f - alpha;
+            scale1 = alpha;
+        }
+        scale1 = cosom >= 0.0f ? scale1 : -scale1;
+        target.set(
+                Math.fma(scale0, ax, scale1 * bx),
+                Math.fma(scale0, ay, scale1 * by),
+                Math.fma(scale0, az, scale1 * bz),
+                Math.fma(scale0, aw, scale1 * bw)
+        );
+    }
+
+    private static final class Channel {
+        private final int components;
+        private final int[] offsets;
+        private double[] times;
+        private float[] values;
+
+        private int keys;
+
+        private Channel(int numBones, int components) {
+            this.components = components;
+            this.offsets = new int[numBones + 1];
+        }
+
+        private void allocate(boolean withTimes) {
+            times = withTimes ? new double[keys] : null;
+            values = new float[components * keys];
+            keys = 0;
+        }
+
+        private void skip(int boneId) {
+            offsets[boneId] = keys;
+        }
+
+        private void put(Vector3fc vector) {
+            int offset = 3 * keys++;
+            values[offset] = vector.x();
+            values[offset + 1] = vector.y();
+            values[offset + 2] = vector.z();
+        }
+
+        private void put(Quaternionfc quaternion) {
+            int offset = 4 * keys++;
+            values[offset] = quaternion.x();
+            values[offset + 1] = quaternion.y();
+            values[offset + 2] = quaternion.z();
+            values[offset + 3] = quaternion.w();
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.etieskrill.engine.graphics.animation;
+
+/**
+ * Lookup of keyframes in a channel of ascending key times.
+ */
+public final class Keyframes {
+
+    private Keyframes() {
+    }
+
+    /**
+     * Finds the first key such that {@code ticks} lies between its time and the time of the key after it.
+     * <p>
+     * Since playback mostly advances by less than a key per frame, the key found by the last lookup in the same channel
+     * is checked first, then the one after it. Only if neither matches, e.g. after seeking or wrapping around, the key
+     * is searched for in logarithmic time.
+     *
+     * @param timings the key times, in ascending order
+     * @param ticks   the time to look up
+     * @param cursor  the result of the last lookup in this channel, or any value if there was none
+     * @return the index of the key, or {@code -1} if {@code ticks} lies outside the keys, or there are fewer than two
+     */
+    public static int find(double[] timings, double ticks, int cursor) {
+        return find(timings, 0, timings.length, ticks, cursor);
+    }
+
+    /**
+     * Like {@link #find(double[], double, int)}, but only considers the keys in {@code [from, to)}, so that several
+     * channels may share one array.
+     *
+     * @return the index of the key in {@code timings}, or {@code -1} if {@code ticks} lies outside the keys in the
+     * range, or the range holds fewer than two
+     */
+    public static int find(double[] timings, int from, int to, double ticks, int cursor) {
+        if (matches(timings, from, to, ticks, cursor)) return cursor;
+        if (matches(timings, from, to, ticks, cursor + 1)) return cursor + 1;
+        return search(timings, from, to, ticks);
+    }
+
+    private static boolean matches(double[] timings, int from, int to, double ticks, int index) {
+        if (index < from || index >= to - 1) return false;
+        if (ticks > timings[index + 1]) return false;
+        //if ticks lies exactly on this key, it already lies between the previous two
+        return index == from ? timings[from] <= ticks : timings[index] < ticks;
+    }
+
+    private static int search(double[] timings, int from, int to, double ticks) {
+        if (to - from < 2 || ticks < timings[from] || ticks > timings[to - 1]) return -1;
+
+        int low = from, high = to - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timings[mid] < ticks) low = mid + 1;
+            else high = mid;
+        }
+        return Math.max(low - 1, from);
+    }
+
+}
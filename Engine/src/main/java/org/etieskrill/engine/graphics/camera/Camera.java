@@ -295,6 +295,24 @@ public abstract class Camera implements UniformMappable {
         return getCombined().testAab(aabb.minX(), aabb.minY(), aabb.minZ(), aabb.maxX(), aabb.maxY(), aabb.maxZ());
     }
 
+    /**
+     * Estimates the radius in pixels which the world-space sphere at {@code center} with size {@code radius} covers
+     * in the {@link Camera#viewportSize viewport}, e.g. to pick a level of detail by.
+     *
+     * @param center the center point of the sphere
+     * @param radius the radius of the sphere
+     * @return the projected radius in pixels, or {@link Float#POSITIVE_INFINITY} if the sphere contains the camera
+     */
+    public float projectedRadius(Vector3fc center, float radius) {
+        update();
+        float pixelsPerUnit = projection.m11() * viewportSize.y / 2f;
+        if (projection.m23() == 0) return radius * pixelsPerUnit; //orthographic
+
+        float depth = -view.transformPosition(center, vector).z();
+        if (depth <= radius) return Float.POSITIVE_INFINITY;
+        return radius * pixelsPerUnit / depth;
+    }
+
     /**
      * Casts a ray in world space from this camera's {@link Camera#position} through the pixel defined by {@code x} and
      * {@code y} in the {@link Camera#viewportSize viewport}.
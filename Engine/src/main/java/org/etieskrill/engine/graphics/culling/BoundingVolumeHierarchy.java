@@ -0,0 +1,484 @@
+package org.etieskrill.engine.graphics.culling;
+
+import org.jetbrains.annotations.NotNull;
+import org.joml.Matrix4fc;
+import org.joml.Vector4f;
+import org.joml.primitives.AABBf;
+import org.joml.primitives.AABBfc;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A dynamic tree of axis-aligned bounding boxes, which finds all items visible to any number of view frusta in a single
+ * traversal, instead of testing every item against every frustum.
+ * <p>
+ * Items are stored in the leaves with bounds enlarged by a margin, so an item moving by less than the margin does not
+ * change the tree at all. An item leaving its enlarged bounds is removed and reinserted, and all its ancestors are
+ * refitted on the way back up. Leaves are inserted next to the sibling which least increases the surface area of the
+ * tree, and subtrees are rotated to keep the tree balanced, so incremental changes never require a full rebuild.
+ * <p>
+ * Nodes are kept in flat arrays and referenced by index, and an item is identified by the index of its leaf, the
+ * proxy, which stays the same until the item is removed.
+ * <p>
+ * A {@code BoundingVolumeHierarchy} is not thread safe.
+ *
+ * @param <T> the type of item
+ */
+public final class BoundingVolumeHierarchy<T> {
+
+    public static final float DEFAULT_MARGIN = .1f;
+
+    private static final int NULL = -1;
+    private static final int BOUNDS_SIZE = 6;
+    private static final int PLANES = 6, PLANE_SIZE = 4;
+    private static final int ALL_PLANES = (1 << PLANES) - 1;
+    private static final int CULLED = -1;
+
+    private final float margin;
+
+    private int root = NULL;
+    private int size;
+    private int capacity;
+    private int freeList = NULL;
+
+    private float[] bounds = new float[0];
+    private int[] parents = new int[0];
+    private int[] lefts = new int[0];
+    private int[] rights = new int[0];
+    private int[] heights = new int[0];
+    private Object[] items = new Object[0];
+
+    private int[] stack = new int[64];
+    private int[] planeMasks = new int[0];
+    private float[] planes = new float[0];
+    private final Vector4f plane = new Vector4f();
+
+    public BoundingVolumeHierarchy() {
+        this(DEFAULT_MARGIN);
+    }
+
+    /**
+     * @param margin the distance by which the bounds of every item are enlarged
+     */
+    public BoundingVolumeHierarchy(float margin) {
+        if (margin < 0) throw new IllegalArgumentException("Margin must not be negative");
+        this.margin = margin;
+    }
+
+    /**
+     * Adds an item to the hierarchy.
+     *
+     * @return the proxy of the item, which is valid until the item is {@link #remove(int) removed}
+     */
+    public int insert(@NotNull T item, @NotNull AABBfc bounds) {
+        int leaf = allocateNode();
+        items[leaf] = item;
+        setEnlargedBounds(leaf, bounds);
+        insertLeaf(leaf);
+        size++;
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        checkProxy(proxy);
+        removeLeaf(proxy);
+        freeNode(proxy);
+        size--;
+    }
+
+    /**
+     * Moves an item to its new bounds. Unless they exceed the enlarged bounds the item is stored with, this does not
+     * change anything.
+     *
+     * @return whether the item had to be reinserted
+     */
+    public boolean update(int proxy, @NotNull AABBfc bounds) {
+        checkProxy(proxy);
+
+        int offset = BOUNDS_SIZE * proxy;
+        if (this.bounds[offset] <= bounds.minX()
+                && this.bounds[offset + 1] <= bounds.minY()
+                && this.bounds[offset + 2] <= bounds.minZ()
+                && this.bounds[offset + 3] >= bounds.maxX()
+                && this.bounds[offset + 4] >= bounds.maxY()
+                && this.bounds[offset + 5] >= bounds.maxZ()) {
+            return false;
+        }
+
+        removeLeaf(proxy);
+        setEnlargedBounds(proxy, bounds);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getItem(int proxy) {
+        checkProxy(proxy);
+        return (T) items[proxy];
+    }
+
+    /**
+     * @return the enlarged bounds of the item in {@code dest}
+     */
+    public AABBf getBounds(int proxy, @NotNull AABBf dest) {
+        checkProxy(proxy);
+        int offset = BOUNDS_SIZE * proxy;
+        return dest.setMin(bounds[offset], bounds[offset + 1], bounds[offset + 2])
+                .setMax(bounds[offset + 3], bounds[offset + 4], bounds[offset + 5]);
+    }
+
+    /**
+     * @return the number of items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of nodes on the longest path from the root to a leaf, or zero if the hierarchy is empty
+     */
+    public int getHeight() {
+        return root == NULL ? 0 : heights[root] + 1;
+    }
+
+    public void clear() {
+        Arrays.fill(items, null);
+        root = NULL;
+        size = 0;
+        capacity = 0;
+        freeList = NULL;
+        grow();
+    }
+
+    /**
+     * Finds the items whose enlarged bounds intersect the frustum of any of the given views. Every frustum plane is
+     * only tested until a subtree lies entirely on its inner side, so subtrees which are fully visible in a view cost no
+     * more tests at all.
+     *
+     * @param views   the combined view-projection matrices of all views
+     * @param visitor is given every visible item once for every view it is visible in
+     */
+    @SuppressWarnings("unchecked")
+    public void cull(@NotNull List<? extends Matrix4fc> views, @NotNull Visitor<? super T> visitor) {
+        int numViews = views.size();
+        if (root == NULL || numViews == 0) return;
+
+        if (planes.length < PLANES * PLANE_SIZE * numViews) planes = new float[PLANES * PLANE_SIZE * numViews];
+        for (int view = 0; view < numViews; view++) {
+            Matrix4fc matrix = views.get(view);
+            for (int i = 0; i < PLANES; i++) {
+                matrix.frustumPlane(i, plane);
+                int p = PLANE_SIZE * (PLANES * view + i);
+                planes[p] = plane.x;
+                planes[p + 1] = plane.y;
+                planes[p + 2] = plane.z;
+                planes[p + 3] = plane.w;
+            }
+        }
+
+        ensureTraversalCapacity(numViews);
+        int top = 0;
+        stack[0] = root;
+        Arrays.fill(planeMasks, 0, numViews, ALL_PLANES);
+
+        while (top >= 0) {
+            int node = stack[top];
+            int masks = numViews * top;
+
+            boolean visible = false;
+            for (int view = 0; view < numViews; view++) {
+                int mask = planeMasks[masks + view];
+                if (mask == CULLED) continue;
+                if (mask != 0) planeMasks[masks + view] = mask = testPlanes(node, view, mask);
+                if (mask != CULLED) visible = true;
+            }
+
+            if (!visible) {
+                top--;
+            } else if (lefts[node] == NULL) {
+                for (int view = 0; view < numViews; view++) {
+                    if (planeMasks[masks + view] != CULLED) visitor.visit((T) items[node], view);
+                }
+                top--;
+            } else {
+                //The left child takes the place of its parent, which keeps the masks, and the right one gets a copy
+                stack[top] = lefts[node];
+                stack[++top] = rights[node];
+                System.arraycopy(planeMasks, masks, planeMasks, masks + numViews, numViews);
+            }
+        }
+    }
+
+    private int testPlanes(int node, int view, int mask) {
+        int offset = BOUNDS_SIZE * node;
+        float minX = bounds[offset], minY = bounds[offset + 1], minZ = bounds[offset + 2];
+        float maxX = bounds[offset + 3], maxY = bounds[offset + 4], maxZ = bounds[offset + 5];
+
+        for (int i = 0; i < PLANES; i++) {
+            int bit = 1 << i;
+            if ((mask & bit) == 0) continue;
+
+            int p = PLANE_SIZE * (PLANES * view + i);
+            float a = planes[p], b = planes[p + 1], c = planes[p + 2], d = planes[p + 3];
+            //The corner furthest along the plane normal is outside, so the entire box is
+            if (a * (a < 0 ? minX : maxX) + b * (b < 0 ? minY : maxY) + c * (c < 0 ? minZ : maxZ) < -d) {
+                return CULLED;
+            }
+            //The corner furthest against the plane normal is inside, so the entire box is
+            if (a * (a < 0 ? maxX : minX) + b * (b < 0 ? maxY : minY) + c * (c < 0 ? maxZ : minZ) >= -d) {
+                mask &= ~bit;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Finds the items whose enlarged bounds intersect the given bounds.
+     */
+    @SuppressWarnings("unchecked")
+    public void query(@NotNull AABBfc bounds, @NotNull Consumer<? super T> consumer) {
+        if (root == NULL) return;
+
+        ensureTraversalCapacity(0);
+        int top = 0;
+        stack[0] = root;
+        while (top >= 0) {
+            int node = stack[top--];
+            int offset = BOUNDS_SIZE * node;
+            if (this.bounds[offset] > bounds.maxX() || this.bounds[offset + 3] < bounds.minX()
+                    || this.bounds[offset + 1] > bounds.maxY() || this.bounds[offset + 4] < bounds.minY()
+                    || this.bounds[offset + 2] > bounds.maxZ() || this.bounds[offset + 5] < bounds.minZ()) {
+                continue;
+            }
+
+            if (lefts[node] == NULL) {
+                consumer.accept((T) items[node]);
+            } else {
+                stack[++top] = lefts[node];
+                stack[++top] = rights[node];
+            }
+        }
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parents[leaf] = NULL;
+            return;
+        }
+
+        int sibling = root;
+        while (lefts[sibling] != NULL) {
+            int left = lefts[sibling], right = rights[sibling];
+
+            float area = area(sibling);
+            float combinedArea = unionArea(sibling, leaf);
+            //Pairing the leaf with this node creates a new parent with the combined area, and descending further
+            //enlarges this node to the combined area in any case
+            float cost = 2 * combinedArea;
+            float inheritedCost = 2 * (combinedArea - area);
+            float leftCost = descendCost(left, leaf) + inheritedCost;
+            float rightCost = descendCost(right, leaf) + inheritedCost;
+
+            if (cost < leftCost && cost < rightCost) break;
+            sibling = leftCost < rightCost ? left : right;
+        }
+
+        int oldParent = parents[sibling];
+        int parent = allocateNode();
+        parents[parent] = oldParent;
+        heights[parent] = heights[sibling] + 1;
+        setUnion(parent, sibling, leaf);
+        replaceChild(oldParent, sibling, parent);
+        lefts[parent] = sibling;
+        rights[parent] = leaf;
+        parents[sibling] = parent;
+        parents[leaf] = parent;
+
+        refitAncestors(parent);
+    }
+
+    private float descendCost(int node, int leaf) {
+        return lefts[node] == NULL ? unionArea(node, leaf) : unionArea(node, leaf) - area(node);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int parent = parents[leaf];
+        int grandParent = parents[parent];
+        int sibling = lefts[parent] == leaf ? rights[parent] : lefts[parent];
+
+        replaceChild(grandParent, parent, sibling);
+        parents[sibling] = grandParent;
+        freeNode(parent);
+
+        if (grandParent != NULL) refitAncestors(grandParent);
+    }
+
+    private void refitAncestors(int node) {
+        while (node != NULL) {
+            node = balance(node);
+            int left = lefts[node], right = rights[node];
+            heights[node] = 1 + Math.max(heights[left], heights[right]);
+            setUnion(node, left, right);
+            node = parents[node];
+        }
+    }
+
+    /**
+     * Rotates the taller child of {@code a} up if the heights of its children differ by more than one.
+     *
+     * @return the node now in place of {@code a}
+     */
+    private int balance(int a) {
+        if (lefts[a] == NULL || heights[a] < 2) return a;
+
+        int b = lefts[a], c = rights[a];
+        int balance = heights[c] - heights[b];
+
+        if (balance > 1) {
+            int f = lefts[c], g = rights[c];
+            lefts[c] = a;
+            parents[c] = parents[a];
+            parents[a] = c;
+            replaceChild(parents[c], a, c);
+
+            int up = heights[f] > heights[g] ? f : g, down = up == f ? g : f;
+            rights[c] = up;
+            rights[a] = down;
+            parents[down] = a;
+            setUnion(a, b, down);
+            setUnion(c, a, up);
+            heights[a] = 1 + Math.max(heights[b], heights[down]);
+            heights[c] = 1 + Math.max(heights[a], heights[up]);
+            return c;
+        }
+
+        if (balance < -1) {
+            int d = lefts[b], e = rights[b];
+            lefts[b] = a;
+            parents[b] = parents[a];
+            parents[a] = b;
+            replaceChild(parents[b], a, b);
+
+            int up = heights[d] > heights[e] ? d : e, down = up == d ? e : d;
+            rights[b] = up;
+            lefts[a] = down;
+            parents[down] = a;
+            setUnion(a, c, down);
+            setUnion(b, a, up);
+            heights[a] = 1 + Math.max(heights[c], heights[down]);
+            heights[b] = 1 + Math.max(heights[a], heights[up]);
+            return b;
+        }
+
+        return a;
+    }
+
+    private void replaceChild(int parent, int oldChild, int newChild) {
+        if (parent == NULL) root = newChild;
+        else if (lefts[parent] == oldChild) lefts[parent] = newChild;
+        else rights[parent] = newChild;
+    }
+
+    private void setEnlargedBounds(int node, AABBfc bounds) {
+        int offset = BOUNDS_SIZE * node;
+        this.bounds[offset] = bounds.minX() - margin;
+        this.bounds[offset + 1] = bounds.minY() - margin;
+        this.bounds[offset + 2] = bounds.minZ() - margin;
+        this.bounds[offset + 3] = bounds.maxX() + margin;
+        this.bounds[offset + 4] = bounds.maxY() + margin;
+        this.bounds[offset + 5] = bounds.maxZ() + margin;
+    }
+
+    private void setUnion(int dest, int a, int b) {
+        int d = BOUNDS_SIZE * dest, o1 = BOUNDS_SIZE * a, o2 = BOUNDS_SIZE * b;
+        for (int i = 0; i < 3; i++) {
+            bounds[d + i] = Math.min(bounds[o1 + i], bounds[o2 + i]);
+            bounds[d + 3 + i] = Math.max(bounds[o1 + 3 + i], bounds[o2 + 3 + i]);
+        }
+    }
+
+    /**
+     * @return half the surface area of the node's bounds
+     */
+    private float area(int node) {
+        int o = BOUNDS_SIZE * node;
+        float x = bounds[o + 3] - bounds[o], y = bounds[o + 4] - bounds[o + 1], z = bounds[o + 5] - bounds[o + 2];
+        return x * y + y * z + z * x;
+    }
+
+    private float unionArea(int a, int b) {
+        int o1 = BOUNDS_SIZE * a, o2 = BOUNDS_SIZE * b;
+        float x = Math.max(bounds[o1 + 3], bounds[o2 + 3]) - Math.min(bounds[o1], bounds[o2]);
+        float y = Math.max(bounds[o1 + 4], bounds[o2 + 4]) - Math.min(bounds[o1 + 1], bounds[o2 + 1]);
+        float z = Math.max(bounds[o1 + 5], bounds[o2 + 5]) - Math.min(bounds[o1 + 2], bounds[o2 + 2]);
+        return x * y + y * z + z * x;
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL) grow();
+
+        int node = freeList;
+        freeList = parents[node];
+        parents[node] = lefts[node] = rights[node] = NULL;
+        heights[node] = 0;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        items[node] = null;
+        heights[node] = NULL;
+        parents[node] = freeList;
+        freeList = node;
+    }
+
+    private void grow() {
+        int oldCapacity = capacity;
+        capacity = Math.max(16, 2 * capacity);
+
+        bounds = Arrays.copyOf(bounds, BOUNDS_SIZE * capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        items = Arrays.copyOf(items, capacity);
+
+        for (int i = oldCapacity; i < capacity; i++) {
+            parents[i] = i + 1 < capacity ? i + 1 : NULL;
+            heights[i] = NULL;
+        }
+        freeList = oldCapacity;
+    }
+
+    private void ensureTraversalCapacity(int numViews) {
+        //A depth-first traversal never holds more than one pending sibling per level
+        int depth = getHeight() + 1;
+        if (stack.length < depth) stack = new int[Math.max(depth, 2 * stack.length)];
+        if (planeMasks.length < depth * numViews) planeMasks = Arrays.copyOf(planeMasks, 2 * depth * numViews);
+    }
+
+    private void checkProxy(int proxy) {
+        if (proxy < 0 || proxy >= capacity || items[proxy] == null)
+            throw new IllegalArgumentException("Invalid proxy: " + proxy);
+    }
+
+    /**
+     * Receives the items visible in a view.
+     */
+    @FunctionalInterface
+    public interface Visitor<T> {
+        /**
+         * @param item the visible item
+         * @param view the index of the view the item is visible in
+         */
+        void visit(T item, int view);
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.etieskrill.engine.graphics.data
+
+import io.github.etieskrill.injection.extension.shader.Buffer
+import io.github.etieskrill.injection.extension.shader.BufferAccessor
+import org.joml.Matrix4f
+import org.joml.Vector3f
+import org.joml.Vector3fc
+import java.nio.ByteBuffer
+
+/**
+ * The uniforms which are the same for every shader during a frame, i.e. the camera, the lights and the shadow
+ * matrices. They are uploaded once per frame into a [uniform buffer][org.etieskrill.engine.graphics.gl.UniformBufferObject]
+ * backing the `Frame` block, instead of being set on every shader one by one.
+ *
+ * Lights exceeding [MAX_DIRECTIONAL_LIGHTS] or [MAX_POINT_LIGHTS] are ignored, and missing ones are zeroed, just as
+ * unset uniforms would be. All shadows are off by default, and [pointShadowFarPlane] is
+ * [DEFAULT_POINT_SHADOW_FAR_PLANE] until a light sets its own.
+ */
+class FrameUniforms {
+
+    val lightCombined = Matrix4f()
+    val viewPosition = Vector3f()
+    var hasShadowMap = false
+    var hasPointShadowMaps = false
+    var pointShadowFarPlane = DEFAULT_POINT_SHADOW_FAR_PLANE
+
+    val directionalLights: MutableList<DirectionalLight> = ArrayList(MAX_DIRECTIONAL_LIGHTS)
+    val pointLights: MutableList<PointLight> = ArrayList(MAX_POINT_LIGHTS)
+
+    fun clear() {
+        lightCombined.identity()
+        viewPosition.zero()
+        hasShadowMap = false
+        hasPointShadowMaps = false
+        pointShadowFarPlane = DEFAULT_POINT_SHADOW_FAR_PLANE
+        directionalLights.clear()
+        pointLights.clear()
+    }
+
+    companion object {
+        const val BLOCK_NAME = "Frame"
+        const val BINDING = 0
+
+        const val MAX_DIRECTIONAL_LIGHTS = 1
+        const val MAX_POINT_LIGHTS = 5
+
+        const val DEFAULT_POINT_SHADOW_FAR_PLANE = 20f
+    }
+
+}
+
+/**
+ * Packs [FrameUniforms] as laid out by the `std140` rules for the `Frame` block declared in `Phong.frag`:
+ *
+ * ```glsl
+ * layout (std140) uniform Frame {
+ *     mat4 lightCombined;                                 //  0
+ *     vec3 viewPosition;                                  // 64
+ *     bool hasShadowMap;                                  // 76
+ *     bool hasPointShadowMaps;                            // 80
+ *     float pointShadowFarPlane;                          // 84
+ *     DirectionalLight globalLights[NR_DIRECTIONAL_LIGHTS]; // 96, 64 bytes each
+ *     PointLight lights[NR_POINT_LIGHTS];                 // 160, 80 bytes each
+ * };
+ * ```
+ *
+ * Any change to the block must be mirrored here.
+ */
+object FrameUniformsAccessor : BufferAccessor<FrameUniforms> {
+
+    private const val LIGHT_COMBINED = 0
+    private const val VIEW_POSITION = 64
+    private const val HAS_SHADOW_MAP = 76
+    private const val HAS_POINT_SHADOW_MAPS = 80
+    private const val POINT_SHADOW_FAR_PLANE = 84
+
+    //Structs and their arrays are aligned to and padded to a multiple of 16 bytes, while a float may fill up a vec3
+    private const val DIRECTIONAL_LIGHTS = 96
+    private const val DIRECTIONAL_LIGHT_STRIDE = 64
+    private const val POINT_LIGHTS = DIRECTIONAL_LIGHTS + FrameUniforms.MAX_DIRECTIONAL_LIGHTS * DIRECTIONAL_LIGHT_STRIDE
+    private const val POINT_LIGHT_STRIDE = 80
+
+    override val elementByteSize = POINT_LIGHTS + FrameUniforms.MAX_POINT_LIGHTS * POINT_LIGHT_STRIDE
+
+    override fun map(elements: Collection<FrameUniforms>, buffer: Buffer<FrameUniforms>) {
+        val bytes = buffer.buffer.clear()
+        pack(elements.single(), bytes)
+        buffer.setData(bytes.limit(elementByteSize))
+    }
+
+    /**
+     * Writes the frame uniforms to the start of the buffer, regardless of its position.
+     */
+    fun pack(frame: FrameUniforms, bytes: ByteBuffer) {
+        for (i in 0..<elementByteSize step Int.SIZE_BYTES) bytes.putInt(i, 0)
+
+        frame.lightCombined.get(LIGHT_COMBINED, bytes)
+        putVec3(bytes, VIEW_POSITION, frame.viewPosition)
+        bytes.putInt(HAS_SHADOW_MAP, if (frame.hasShadowMap) 1 else 0)
+        bytes.putInt(HAS_POINT_SHADOW_MAPS, if (frame.hasPointShadowMaps) 1 else 0)
+        bytes.putFloat(POINT_SHADOW_FAR_PLANE, frame.pointShadowFarPlane)
+
+        for (i in 0..<minOf(frame.directionalLights.size, FrameUniforms.MAX_DIRECTIONAL_LIGHTS)) {
+            val light = frame.directionalLights[i]
+            val offset = DIRECTIONAL_LIGHTS + i * DIRECTIONAL_LIGHT_STRIDE
+            putVec3(bytes, offset, light.direction)
+            putVec3(bytes, offset + 16, light.ambient)
+            putVec3(bytes, offset + 32, light.diffuse)
+            putVec3(bytes, offset + 48, light.specular)
+        }
+
+        for (i in 0..<minOf(frame.pointLights.size, FrameUniforms.MAX_POINT_LIGHTS)) {
+            val light = frame.pointLights[i]
+            val offset = POINT_LIGHTS + i * POINT_LIGHT_STRIDE
+            putVec3(bytes, offset, light.position)
+            putVec3(bytes, offset + 16, light.ambient)
+            putVec3(bytes, offset + 32, light.diffuse)
+            putVec3(bytes, offset + 48, light.specular)
+            bytes.putFloat(offset + 60, light.constant)
+            bytes.putFloat(offset + 64, light.linear)
+            bytes.putFloat(offset + 68, light.quadratic)
+        }
+    }
+
+    private fun putVec3(bytes: ByteBuffer, offset: Int, vector: Vector3fc) {
+        bytes.putFloat(offset, vector.x())
+        bytes.putFloat(offset + 4, vector.y())
+        bytes.putFloat(offset + 8, vector.z())
+    }
+
+}
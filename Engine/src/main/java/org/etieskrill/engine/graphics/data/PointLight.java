@@ -35,6 +35,30 @@ public class PointLight implements UniformMappable {
         this.position.set(position);
     }
 
+    public Vector3f getAmbient() {
+        return ambient;
+    }
+
+    public Vector3f getDiffuse() {
+        return diffuse;
+    }
+
+    public Vector3f getSpecular() {
+        return specular;
+    }
+
+    public float getConstant() {
+        return constant;
+    }
+
+    public float getLinear() {
+        return linear;
+    }
+
+    public float getQuadratic() {
+        return quadratic;
+    }
+
     @Override
     public boolean map(ShaderProgram.UniformMapper mapper) {
         mapper
@@ -10,10 +10,15 @@ import org.lwjgl.BufferUtils
 import org.lwjgl.opengl.GL11C.GL_BYTE
 import org.lwjgl.opengl.GL11C.GL_RED
 import org.lwjgl.opengl.GL15C.*
+import org.lwjgl.opengl.GL30C.GL_MAP_INVALIDATE_BUFFER_BIT
+import org.lwjgl.opengl.GL30C.GL_MAP_WRITE_BIT
 import org.lwjgl.opengl.GL30C.GL_R8I
+import org.lwjgl.opengl.GL30C.glMapBufferRange
+import org.lwjgl.opengl.GL31C.GL_UNIFORM_BUFFER
 import org.lwjgl.opengl.GL43C.GL_SHADER_STORAGE_BUFFER
 import org.lwjgl.opengl.GL43C.glClearBufferSubData
 import java.nio.ByteBuffer
+import java.nio.ByteOrder
 import io.github.etieskrill.injection.extension.shader.Buffer as StdBuffer
 
 open class BufferObject<T>(
@@ -50,7 +55,8 @@ open class BufferObject<T>(
     }
 
     enum class Target(val gl: Int) {
-        ARRAY(GL_ARRAY_BUFFER), ELEMENT_ARRAY(GL_ELEMENT_ARRAY_BUFFER), STORAGE_BUFFER(GL_SHADER_STORAGE_BUFFER)
+        ARRAY(GL_ARRAY_BUFFER), ELEMENT_ARRAY(GL_ELEMENT_ARRAY_BUFFER), STORAGE_BUFFER(GL_SHADER_STORAGE_BUFFER),
+        UNIFORM_BUFFER(GL_UNIFORM_BUFFER)
     }
 
     enum class Frequency { STATIC, STREAM, DYNAMIC }
@@ -132,6 +138,35 @@ open class BufferObject<T>(
         glBufferSubData(target.gl, offset, data)
     }
 
+    /**
+     * Maps the first [byteLength] bytes of the buffer object for writing, so data can be written to it directly instead
+     * of being staged in [buffer] and then copied. The previous contents are discarded, which lets the driver hand out
+     * fresh memory instead of waiting for draws still reading from the buffer.
+     *
+     * The buffer object must be [unmapped][unmap] before it is used again.
+     *
+     * @param byteLength the number of bytes to map, which must be positive
+     * @return the mapped memory, in native byte order
+     */
+    fun mapForWriting(byteLength: Int): ByteBuffer {
+        require(byteLength in 1..byteSize) { "Mapped length of $byteLength bytes is outside of buffer of $byteSize bytes" }
+        bind()
+        val mapped = glMapBufferRange(
+            target.gl, 0, byteLength.toLong(),
+            GL_MAP_WRITE_BIT or GL_MAP_INVALIDATE_BUFFER_BIT
+        )
+        return checkNotNull(mapped) { "Failed to map buffer object of type ${target.name}" }
+            .order(ByteOrder.nativeOrder())
+    }
+
+    /**
+     * @return `false` if the contents of the mapped buffer were corrupted and must be written again
+     */
+    fun unmap(): Boolean {
+        bind()
+        return glUnmapBuffer(target.gl)
+    }
+
     override fun dispose() {
         glDeleteBuffers(id)
     }
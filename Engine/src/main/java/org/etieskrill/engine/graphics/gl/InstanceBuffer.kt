@@ -0,0 +1,84 @@
+package org.etieskrill.engine.graphics.gl
+
+import org.etieskrill.engine.common.Disposable
+import org.etieskrill.engine.graphics.gl.BufferObject.Frequency.STREAM
+import org.joml.Matrix4fc
+import org.lwjgl.BufferUtils
+import org.lwjgl.opengl.GL33C.*
+import java.nio.ByteBuffer
+
+/**
+ * A stream of model matrices which is filled and uploaded once per frame, and read by vertex shaders as an instanced
+ * `mat4` attribute at [FIRST_ATTRIBUTE], which occupies four consecutive attribute locations.
+ */
+class InstanceBuffer(initialCapacity: Int = 1024) : Disposable {
+
+    var capacity = initialCapacity; private set
+    var size = 0; private set
+
+    private var bufferObject = createBufferObject(capacity)
+    private var data: ByteBuffer = BufferUtils.createByteBuffer(capacity * MATRIX_BYTES)
+
+    /**
+     * Replaces the contents with [count] column-major matrices from [matrices], and uploads them. The buffer grows to
+     * fit, but never shrinks.
+     */
+    fun setData(matrices: FloatArray, count: Int) {
+        if (count > capacity) {
+            while (capacity < count) capacity *= 2
+            bufferObject.dispose()
+            bufferObject = createBufferObject(capacity)
+            data = BufferUtils.createByteBuffer(capacity * MATRIX_BYTES)
+        }
+
+        data.clear()
+        data.asFloatBuffer().put(matrices, 0, count * MATRIX_SIZE)
+        data.limit(count * MATRIX_BYTES)
+        bufferObject.setData(data)
+        size = count
+    }
+
+    /**
+     * Points the instance attributes of the currently bound vertex array at the instances starting at [firstInstance].
+     * Since the attributes would otherwise keep referring to this buffer, they must be [disabled][unbindAttributes]
+     * after drawing.
+     */
+    fun bindAttributes(firstInstance: Int) {
+        require(firstInstance in 0..<size) { "Instance $firstInstance is out of bounds for $size instances" }
+
+        bufferObject.bind()
+        for (column in 0..<4) {
+            val location = FIRST_ATTRIBUTE + column
+            glEnableVertexAttribArray(location)
+            glVertexAttribPointer(
+                location, 4, GL_FLOAT, false,
+                MATRIX_BYTES, firstInstance.toLong() * MATRIX_BYTES + column * 4L * Float.SIZE_BYTES
+            )
+            glVertexAttribDivisor(location, 1)
+        }
+    }
+
+    fun unbindAttributes() {
+        for (column in 0..<4) glDisableVertexAttribArray(FIRST_ATTRIBUTE + column)
+    }
+
+    override fun dispose() = bufferObject.dispose()
+
+    private object Accessor : VertexArrayAccessor<Matrix4fc>() {
+        override fun registerFields() = addField<Matrix4fc> { matrix, buffer -> matrix.get(buffer) }
+    }
+
+    companion object {
+        /**
+         * The first attribute location after those of [org.etieskrill.engine.graphics.model.Vertex].
+         */
+        const val FIRST_ATTRIBUTE = 7
+
+        private const val MATRIX_SIZE = 16
+        private const val MATRIX_BYTES = MATRIX_SIZE * Float.SIZE_BYTES
+
+        private fun createBufferObject(capacity: Int) =
+            BufferObject(Accessor, capacity, frequency = STREAM)
+    }
+
+}
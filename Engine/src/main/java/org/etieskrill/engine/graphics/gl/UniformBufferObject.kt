@@ -0,0 +1,33 @@
+package org.etieskrill.engine.graphics.gl
+
+import io.github.etieskrill.injection.extension.shader.BufferAccessor
+import org.etieskrill.engine.common.Disposable
+import org.lwjgl.opengl.GL30C.glBindBufferBase
+import org.lwjgl.opengl.GL31C.GL_UNIFORM_BUFFER
+
+/**
+ * Backs a uniform block with a single element, which the [accessor] lays out as the block expects, usually with the
+ * `std140` layout. Every program reading the block must have it [bound][org.etieskrill.engine.graphics.gl.shader.ShaderProgram.bindUniformBlock]
+ * to the same binding point this buffer is bound to.
+ */
+class UniformBufferObject<T> @JvmOverloads constructor(
+    override val accessor: BufferAccessor<T>,
+    frequency: Frequency = Frequency.STREAM,
+    accessType: AccessType = AccessType.DRAW
+) : BufferObject<T>(accessor, 1, Target.UNIFORM_BUFFER, frequency, accessType), Disposable {
+
+    private val elements = ArrayList<T>(1)
+
+    fun setData(element: T) {
+        elements.add(element)
+        try {
+            setData(elements)
+        } finally {
+            elements.clear()
+        }
+    }
+
+    fun bind(binding: Int) = glBindBufferBase(GL_UNIFORM_BUFFER, binding, id)
+    fun unbind(binding: Int) = glBindBufferBase(GL_UNIFORM_BUFFER, binding, 0)
+
+}
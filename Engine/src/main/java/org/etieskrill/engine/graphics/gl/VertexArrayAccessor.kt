@@ -41,11 +41,18 @@ import org.joml.Vector4fc
 import org.joml.Vector4i
 import org.joml.Vector4ic
 import org.lwjgl.opengl.GL11C.*
+import org.lwjgl.opengl.GL30C.GL_HALF_FLOAT
 import java.nio.ByteBuffer
 import kotlin.reflect.KClass
 
 typealias FieldMapper<T> = (T, ByteBuffer) -> Unit
 
+/**
+ * Marks a component type of 16-bit floats, which are written as their bits by the [FieldMapper], e.g. via
+ * [java.lang.Float.floatToFloat16], and read as full floats in the shader. There is no Java or Kotlin type for them.
+ */
+abstract class HalfFloat private constructor() : Number()
+
 /**
  * @param T type of data accessed
  */
@@ -82,7 +89,8 @@ abstract class VertexArrayAccessor<T> : BufferAccessor<T> {
         val type: KClass<F>,
         componentType: KClass<out Number>? = null,
         val accessor: FieldMapper<T>,
-        val isNormalised: Boolean
+        val isNormalised: Boolean,
+        val location: Int? = null
     ) {
         val componentType: KClass<out Number> = componentType ?: parseComponentType(type)
 
@@ -93,19 +101,27 @@ abstract class VertexArrayAccessor<T> : BufferAccessor<T> {
         val fieldByteSize: Int = numComponents * numMatrixRows * componentByteSize
     }
 
+    /**
+     * @param componentType the type each component is stored as, if it differs from the one of the field type
+     * @param normalised    whether integer components are read as floats in `[-1, 1]`, or `[0, 1]` if unsigned
+     * @param location      the attribute location to bind the field to, which by default follows the previous field;
+     * fields after it continue from there, so a layout may skip locations it does not provide
+     */
     protected inline fun <reified F> addField(
         componentType: KClass<out Number>? = null,
         normalised: Boolean = false,
+        location: Int? = null,
         noinline mapper: FieldMapper<T>
-    ) = addField(F::class, componentType, normalised, mapper)
+    ) = addField(F::class, componentType, normalised, location, mapper)
 
     protected fun addField(
         type: KClass<*>,
         componentType: KClass<out Number>? = null,
         normalised: Boolean = false,
+        location: Int? = null,
         mapper: FieldMapper<T>
     ) {
-        fields += FieldAccessor(type, componentType, mapper, normalised)
+        fields += FieldAccessor(type, componentType, mapper, normalised, location)
     }
 
     protected abstract fun registerFields()
@@ -193,6 +209,7 @@ abstract class VertexArrayAccessor<T> : BufferAccessor<T> {
             Double::class -> GL_DOUBLE
             Byte::class -> GL_BYTE
             Short::class -> GL_SHORT
+            HalfFloat::class -> GL_HALF_FLOAT
             else -> error("Cannot determine gl component type for type: $type")
         }
 
@@ -202,6 +219,7 @@ abstract class VertexArrayAccessor<T> : BufferAccessor<T> {
             Double::class -> Double.SIZE_BYTES
             Byte::class -> Byte.SIZE_BYTES
             Short::class -> Short.SIZE_BYTES
+            HalfFloat::class -> Short.SIZE_BYTES
             else -> error("Cannot determine byte size for component type: $type")
         }
     }
@@ -113,17 +113,20 @@ data class VertexArrayObject<T> private constructor(
 
         val configLog = buildString {
             accessor.fields.forEach { field ->
+                if (field.location != null) bindingIndex = field.location
+                val isInteger = field.componentType in listOf(Int::class, Byte::class, Short::class)
                 for (matrixRow in 0 until field.numMatrixRows) {
                     glEnableVertexAttribArray(bindingIndex)
-                    when (field.componentType) {
-                        Int::class, Byte::class, Short::class ->
+                    when {
+                        isInteger && !field.isNormalised ->
                             glVertexAttribIPointer(
                                 bindingIndex,
                                 field.numComponents, field.glComponentType,
                                 totalStrideBytes, currentStrideBytes
                             )
 
-                        Float::class, Double::class -> //TODO attrib divisors for instancing
+                        //normalised integers are read as floats, so they go through the same path
+                        isInteger || field.componentType in listOf(HalfFloat::class, Float::class, Double::class) ->
                             glVertexAttribPointer(
                                 bindingIndex,
                                 field.numComponents, field.glComponentType,
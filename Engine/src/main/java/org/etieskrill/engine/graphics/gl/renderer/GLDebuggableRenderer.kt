@@ -14,8 +14,27 @@ abstract class GLDebuggableRenderer(
 
     var trianglesDrawn = 0; protected set
     var renderCalls = 0; protected set
+
+    /**
+     * The number of render calls which drew several instances at once, which are included in [renderCalls].
+     */
+    var instancedRenderCalls = 0; protected set
+
+    /**
+     * The number of meshes submitted, whether drawn on their own or as one of many instances.
+     */
+    var meshesSubmitted = 0; protected set
+
+    /**
+     * The number of triangles not drawn because a coarser level of detail was picked instead of the full mesh.
+     */
+    var trianglesSaved = 0; protected set
+
     protected var lastTrianglesDrawn = 0
     protected var lastRenderCalls = 0
+    protected var lastInstancedRenderCalls = 0
+    protected var lastMeshesSubmitted = 0
+    protected var lastTrianglesSaved = 0
     protected var timeQuery = -1
 
     protected var gpuTime = 0L
@@ -50,6 +69,12 @@ abstract class GLDebuggableRenderer(
         trianglesDrawn = 0
         lastRenderCalls = renderCalls
         renderCalls = 0
+        lastInstancedRenderCalls = instancedRenderCalls
+        instancedRenderCalls = 0
+        lastMeshesSubmitted = meshesSubmitted
+        meshesSubmitted = 0
+        lastTrianglesSaved = trianglesSaved
+        trianglesSaved = 0
     }
 
 }
@@ -1,6 +1,7 @@
 package org.etieskrill.engine.graphics.gl.renderer;
 
 import org.etieskrill.engine.graphics.camera.Camera;
+import org.etieskrill.engine.graphics.gl.BufferObject;
 import org.etieskrill.engine.graphics.gl.VertexArrayObject;
 import org.etieskrill.engine.graphics.gl.shader.ShaderProgram;
 import org.etieskrill.engine.graphics.gl.shader.impl.ParticleShader;
@@ -15,6 +16,7 @@ import org.joml.Matrix4fc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -26,6 +28,7 @@ public class GLParticleRenderer implements ParticleRenderer {
     public static final int MAX_PARTICLES = 10_000;
 
     private static final Matrix4fc IDENTITY = new Matrix4f();
+    private static final int MAX_UPLOAD_ATTEMPTS = 2;
 
     private final VertexArrayObject<Particle> vao;
     private final ShaderProgram particleShader;
@@ -40,7 +43,7 @@ public class GLParticleRenderer implements ParticleRenderer {
     public GLParticleRenderer() {
         this.vao = new VertexArrayObject<>(
                 ParticleVertexAccessor.INSTANCE, MAX_PARTICLES, null, null, null,
-                null, null
+                BufferObject.Frequency.STREAM, null
         );
         this.particleShader = EngineShaderLoader.INSTANCE
                 .load("particle_shader", ParticleShader::new);
@@ -80,13 +83,19 @@ public class GLParticleRenderer implements ParticleRenderer {
         shader.setUniform("size", emitter.getSize$engine());
         shader.setTexture("sprite", requireNonNullElse(emitter.getSprite$engine(), defaultParticleTexture));
 
-        vao.setVertices(emitter.getAliveParticles());
+        ParticlePool particles = emitter.getParticles();
+        if (particles.getSize() == 0) return;
+
+        if (!uploadVertices(particles)) {
+            logger.warn("Particle vertex buffer was corrupted while mapped, skipping emitter for this frame");
+            return;
+        }
         vao.bind();
 
         glDisable(GL_CULL_FACE);
         glDepthMask(false);
         glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
-        glDrawArrays(GL_POINTS, 0, emitter.getAliveParticles().size());
+        glDrawArrays(GL_POINTS, 0, particles.getSize());
         glBlendFunc(GL_ONE, GL_ZERO);
         glDepthMask(true);
         glEnable(GL_CULL_FACE);
@@ -94,6 +103,23 @@ public class GLParticleRenderer implements ParticleRenderer {
         vao.unbind();
     }
 
+    /**
+     * Writes the particles straight into the mapped vertex buffer, without going through particle objects. If the
+     * contents of the buffer are corrupted while it is mapped, e.g. by a change of the display mode, they are written
+     * once more.
+     *
+     * @return whether the vertex buffer holds the particles
+     */
+    private boolean uploadVertices(ParticlePool particles) {
+        BufferObject<Particle> vertexBuffer = vao.getVertexBuffer();
+        for (int attempt = 0; attempt < MAX_UPLOAD_ATTEMPTS; attempt++) {
+            ByteBuffer vertices = vertexBuffer.mapForWriting(particles.getSize() * ParticlePool.VERTEX_BYTE_SIZE);
+            particles.writeVertices(vertices);
+            if (vertexBuffer.unmap()) return true;
+        }
+        return false;
+    }
+
     @Override
     public void dispose() {
         vao.dispose();
@@ -10,6 +10,7 @@ import org.etieskrill.engine.entity.component.TransformC;
 import org.etieskrill.engine.graphics.Renderer;
 import org.etieskrill.engine.graphics.TextRenderer;
 import org.etieskrill.engine.graphics.camera.Camera;
+import org.etieskrill.engine.graphics.gl.InstanceBuffer;
 import org.etieskrill.engine.graphics.gl.shader.ShaderProgram;
 import org.etieskrill.engine.graphics.gl.shader.Shaders;
 import org.etieskrill.engine.graphics.gl.shader.Shaders_OutlineShaderKt;
@@ -17,8 +18,11 @@ import org.etieskrill.engine.graphics.gl.shader.impl.MissingShader;
 import org.etieskrill.engine.graphics.model.*;
 import org.etieskrill.engine.graphics.pipeline.DrawMode;
 import org.etieskrill.engine.graphics.pipeline.Pipeline;
+import org.etieskrill.engine.graphics.queue.RenderBackend;
+import org.etieskrill.engine.graphics.queue.RenderQueue;
 import org.etieskrill.engine.graphics.texture.AbstractTexture;
 import org.etieskrill.engine.util.EngineShaderLoader;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.joml.*;
 import org.lwjgl.system.MemoryStack;
@@ -40,6 +44,9 @@ public class GLRenderer extends GLTextRenderer implements Renderer, TextRenderer
 
     private final Map<ShaderProgram, ShaderTextureContext> textureContexts = new HashMap<>();
 
+    private final @Getter RenderBackend queueBackend = new QueueBackend();
+    private @Nullable InstanceBuffer instanceBuffer;
+
     public GLRenderer(GraphicsContext context) {
         super(context);
         this.context = context;
@@ -343,13 +350,15 @@ public class GLRenderer extends GLTextRenderer implements Renderer, TextRenderer
 
     private void renderMesh(Mesh mesh, ShaderProgram shader, boolean instanced, int numInstances) {
         bindMaterial(mesh.getMaterial(), shader);
+        shader.setUniform("compactVertices", mesh.isCompact(), false);
         mesh.getVao().bind();
 
         glEnable(GL_BLEND);
 
         int mode = shader instanceof Shaders.ShowNormalsShader ? GL_POINTS : mesh.getDrawMode().gl();
-        if (!instanced) glDrawElements(mode, mesh.getVao().getNumElements(), GL_UNSIGNED_INT, 0);
-        else glDrawElementsInstanced(mode, mesh.getVao().getNumElements(), GL_UNSIGNED_INT, 0, numInstances);
+        int numIndices = mesh.getLods().get(0).getNumIndices();
+        if (!instanced) glDrawElements(mode, numIndices, GL_UNSIGNED_INT, 0);
+        else glDrawElementsInstanced(mode, numIndices, GL_UNSIGNED_INT, 0, numInstances);
 
         var textureContext = getOrCreateShaderTextureContext(shader);
         textureContext.nextTexture = textureContext.manuallyBoundTextures + 1;
@@ -357,9 +366,11 @@ public class GLRenderer extends GLTextRenderer implements Renderer, TextRenderer
         resetMaterial(mesh.getMaterial());
 
         if (mesh.getDrawMode() == Mesh.DrawMode.TRIANGLES) {
-            setTrianglesDrawn(getTrianglesDrawn() + mesh.getVao().getNumElements() / 3);
+            setTrianglesDrawn(getTrianglesDrawn() + numIndices / 3 * (instanced ? numInstances : 1));
         }
         setRenderCalls(getRenderCalls() + 1);
+        if (instanced) setInstancedRenderCalls(getInstancedRenderCalls() + 1);
+        setMeshesSubmitted(getMeshesSubmitted() + (instanced ? numInstances : 1));
     }
 
     private void bindMaterial(Material material, ShaderProgram shader) {
@@ -380,4 +391,173 @@ public class GLRenderer extends GLTextRenderer implements Renderer, TextRenderer
         if (material.isTwoSided()) glEnable(GL_CULL_FACE);
     }
 
+    @Override
+    public void dispose() {
+        super.dispose();
+        if (instanceBuffer != null) instanceBuffer.dispose();
+    }
+
+    /**
+     * Draws a {@link RenderQueue} with the same uniforms as {@link #render(TransformC, Model, ShaderProgram, Camera)},
+     * but only sets what the queue changes.
+     */
+    private class QueueBackend implements RenderBackend {
+        private final Matrix4f matrix = new Matrix4f();
+        private final Matrix3f normalMatrix = new Matrix3f();
+
+        private @Nullable ShaderProgram shader;
+        private int modelLocation, normalLocation, meshLocation, textureScaleLocation, instancedLocation,
+                compactVerticesLocation;
+
+        @Override
+        public void begin(@NotNull Camera camera) {
+            context.checkThread$engine();
+            glEnable(GL_DEPTH_TEST);
+            glEnable(GL_BLEND);
+        }
+
+        @Override
+        public void setShader(@NotNull ShaderProgram shader, @Nullable Camera camera) {
+            if (camera != null) {
+                shader.setUniform("combined", camera.getCombined(), false);
+                shader.setUniform("invCombined", camera.getInvCombined(), false);
+                shader.setUniform("view", camera.getView(), false);
+                shader.setUniform("projection", camera.getProjection(), false);
+                shader.setUniform("camera", camera, false);
+            }
+            shader.start();
+            resolveUniforms(shader);
+        }
+
+        //Only the uniforms set per draw are resolved, the rest is set once per shader anyway
+        private void resolveUniforms(ShaderProgram shader) {
+            if (shader == this.shader) return;
+            this.shader = shader;
+            modelLocation = shader.getUniformLocation("model");
+            normalLocation = shader.getUniformLocation("normal");
+            meshLocation = shader.getUniformLocation("mesh");
+            textureScaleLocation = shader.getUniformLocation("textureScale");
+            instancedLocation = shader.getUniformLocation("instanced");
+            compactVerticesLocation = shader.getUniformLocation("compactVertices");
+        }
+
+        @Override
+        public void setMaterial(@NotNull ShaderProgram shader, @NotNull Material material) {
+            shader.setUniform("material", material, false);
+        }
+
+        @Override
+        public void setMesh(@NotNull ShaderProgram shader, @NotNull Mesh mesh) {
+            resolveUniforms(shader);
+            shader.setUniform(compactVerticesLocation, mesh.isCompact());
+            mesh.getVao().bind();
+        }
+
+        @Override
+        public void setCulling(boolean culling) {
+            if (culling) glEnable(GL_CULL_FACE);
+            else glDisable(GL_CULL_FACE);
+        }
+
+        @Override
+        public void setBlending(boolean blending) {
+            if (blending) glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+            else glBlendFunc(GL_ONE, GL_ZERO);
+        }
+
+        @Override
+        public void setOutline(boolean outline) {
+            if (outline) {
+                glEnable(GL_STENCIL_TEST);
+                glStencilOp(GL_KEEP, GL_KEEP, GL_REPLACE);
+                glStencilFunc(GL_ALWAYS, 0xFF, 0xFF);
+                glStencilMask(0xFF);
+            } else {
+                glDisable(GL_STENCIL_TEST);
+                glStencilMask(0x00);
+            }
+        }
+
+        @Override
+        public void setWireframe(boolean wireframe) {
+            glPolygonMode(GL_FRONT_AND_BACK, wireframe ? GL_LINE : GL_FILL);
+        }
+
+        @Override
+        public void setModelTransform(@NotNull ShaderProgram shader, float @NotNull [] matrices, int offset) {
+            resolveUniforms(shader);
+            matrix.set(matrices, offset);
+            shader.setUniform(modelLocation, matrix);
+            shader.setUniform(normalLocation, matrix.invert().transpose().get3x3(normalMatrix));
+        }
+
+        @Override
+        public void setMeshTransform(@NotNull ShaderProgram shader, float @NotNull [] matrices, int offset) {
+            resolveUniforms(shader);
+            shader.setUniform(meshLocation, matrix.set(matrices, offset));
+        }
+
+        @Override
+        public void setTextureScale(@NotNull ShaderProgram shader, float x, float y) {
+            resolveUniforms(shader);
+            shader.setUniform(textureScaleLocation, x, y);
+        }
+
+        @Override
+        public void draw(@NotNull ShaderProgram shader, @NotNull Mesh mesh, int lod) {
+            int mode = shader instanceof Shaders.ShowNormalsShader ? GL_POINTS : mesh.getDrawMode().gl();
+            Mesh.Lod range = mesh.getLods().get(lod);
+            glDrawElements(mode, range.getNumIndices(), GL_UNSIGNED_INT, (long) range.getFirstIndex() * Integer.BYTES);
+            countDraw(shader, mesh, lod, 1);
+        }
+
+        @Override
+        public void setInstances(float @NotNull [] matrices, int count) {
+            if (instanceBuffer == null) instanceBuffer = new InstanceBuffer(Math.max(count, 1024));
+            instanceBuffer.setData(matrices, count);
+        }
+
+        @Override
+        public void setInstancing(@NotNull ShaderProgram shader, boolean instancing) {
+            resolveUniforms(shader);
+            shader.setUniform(instancedLocation, instancing);
+        }
+
+        @Override
+        public void drawInstanced(@NotNull ShaderProgram shader, @NotNull Mesh mesh, int lod, int firstInstance, int count) {
+            if (instanceBuffer == null) throw new IllegalStateException("Instances must be set before drawing them");
+
+            instanceBuffer.bindAttributes(firstInstance);
+            int mode = shader instanceof Shaders.ShowNormalsShader ? GL_POINTS : mesh.getDrawMode().gl();
+            Mesh.Lod range = mesh.getLods().get(lod);
+            glDrawElementsInstanced(mode, range.getNumIndices(), GL_UNSIGNED_INT, (long) range.getFirstIndex() * Integer.BYTES, count);
+            instanceBuffer.unbindAttributes();
+
+            countDraw(shader, mesh, lod, count);
+            setInstancedRenderCalls(getInstancedRenderCalls() + 1);
+        }
+
+        private void countDraw(ShaderProgram shader, Mesh mesh, int lod, int instances) {
+            var textureContext = getOrCreateShaderTextureContext(shader);
+            textureContext.nextTexture = textureContext.manuallyBoundTextures + 1;
+
+            if (mesh.getDrawMode() == Mesh.DrawMode.TRIANGLES) {
+                int numIndices = mesh.getLods().get(lod).getNumIndices();
+                setTrianglesDrawn(getTrianglesDrawn() + numIndices / 3 * instances);
+                setTrianglesSaved(getTrianglesSaved() + (mesh.getLods().get(0).getNumIndices() - numIndices) / 3 * instances);
+            }
+            setRenderCalls(getRenderCalls() + 1);
+            setMeshesSubmitted(getMeshesSubmitted() + instances);
+        }
+
+        @Override
+        public void end() { //Restore the defaults the immediate render methods expect
+            glEnable(GL_CULL_FACE);
+            glBlendFunc(GL_ONE, GL_ZERO);
+            glDisable(GL_STENCIL_TEST);
+            glStencilMask(0x00);
+            glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
+        }
+    }
+
 }
@@ -28,6 +28,7 @@ import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static org.etieskrill.engine.config.ResourcePathsKt.SHADER_INCLUDE_PATH;
 import static org.etieskrill.engine.config.ResourcePathsKt.SHADER_PATH;
 import static org.etieskrill.engine.graphics.gl.GLUtils.*;
 import static org.etieskrill.engine.graphics.gl.shader.ShaderProgram.ShaderType.*;
@@ -62,16 +63,20 @@ public abstract class ShaderProgram implements Disposable,
     private final Set<String> unregisteredUniforms = new HashSet<>();
     private final Set<String> missingUniforms = new HashSet<>();
 
-    private final Map<Integer, Integer> cachedUniforms = new HashMap<>();
-    private final Map<Integer, Integer> cachedArrayUniforms = new HashMap<>();
+    private final UniformCache uniformCache = new UniformCache();
+    private final float[] matrix2 = new float[4], matrix3 = new float[9], matrix4 = new float[16];
 
     private final int MAX_TEXTURE_UNITS;
     private int currentTextureUnit;
     private final Map<String, Integer> boundTextures; //TODO this is actually per context, so it could use a ThreadLocal - it also causes incoherent state if #start() is not called properly
 
     private final Map<String, Integer> storageBuffers = new HashMap<>();
+    private final Map<String, Integer> uniformBlocks = new HashMap<>();
 
     private static final Logger genericLogger = LoggerFactory.getLogger(ShaderProgram.class);
+
+    private static final Regex INCLUDE_MATCHER = new Regex("#include \"([\\w./]+)\"");
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     public enum ShaderType {
@@ -283,6 +288,8 @@ public abstract class ShaderProgram implements Disposable,
         if (glGetProgrami(programID, GL_LINK_STATUS) != GL_TRUE)
             throw new ShaderCreationException("Shader program could not be linked", glGetProgramInfoLog(programID));
 
+        //linking resets all uniforms to their defaults, so nothing uploaded before holds anymore
+        uniformCache.clear();
         disposeShaders();
 
         //TODO debug manual / why links may fail
@@ -353,7 +360,7 @@ public abstract class ShaderProgram implements Disposable,
 
         //TODO use #line <nr> to improve debugging experience
 
-        String shaderSource = file.getSource();
+        String shaderSource = resolveIncludeDirectives(file.getSource(), new HashSet<>());
         if (file.getType() == COMPOSITE) {
             shaderSource = resolveShaderStagePragmaDirectives(shaderSource);
             //TODO filter for missing required directives - and add default?
@@ -370,6 +377,31 @@ public abstract class ShaderProgram implements Disposable,
         return shaderID;
     }
 
+    /**
+     * Splices the contents of any file from the {@link org.etieskrill.engine.config.ResourcePathsKt#SHADER_INCLUDE_PATH
+     * include directory} in place of an {@code #include "file"} line. Included files may include others, but every
+     * file is only spliced in once.
+     */
+    private static String resolveIncludeDirectives(String shaderSource, Set<String> includedFiles) {
+        StringBuilder resolvedSource = new StringBuilder();
+
+        for (String line : shaderSource.lines().toList()) {
+            MatchResult match = INCLUDE_MATCHER.matchEntire(line.strip());
+
+            if (match == null) {
+                resolvedSource.append(line).append("\n");
+                continue;
+            }
+
+            String file = match.getGroupValues().get(1);
+            if (includedFiles.add(file)) {
+                resolvedSource.append(resolveIncludeDirectives(getResource(SHADER_INCLUDE_PATH + file), includedFiles));
+            }
+        }
+
+        return resolvedSource.toString();
+    }
+
     private static String resolveShaderStagePragmaDirectives(String shaderSource) {
         StringBuilder resolvedSource = new StringBuilder();
         ShaderStage currentStage = ShaderStage.NONE;
@@ -481,6 +513,168 @@ public abstract class ShaderProgram implements Disposable,
         setUniform(name + "[" + index + "]", value, false);
     }
 
+    /**
+     * Sets a {@code mat4} array uniform from column-major matrices packed back to back, e.g. the bone matrices of an
+     * {@link org.etieskrill.engine.graphics.animation.Animator Animator}, without going through any matrix objects.
+     *
+     * @param name     the name of the array uniform
+     * @param matrices the packed matrices, sixteen floats each
+     * @param strict   whether to throw if the uniform was not registered
+     */
+    public void setUniformMatrix4Array(@NotNull String name, float @NotNull [] matrices, boolean strict) {
+        if (name.isBlank()) throw new IllegalArgumentException("Name must not be empty");
+        if (matrices.length == 0) return;
+
+        int location;
+        ArrayUniform uniform = arrayUniforms.get(name);
+        if (uniform != null) {
+            if (uniform.getType() != Uniform.Type.MAT4)
+                throw new ShaderUniformException("Uniform " + name + " is present but expected type " +
+                                                 uniform.getType().get().getSimpleName() + " does not match matrix array");
+            if (matrices.length > 16 * uniform.getSize())
+                throw new ShaderUniformException("Uniform array value is larger (" + matrices.length / 16
+                                                 + ") than uniform array size (" + uniform.getSize() + ")");
+            location = uniform.getLocation();
+        } else {
+            if (STRICT_UNIFORM_DETECTION && strict)
+                throw new ShaderUniformException("Attempted to set unregistered uniform in strict mode", name);
+
+            Integer cachedLocation = nonstrictUniformCache.get(name);
+            if (cachedLocation == null) {
+                cachedLocation = glGetUniformLocation(programID, name);
+                nonstrictUniformCache.put(name, cachedLocation);
+            }
+            location = cachedLocation;
+            if (location == -1) return;
+        }
+
+        uniformCache.bypass(location, matrices.length / 16);
+
+        if (AUTO_START_ON_VARIABLE_SET) bind();
+        glUniformMatrix4fv(location, false, matrices);
+    }
+
+    /**
+     * Resolves the location of a uniform once, so that it can be set through the typed setters, such as
+     * {@link #setUniform(int, Matrix4fc)}, without looking it up by name every time. Uniforms need not be registered to
+     * be resolved, and struct uniforms have no location of their own.
+     *
+     * @param name the name of the uniform
+     * @return the location of the uniform, or {@code -1} if it does not exist or is unused
+     */
+    public int getUniformLocation(@NotNull String name) {
+        if (name.isBlank()) throw new IllegalArgumentException("Name must not be empty");
+
+        Uniform uniform = uniforms.get(name);
+        if (uniform == null) uniform = arrayUniforms.get(name);
+        if (uniform != null) return Math.max(uniform.getLocation(), INVALID_UNIFORM_LOCATION);
+
+        Integer location = nonstrictUniformCache.get(name);
+        if (location == null) {
+            location = glGetUniformLocation(programID, name);
+            nonstrictUniformCache.put(name, location);
+        }
+        return location;
+    }
+
+    /*
+     * The typed setters take a location from getUniformLocation, and do not check the type of the uniform. A location
+     * of -1 is ignored, like in OpenGL. Values equal to the last one uploaded to the same location are skipped.
+     */
+
+    public void setUniform(int location, int value) {
+        if (location < 0 || !uniformCache.update(location, value)) return;
+        if (AUTO_START_ON_VARIABLE_SET) bind();
+        glUniform1i(location, value);
+    }
+
+    public void setUniform(int location, float value) {
+        if (location < 0 || !uniformCache.update(location, value)) return;
+        if (AUTO_START_ON_VARIABLE_SET) bind();
+        glUniform1f(location, value);
+    }
+
+    public void setUniform(int location, boolean value) {
+        setUniform(location, value ? 1 : 0);
+    }
+
+    public void setUniform(int location, float x, float y) {
+        if (location < 0 || !uniformCache.update(location, x, y)) return;
+        if (AUTO_START_ON_VARIABLE_SET) bind();
+        glUniform2f(location, x, y);
+    }
+
+    public void setUniform(int location, int x, int y) {
+        if (location < 0 || !uniformCache.update(location, x, y)) return;
+        if (AUTO_START_ON_VARIABLE_SET) bind();
+        glUniform2i(location, x, y);
+    }
+
+    public void setUniform(int location, float x, float y, float z) {
+        if (location < 0 || !uniformCache.update(location, x, y, z)) return;
+        if (AUTO_START_ON_VARIABLE_SET) bind();
+        glUniform3f(location, x, y, z);
+    }
+
+    public void setUniform(int location, float x, float y, float z, float w) {
+        if (location < 0 || !uniformCache.update(location, x, y, z, w)) return;
+        if (AUTO_START_ON_VARIABLE_SET) bind();
+        glUniform4f(location, x, y, z, w);
+    }
+
+    public void setUniform(int location, @NotNull Vector2fc value) {
+        setUniform(location, value.x(), value.y());
+    }
+
+    public void setUniform(int location, @NotNull Vector2ic value) {
+        setUniform(location, value.x(), value.y());
+    }
+
+    public void setUniform(int location, @NotNull Vector3fc value) {
+        setUniform(location, value.x(), value.y(), value.z());
+    }
+
+    public void setUniform(int location, @NotNull Vector4fc value) {
+        setUniform(location, value.x(), value.y(), value.z(), value.w());
+    }
+
+    public void setUniform(int location, @NotNull Matrix2fc value) {
+        if (location < 0 || !uniformCache.update(location, value.get(matrix2), matrix2.length)) return;
+        if (AUTO_START_ON_VARIABLE_SET) bind();
+        glUniformMatrix2fv(location, false, matrix2);
+    }
+
+    public void setUniform(int location, @NotNull Matrix3fc value) {
+        if (location < 0 || !uniformCache.update(location, value.get(matrix3), matrix3.length)) return;
+        if (AUTO_START_ON_VARIABLE_SET) bind();
+        glUniformMatrix3fv(location, false, matrix3);
+    }
+
+    public void setUniform(int location, @NotNull Matrix4fc value) {
+        if (location < 0 || !uniformCache.update(location, value.get(matrix4), matrix4.length)) return;
+        if (AUTO_START_ON_VARIABLE_SET) bind();
+        glUniformMatrix4fv(location, false, matrix4);
+    }
+
+    /**
+     * @return the number of uniform uploads issued since the counters were last reset
+     */
+    public int getIssuedUniformUploads() {
+        return uniformCache.getIssued();
+    }
+
+    /**
+     * @return the number of uniform uploads skipped because the value did not change since the counters were last
+     * reset
+     */
+    public int getSkippedUniformUploads() {
+        return uniformCache.getSkipped();
+    }
+
+    public void resetUniformCounters() {
+        uniformCache.resetCounters();
+    }
+
     /**
      * Binds a {@link AbstractTexture Texture} to a shader's uniform sampler. This requires {@link #start()} to be
      * called before beginning a render pass and before calling this method to work properly.
@@ -635,40 +829,26 @@ public abstract class ShaderProgram implements Disposable,
         if (type == null)
             throw new ShaderUniformException("Could not determine uniform type for " + value.getClass().getSimpleName());
 
-//        if (new Vector2f(0).hashCode() == new Vector2f(2).hashCode()) { //who'd've thought my demons would come to haunt me this quickly
-//            throw new RuntimeException("Thats crazy thats crazy thats messed up");
-//        }
-
-        //FIXME due to usage of hashCode, collisions are quite high, especially at "usual" values - so just compare actual values - and then improvement is probs, like, insignificant
-//        Integer hashCode = cachedUniforms.get(location); // hashCode because joml tries to be smart and first checks for object reference equality
-//        if (hashCode != null && value.hashCode() == hashCode) return;
-//        else cachedUniforms.put(location, value.hashCode());
-
-        if (AUTO_START_ON_VARIABLE_SET) bind(); //TODO replace with dsa if viable
-
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            switch (type) {
-                case INT, SAMPLER_2D, SAMPLER_2D_ARRAY, SAMPLER_2D_SHADOW, SAMPLER_CUBE_MAP, SAMPLER_CUBE_MAP_ARRAY,
-                     SAMPLER_CUBE_MAP_ARRAY_SHADOW -> glUniform1i(location, (Integer) value);
-                case FLOAT -> glUniform1f(location, (Float) value);
-                case BOOLEAN -> glUniform1f(location, (boolean) value ? 1 : 0);
-                case VEC2 -> glUniform2fv(location, ((Vector2f) value).get(stack.mallocFloat(2)));
-                case VEC2I -> glUniform2iv(location, ((Vector2i) value).get(stack.mallocInt(2)));
-                case VEC3 -> glUniform3fv(location, ((Vector3f) value).get(stack.mallocFloat(3)));
-                case VEC4 -> glUniform4fv(location, ((Vector4f) value).get(stack.mallocFloat(4)));
-                case MAT2 -> glUniformMatrix2fv(location, false, ((Matrix2f) value).get(stack.mallocFloat(4)));
-                case MAT3 -> glUniformMatrix3fv(location, false, ((Matrix3f) value).get(stack.mallocFloat(9)));
-                case MAT4 -> glUniformMatrix4fv(location, false, ((Matrix4f) value).get(stack.mallocFloat(16)));
-                default ->
-                        throw new IllegalArgumentException("Unknown uniform value type: " + type + " (" + type.get().getSimpleName() + ")");
-            }
+        switch (type) {
+            case INT, SAMPLER_2D, SAMPLER_2D_ARRAY, SAMPLER_2D_SHADOW, SAMPLER_CUBE_MAP, SAMPLER_CUBE_MAP_ARRAY,
+                 SAMPLER_CUBE_MAP_ARRAY_SHADOW -> setUniform(location, (int) (Integer) value);
+            case FLOAT -> setUniform(location, (float) (Float) value);
+            case BOOLEAN -> setUniform(location, (boolean) (Boolean) value);
+            case VEC2 -> setUniform(location, (Vector2fc) value);
+            case VEC2I -> setUniform(location, (Vector2ic) value);
+            case VEC3 -> setUniform(location, (Vector3fc) value);
+            case VEC4 -> setUniform(location, (Vector4fc) value);
+            case MAT2 -> setUniform(location, (Matrix2fc) value);
+            case MAT3 -> setUniform(location, (Matrix3fc) value);
+            case MAT4 -> setUniform(location, (Matrix4fc) value);
+            default ->
+                    throw new IllegalArgumentException("Unknown uniform value type: " + type + " (" + type.get().getSimpleName() + ")");
         }
     }
 
     void setUniformArrayValue(Uniform.Type type, int location, Object[] value) {
-        Integer hashCode = cachedUniforms.get(location); // hashCode because joml tries to be smart and first checks for object reference equality
-        if (hashCode != null && Arrays.hashCode(value) == hashCode) return;
-        else cachedUniforms.put(location, Arrays.hashCode(value));
+        //arrays are uploaded in one call and thus not cached, but they overwrite the cached values of their elements
+        uniformCache.bypass(location, value.length);
 
         if (AUTO_START_ON_VARIABLE_SET) bind();
 
@@ -1020,6 +1200,31 @@ public abstract class ShaderProgram implements Disposable,
         logger.warn("Storage buffer binding point with name '{}' not found", name);
     }
 
+    /**
+     * Makes the uniform block called {@code blockName} read from whichever uniform buffer is bound to the binding
+     * point. The program remembers the binding, so calling this again with the same binding point is cheap.
+     *
+     * @param blockName the name of the block, not of its instance
+     * @param binding   the binding point
+     * @return whether the program has a uniform block with the name
+     */
+    public boolean bindUniformBlock(@NotNull String blockName, int binding) {
+        Integer boundTo = uniformBlocks.get(blockName);
+        if (boundTo != null && (boundTo == binding || boundTo == INVALID_UNIFORM_LOCATION))
+            return boundTo != INVALID_UNIFORM_LOCATION;
+
+        int index = glGetUniformBlockIndex(programID, blockName);
+        if (index == GL_INVALID_INDEX) {
+            uniformBlocks.put(blockName, INVALID_UNIFORM_LOCATION);
+            return false;
+        }
+
+        glUniformBlockBinding(programID, index, binding);
+        uniformBlocks.put(blockName, binding);
+        logger.trace("Bound uniform block '{}' to binding point {}", blockName, binding);
+        return true;
+    }
+
     protected void disableStrictUniformChecking() {
         this.STRICT_UNIFORM_DETECTION = false;
     }
@@ -1045,6 +1250,7 @@ public abstract class ShaderProgram implements Disposable,
         glDetachShader(programID, fragID);
         glDeleteShader(fragID);
         glDeleteProgram(programID);
+        uniformCache.clear();
     }
 
 }
@@ -0,0 +1,132 @@
+package org.etieskrill.engine.graphics.gl.shader;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+import static java.lang.Float.floatToRawIntBits;
+
+/**
+ * Keeps a copy of the last value uploaded to every uniform location of a single shader program, so that uploading the
+ * same value again can be skipped. Values are compared by their raw bits, not numerically, so {@code 0f} and
+ * {@code -0f} differ, while a {@code NaN} is equal to itself.
+ * <p>
+ * Every {@code update} method returns whether the value has to be uploaded, and counts the upload as either issued or
+ * skipped accordingly.
+ */
+final class UniformCache {
+
+    private int[][] values = new int[16][];
+
+    private int issued;
+    private int skipped;
+
+    boolean update(int location, int value) {
+        return update(location, 1, value, 0, 0, 0);
+    }
+
+    boolean update(int location, float value) {
+        return update(location, 1, floatToRawIntBits(value), 0, 0, 0);
+    }
+
+    boolean update(int location, int x, int y) {
+        return update(location, 2, x, y, 0, 0);
+    }
+
+    boolean update(int location, float x, float y) {
+        return update(location, 2, floatToRawIntBits(x), floatToRawIntBits(y), 0, 0);
+    }
+
+    boolean update(int location, float x, float y, float z) {
+        return update(location, 3, floatToRawIntBits(x), floatToRawIntBits(y), floatToRawIntBits(z), 0);
+    }
+
+    boolean update(int location, float x, float y, float z, float w) {
+        return update(location, 4,
+                floatToRawIntBits(x), floatToRawIntBits(y), floatToRawIntBits(z), floatToRawIntBits(w));
+    }
+
+    /**
+     * @param location the uniform location
+     * @param value    the value, e.g. a matrix in column-major order
+     * @param length   the number of floats in the value
+     */
+    boolean update(int location, float[] value, int length) {
+        int[] cached = get(location, length);
+        if (cached != null) {
+            int i = 0;
+            while (i < length && cached[i] == floatToRawIntBits(value[i])) i++;
+            if (i == length) {
+                skipped++;
+                return false;
+            }
+        } else {
+            cached = allocate(location, length);
+        }
+
+        for (int i = 0; i < length; i++) cached[i] = floatToRawIntBits(value[i]);
+        issued++;
+        return true;
+    }
+
+    /**
+     * Counts an upload which is not cached, such as that of a whole array, and forgets the values of all locations it
+     * overwrites.
+     *
+     * @param location the first location written
+     * @param count    the number of locations written, e.g. the length of the array
+     */
+    void bypass(int location, int count) {
+        for (int i = location; i < Math.min(location + count, values.length); i++) values[i] = null;
+        issued++;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+    }
+
+    int getIssued() {
+        return issued;
+    }
+
+    int getSkipped() {
+        return skipped;
+    }
+
+    void resetCounters() {
+        issued = 0;
+        skipped = 0;
+    }
+
+    private boolean update(int location, int length, int x, int y, int z, int w) {
+        int[] cached = get(location, length);
+        if (cached != null
+            && cached[0] == x
+            && (length < 2 || cached[1] == y)
+            && (length < 3 || cached[2] == z)
+            && (length < 4 || cached[3] == w)) {
+            skipped++;
+            return false;
+        }
+
+        if (cached == null) cached = allocate(location, length);
+        cached[0] = x;
+        if (length > 1) cached[1] = y;
+        if (length > 2) cached[2] = z;
+        if (length > 3) cached[3] = w;
+        issued++;
+        return true;
+    }
+
+    private int @Nullable [] get(int location, int length) {
+        if (location >= values.length) return null;
+        int[] cached = values[location];
+        return cached != null && cached.length == length ? cached : null;
+    }
+
+    private int[] allocate(int location, int length) {
+        if (location >= values.length) values = Arrays.copyOf(values, Math.max(location + 1, 2 * values.length));
+        return values[location] = new int[length];
+    }
+
+}
@@ -9,20 +9,21 @@ import java.util.List;
 
 import static org.etieskrill.engine.graphics.gl.shader.impl.StaticShaderKt.*;
 
+/**
+ * The Phong shader. The lights, the view position and the shadow parameters, including their defaults, are read from
+ * the {@code Frame} uniform block, so a {@link org.etieskrill.engine.graphics.data.FrameUniforms FrameUniforms} buffer
+ * must be bound to its binding point, as the {@code RenderService} does.
+ */
 @ReflectShader(files = {"Phong.vert", "Phong.frag"}) //TODO also extract superclass, supress with flag
 public class StaticShader extends ShaderProgram {
     public StaticShader() {
         super(List.of("Phong.vert", "Phong.frag"));
 
         setTextureScale(this, new Vector2f(1f));
+        setInstanced(this, false);
 
         setBlinnPhong(this, true);
 
-        setHasShadowMap(this, false);
-        setHasPointShadowMaps(this, false);
-
-        setPointShadowFarPlane(this, 20f);
-
         setUniform("material.colourDiffuse", new Vector4f(1f), false);
     }
 }
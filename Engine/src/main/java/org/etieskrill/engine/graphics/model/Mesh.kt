@@ -8,11 +8,43 @@ import org.lwjgl.opengl.GL33C.*
 class Mesh(
     var material: Material,
     val bones: List<Bone>?,
-    val vao: VertexArrayObject<Vertex>,
+    vao: VertexArrayObject<Vertex>,
     val boundingBox: AABBf,
     val drawMode: DrawMode
 ) : Disposable {
 
+    var vao = vao
+        internal set
+
+    /**
+     * Whether the vertices are laid out by the [Vertex.Companion.CompactAccessor], and need decoding in the shader.
+     */
+    val isCompact get() = vao.accessor === Vertex.Companion.CompactAccessor
+
+    /**
+     * The levels of detail, each a range of the index buffer, starting with the full mesh. Only the full mesh is
+     * present unless more are generated.
+     */
+    var lods: List<Lod> = listOf(Lod(0, vao.numElements, 0f))
+        internal set
+
+    /**
+     * @param firstIndex the offset into the index buffer
+     * @param error      how far the level deviates from the full mesh at most, in model space
+     */
+    data class Lod(val firstIndex: Int, val numIndices: Int, val error: Float)
+
+    /**
+     * @param maxError the largest deviation from the full mesh which is acceptable, in model space
+     * @return the index of the coarsest level of detail within the error
+     */
+    fun selectLod(maxError: Float): Int {
+        for (lod in lods.indices.reversed()) {
+            if (lods[lod].error <= maxError) return lod
+        }
+        return 0
+    }
+
     enum class DrawMode {
         POINTS, LINES, LINE_LOOP, LINE_STRIP, TRIANGLES, TRIANGLE_STRIP, TRIANGLE_FAN, QUADS;
 
@@ -6,6 +6,7 @@ import lombok.experimental.Accessors;
 import org.etieskrill.engine.common.Disposable;
 import org.etieskrill.engine.entity.component.Transform;
 import org.etieskrill.engine.graphics.animation.Animation;
+import org.etieskrill.engine.graphics.model.loader.MeshImportOptions;
 import org.etieskrill.engine.graphics.texture.Texture2D;
 import org.jetbrains.annotations.NotNull;
 import org.joml.primitives.AABBf;
@@ -49,6 +50,7 @@ public class Model implements Disposable {
 
         protected @Getter @Setter @Accessors(chain = true) boolean flipUVs = true;
         protected @Getter @Setter @Accessors(chain = true) boolean flipWinding = false;
+        protected final @Getter MeshImportOptions meshOptions;
         protected @Setter @Accessors(chain = true) boolean culling = true;
         protected @Getter @Setter @Accessors(fluent = true) boolean hasTransparency = false;
 
@@ -57,11 +59,20 @@ public class Model implements Disposable {
         protected @Getter @Setter AABBf boundingBox;
 
         public Builder(@NotNull String file) {
+            this(file, MeshImportOptions.NONE);
+        }
+
+        /**
+         * @param meshOptions the processing applied to all meshes on import, such as generating levels of detail, which
+         *                    must be known before loading, since the processed meshes are cached along with the model
+         */
+        public Builder(@NotNull String file, @NotNull MeshImportOptions meshOptions) {
             if (file.isBlank()) throw new IllegalArgumentException("File name cannot be blank");
             if (file.contains("/"))
                 throw new IllegalArgumentException("Custom folder structure not implemented yet: " + file);
             this.file = file;
             this.name = file.split("\\.")[0];
+            this.meshOptions = meshOptions;
 
             this.nodes = new ArrayList<>();
             this.meshes = new ArrayList<>();
@@ -1,10 +1,16 @@
 package org.etieskrill.engine.graphics.model
 
+import org.etieskrill.engine.graphics.animation.Animation.MAX_BONE_INFLUENCES
+import org.etieskrill.engine.graphics.gl.HalfFloat
 import org.etieskrill.engine.graphics.gl.VertexArrayAccessor
+import org.joml.Vector2f
 import org.joml.Vector2fc
+import org.joml.Vector3f
 import org.joml.Vector3fc
+import org.joml.Vector4f
 import org.joml.Vector4fc
 import org.joml.Vector4ic
+import java.lang.Float.floatToFloat16
 import java.nio.ByteBuffer
 import kotlin.math.pow
 import kotlin.math.roundToLong
@@ -44,6 +50,58 @@ data class Vertex(
                 }
             }
         }
+
+        /**
+         * Packs a vertex into 36 instead of the 88 bytes of the [Accessor], keeping the attribute locations the
+         * built-in shaders expect, which decode it if `compactVertices` is set:
+         * - the position as full floats
+         * - the normal as two octahedral components in signed normalised shorts
+         * - the texture coordinates as half floats
+         * - the tangent as two octahedral components, and the handedness of the bitangent, which is derived from
+         * normal and tangent, in signed normalised shorts padded to four
+         * - the bone ids as bytes, where vertices without bones get -1
+         * - the bone weights as signed normalised bytes
+         */
+        object CompactAccessor : VertexArrayAccessor<Vertex>() {
+            override fun registerFields() {
+                addField<Vector3fc> { it, buffer -> it.position.get(buffer) }
+                addField<Vector2fc>(Short::class, normalised = true, location = 1) { it, buffer ->
+                    val normal = it.normal ?: Vector3f()
+                    val octahedral = encodeOctahedral(normal.x(), normal.y(), normal.z(), Vector2f())
+                    buffer.putShort(toSnorm16(octahedral.x)).putShort(toSnorm16(octahedral.y))
+                }
+                addField<Vector2fc>(HalfFloat::class, location = 2) { it, buffer ->
+                    buffer.putShort(floatToFloat16(it.textureCoords?.x() ?: 0f))
+                        .putShort(floatToFloat16(it.textureCoords?.y() ?: 0f))
+                }
+                addField<Vector4fc>(Short::class, normalised = true, location = 3) { it, buffer ->
+                    val tangent = it.tangent
+                    if (tangent == null) {
+                        buffer.putLong(0)
+                        return@addField
+                    }
+                    val octahedral = encodeOctahedral(tangent.x(), tangent.y(), tangent.z(), Vector2f())
+                    val normal = it.normal ?: Vector3f()
+                    val biTangent = it.biTangent ?: Vector3f()
+                    val handedness = handedness(
+                        normal.x(), normal.y(), normal.z(),
+                        tangent.x(), tangent.y(), tangent.z(),
+                        biTangent.x(), biTangent.y(), biTangent.z()
+                    )
+                    buffer.putShort(toSnorm16(octahedral.x)).putShort(toSnorm16(octahedral.y))
+                        .putShort(toSnorm16(handedness)).putShort(0)
+                }
+                addField<Vector4ic>(Byte::class, location = 5) { it, buffer ->
+                    for (i in 0..<MAX_BONE_INFLUENCES) buffer.put(toBoneByte(it.bones?.get(i) ?: -1))
+                }
+                addField<Vector4fc>(Byte::class, normalised = true) { it, buffer ->
+                    val weights = it.boneWeights ?: Vector4f()
+                    val quantised = ByteArray(MAX_BONE_INFLUENCES)
+                    quantiseBoneWeights(FloatArray(MAX_BONE_INFLUENCES) { i -> weights[i] }, quantised)
+                    buffer.put(quantised)
+                }
+            }
+        }
     }
 
     override fun toString() =
@@ -4,19 +4,19 @@ import io.github.oshai.kotlinlogging.KotlinLogging
 import org.etieskrill.engine.entity.component.Transform
 import org.etieskrill.engine.graphics.animation.Animation
 import org.etieskrill.engine.graphics.animation.Animation.MAX_BONE_INFLUENCES
+import org.etieskrill.engine.graphics.animation.BakedAnimation
 import org.etieskrill.engine.graphics.animation.BoneAnimation
 import org.etieskrill.engine.graphics.animation.BoneMatcher
 import org.etieskrill.engine.graphics.model.Bone
 import org.etieskrill.engine.graphics.util.AssimpUtils
 import org.joml.Quaternionf
 import org.joml.Vector3f
-import org.joml.Vector4f
-import org.joml.Vector4i
 import org.lwjgl.assimp.AIAnimation
 import org.lwjgl.assimp.AIBone
 import org.lwjgl.assimp.AIMesh
 import org.lwjgl.assimp.AINodeAnim
 import org.lwjgl.assimp.AIScene
+import org.lwjgl.assimp.AIVertexWeight
 
 private val logger = KotlinLogging.logger {}
 
@@ -30,13 +30,16 @@ internal fun loadAnimations(
     animations += generateSequence { AIAnimation.create(animationBuffer.get()) }
         .take(scene.mNumAnimations())
         .map {
+            val name = it.mName().dataString()
+            val boneAnimations = loadNodeAnimations(it, bones, boneMatcher)
             Animation(
-                it.mName().dataString(),
+                name,
                 it.mDuration().toInt(),
                 it.mTicksPerSecond(),
                 bones,
-                loadNodeAnimations(it, bones, boneMatcher),
-                null
+                boneAnimations,
+                null,
+                bakeAnimation(name, boneAnimations, bones)
             )
         }
 
@@ -87,18 +90,52 @@ internal fun loadNodeAnimations(
         }.toList()
 }
 
-data class VertexBoneWeights(
-    val bones: Vector4i = Vector4i(-1),
-    val boneWeights: Vector4f = Vector4f(0f)
-)
+internal fun bakeAnimation(name: String, boneAnimations: List<BoneAnimation>, bones: List<Bone>): BakedAnimation? {
+    val numBones = (bones.maxOfOrNull { it.id } ?: -1) + 1
+    return try {
+        BakedAnimation.bake(boneAnimations, numBones)
+    } catch (e: IllegalArgumentException) {
+        logger.warn(e) { "Could not bake animation '$name', falling back to sampling bone animations" }
+        null
+    }
+}
+
+/**
+ * The bone influences of all vertices of a mesh, with [MAX_BONE_INFLUENCES] slots per vertex, which are found at
+ * `MAX_BONE_INFLUENCES * vertex` onwards. Unused slots have a bone id of -1 and a weight of zero.
+ */
+class VertexBoneWeights(val numVertices: Int) {
 
-internal fun getBones(mesh: AIMesh): Pair<List<Bone>?, List<VertexBoneWeights>?> {
+    val bones = IntArray(MAX_BONE_INFLUENCES * numVertices) { -1 }
+    val boneWeights = FloatArray(MAX_BONE_INFLUENCES * numVertices)
+
+    /**
+     * Puts the influence of a bone into the first free slot of a vertex. A bone which already influences the vertex is
+     * not added again.
+     *
+     * @return `false` if all slots of the vertex are taken by other bones
+     */
+    fun add(vertex: Int, boneId: Int, weight: Float): Boolean {
+        val first = MAX_BONE_INFLUENCES * vertex
+        for (slot in first..<first + MAX_BONE_INFLUENCES) {
+            if (bones[slot] == boneId) return true
+            if (bones[slot] != -1) continue
+            bones[slot] = boneId
+            boneWeights[slot] = weight
+            return true
+        }
+        return false
+    }
+
+}
+
+internal fun getBones(mesh: AIMesh): Pair<List<Bone>?, VertexBoneWeights?> {
     val boneBuffer = mesh.mBones() ?: if (mesh.mNumBones() == 0) return null to null else error("")
 
     var totalNumVertexWeights = 0
     var boneId = 0
 
-    val vertexBoneWeights = List(mesh.mNumVertices()) { VertexBoneWeights() }
+    val vertexBoneWeights = VertexBoneWeights(mesh.mNumVertices())
     val maxAffectedLogged = mutableListOf<Int>()
 
     return (generateSequence { AIBone.create(boneBuffer.get()) }
@@ -115,29 +152,26 @@ internal fun getBones(mesh: AIMesh): Pair<List<Bone>?, List<VertexBoneWeights>?>
         .also { logger.trace { "Loaded $totalNumVertexWeights vertex weight/s for ${it.first.size} bone/s: ${it.first}" } }
 }
 
+/**
+ * Adds the weights of a bone to the vertices it influences. The weights are read from the bone's array in place,
+ * without creating an [AIVertexWeight] for every one of them.
+ */
 internal fun loadBoneWeights(
     boneId: Int,
     aiBone: AIBone,
-    weights: List<VertexBoneWeights>,
+    weights: VertexBoneWeights,
     maxAffectedLogged: MutableList<Int>
 ) {
-    val weightBuffer = aiBone.mWeights()
-    generateSequence { weightBuffer.get() }
-        .take(aiBone.mNumWeights())
-        .forEach {
-            if (it.mWeight() == 0f) return@forEach
-            val weight = weights[it.mVertexId()]
-            if (weight.bones[3] != -1 && boneId !in maxAffectedLogged) {
-                maxAffectedLogged += boneId
-                logger.warn { "Vertex with id ${it.mVertexId()} is influenced by more than the maximum of $MAX_BONE_INFLUENCES bones" }
-                return@forEach
-            }
+    val weightArray = aiBone.mWeights().address()
+    for (i in 0..<aiBone.mNumWeights()) {
+        val vertexWeight = weightArray + i.toLong() * AIVertexWeight.SIZEOF
+        val weight = AIVertexWeight.nmWeight(vertexWeight)
+        if (weight == 0f) continue
 
-            for (slot in 0..<MAX_BONE_INFLUENCES) {
-                if (weight.bones[slot] == boneId) return@forEach
-                weight.bones.setComponent(slot, boneId)
-                weight.boneWeights.setComponent(slot, it.mWeight())
-                break
-            }
+        val vertexId = AIVertexWeight.nmVertexId(vertexWeight)
+        if (!weights.add(vertexId, boneId, weight) && boneId !in maxAffectedLogged) {
+            maxAffectedLogged += boneId
+            logger.warn { "Vertex with id $vertexId is influenced by more than the maximum of $MAX_BONE_INFLUENCES bones" }
         }
+    }
 }
@@ -21,6 +21,7 @@ import org.lwjgl.assimp.AIScene;
 import java.io.IOException;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -75,6 +76,15 @@ public class Loader {
 
         timer.start();
 
+        ModelCache cache = ModelCache.of(builder.getFile(), builder.isFlipUVs(), builder.isFlipWinding(),
+                builder.getMeshOptions());
+        if (cache.read(builder.getNodes(), builder.getMeshes(), builder.getMaterials(), builder.getBones(),
+                builder.getAnimations())) {
+            calculateModelBoundingBox(builder);
+            logger.debug("Loaded model {} from cache {}", builder.getName(), cache.getFile());
+            return;
+        }
+
         AIScene aiScene = importScene(
                 builder.getFile(),
                 new SceneImporterOptions(builder.isFlipUVs(), builder.isFlipWinding())
@@ -91,15 +101,19 @@ public class Loader {
 
         Map<String, Texture2D> embeddedTextures = loadEmbeddedTextures(aiScene);
         timer.log(() -> "Embedded");
-        loadMaterials(aiScene, builder.getMaterials(), embeddedTextures, builder.getName());
+        Map<Texture2D, String> textureFiles = new IdentityHashMap<>();
+        loadMaterials(aiScene, builder.getMaterials(), embeddedTextures, textureFiles, builder.getName());
         timer.log(() -> "Materials");
-        loadMeshes(aiScene, builder.getMaterials(), builder.getMeshes(), builder.getBones());
+        loadMeshes(aiScene, builder.getMaterials(), builder.getMeshes(), builder.getBones(),
+                builder.getMeshOptions());
         timer.log(() -> "Meshes");
         processNode(null, rootNode, builder);
         loadAnimations(aiScene, builder.getBones(), builder.getAnimations(), DEFAULT_BONE_MATCHER); //animations reference bones, which need first be loaded from the meshes, and also require the nodes to resolve the back reference
         timer.log(() -> "Animations");
         calculateModelBoundingBox(builder);
 
+        cache.write(aiScene, embeddedTextures, textureFiles, builder.getNodes(), builder.getMeshes(),
+                builder.getMaterials(), builder.getBones(), builder.getAnimations());
         aiReleaseImport(aiScene);
 
         logger.debug("Loaded model {} with {} node{}, {} mesh{}, {} material{}, {} bone{} and {} animation{}",
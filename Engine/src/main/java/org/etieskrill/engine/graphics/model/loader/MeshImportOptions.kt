@@ -0,0 +1,46 @@
+package org.etieskrill.engine.graphics.model.loader
+
+import org.etieskrill.engine.graphics.model.Mesh
+import org.etieskrill.engine.graphics.model.Vertex
+
+/**
+ * Processing applied to the meshes of a model while it is imported, before they are uploaded. The options are part of
+ * the key of the [ModelCache], so the processed meshes are cached along with the rest of the model, and only the first
+ * import pays for them.
+ *
+ * @param optimiseVertexOrder whether to reorder triangles and vertices for the vertex cache, less overdraw and
+ * sequential vertex fetches
+ * @param lodRatios           the fraction of indices each [level of detail][Mesh.lods] aims for, in descending order;
+ * none are generated if it is empty
+ * @param maxLodError         the largest deviation of a level of detail from the full mesh, relative to its extent
+ * @param compressVertices    whether to pack the vertices into the [compact layout][Vertex.Companion.CompactAccessor],
+ * which takes less than half the memory, at the cost of some precision in normals, texture coordinates and bone
+ * weights; only the built-in shaders know how to decode it
+ */
+data class MeshImportOptions(
+    val optimiseVertexOrder: Boolean = false,
+    val lodRatios: List<Float> = emptyList(),
+    val maxLodError: Float = DEFAULT_MAX_LOD_ERROR,
+    val compressVertices: Boolean = false
+) {
+
+    fun withOptimisedVertexOrder() = copy(optimiseVertexOrder = true)
+
+    fun withCompressedVertices() = copy(compressVertices = true)
+
+    /**
+     * Generates levels of detail at a half, a quarter and an eighth of the triangles, each deviating from the full mesh
+     * by at most a hundredth of its extent.
+     */
+    fun withLods() = withLods(DEFAULT_MAX_LOD_ERROR, 0.5f, 0.25f, 0.125f)
+
+    fun withLods(maxError: Float, vararg ratios: Float) = copy(lodRatios = ratios.toList(), maxLodError = maxError)
+
+    companion object {
+        private const val DEFAULT_MAX_LOD_ERROR = 0.01f
+
+        @JvmField
+        val NONE = MeshImportOptions()
+    }
+
+}
@@ -1,11 +1,14 @@
 package org.etieskrill.engine.graphics.model.loader
 
+import org.etieskrill.engine.graphics.gl.BufferObject
+import org.etieskrill.engine.graphics.gl.VertexArrayAccessor
 import org.etieskrill.engine.graphics.gl.VertexArrayObject
 import org.etieskrill.engine.graphics.model.Bone
 import org.etieskrill.engine.graphics.model.Material
 import org.etieskrill.engine.graphics.model.Mesh
 import org.etieskrill.engine.graphics.model.Vertex
 import org.joml.primitives.AABBf
+import java.nio.ByteBuffer
 
 fun loadToVAO(
     vertices: List<Vertex>,
@@ -17,3 +20,37 @@ fun loadToVAO(
 ): Mesh = VertexArrayObject(Vertex.Companion.Accessor, vertices, indices = indices)
     .also { it.unbind() }
     .run { Mesh(material, bones, this, boundingBox, drawMode ?: Mesh.DrawMode.TRIANGLES) }
+
+/**
+ * Uploads vertex and index data which is already laid out as by the [accessor], without going through any [Vertex]
+ * objects. Both buffers are uploaded from the start up to their limit.
+ *
+ * @param vertexData the vertices in native byte order
+ * @param indexData  the indices as native-order integers
+ * @param accessor   the layout of the vertices, either the [Vertex.Companion.Accessor] or the
+ * [Vertex.Companion.CompactAccessor]
+ */
+fun loadToVAO(
+    vertexData: ByteBuffer,
+    indexData: ByteBuffer,
+    material: Material,
+    bones: List<Bone>? = null,
+    boundingBox: AABBf = AABBf(),
+    drawMode: Mesh.DrawMode? = null,
+    accessor: VertexArrayAccessor<Vertex> = Vertex.Companion.Accessor
+): Mesh = createVAO(accessor, vertexData, indexData)
+    .run { Mesh(material, bones, this, boundingBox, drawMode ?: Mesh.DrawMode.TRIANGLES) }
+
+internal fun createVAO(
+    accessor: VertexArrayAccessor<Vertex>,
+    vertexData: ByteBuffer,
+    indexData: ByteBuffer
+): VertexArrayObject<Vertex> {
+    val numVertices = vertexData.limit() / accessor.elementByteSize
+    val vertexBuffer = BufferObject(accessor, numVertices).also { it.setData(vertexData) }
+    val numIndices = indexData.limit() / Int.SIZE_BYTES
+    val indexBuffer = VertexArrayObject.createIndexBuffer(null, null, numIndices, null, null)!!
+        .also { it.setData(indexData) }
+
+    return VertexArrayObject(accessor, vertexBuffer, indexBuffer).also { it.unbind() }
+}
@@ -1,34 +1,63 @@
 package org.etieskrill.engine.graphics.model.loader
 
 import io.github.oshai.kotlinlogging.KotlinLogging
+import org.etieskrill.engine.graphics.animation.Animation.MAX_BONE_INFLUENCES
+import org.etieskrill.engine.graphics.gl.VertexArrayAccessor
 import org.etieskrill.engine.graphics.model.Bone
 import org.etieskrill.engine.graphics.model.Material
 import org.etieskrill.engine.graphics.model.Mesh
 import org.etieskrill.engine.graphics.model.Vertex
+import org.etieskrill.engine.graphics.model.encodeOctahedral
+import org.etieskrill.engine.graphics.model.handedness
+import org.etieskrill.engine.graphics.model.quantiseBoneWeights
+import org.etieskrill.engine.graphics.model.toBoneByte
+import org.etieskrill.engine.graphics.model.toSnorm16
 import org.joml.Vector2f
-import org.joml.Vector3f
-import org.joml.Vector4f
-import org.joml.Vector4i
 import org.joml.primitives.AABBf
 import org.lwjgl.BufferUtils
+import org.lwjgl.assimp.AIFace
 import org.lwjgl.assimp.AIMesh
 import org.lwjgl.assimp.AIScene
+import org.lwjgl.assimp.AIVector3D
 import org.lwjgl.assimp.Assimp.*
+import org.lwjgl.system.MemoryUtil.memAddress
+import org.lwjgl.system.MemoryUtil.memCopy
+import org.lwjgl.system.MemoryUtil.memFloatBuffer
+import org.lwjgl.system.MemoryUtil.memGetAddress
+import org.lwjgl.util.meshoptimizer.MeshOptimizer.meshopt_SimplifyLockBorder
+import org.lwjgl.util.meshoptimizer.MeshOptimizer.meshopt_analyzeVertexCache
+import org.lwjgl.util.meshoptimizer.MeshOptimizer.meshopt_analyzeVertexFetch
+import org.lwjgl.util.meshoptimizer.MeshOptimizer.meshopt_optimizeOverdraw
+import org.lwjgl.util.meshoptimizer.MeshOptimizer.meshopt_optimizeVertexCache
+import org.lwjgl.util.meshoptimizer.MeshOptimizer.meshopt_optimizeVertexFetch
 import org.lwjgl.util.meshoptimizer.MeshOptimizer.meshopt_simplify
+import org.lwjgl.util.meshoptimizer.MeshOptimizer.meshopt_simplifyScale
+import org.lwjgl.util.meshoptimizer.MeshoptVertexCacheStatistics
+import org.lwjgl.util.meshoptimizer.MeshoptVertexFetchStatistics
+import java.lang.Float.floatToFloat16
+import java.nio.ByteBuffer
+import java.nio.FloatBuffer
+import java.nio.IntBuffer
+import kotlin.math.max
+import kotlin.math.min
 
 private val logger = KotlinLogging.logger {}
 
+/**
+ * @param options the processing applied to triangle meshes before they are uploaded
+ */
 internal fun loadMeshes(
     scene: AIScene,
     materials: List<Material>,
     meshes: MutableList<Mesh>,
-    bones: MutableList<Bone>
+    bones: MutableList<Bone>,
+    options: MeshImportOptions
 ) {
     val meshBuffer = scene.mMeshes() ?: return
 
     val newMeshes = generateSequence { AIMesh.create(meshBuffer.get()) }
         .take(scene.mNumMeshes())
-        .map { processMesh(it, materials) }
+        .map { processMesh(it, materials, options) }
         .toList()
 
     meshes += newMeshes
@@ -36,41 +65,26 @@ internal fun loadMeshes(
 }
 
 @OptIn(ExperimentalStdlibApi::class)
-private fun processMesh(aiMesh: AIMesh, materials: List<Material>): Mesh {
-    val positions = aiMesh.mVertices()
-    val normals = aiMesh.mNormals()
-    val texCoords = aiMesh.mTextureCoords(0)
-    val tangents = aiMesh.mTangents()
-    val biTangents = aiMesh.mBitangents()
-
+private fun processMesh(aiMesh: AIMesh, materials: List<Material>, options: MeshImportOptions): Mesh {
+    var numVertices = aiMesh.mNumVertices()
     val (bones, boneWeights) = getBones(aiMesh)
 
-    val vertices = List(aiMesh.mNumVertices()) { i ->
-        Vertex(
-            position = positions.get().let { Vector3f(it.x(), it.y(), it.z()) },
-            normal = normals?.get()?.let { Vector3f(it.x(), it.y(), it.z()) },
-            textureCoords = texCoords?.get()?.let { Vector2f(it.x(), it.y()) },
-            tangent = tangents?.get()?.let { Vector3f(it.x(), it.y(), it.z()) },
-            biTangent = biTangents?.get()?.let { Vector3f(it.x(), it.y(), it.z()) },
-            bones = boneWeights?.get(i)?.bones ?: Vector4i(-1),
-            boneWeights = boneWeights?.get(i)?.boneWeights ?: Vector4f(0f)
-        )
-    }
-
-    val indices = mutableListOf<Int>()
-    val faceBuffer = aiMesh.mFaces()
-    repeat(aiMesh.mNumFaces()) {
-        val face = faceBuffer.get()
-        val indexBuffer = face.mIndices()
-        repeat(face.mNumIndices()) {
-            indices += indexBuffer.get()
-        }
-    }
+    var vertexData = BufferUtils.createByteBuffer(numVertices * Vertex.Companion.Accessor.elementByteSize)
+    val boundingBox = interleaveVertices(
+        numVertices,
+        aiMesh.mVertices().floats(numVertices),
+        aiMesh.mNormals()?.floats(numVertices),
+        aiMesh.mTextureCoords(0)?.floats(numVertices),
+        aiMesh.mTangents()?.floats(numVertices),
+        aiMesh.mBitangents()?.floats(numVertices),
+        boneWeights,
+        vertexData
+    )
+    var indexData = copyIndices(aiMesh)
 
 //    val min = aiMesh.mAABB().mMin()
 //    val max = aiMesh.mAABB().mMax()
 //    val boundingBox = AABBf(min.x(), min.y(), min.z(), max.x(), max.y(), max.z())
-    val boundingBox = calculateBoundingBox(vertices)
 
     val material = materials[aiMesh.mMaterialIndex()]
 
@@ -85,24 +99,237 @@ private fun processMesh(aiMesh: AIMesh, materials: List<Material>): Mesh {
         else -> error("Unsupported primitive type: 0x${primitiveType.toHexString()}")
     }
 
-    val mesh = loadToVAO(vertices, indices, material, bones, boundingBox, drawMode)
+    val vertexBytes = Vertex.Companion.Accessor.elementByteSize
+    if (options.optimiseVertexOrder && drawMode == Mesh.DrawMode.TRIANGLES) {
+        vertexData = optimiseVertexOrder(vertexData, indexData, vertexBytes)
+        numVertices = vertexData.limit() / vertexBytes
+    }
+    var lods: List<Mesh.Lod>? = null
+    if (options.lodRatios.isNotEmpty() && drawMode == Mesh.DrawMode.TRIANGLES) {
+        val (lodIndexData, simplifiedLods) = simplifyLods(
+            indexData.asIntBuffer(), vertexData.asFloatBuffer(), numVertices, vertexBytes,
+            options.lodRatios.toFloatArray(), options.maxLodError
+        )
+        indexData = lodIndexData
+        lods = simplifiedLods
+    }
 
-    logger.trace { "Loaded mesh with ${vertices.size} vertices and ${indices.size} indices" }
+    var accessor: VertexArrayAccessor<Vertex> = Vertex.Companion.Accessor
+    if (options.compressVertices) {
+        val compactData = BufferUtils.createByteBuffer(numVertices * Vertex.Companion.CompactAccessor.elementByteSize)
+        compactVertices(numVertices, vertexData, compactData)
+        vertexData = compactData
+        accessor = Vertex.Companion.CompactAccessor
+    }
+
+    val mesh = loadToVAO(vertexData, indexData, material, bones, boundingBox, drawMode, accessor)
+    if (lods != null) mesh.lods = lods
+
+    logger.trace {
+        "Loaded ${if (mesh.isCompact) "compact " else ""}mesh with $numVertices vertices and " +
+                "${mesh.lods.first().numIndices} indices" + if (lods != null) " in ${lods.size} levels of detail" else ""
+    }
     return mesh
 }
 
+/**
+ * Views an assimp vector array as three floats per vector, as they are laid out in memory.
+ */
+private fun AIVector3D.Buffer.floats(numVectors: Int): FloatBuffer = memFloatBuffer(address(), 3 * numVectors)
+
+/**
+ * Interleaves the vertex attributes into [target] as laid out by the [Vertex.Companion.Accessor], writing directly
+ * into the buffer instead of building any [Vertex] objects. Every attribute array holds three floats per vertex, of
+ * which only the first two are used for the texture coordinates. Missing attributes are left zeroed, and vertices
+ * without any [boneWeights] are influenced by no bone, i.e. bone id -1.
+ *
+ * @param target a zeroed buffer in native byte order
+ * @return the bounding box of the positions
+ */
+internal fun interleaveVertices(
+    numVertices: Int,
+    positions: FloatBuffer,
+    normals: FloatBuffer?,
+    textureCoords: FloatBuffer?,
+    tangents: FloatBuffer?,
+    biTangents: FloatBuffer?,
+    boneWeights: VertexBoneWeights?,
+    target: ByteBuffer
+): AABBf {
+    check(target.capacity() >= numVertices * Vertex.Companion.Accessor.elementByteSize) {
+        "Buffer is too small for $numVertices vertices"
+    }
+    val floats = target.asFloatBuffer()
+    val ints = target.asIntBuffer()
+
+    var minX = Float.POSITIVE_INFINITY
+    var minY = Float.POSITIVE_INFINITY
+    var minZ = Float.POSITIVE_INFINITY
+    var maxX = Float.NEGATIVE_INFINITY
+    var maxY = Float.NEGATIVE_INFINITY
+    var maxZ = Float.NEGATIVE_INFINITY
+
+    for (i in 0..<numVertices) {
+        val vector = 3 * i
+        val vertex = VERTEX_WORDS * i
+
+        val x = positions[vector]
+        val y = positions[vector + 1]
+        val z = positions[vector + 2]
+        floats.put(vertex + POSITION, x).put(vertex + POSITION + 1, y).put(vertex + POSITION + 2, z)
+        minX = min(minX, x)
+        minY = min(minY, y)
+        minZ = min(minZ, z)
+        maxX = max(maxX, x)
+        maxY = max(maxY, y)
+        maxZ = max(maxZ, z)
+
+        normals?.copyTo(floats, vector, vertex + NORMAL, 3)
+        textureCoords?.copyTo(floats, vector, vertex + TEXTURE_COORDS, 2)
+        tangents?.copyTo(floats, vector, vertex + TANGENT, 3)
+        biTangents?.copyTo(floats, vector, vertex + BI_TANGENT, 3)
+
+        val influence = MAX_BONE_INFLUENCES * i
+        for (slot in 0..<MAX_BONE_INFLUENCES) {
+            ints.put(vertex + BONES + slot, boneWeights?.bones?.get(influence + slot) ?: -1)
+            boneWeights?.let { floats.put(vertex + BONE_WEIGHTS + slot, it.boneWeights[influence + slot]) }
+        }
+    }
+
+    return AABBf(minX, minY, minZ, maxX, maxY, maxZ)
+}
+
+private fun FloatBuffer.copyTo(target: FloatBuffer, from: Int, to: Int, count: Int) {
+    for (i in 0..<count) target.put(to + i, this[from + i])
+}
+
+//offsets into an interleaved vertex in words, matching the fields of the Vertex.Companion.Accessor
+private const val POSITION = 0
+private const val NORMAL = 3
+private const val TEXTURE_COORDS = 6
+private const val TANGENT = 8
+private const val BI_TANGENT = 11
+private const val BONES = 14
+private const val BONE_WEIGHTS = 18
+private const val VERTEX_WORDS = 22
+
+/**
+ * Packs vertices laid out as by the [Vertex.Companion.Accessor] into the layout of the
+ * [Vertex.Companion.CompactAccessor], encoding them the same way it does. Vertices without a tangent get neither a
+ * tangent nor a handedness.
+ *
+ * @param source the vertices in native byte order
+ * @param target a buffer in native byte order
+ */
+internal fun compactVertices(numVertices: Int, source: ByteBuffer, target: ByteBuffer) {
+    check(target.capacity() >= numVertices * Vertex.Companion.CompactAccessor.elementByteSize) {
+        "Buffer is too small for $numVertices vertices"
+    }
+    val floats = source.asFloatBuffer()
+    val ints = source.asIntBuffer()
+
+    val octahedral = Vector2f()
+    val weights = FloatArray(MAX_BONE_INFLUENCES)
+    val quantisedWeights = ByteArray(MAX_BONE_INFLUENCES)
+
+    for (i in 0..<numVertices) {
+        val vertex = VERTEX_WORDS * i
+        val compact = COMPACT_VERTEX_BYTES * i
+
+        for (component in 0..<3) {
+            val offset = compact + COMPACT_POSITION + component * Float.SIZE_BYTES
+            target.putFloat(offset, floats[vertex + POSITION + component])
+        }
+
+        val normalX = floats[vertex + NORMAL]
+        val normalY = floats[vertex + NORMAL + 1]
+        val normalZ = floats[vertex + NORMAL + 2]
+        encodeOctahedral(normalX, normalY, normalZ, octahedral)
+        target.putShort(compact + COMPACT_NORMAL, toSnorm16(octahedral.x))
+        target.putShort(compact + COMPACT_NORMAL + Short.SIZE_BYTES, toSnorm16(octahedral.y))
+
+        target.putShort(compact + COMPACT_TEXTURE_COORDS, floatToFloat16(floats[vertex + TEXTURE_COORDS]))
+        target.putShort(
+            compact + COMPACT_TEXTURE_COORDS + Short.SIZE_BYTES,
+            floatToFloat16(floats[vertex + TEXTURE_COORDS + 1])
+        )
+
+        val tangentX = floats[vertex + TANGENT]
+        val tangentY = floats[vertex + TANGENT + 1]
+        val tangentZ = floats[vertex + TANGENT + 2]
+        if (tangentX != 0f || tangentY != 0f || tangentZ != 0f) {
+            encodeOctahedral(tangentX, tangentY, tangentZ, octahedral)
+            val handedness = handedness(
+                normalX, normalY, normalZ,
+                tangentX, tangentY, tangentZ,
+                floats[vertex + BI_TANGENT], floats[vertex + BI_TANGENT + 1], floats[vertex + BI_TANGENT + 2]
+            )
+            target.putShort(compact + COMPACT_TANGENT, toSnorm16(octahedral.x))
+            target.putShort(compact + COMPACT_TANGENT + Short.SIZE_BYTES, toSnorm16(octahedral.y))
+            target.putShort(compact + COMPACT_TANGENT + 2 * Short.SIZE_BYTES, toSnorm16(handedness))
+            target.putShort(compact + COMPACT_TANGENT + 3 * Short.SIZE_BYTES, 0)
+        } else {
+            target.putLong(compact + COMPACT_TANGENT, 0)
+        }
+
+        for (slot in 0..<MAX_BONE_INFLUENCES) {
+            target.put(compact + COMPACT_BONES + slot, toBoneByte(ints[vertex + BONES + slot]))
+            weights[slot] = floats[vertex + BONE_WEIGHTS + slot]
+        }
+        quantiseBoneWeights(weights, quantisedWeights)
+        target.put(compact + COMPACT_BONE_WEIGHTS, quantisedWeights)
+    }
+}
+
+//offsets into a compact vertex in bytes, matching the fields of the Vertex.Companion.CompactAccessor
+private const val COMPACT_POSITION = 0
+private const val COMPACT_NORMAL = 12
+private const val COMPACT_TEXTURE_COORDS = 16
+private const val COMPACT_TANGENT = 20
+private const val COMPACT_BONES = 28
+private const val COMPACT_BONE_WEIGHTS = 32
+private const val COMPACT_VERTEX_BYTES = 36
+
+/**
+ * Copies the indices of all faces into a single buffer, straight from the native index array of each face.
+ *
+ * @return the indices as integers in native byte order
+ */
+private fun copyIndices(aiMesh: AIMesh): ByteBuffer {
+    val faces = aiMesh.mFaces().address()
+    val numFaces = aiMesh.mNumFaces()
+
+    var numIndices = 0L
+    for (i in 0..<numFaces) numIndices += AIFace.nmNumIndices(faces + i.toLong() * AIFace.SIZEOF)
+
+    val indices = BufferUtils.createByteBuffer(Math.toIntExact(numIndices * Int.SIZE_BYTES))
+    var target = memAddress(indices)
+    for (i in 0..<numFaces) {
+        val face = faces + i.toLong() * AIFace.SIZEOF
+        val bytes = AIFace.nmNumIndices(face).toLong() * Int.SIZE_BYTES
+        memCopy(memGetAddress(face + AIFace.MINDICES), target, bytes)
+        target += bytes
+    }
+    return indices
+}
+
 fun calculateBoundingBox(vertices: List<Vertex>) = AABBf().apply { vertices.forEach { union(it.position) } }
 
+/**
+ * Simplifies the full mesh in place, dropping any other levels of detail, since they were simplified from the mesh as
+ * it was before.
+ */
 fun optimiseMesh(mesh: Mesh, targetIndexCount: Int, maxDeformation: Float) {
     val vertexData = mesh.vao.vertexBuffer.getData()
     //TODO workaround: temporary 1-1 vertex-index buffer? duplicate vertices did make the algorithm shit itself tho, so probably do an actual index run using... assimp? can it even do that?
-    val indexData = mesh.vao.indexBuffer?.getData()?.asIntBuffer() ?: error("Can only optimise indexed meshes")
+    val indexData = mesh.vao.indexBuffer?.getData()?.asIntBuffer()?.limit(mesh.lods.first().numIndices)
+        ?: error("Can only optimise indexed meshes")
 
-    val newIndexData = BufferUtils.createByteBuffer(Int.SIZE_BYTES * indexData.capacity())
+    val newIndexData = BufferUtils.createByteBuffer(Int.SIZE_BYTES * indexData.remaining())
 
     val errorBuffer = BufferUtils.createFloatBuffer(1)
 
-    val vertexBytes = Vertex.Companion.Accessor.elementByteSize.toLong()
+    val vertexBytes = mesh.vao.elementByteSize.toLong() //positions come first in either layout
     val numIndices = meshopt_simplify(
         newIndexData.asIntBuffer(), indexData, vertexData.asFloatBuffer(),
         vertexData.capacity() / vertexBytes, vertexBytes,
@@ -110,12 +337,138 @@ fun optimiseMesh(mesh: Mesh, targetIndexCount: Int, maxDeformation: Float) {
     )
     //TODO compress vertex buffer using new indices
 
-    logger.trace { "Original mesh has ${vertexData.capacity() / vertexBytes} vertices and ${indexData.capacity()} indices" }
+    logger.trace { "Original mesh has ${vertexData.capacity() / vertexBytes} vertices and ${indexData.remaining()} indices" }
     logger.trace {
         "Optimised mesh has %d indices and a deformation of %5.3f%% (max %5.3f%%)"
             .format(numIndices, 100 * errorBuffer.get(), 100 * maxDeformation)
     }
-    logger.debug { "Mesh was compressed by a factor of %4.1f".format(indexData.capacity().toFloat() / numIndices) }
+    logger.debug { "Mesh was compressed by a factor of %4.1f".format(indexData.remaining().toFloat() / numIndices) }
 
     mesh.vao.indexBuffer.setData(newIndexData)
+    mesh.lods = listOf(Mesh.Lod(0, numIndices.toInt(), 0f))
+}
+
+/**
+ * The size of the FIFO post-transform cache the vertex order is analysed for, which is a common size for the caches of
+ * current hardware.
+ */
+private const val VERTEX_CACHE_SIZE = 16
+
+/**
+ * By how much the [VertexOrderStatistics.acmr] may get worse to reduce overdraw.
+ */
+private const val OVERDRAW_THRESHOLD = 1.05f
+
+/**
+ * How efficiently the vertices of a mesh are processed when it is drawn.
+ *
+ * @param acmr      the average cache miss ratio, i.e. the vertex shader invocations per triangle, which is 3 at worst
+ * and approaches 0.5 for large meshes at best
+ * @param atvr      the average transformed vertex ratio, i.e. the vertex shader invocations per vertex, which is 1 at
+ * best
+ * @param overfetch the bytes fetched from the vertex buffer per byte of vertex data, which is 1 at best
+ */
+internal data class VertexOrderStatistics(val acmr: Float, val atvr: Float, val overfetch: Float)
+
+internal fun analyseVertexOrder(indices: IntBuffer, numVertices: Int, vertexStride: Int): VertexOrderStatistics {
+    val cache = meshopt_analyzeVertexCache(
+        indices, numVertices.toLong(), VERTEX_CACHE_SIZE, 0, 0, MeshoptVertexCacheStatistics.create()
+    )
+    val fetch = meshopt_analyzeVertexFetch(
+        indices, numVertices.toLong(), vertexStride.toLong(), MeshoptVertexFetchStatistics.create()
+    )
+    return VertexOrderStatistics(cache.acmr(), cache.atvr(), fetch.overfetch())
+}
+
+/**
+ * Reorders the triangles for the post-transform vertex cache, and then, as far as that allows, from the outside in to
+ * reduce overdraw. The vertices are then ordered by when they are first drawn, so that they are fetched mostly in
+ * sequence. The triangles themselves stay the same, but any vertices none of them references are dropped.
+ *
+ * @param vertexData   the vertices, of which only the first three floats, the position, are read
+ * @param indexData    the triangle indices, which are reordered and remapped in place
+ * @param vertexStride the size of a vertex in bytes
+ * @return the reordered vertices, limited to those which are referenced
+ */
+internal fun optimiseVertexOrder(vertexData: ByteBuffer, indexData: ByteBuffer, vertexStride: Int): ByteBuffer {
+    val numVertices = vertexData.limit() / vertexStride
+    val indices = indexData.asIntBuffer()
+    val before = analyseVertexOrder(indices, numVertices, vertexStride)
+
+    val cacheOrderedIndices = BufferUtils.createIntBuffer(indices.remaining())
+    meshopt_optimizeVertexCache(cacheOrderedIndices, indices, numVertices.toLong())
+    meshopt_optimizeOverdraw(
+        indices, cacheOrderedIndices, vertexData.asFloatBuffer(), numVertices.toLong(), vertexStride.toLong(),
+        OVERDRAW_THRESHOLD
+    )
+
+    val optimisedVertexData = BufferUtils.createByteBuffer(vertexData.limit())
+    val numUsedVertices = meshopt_optimizeVertexFetch(
+        optimisedVertexData, indices, vertexData, numVertices.toLong(), vertexStride.toLong()
+    ).toInt()
+    optimisedVertexData.limit(numUsedVertices * vertexStride)
+
+    logger.debug {
+        val after = analyseVertexOrder(indices, numUsedVertices, vertexStride)
+        "Optimised vertex order of mesh with $numUsedVertices vertices and ${indices.remaining()} indices: " +
+                "ACMR %.3f -> %.3f, ATVR %.3f -> %.3f, overfetch %.3f -> %.3f".format(
+                    before.acmr, after.acmr, before.atvr, after.atvr, before.overfetch, after.overfetch
+                )
+    }
+    return optimisedVertexData
+}
+
+/**
+ * A level of detail is only kept if it has at most this fraction of the indices of the previous one, as it would hardly
+ * be cheaper to draw otherwise.
+ */
+private const val MAX_LOD_INDEX_FRACTION = 0.9f
+
+/**
+ * Simplifies the triangles given by [indices] to each of the [ratios] in turn, starting over from the full mesh every
+ * time, to be stored as the [levels of detail][Mesh.lods] of a mesh. As opposed to [optimiseMesh], the full mesh is
+ * kept, and all levels are appended to the same index buffer, so they share the vertex buffer and any one of them can
+ * be drawn. The border of the mesh is not moved, so seams to other meshes stay closed, and levels which cannot be
+ * simplified any further within [maxError] are left out.
+ *
+ * @param positions    the vertices, of which only the first three floats, the position, are read
+ * @param vertexStride the size of a vertex in bytes
+ * @param ratios       the fraction of indices each level aims for, in descending order
+ * @param maxError     the largest deviation from the full mesh, relative to its extent
+ * @return the indices of all levels back to back in native byte order, starting with the unchanged full mesh, and the
+ * levels in the same order, with their error in the units of the positions
+ */
+internal fun simplifyLods(
+    indices: IntBuffer,
+    positions: FloatBuffer,
+    numVertices: Int,
+    vertexStride: Int,
+    ratios: FloatArray,
+    maxError: Float
+): Pair<ByteBuffer, List<Mesh.Lod>> {
+    val numIndices = indices.remaining()
+    val scale = meshopt_simplifyScale(positions, numVertices.toLong(), vertexStride.toLong())
+
+    val lods = mutableListOf(Mesh.Lod(0, numIndices, 0f))
+    val lodIndices = mutableListOf(indices)
+    val errorBuffer = BufferUtils.createFloatBuffer(1)
+    for (ratio in ratios) {
+        val target = BufferUtils.createIntBuffer(numIndices)
+        val targetIndexCount = (numIndices * ratio).toLong() / 3 * 3
+        val lodNumIndices = meshopt_simplify(
+            target, indices, positions, numVertices.toLong(), vertexStride.toLong(),
+            targetIndexCount, maxError, meshopt_SimplifyLockBorder, errorBuffer
+        ).toInt()
+
+        val previous = lods.last()
+        if (lodNumIndices == 0 || lodNumIndices > MAX_LOD_INDEX_FRACTION * previous.numIndices) break
+
+        lods += Mesh.Lod(previous.firstIndex + previous.numIndices, lodNumIndices, errorBuffer[0] * scale)
+        lodIndices += target.limit(lodNumIndices)
+    }
+
+    val indexData = BufferUtils.createByteBuffer(Int.SIZE_BYTES * lods.sumOf { it.numIndices })
+    val indexTarget = indexData.asIntBuffer()
+    lodIndices.forEach { indexTarget.put(it.duplicate()) }
+    return indexData to lods
 }
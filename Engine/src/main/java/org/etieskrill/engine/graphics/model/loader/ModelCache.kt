@@ -0,0 +1,604 @@
+package org.etieskrill.engine.graphics.model.loader
+
+import io.github.oshai.kotlinlogging.KotlinLogging
+import org.etieskrill.engine.config.MODEL_CACHE_PATH
+import org.etieskrill.engine.config.MODEL_PATH
+import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.entity.component.TransformC
+import org.etieskrill.engine.graphics.animation.Animation
+import org.etieskrill.engine.graphics.animation.BoneAnimation
+import org.etieskrill.engine.graphics.model.*
+import org.etieskrill.engine.graphics.texture.AbstractTexture
+import org.etieskrill.engine.graphics.texture.Texture2D
+import org.etieskrill.engine.graphics.texture.Textures
+import org.etieskrill.engine.time.StepTimer
+import org.etieskrill.engine.util.ResourceReader
+import org.joml.Quaternionf
+import org.joml.Quaternionfc
+import org.joml.Vector3f
+import org.joml.Vector3fc
+import org.joml.Vector4f
+import org.joml.Vector4fc
+import org.joml.primitives.AABBf
+import org.lwjgl.assimp.AIScene
+import org.lwjgl.assimp.AITexture
+import java.io.BufferedOutputStream
+import java.io.DataOutput
+import java.io.DataOutputStream
+import java.io.IOException
+import java.net.URL
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption.ATOMIC_MOVE
+import java.nio.file.StandardCopyOption.REPLACE_EXISTING
+import java.nio.file.StandardOpenOption.READ
+import java.nio.file.StandardOpenOption.WRITE
+import java.util.zip.CRC32C
+
+private val logger = KotlinLogging.logger("ModelCache")
+private val timer = StepTimer(logger)
+
+/**
+ * A binary copy of a model as imported by assimp, which is loaded in place of the model file as long as the [key]
+ * still matches it. Loading a cached model skips the import altogether: the cache is memory-mapped, and the vertex and
+ * index bytes are uploaded to their buffer objects straight from the mapping.
+ *
+ * The cache holds, in order:
+ * - a header with the format [VERSION], the layout of the vertex data and the [key] of the model file and options
+ * - the compressed data of any embedded textures
+ * - the materials, whose textures refer to either an embedded texture or a texture file
+ * - the bones, and the meshes with their raw vertex and index data and their levels of detail
+ * - the nodes in the order they were imported, i.e. every parent before its children
+ * - the animations with the keys of every bone, which are baked again on load
+ *
+ * Everything but the vertex and index data is big-endian, which is in native order to upload it as is. A cache written
+ * on a machine with a different byte order is therefore treated as stale.
+ *
+ * Only the model file itself is checked, so changes to files it merely references, such as textures or a separate
+ * material library, are not noticed until the cache file is deleted. The model file is told apart by its size and
+ * modification time, which are known without reading it. Only if the modification time differs, or is not known, the
+ * file is read to compare the [checksum] it had when the cache was written.
+ */
+internal class ModelCache(val file: Path, val key: Key, private val checksum: () -> Int) {
+
+    /**
+     * Identifies a model file by its size and modification time, and the options it is imported with.
+     */
+    data class Key(
+        val sourceSize: Long,
+        val sourceModified: Long,
+        val flipUVs: Boolean,
+        val flipWinding: Boolean,
+        val meshOptions: MeshImportOptions
+    ) {
+        companion object {
+            /**
+             * Some resources, such as those inside a jar, may not report a modification time, which then is always
+             * checked against the checksum.
+             */
+            const val UNKNOWN_MODIFIED = 0L
+
+            @JvmStatic
+            fun of(file: String, flipUVs: Boolean, flipWinding: Boolean, meshOptions: MeshImportOptions): Key {
+                val source = ResourceReader.getResourceUrl(MODEL_PATH + file)
+                if (source.protocol == "file") {
+                    val path = Path.of(source.toURI())
+                    val modified = Files.getLastModifiedTime(path).toMillis()
+                    return Key(Files.size(path), modified, flipUVs, flipWinding, meshOptions)
+                }
+
+                val connection = source.openConnection()
+                val size = connection.contentLengthLong
+                val modified = connection.lastModified
+                connection.getInputStream().close()
+                return Key(size, modified, flipUVs, flipWinding, meshOptions)
+            }
+        }
+    }
+
+    companion object {
+        const val MAGIC = 0x494E4A4D //INJM
+        const val VERSION = 5
+        const val EXTENSION = ".injm"
+
+        /**
+         * The position of [Key.sourceModified] in the header, following the magic, version, byte order and vertex sizes.
+         */
+        private const val SOURCE_MODIFIED_OFFSET = 4L * Int.SIZE_BYTES + 1 + Long.SIZE_BYTES
+
+        @JvmStatic
+        fun of(file: String, flipUVs: Boolean, flipWinding: Boolean, meshOptions: MeshImportOptions) = ModelCache(
+            Path.of(MODEL_CACHE_PATH, file + EXTENSION),
+            Key.of(file, flipUVs, flipWinding, meshOptions),
+            { checksum(ResourceReader.getResourceUrl(MODEL_PATH + file)) }
+        )
+
+        private fun checksum(source: URL): Int {
+            val checksum = CRC32C()
+            source.openStream().use { stream ->
+                val buffer = ByteArray(64 * 1024)
+                while (true) {
+                    val read = stream.read(buffer)
+                    if (read < 0) break
+                    checksum.update(buffer, 0, read)
+                }
+            }
+            return checksum.value.toInt()
+        }
+    }
+
+    /**
+     * Loads the model from the cache file, if there is one and it is fresh. Nothing is added to any of the lists if the
+     * cache could not be loaded.
+     *
+     * @return whether the model was loaded from the cache
+     */
+    fun read(
+        nodes: MutableList<Node>,
+        meshes: MutableList<Mesh>,
+        materials: MutableList<Material>,
+        bones: MutableList<Bone>,
+        animations: MutableList<Animation>
+    ): Boolean {
+        if (!Files.isRegularFile(file)) return false
+
+        timer.start()
+        val data = try {
+            FileChannel.open(file, READ).use { it.map(FileChannel.MapMode.READ_ONLY, 0, it.size()) }
+        } catch (e: IOException) {
+            logger.warn(e) { "Failed to map model cache $file" }
+            return false
+        }
+
+        var checksummed = false
+        val embeddedTextures = mutableMapOf<String, Texture2D>()
+        try {
+            if (!data.readHeader(key) { checksummed = true; checksum() }) {
+                logger.debug { "Model cache $file is stale" }
+                return false
+            }
+
+            data.readEmbeddedTextures(embeddedTextures)
+            materials += data.readMaterials(embeddedTextures)
+            bones += data.readBones()
+            meshes += data.readMeshes(materials, bones)
+            nodes += data.readNodes(meshes, bones)
+            animations += data.readAnimations(bones)
+        } catch (e: RuntimeException) {
+            logger.warn(e) { "Model cache $file is corrupted, falling back to importing the model" }
+            meshes.forEach(Mesh::dispose)
+            materials.forEach(Material::dispose)
+            embeddedTextures.values.forEach(Texture2D::dispose)
+            listOf(nodes, meshes, materials, bones, animations).forEach { it.clear() }
+            return false
+        }
+
+        if (checksummed && key.sourceModified != Key.UNKNOWN_MODIFIED) updateSourceModified()
+        timer.log { "Cache read" }
+        return true
+    }
+
+    /**
+     * Records the modification time of a model file whose contents turned out unchanged, so it is not read again on
+     * the next load.
+     */
+    private fun updateSourceModified() {
+        try {
+            FileChannel.open(file, WRITE).use {
+                it.write(ByteBuffer.allocate(Long.SIZE_BYTES).putLong(key.sourceModified).flip(), SOURCE_MODIFIED_OFFSET)
+            }
+        } catch (e: IOException) {
+            logger.warn(e) { "Failed to update model cache $file" }
+        }
+    }
+
+    /**
+     * Writes a model which was just imported from the [scene] to the cache file, replacing any previous one. The scene
+     * must not be released yet, since the data of embedded textures is copied from it.
+     *
+     * Failing to write the cache is not fatal, the model is simply imported again the next time.
+     *
+     * @param textureFiles the files any textures which are not embedded were loaded from
+     */
+    fun write(
+        scene: AIScene,
+        embeddedTextures: Map<String, Texture2D>,
+        textureFiles: Map<Texture2D, String>,
+        nodes: List<Node>,
+        meshes: List<Mesh>,
+        materials: List<Material>,
+        bones: List<Bone>,
+        animations: List<Animation>
+    ) {
+        timer.start()
+        var temporaryFile: Path? = null
+        try {
+            Files.createDirectories(file.parent)
+            temporaryFile = Files.createTempFile(file.parent, file.fileName.toString(), ".tmp")
+            DataOutputStream(BufferedOutputStream(Files.newOutputStream(temporaryFile))).use {
+                it.writeHeader(key, checksum())
+                it.writeEmbeddedTextures(scene)
+                it.writeMaterials(materials, embeddedTextures, textureFiles)
+                it.writeBones(bones)
+                it.writeMeshes(meshes, materials, bones)
+                it.writeNodes(nodes, meshes, bones)
+                it.writeAnimations(animations, bones)
+            }
+            //a partially written cache must never be picked up by another load
+            Files.move(temporaryFile, file, REPLACE_EXISTING, ATOMIC_MOVE)
+            timer.log { "Cache write" }
+        } catch (e: Exception) {
+            logger.warn(e) { "Failed to write model cache $file" }
+            temporaryFile?.toFile()?.delete()
+        }
+    }
+
+}
+
+internal fun DataOutput.writeHeader(key: ModelCache.Key, checksum: Int) {
+    writeInt(ModelCache.MAGIC)
+    writeInt(ModelCache.VERSION)
+    writeBoolean(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN)
+    writeInt(Vertex.Companion.Accessor.elementByteSize)
+    writeInt(Vertex.Companion.CompactAccessor.elementByteSize)
+    writeLong(key.sourceSize)
+    writeLong(key.sourceModified)
+    writeInt(checksum)
+    writeBoolean(key.flipUVs)
+    writeBoolean(key.flipWinding)
+    writeBoolean(key.meshOptions.optimiseVertexOrder)
+    writeInt(key.meshOptions.lodRatios.size)
+    key.meshOptions.lodRatios.forEach { writeFloat(it) }
+    writeFloat(key.meshOptions.maxLodError)
+    writeBoolean(key.meshOptions.compressVertices)
+}
+
+/**
+ * @param checksum computes the checksum of the model file, which is only called if its modification time differs or
+ * is not known
+ * @return whether the cache is in the current format, and was written for a model file with the same [key]
+ */
+internal fun ByteBuffer.readHeader(key: ModelCache.Key, checksum: () -> Int): Boolean {
+    if (int != ModelCache.MAGIC || int != ModelCache.VERSION) return false
+    if (readBoolean() != (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN)) return false
+    if (int != Vertex.Companion.Accessor.elementByteSize) return false
+    if (int != Vertex.Companion.CompactAccessor.elementByteSize) return false
+    val sourceSize = long
+    val sourceModified = long
+    val sourceChecksum = int
+    val cachedKey = ModelCache.Key(
+        sourceSize, key.sourceModified, readBoolean(), readBoolean(),
+        MeshImportOptions(readBoolean(), List(int) { float }, float, readBoolean())
+    )
+    if (cachedKey != key) return false
+    //copying or checking out a file changes its modification time, but not its contents
+    if (sourceModified == key.sourceModified && sourceModified != ModelCache.Key.UNKNOWN_MODIFIED) return true
+    return sourceChecksum == checksum()
+}
+
+private fun DataOutput.writeEmbeddedTextures(scene: AIScene) {
+    val textures = scene.mTextures()
+    val numTextures = if (textures == null) 0 else scene.mNumTextures()
+    writeInt(numTextures)
+    for (i in 0..<numTextures) {
+        val texture = AITexture.create(textures!!.get(i))
+        writeString(texture.mFilename().dataString())
+        writeBuffer(texture.pcDataCompressed())
+    }
+}
+
+/**
+ * Decodes the embedded textures under the same keys as [loadEmbeddedTextures]. The textures are added as they are
+ * decoded, so they can be disposed if a later one fails.
+ */
+private fun ByteBuffer.readEmbeddedTextures(embeddedTextures: MutableMap<String, Texture2D>) {
+    repeat(int) { i ->
+        val filePath = readString()
+        val texture = loadEmbeddedTexture(i, readBuffer(), filePath) ?: return@repeat
+        embeddedTextures["*$i"] = texture
+        embeddedTextures[filePath] = texture
+    }
+}
+
+private const val PHONG_MATERIAL: Byte = 0
+private const val PBR_MATERIAL: Byte = 1
+
+private const val NO_TEXTURE: Byte = 0
+private const val EMBEDDED_TEXTURE: Byte = 1
+private const val FILE_TEXTURE: Byte = 2
+
+private fun DataOutput.writeMaterials(
+    materials: List<Material>,
+    embeddedTextures: Map<String, Texture2D>,
+    textureFiles: Map<Texture2D, String>
+) {
+    writeInt(materials.size)
+    for (material in materials) {
+        val writeTexture = { texture: Texture2D? -> writeTexture(texture, embeddedTextures, textureFiles) }
+        when (material) {
+            is PhongMaterial -> material.run {
+                writeByte(PHONG_MATERIAL.toInt())
+                writeNullableString(name)
+                writeBoolean(isTwoSided)
+                writeVector(diffuseColour)
+                writeVector(specularColour)
+                writeVector(ambientColour)
+                writeFloat(shininess)
+                writeFloat(shininessStrength)
+                writeFloat(opacity)
+                writeVector(emissiveColour)
+                writeFloat(emissiveStrength)
+                listOf(
+                    diffuseTexture, specularTexture, normalTexture,
+                    heightTexture, emissiveTexture, ambientOcclusionTexture
+                ).forEach(writeTexture)
+            }
+
+            is PBRMaterial -> material.run {
+                writeByte(PBR_MATERIAL.toInt())
+                writeNullableString(name)
+                writeBoolean(isTwoSided)
+                writeVector(diffuseColour)
+                writeNullable(opacity) { writeFloat(it) }
+                writeNullable(emissiveColour) { writeVector(it) }
+                writeNullable(emissiveStrength) { writeFloat(it) }
+                listOf(
+                    diffuseTexture, metallicTexture, roughnessTexture, ambientOcclusionTexture,
+                    normalTexture, heightTexture, emissiveTexture
+                ).forEach(writeTexture)
+            }
+
+            else -> error("Materials of type ${material.javaClass.simpleName} cannot be cached")
+        }
+    }
+}
+
+private fun ByteBuffer.readMaterials(embeddedTextures: Map<String, Texture2D>): List<Material> = List(int) {
+    when (val type = get()) {
+        PHONG_MATERIAL -> PhongMaterial(
+            name = readNullableString(),
+            isTwoSided = readBoolean(),
+            diffuseColour = readVector4f(),
+            specularColour = readVector4f(),
+            ambientColour = readVector4f(),
+            shininess = float,
+            shininessStrength = float,
+            opacity = float,
+            emissiveColour = readVector4f(),
+            emissiveStrength = float,
+            diffuseTexture = readTexture(AbstractTexture.Type.DIFFUSE, embeddedTextures),
+            specularTexture = readTexture(AbstractTexture.Type.SPECULAR, embeddedTextures),
+            normalTexture = readTexture(AbstractTexture.Type.NORMAL, embeddedTextures),
+            heightTexture = readTexture(AbstractTexture.Type.HEIGHT, embeddedTextures),
+            emissiveTexture = readTexture(AbstractTexture.Type.EMISSIVE, embeddedTextures),
+            ambientOcclusionTexture = readTexture(AbstractTexture.Type.AMBIENT_OCCLUSION, embeddedTextures)
+        )
+
+        PBR_MATERIAL -> PBRMaterial(
+            name = readNullableString(),
+            isTwoSided = readBoolean(),
+            diffuseColour = readVector4f(),
+            opacity = readNullable { float },
+            emissiveColour = readNullable { readVector4f() },
+            emissiveStrength = readNullable { float },
+            diffuseTexture = readTexture(AbstractTexture.Type.DIFFUSE, embeddedTextures),
+            metallicTexture = readTexture(AbstractTexture.Type.METALNESS, embeddedTextures),
+            roughnessTexture = readTexture(AbstractTexture.Type.ROUGHNESS, embeddedTextures),
+            ambientOcclusionTexture = readTexture(AbstractTexture.Type.AMBIENT_OCCLUSION, embeddedTextures),
+            normalTexture = readTexture(AbstractTexture.Type.NORMAL, embeddedTextures),
+            heightTexture = readTexture(AbstractTexture.Type.HEIGHT, embeddedTextures),
+            emissiveTexture = readTexture(AbstractTexture.Type.EMISSIVE, embeddedTextures)
+        )
+
+        else -> error("Unknown material type $type")
+    }
+}
+
+private fun DataOutput.writeTexture(
+    texture: Texture2D?,
+    embeddedTextures: Map<String, Texture2D>,
+    textureFiles: Map<Texture2D, String>
+) {
+    if (texture == null) {
+        writeByte(NO_TEXTURE.toInt())
+        return
+    }
+
+    val embeddedKey = embeddedTextures.entries.firstOrNull { it.value === texture }?.key
+    if (embeddedKey != null) {
+        writeByte(EMBEDDED_TEXTURE.toInt())
+        writeString(embeddedKey)
+        return
+    }
+
+    val file = textureFiles[texture] ?: error("Texture $texture was neither embedded nor loaded from a file")
+    writeByte(FILE_TEXTURE.toInt())
+    writeString(file)
+}
+
+private fun ByteBuffer.readTexture(type: AbstractTexture.Type, embeddedTextures: Map<String, Texture2D>): Texture2D? =
+    when (val source = get()) {
+        NO_TEXTURE -> null
+        EMBEDDED_TEXTURE -> embeddedTextures[readString()]
+        FILE_TEXTURE -> Textures.ofFile(readString(), type)
+        else -> error("Unknown texture source $source")
+    }
+
+internal fun DataOutput.writeBones(bones: List<Bone>) {
+    writeInt(bones.size)
+    for (bone in bones) {
+        writeString(bone.name)
+        writeInt(bone.id)
+        writeTransform(bone.offset)
+    }
+}
+
+internal fun ByteBuffer.readBones(): List<Bone> = List(int) { Bone(readString(), int, readTransform()) }
+
+private fun DataOutput.writeMeshes(meshes: List<Mesh>, materials: List<Material>, bones: List<Bone>) {
+    writeInt(meshes.size)
+    for (mesh in meshes) {
+        writeInt(materials.indexOfInstance(mesh.material))
+        writeNullable(mesh.bones) { meshBones ->
+            writeInt(meshBones.size)
+            meshBones.forEach { writeInt(bones.indexOf(it)) }
+        }
+        writeByte(mesh.drawMode.ordinal)
+        writeBoolean(mesh.isCompact)
+        mesh.boundingBox.run { floatArrayOf(minX, minY, minZ, maxX, maxY, maxZ) }.forEach { writeFloat(it) }
+        writeBuffer(mesh.vao.vertexBuffer.getData())
+        writeBuffer(checkNotNull(mesh.vao.indexBuffer) { "Only indexed meshes can be cached" }.getData())
+        writeInt(mesh.lods.size)
+        for (lod in mesh.lods) {
+            writeInt(lod.firstIndex)
+            writeInt(lod.numIndices)
+            writeFloat(lod.error)
+        }
+    }
+}
+
+private fun ByteBuffer.readMeshes(materials: List<Material>, bones: List<Bone>): List<Mesh> = List(int) {
+    val material = materials[int]
+    val meshBones = readNullable { List(int) { bones[int] } }
+    val drawMode = Mesh.DrawMode.entries[get().toInt()]
+    val accessor = if (readBoolean()) Vertex.Companion.CompactAccessor else Vertex.Companion.Accessor
+    val boundingBox = AABBf(float, float, float, float, float, float)
+    val vertexData = readBuffer().order(ByteOrder.nativeOrder())
+    val indexData = readBuffer().order(ByteOrder.nativeOrder())
+    val mesh = loadToVAO(vertexData, indexData, material, meshBones, boundingBox, drawMode, accessor)
+    mesh.lods = List(int) { Mesh.Lod(int, int, float) }
+    mesh
+}
+
+internal fun DataOutput.writeNodes(nodes: List<Node>, meshes: List<Mesh>, bones: List<Bone>) {
+    writeInt(nodes.size)
+    for (node in nodes) {
+        writeString(node.name)
+        writeInt(node.parent?.let { nodes.indexOfInstance(it) } ?: -1)
+        writeTransform(node.transform)
+        writeInt(node.meshes.size)
+        node.meshes.forEach { writeInt(meshes.indexOfInstance(it)) }
+        writeInt(node.bone?.let { bones.indexOf(it) } ?: -1)
+    }
+}
+
+internal fun ByteBuffer.readNodes(meshes: List<Mesh>, bones: List<Bone>): List<Node> {
+    val numNodes = int
+    val nodes = ArrayList<Node>(numNodes)
+    repeat(numNodes) {
+        val name = readString()
+        val parent = int.let { if (it == -1) null else nodes[it] }
+        val transform = readTransform()
+        val nodeMeshes = MutableList(int) { meshes[int] }
+        val bone = int.let { if (it == -1) null else bones[it] }
+
+        val node = Node(name, parent, transform, nodeMeshes, bone)
+        parent?.children?.add(node)
+        nodes += node
+    }
+    return nodes
+}
+
+internal fun DataOutput.writeAnimations(animations: List<Animation>, bones: List<Bone>) {
+    writeInt(animations.size)
+    for (animation in animations) {
+        writeString(animation.name)
+        writeInt(animation.durationTicks)
+        writeDouble(animation.ticksPerSecond)
+        writeInt(animation.boneAnimations.size)
+        for (boneAnimation in animation.boneAnimations) boneAnimation.run {
+            writeInt(bones.indexOf(bone))
+            writeKeys(positionTimes, positions.size) { positions[it].run { writeVector(x(), y(), z()) } }
+            writeKeys(rotationTimes, rotations.size) { rotations[it].run { writeVector(x(), y(), z(), w()) } }
+            writeKeys(scaleTimes, scalings.size) { scalings[it].run { writeVector(x(), y(), z()) } }
+            writeByte(preBehaviour.ordinal)
+            writeByte(postBehaviour.ordinal)
+        }
+    }
+}
+
+internal fun ByteBuffer.readAnimations(bones: List<Bone>): List<Animation> = List(int) {
+    val name = readString()
+    val duration = int
+    val ticksPerSecond = double
+    val boneAnimations = List(int) {
+        val bone = bones[int]
+        val (positionTimes, positions) = readKeys<Vector3fc> { Vector3f(float, float, float) }
+        val (rotationTimes, rotations) = readKeys<Quaternionfc> { Quaternionf(float, float, float, float) }
+        val (scaleTimes, scalings) = readKeys<Vector3fc> { Vector3f(float, float, float) }
+        BoneAnimation(
+            bone,
+            positions, positionTimes,
+            rotations, rotationTimes,
+            scalings, scaleTimes,
+            Animation.Behaviour.entries[get().toInt()],
+            Animation.Behaviour.entries[get().toInt()]
+        )
+    }
+    Animation(name, duration, ticksPerSecond, bones, boneAnimations, null, bakeAnimation(name, boneAnimations, bones))
+}
+
+private inline fun DataOutput.writeKeys(times: DoubleArray, numKeys: Int, writeKey: (Int) -> Unit) {
+    check(times.size == numKeys) { "Animation channel has ${times.size} key times for $numKeys keys" }
+    writeInt(numKeys)
+    times.forEach { writeDouble(it) }
+    for (i in 0..<numKeys) writeKey(i)
+}
+
+private inline fun <T> ByteBuffer.readKeys(readKey: () -> T): Pair<DoubleArray, List<T>> {
+    val times = DoubleArray(int) { double }
+    return times to List(times.size) { readKey() }
+}
+
+private fun DataOutput.writeTransform(transform: TransformC) {
+    transform.position.run { writeVector(x, y, z) }
+    transform.rotation.run { writeVector(x, y, z, w) }
+    transform.scale.run { writeVector(x, y, z) }
+}
+
+private fun ByteBuffer.readTransform() = Transform(
+    Vector3f(float, float, float),
+    Quaternionf(float, float, float, float),
+    Vector3f(float, float, float)
+)
+
+private fun DataOutput.writeVector(vector: Vector4fc) = writeVector(vector.x(), vector.y(), vector.z(), vector.w())
+private fun DataOutput.writeVector(vararg components: Float) = components.forEach { writeFloat(it) }
+private fun ByteBuffer.readVector4f(): Vector4fc = Vector4f(float, float, float, float)
+
+private fun DataOutput.writeString(string: String) = writeByteArray(string.toByteArray())
+private fun ByteBuffer.readString() = String(ByteArray(int).also { get(it) })
+
+private fun DataOutput.writeNullableString(string: String?) = writeNullable(string) { writeString(it) }
+private fun ByteBuffer.readNullableString() = readNullable { readString() }
+
+private inline fun <T : Any> DataOutput.writeNullable(value: T?, writeValue: (T) -> Unit) {
+    writeBoolean(value != null)
+    if (value != null) writeValue(value)
+}
+
+private inline fun <T : Any> ByteBuffer.readNullable(readValue: () -> T): T? = if (readBoolean()) readValue() else null
+
+private fun ByteBuffer.readBoolean() = get() != 0.toByte()
+
+private fun DataOutput.writeByteArray(bytes: ByteArray) {
+    writeInt(bytes.size)
+    write(bytes)
+}
+
+private fun DataOutput.writeBuffer(buffer: ByteBuffer) =
+    writeByteArray(ByteArray(buffer.remaining()).also { buffer.duplicate().get(it) })
+
+/**
+ * Reads a block of bytes written by [writeBuffer] as a view into this buffer, so mapped data is never copied.
+ */
+private fun ByteBuffer.readBuffer(): ByteBuffer {
+    val length = int
+    return slice(position(), length).also { position(position() + length) }
+}
+
+private fun <T> List<T>.indexOfInstance(element: T) = indexOfFirst { it === element }
+    .also { check(it != -1) { "$element is not part of the model" } }
@@ -23,6 +23,7 @@ import org.lwjgl.assimp.AITexture
 import org.lwjgl.assimp.Assimp.*
 import org.lwjgl.stb.STBImage.stbi_failure_reason
 import org.lwjgl.stb.STBImage.stbi_load_from_memory
+import java.nio.ByteBuffer
 
 private val logger = KotlinLogging.logger("MaterialLoader")
 private val timer = StepTimer(logger)
@@ -35,34 +36,44 @@ internal fun loadEmbeddedTextures(scene: AIScene): Map<String, Texture2D> {
     for (i in 0..<scene.mNumTextures()) {
         val texture = AITexture.create(textures.get(i))
 
-        timer.start()
-
-        val width = IntArray(1)
-        val height = IntArray(1)
-        val channels = IntArray(1)
-        val imageData = stbi_load_from_memory(texture.pcDataCompressed(), width, height, channels, 0)
-        if (imageData == null) {
-            logger.warn { "Failed to decode embedded texture $i: ${stbi_failure_reason()}" }
-            continue
-        }
-
-        timer.trace { "Embedded texture decode" }
-
         val filePath = texture.mFilename().dataString()
-        val tex = Texture2D.BufferBuilder(
-            imageData, Vector2i(width[0], height[0]), AbstractTexture.Format.fromChannels(channels[0])
-        ).setType(determineType(filePath)).build()
+        val tex = loadEmbeddedTexture(i, texture.pcDataCompressed(), filePath) ?: continue
 
         embeddedTextures["*$i"] = tex
         embeddedTextures[filePath] = tex
-
-        timer.trace { "Loaded embedded texture $i $filePath: $tex" }
     }
 
     logger.debug { "${embeddedTextures.size / 2} of ${scene.mNumTextures()} embedded textures loaded" }
     return embeddedTextures
 }
 
+/**
+ * Decodes the [compressed data][AITexture.pcDataCompressed] of the embedded texture at [index].
+ *
+ * @return the texture, or `null` if the data could not be decoded
+ */
+internal fun loadEmbeddedTexture(index: Int, compressedData: ByteBuffer, filePath: String): Texture2D? {
+    timer.start()
+
+    val width = IntArray(1)
+    val height = IntArray(1)
+    val channels = IntArray(1)
+    val imageData = stbi_load_from_memory(compressedData, width, height, channels, 0)
+    if (imageData == null) {
+        logger.warn { "Failed to decode embedded texture $index: ${stbi_failure_reason()}" }
+        return null
+    }
+
+    timer.trace { "Embedded texture decode" }
+
+    val texture = Texture2D.BufferBuilder(
+        imageData, Vector2i(width[0], height[0]), AbstractTexture.Format.fromChannels(channels[0])
+    ).setType(determineType(filePath)).build()
+
+    timer.trace { "Loaded embedded texture $index $filePath: $texture" }
+    return texture
+}
+
 private fun determineType(filePath: String): AbstractTexture.Type = when {
     "diffuse" in filePath.name -> AbstractTexture.Type.DIFFUSE
     "specular" in filePath.name -> AbstractTexture.Type.SPECULAR
@@ -71,10 +82,15 @@ private fun determineType(filePath: String): AbstractTexture.Type = when {
     else -> AbstractTexture.Type.UNKNOWN
 }
 
+/**
+ * Loads the materials of the [scene] into [materials]. The file every texture which is not embedded is loaded from is
+ * put into [textureFiles], so that it can be loaded again without the scene.
+ */
 internal fun loadMaterials(
     scene: AIScene,
     materials: MutableList<Material>,
     embeddedTextures: Map<String, Texture2D>,
+    textureFiles: MutableMap<Texture2D, String>,
     modelName: String
 ) {
     timer.start()
@@ -83,7 +99,9 @@ internal fun loadMaterials(
         ?: if (scene.mNumMaterials() == 0) return else error("Material array is not available but number of materials is not zero")
     for (i in 0..<scene.mNumMaterials()) {
         timer.trace { "Processing material $i" }
-        materials += processMaterial(i, AIMaterial.create(aiMaterials.get()), embeddedTextures, modelName)
+        materials += processMaterial(
+            i, AIMaterial.create(aiMaterials.get()), embeddedTextures, textureFiles, modelName
+        )
     }
 }
 
@@ -92,13 +110,14 @@ private fun processMaterial(
     materialIndex: Int,
     aiMaterial: AIMaterial,
     embeddedTextures: Map<String, Texture2D>,
+    textureFiles: MutableMap<Texture2D, String>,
     modelName: String
 ): Material = when (val model = aiMaterial.getIntProperty(AI_MATKEY_SHADING_MODEL)) {
     aiShadingMode_Flat, aiShadingMode_Gouraud, aiShadingMode_Phong, aiShadingMode_Blinn, aiShadingMode_Toon ->
-        processPhongMaterial(materialIndex, aiMaterial, embeddedTextures, modelName)
+        processPhongMaterial(materialIndex, aiMaterial, embeddedTextures, textureFiles, modelName)
 
     aiShadingMode_CookTorrance, aiShadingMode_PBR_BRDF ->
-        processPBRMaterial(materialIndex, aiMaterial, embeddedTextures, modelName)
+        processPBRMaterial(materialIndex, aiMaterial, embeddedTextures, textureFiles, modelName)
 
     null -> error("Shading model property not found in material")
     else -> error("Unsupported shading model: 0x${model.toHexString()}")
@@ -108,6 +127,7 @@ private fun processPhongMaterial(
     materialIndex: Int,
     aiMaterial: AIMaterial,
     embeddedTextures: Map<String, Texture2D>,
+    textureFiles: MutableMap<Texture2D, String>,
     modelName: String
 ): PhongMaterial = PhongMaterial(
     name = aiMaterial.getStringProperty(AI_MATKEY_NAME),
@@ -123,16 +143,47 @@ private fun processPhongMaterial(
     emissiveColour = aiMaterial.getColourProperty(AI_MATKEY_COLOR_EMISSIVE) ?: Vector4f(0f),
     emissiveStrength = aiMaterial.getFloatProperty(AI_MATKEY_EMISSIVE_INTENSITY) ?: 0f,
 
-    diffuseTexture = aiMaterial.getTexture(AbstractTexture.Type.DIFFUSE, materialIndex, modelName, embeddedTextures),
-    specularTexture = aiMaterial.getTexture(AbstractTexture.Type.SPECULAR, materialIndex, modelName, embeddedTextures),
-    normalTexture = aiMaterial.getTexture(AbstractTexture.Type.NORMAL, materialIndex, modelName, embeddedTextures),
-    heightTexture = aiMaterial.getTexture(AbstractTexture.Type.HEIGHT, materialIndex, modelName, embeddedTextures),
-    emissiveTexture = aiMaterial.getTexture(AbstractTexture.Type.EMISSIVE, materialIndex, modelName, embeddedTextures),
+    diffuseTexture = aiMaterial.getTexture(
+        AbstractTexture.Type.DIFFUSE,
+        materialIndex,
+        modelName,
+        embeddedTextures,
+        textureFiles
+    ),
+    specularTexture = aiMaterial.getTexture(
+        AbstractTexture.Type.SPECULAR,
+        materialIndex,
+        modelName,
+        embeddedTextures,
+        textureFiles
+    ),
+    normalTexture = aiMaterial.getTexture(
+        AbstractTexture.Type.NORMAL,
+        materialIndex,
+        modelName,
+        embeddedTextures,
+        textureFiles
+    ),
+    heightTexture = aiMaterial.getTexture(
+        AbstractTexture.Type.HEIGHT,
+        materialIndex,
+        modelName,
+        embeddedTextures,
+        textureFiles
+    ),
+    emissiveTexture = aiMaterial.getTexture(
+        AbstractTexture.Type.EMISSIVE,
+        materialIndex,
+        modelName,
+        embeddedTextures,
+        textureFiles
+    ),
     ambientOcclusionTexture = aiMaterial.getTexture(
         AbstractTexture.Type.AMBIENT_OCCLUSION,
         materialIndex,
         modelName,
-        embeddedTextures
+        embeddedTextures,
+        textureFiles
     )
 )
 
@@ -140,6 +191,7 @@ private fun processPBRMaterial(
     materialIndex: Int,
     aiMaterial: AIMaterial,
     embeddedTextures: Map<String, Texture2D>,
+    textureFiles: MutableMap<Texture2D, String>,
     modelName: String
 ): PBRMaterial = PBRMaterial(
     name = aiMaterial.getStringProperty(AI_MATKEY_NAME),
@@ -150,23 +202,55 @@ private fun processPBRMaterial(
     emissiveColour = aiMaterial.getColourProperty(AI_MATKEY_COLOR_EMISSIVE),
     emissiveStrength = aiMaterial.getFloatProperty(AI_MATKEY_EMISSIVE_INTENSITY),
 
-    diffuseTexture = aiMaterial.getTexture(AbstractTexture.Type.DIFFUSE, materialIndex, modelName, embeddedTextures),
-    metallicTexture = aiMaterial.getTexture(AbstractTexture.Type.METALNESS, materialIndex, modelName, embeddedTextures),
+    diffuseTexture = aiMaterial.getTexture(
+        AbstractTexture.Type.DIFFUSE,
+        materialIndex,
+        modelName,
+        embeddedTextures,
+        textureFiles
+    ),
+    metallicTexture = aiMaterial.getTexture(
+        AbstractTexture.Type.METALNESS,
+        materialIndex,
+        modelName,
+        embeddedTextures,
+        textureFiles
+    ),
     roughnessTexture = aiMaterial.getTexture(
         AbstractTexture.Type.ROUGHNESS,
         materialIndex,
         modelName,
-        embeddedTextures
+        embeddedTextures,
+        textureFiles
     ),
     ambientOcclusionTexture = aiMaterial.getTexture(
         AbstractTexture.Type.AMBIENT_OCCLUSION,
         materialIndex,
         modelName,
-        embeddedTextures
+        embeddedTextures,
+        textureFiles
+    ),
+    normalTexture = aiMaterial.getTexture(
+        AbstractTexture.Type.NORMAL,
+        materialIndex,
+        modelName,
+        embeddedTextures,
+        textureFiles
     ),
-    normalTexture = aiMaterial.getTexture(AbstractTexture.Type.NORMAL, materialIndex, modelName, embeddedTextures),
-    heightTexture = aiMaterial.getTexture(AbstractTexture.Type.HEIGHT, materialIndex, modelName, embeddedTextures),
-    emissiveTexture = aiMaterial.getTexture(AbstractTexture.Type.EMISSIVE, materialIndex, modelName, embeddedTextures)
+    heightTexture = aiMaterial.getTexture(
+        AbstractTexture.Type.HEIGHT,
+        materialIndex,
+        modelName,
+        embeddedTextures,
+        textureFiles
+    ),
+    emissiveTexture = aiMaterial.getTexture(
+        AbstractTexture.Type.EMISSIVE,
+        materialIndex,
+        modelName,
+        embeddedTextures,
+        textureFiles
+    )
 )
 
 private fun AIMaterial.getBooleanProperty(property: String): Boolean? =
@@ -213,7 +297,8 @@ private fun AIMaterial.getTexture(
     type: AbstractTexture.Type,
     materialIndex: Int,
     modelName: String,
-    embeddedTextures: Map<String, Texture2D>
+    embeddedTextures: Map<String, Texture2D>,
+    textureFiles: MutableMap<Texture2D, String>
 ): Texture2D? {
     val file = AIString.create()
     val textureCount = aiGetMaterialTextureCount(this, type.ai())
@@ -241,12 +326,13 @@ private fun AIMaterial.getTexture(
 
         classpathResourceExists(textureFile) -> {
             logger.trace { "Texture $textureName is loaded from file $textureFile" }
-            Textures.ofFile(textureFile, type)
+            Textures.ofFile(textureFile, type).also { textureFiles[it] = textureFile }
         }
 
         classpathResourceExists("$TEXTURE_PATH/${textureFile.name}") -> {
             logger.debug { "Texture $textureName is loaded as fallback based on file name from file $textureFile" }
             Textures.ofFile("$TEXTURE_PATH/${textureFile.name}", type)
+                .also { textureFiles[it] = "$TEXTURE_PATH/${textureFile.name}" }
         }
 
         embeddedTextures.any { it.value.type == type } -> {
@@ -0,0 +1,103 @@
+package org.etieskrill.engine.graphics.model
+
+import org.etieskrill.engine.graphics.animation.Animation.MAX_BONE_INFLUENCES
+import org.joml.Vector2f
+import org.joml.Vector3f
+import kotlin.math.abs
+import kotlin.math.max
+import kotlin.math.roundToInt
+
+/*
+ * Encodings used by the Vertex.Companion.CompactAccessor. Every encoder has a decoder doing the same as OpenGL and the
+ * built-in shaders do, so that the loss of precision can be checked without a context.
+ */
+
+private const val SHORT_MAX = Short.MAX_VALUE.toFloat()
+private const val BYTE_MAX = Byte.MAX_VALUE.toFloat()
+
+/**
+ * Encodes a value in `[-1, 1]` as a signed normalised short, which OpenGL reads back as `max(value / 32767, -1)`.
+ */
+internal fun toSnorm16(value: Float): Short = (value.coerceIn(-1f, 1f) * SHORT_MAX).roundToInt().toShort()
+
+internal fun fromSnorm16(value: Short): Float = max(value / SHORT_MAX, -1f)
+
+/**
+ * Encodes a value in `[-1, 1]` as a signed normalised byte, which OpenGL reads back as `max(value / 127, -1)`.
+ */
+internal fun toSnorm8(value: Float): Byte = (value.coerceIn(-1f, 1f) * BYTE_MAX).roundToInt().toByte()
+
+internal fun fromSnorm8(value: Byte): Float = max(value / BYTE_MAX, -1f)
+
+/**
+ * Projects a direction onto an octahedron, and unfolds its lower half over the upper one, so that it is described by
+ * two components in `[-1, 1]`. The direction need not be normalised, but a zero vector is not preserved, and decodes to
+ * the positive z axis.
+ */
+internal fun encodeOctahedral(x: Float, y: Float, z: Float, target: Vector2f): Vector2f {
+    val length = abs(x) + abs(y) + abs(z)
+    if (length == 0f) return target.zero()
+
+    val octX = x / length
+    val octY = y / length
+    return if (z >= 0) target.set(octX, octY)
+    else target.set((1 - abs(octY)) * signNotZero(octX), (1 - abs(octX)) * signNotZero(octY))
+}
+
+internal fun decodeOctahedral(x: Float, y: Float, target: Vector3f): Vector3f {
+    target.set(x, y, 1 - abs(x) - abs(y))
+    val fold = max(-target.z, 0f)
+    target.x += if (target.x >= 0) -fold else fold
+    target.y += if (target.y >= 0) -fold else fold
+    return target.normalize()
+}
+
+private fun signNotZero(value: Float) = if (value >= 0) 1f else -1f
+
+/**
+ * Determines whether the bitangent points along the cross product of normal and tangent, so that it can be derived as
+ * `cross(normal, tangent) * handedness`.
+ *
+ * @return `1` if it does or is perpendicular to it, `-1` otherwise
+ */
+internal fun handedness(
+    normalX: Float, normalY: Float, normalZ: Float,
+    tangentX: Float, tangentY: Float, tangentZ: Float,
+    biTangentX: Float, biTangentY: Float, biTangentZ: Float
+): Float {
+    val crossX = normalY * tangentZ - normalZ * tangentY
+    val crossY = normalZ * tangentX - normalX * tangentZ
+    val crossZ = normalX * tangentY - normalY * tangentX
+    return signNotZero(crossX * biTangentX + crossY * biTangentY + crossZ * biTangentZ)
+}
+
+/**
+ * Quantises bone weights to signed normalised bytes, such that they sum up to the same as before as closely as
+ * possible. Rounding each weight on its own lets the sum drift by up to two steps, which would visibly scale skinned
+ * vertices, so the rounding error is moved to the largest weight instead.
+ *
+ * @param weights the [MAX_BONE_INFLUENCES] weights of a vertex, each in `[0, 1]`
+ * @param target  where the quantised weights are written to
+ */
+internal fun quantiseBoneWeights(weights: FloatArray, target: ByteArray) {
+    var sum = 0f
+    var quantisedSum = 0
+    var largest = 0
+    for (i in 0..<MAX_BONE_INFLUENCES) {
+        target[i] = toSnorm8(weights[i].coerceAtLeast(0f))
+        sum += weights[i].coerceAtLeast(0f)
+        quantisedSum += target[i]
+        if (weights[i] > weights[largest]) largest = i
+    }
+
+    val error = (sum.coerceAtMost(1f) * BYTE_MAX).roundToInt() - quantisedSum
+    target[largest] = (target[largest] + error).coerceIn(0, Byte.MAX_VALUE.toInt()).toByte()
+}
+
+/**
+ * Encodes a bone id as a byte, which is plenty for the bones the shaders support.
+ */
+internal fun toBoneByte(bone: Int): Byte {
+    require(bone in -1..Byte.MAX_VALUE) { "Bone id $bone does not fit into a compact vertex" }
+    return bone.toByte()
+}
@@ -0,0 +1,178 @@
+package org.etieskrill.engine.graphics.particle
+
+import org.joml.Vector4f
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import kotlin.math.cos
+import kotlin.math.min
+import kotlin.math.sin
+
+/**
+ * Holds the particles of a single [ParticleEmitter] as a structure of arrays, where the components of the particle at
+ * some index `i` are found at `i`, or at `3 * i` and `4 * i` for vectors and colours respectively.
+ *
+ * The alive particles always occupy the first [size] indices: a particle is [removed][remove] by moving the last one
+ * into its place, so updating and uploading never skip over dead ones, and nothing is allocated per particle.
+ */
+class ParticlePool(val capacity: Int) {
+
+    init {
+        require(capacity >= 0) { "Capacity must be non-negative" }
+    }
+
+    var size = 0; private set
+
+    /** The positions as rendered, i.e. the [relativePositions] offset by the last [update]. */
+    val positions = FloatArray(3 * capacity)
+    val relativePositions = FloatArray(3 * capacity)
+    val velocities = FloatArray(3 * capacity)
+
+    /** The rotations of the sprites in radians. */
+    val rotations = FloatArray(capacity)
+    val angularVelocities = FloatArray(capacity)
+
+    val baseColours = FloatArray(4 * capacity)
+    val colours = FloatArray(4 * capacity)
+
+    val lifetimes = FloatArray(capacity)
+    val initialLifetimes = FloatArray(capacity)
+
+    private val staging = FloatArray(VERTEX_FLOATS * min(capacity, STAGING_PARTICLES))
+
+    val isFull get() = size == capacity
+
+    /**
+     * Appends a particle, which is left to the caller to initialise, since the slot still holds the values of the
+     * last particle to be removed from it.
+     *
+     * @return the index of the new particle
+     */
+    fun add(): Int {
+        check(size < capacity) { "Particle pool is full with $capacity particles" }
+        return size++
+    }
+
+    /**
+     * Removes the particle at [index] by moving the last particle into its slot.
+     */
+    fun remove(index: Int) {
+        if (index !in 0..<size) throw IndexOutOfBoundsException("Index $index out of bounds for size $size")
+        val last = --size
+        if (index == last) return
+
+        System.arraycopy(positions, 3 * last, positions, 3 * index, 3)
+        System.arraycopy(relativePositions, 3 * last, relativePositions, 3 * index, 3)
+        System.arraycopy(velocities, 3 * last, velocities, 3 * index, 3)
+        rotations[index] = rotations[last]
+        angularVelocities[index] = angularVelocities[last]
+        System.arraycopy(baseColours, 4 * last, baseColours, 4 * index, 4)
+        System.arraycopy(colours, 4 * last, colours, 4 * index, 4)
+        lifetimes[index] = lifetimes[last]
+        initialLifetimes[index] = initialLifetimes[last]
+    }
+
+    fun clear() {
+        size = 0
+    }
+
+    /**
+     * Ages all particles by [delta] seconds, removes those whose lifetime ran out, and moves and rotates the rest.
+     * The positions are set to the relative positions offset by `(offsetX, offsetY, offsetZ)`.
+     *
+     * Colours are left untouched, see [updateColours].
+     */
+    fun update(delta: Float, offsetX: Float = 0f, offsetY: Float = 0f, offsetZ: Float = 0f) {
+        var i = 0
+        while (i < size) {
+            val lifetime = lifetimes[i] - delta
+            if (lifetime <= 0) {
+                remove(i) //the last particle is moved here and still needs to be updated
+                continue
+            }
+            lifetimes[i] = lifetime
+
+            val v = 3 * i
+            val x = relativePositions[v] + velocities[v] * delta
+            val y = relativePositions[v + 1] + velocities[v + 1] * delta
+            val z = relativePositions[v + 2] + velocities[v + 2] * delta
+            relativePositions[v] = x
+            relativePositions[v + 1] = y
+            relativePositions[v + 2] = z
+            positions[v] = x + offsetX
+            positions[v + 1] = y + offsetY
+            positions[v + 2] = z + offsetZ
+
+            rotations[i] += angularVelocities[i] * delta
+            i++
+        }
+    }
+
+    /**
+     * Resets every colour to its base colour, and then passes it through [colourUpdate] together with the normalised
+     * remaining lifetime. The same vector is reused for every particle.
+     */
+    inline fun updateColours(
+        colour: Vector4f,
+        colourUpdate: (lifetime: Float, outColour: Vector4f) -> Unit
+    ) {
+        for (i in 0..<size) {
+            val c = 4 * i
+            colour.set(baseColours[c], baseColours[c + 1], baseColours[c + 2], baseColours[c + 3])
+            colourUpdate(lifetimes[i] / initialLifetimes[i], colour)
+            colours[c] = colour.x
+            colours[c + 1] = colour.y
+            colours[c + 2] = colour.z
+            colours[c + 3] = colour.w
+        }
+    }
+
+    /**
+     * Writes the alive particles to [buffer] starting at its position, laid out as by [ParticleVertexAccessor]: the
+     * position, the rotation as a column-major 2x2 matrix, and the colour. The particles are interleaved in chunks on
+     * the heap and then copied over in bulk, which is considerably faster than writing every float on its own,
+     * especially into mapped memory.
+     *
+     * @return the number of bytes written
+     */
+    fun writeVertices(buffer: ByteBuffer): Int {
+        val floats = buffer.slice().order(ByteOrder.nativeOrder()).asFloatBuffer()
+        check(floats.remaining() >= VERTEX_FLOATS * size) { "Buffer is too small for $size particles" }
+
+        var first = 0
+        while (first < size) {
+            val count = min(size - first, STAGING_PARTICLES)
+            for (i in 0..<count) {
+                val particle = first + i
+                val p = 3 * particle
+                val c = 4 * particle
+                val s = VERTEX_FLOATS * i
+                val cos = cos(rotations[particle])
+                val sin = sin(rotations[particle])
+
+                staging[s] = positions[p]
+                staging[s + 1] = positions[p + 1]
+                staging[s + 2] = positions[p + 2]
+                staging[s + 3] = cos
+                staging[s + 4] = sin
+                staging[s + 5] = -sin
+                staging[s + 6] = cos
+                staging[s + 7] = colours[c]
+                staging[s + 8] = colours[c + 1]
+                staging[s + 9] = colours[c + 2]
+                staging[s + 10] = colours[c + 3]
+            }
+            floats.put(staging, 0, VERTEX_FLOATS * count)
+            first += count
+        }
+
+        return VERTEX_BYTE_SIZE * size
+    }
+
+    companion object {
+        private const val VERTEX_FLOATS = 3 + 4 + 4
+        const val VERTEX_BYTE_SIZE = VERTEX_FLOATS * Float.SIZE_BYTES
+
+        private const val STAGING_PARTICLES = 1024
+    }
+
+}
@@ -5,6 +5,10 @@ import org.joml.Matrix2f
 import org.joml.Vector3f
 import org.joml.Vector4f
 
+/**
+ * Describes the vertex layout of a particle. The vertices themselves are written in bulk by
+ * [ParticlePool.writeVertices], which must follow the same layout.
+ */
 object ParticleVertexAccessor : VertexArrayAccessor<Particle>() {
     override fun registerFields() {
         addField<Vector3f> { particle, buffer -> particle.position[buffer] }
@@ -5,47 +5,49 @@ import org.etieskrill.engine.entity.component.TransformC
 import org.etieskrill.engine.graphics.texture.Texture2D
 import org.joml.Math.*
 import org.joml.Matrix2f
+import org.joml.Matrix4f
+import org.joml.Matrix4fc
 import org.joml.Vector3f
 import org.joml.Vector3fc
 import org.joml.Vector4f
 import org.joml.Vector4fc
-import org.joml.times
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinWorkerThread
+import java.util.concurrent.RecursiveAction
 import kotlin.math.abs
+import kotlin.math.atan2
 import kotlin.math.ceil
 import kotlin.math.sign
+import kotlin.random.Random
 import kotlin.time.Duration
 import kotlin.time.Duration.Companion.milliseconds
 import kotlin.time.Duration.Companion.seconds
 import kotlin.time.DurationUnit
 
+/**
+ * A single particle, as passed to [ParticleEmitter.setParticles]. Emitters do not keep particle objects, but store
+ * them in a [ParticlePool].
+ */
 class Particle(
     val position: Vector3f = Vector3f(),
-    internal val relativePosition: Vector3f = Vector3f(),
 
     val velocity: Vector3f = Vector3f(),
     var angularVelocity: Float = 0f,
 
     val transform: Matrix2f = Matrix2f(),
 
-    internal val baseColour: Vector4f = Vector4f(1f),
     val colour: Vector4f = Vector4f(1f),
 
-    initialLifetimeSeconds: Float = 0f,
     var lifetimeSeconds: Float = 0f
 ) {
-    var initialLifetimeSeconds: Float = initialLifetimeSeconds; internal set
 
-    fun update(delta: Float, emitter: ParticleEmitter) {
-        lifetimeSeconds -= delta
-
-        relativePosition += velocity * delta
-        position.set(relativePosition)
-        if (emitter.particlesMoveWithEmitter)
-            position += emitter.transform.position
-
-        transform.rotate(angularVelocity * delta)
-
-        emitter.colourUpdate(lifetimeSeconds / initialLifetimeSeconds, colour.set(baseColour))
+    internal fun reset() {
+        position.zero()
+        velocity.zero()
+        angularVelocity = 0f
+        transform.identity()
+        colour.set(1f)
+        lifetimeSeconds = 0f
     }
 
 }
@@ -86,14 +88,22 @@ class ParticleEmitter(
     },
 
     var spawnParticles: Boolean = true,
+
+    /**
+     * Seeds all random values of the emitter, so that two emitters with the same seed and parameters produce the same
+     * particles when updated with the same deltas and transforms.
+     */
+    val seed: Long = Random.nextLong(),
 ) {
 
+    private val random = Random(seed)
+
     private val initialVelocity: (outVelocity: Vector3f) -> Unit = when {
         initialVelocity != null && randomVelocity != null -> error("initialVelocity and randomVelocity may not be set simultaneously")
         initialVelocity != null -> initialVelocity
         randomVelocity != null -> { outVelocity ->
             outVelocity
-                .set(random(), random(), random())
+                .set(random.nextFloat(), random.nextFloat(), random.nextFloat())
                 .mul(randomVelocity)
                 .sub(randomVelocity / 2f, randomVelocity / 2f, randomVelocity / 2f)
         }
@@ -115,78 +125,118 @@ class ParticleEmitter(
         else -> 0.seconds
     }
 
-    private val particles = List(maxNumParticles) { Particle() }
-    private val internalAliveParticles = ArrayDeque<Particle>()
-    val aliveParticles: List<Particle> get() = internalAliveParticles
-    private var nextParticle = 0
+    /**
+     * The alive particles, of which there are at most [maxNumParticles].
+     */
+    val particles = ParticlePool(maxNumParticles)
     private var secondsSinceLastParticle = 0f
 
+    private val colour = Vector4f()
+    private val velocity = Vector3f()
+    private val spawnPosition = Vector3f()
+    private val nodeMatrix = Matrix4f()
+    private val localMatrix = Matrix4f()
+    private val setParticle = Particle()
+
     init {
         check(lifetime >= Duration.ZERO) { "Particle lifetime must be non-negative" }
         check(size >= 0) { "Particle size must be non-negative" }
     }
 
+    /**
+     * @param transform the transform of the node the emitter belongs to
+     */
     fun update(delta: Double, transform: TransformC) {
-        internalAliveParticles
-            .onEach { it.update(delta.toFloat(), this) }
-            .removeAll { it.lifetimeSeconds <= 0 }
+        val node = nodeMatrix.set(transform.matrix)
+        simulate(delta.toFloat(), node, localMatrix.set(node).mul(this.transform.matrix), this.transform.position)
+    }
+
+    /**
+     * Updates the emitter without reading any state it shares with other emitters, so that different emitters can be
+     * simulated concurrently.
+     *
+     * @param node   the composed matrix of the node the emitter belongs to
+     * @param local  the node matrix composed with the emitter's own [transform]
+     * @param offset the position of the emitter's own [transform], which particles moving with it are offset by
+     */
+    internal fun simulate(delta: Float, node: Matrix4fc, local: Matrix4fc, offset: Vector3fc) {
+        if (particlesMoveWithEmitter) particles.update(delta, offset.x(), offset.y(), offset.z())
+        else particles.update(delta)
+        particles.updateColours(colour, colourUpdate)
 
-        if (spawnParticles) secondsSinceLastParticle += delta.toFloat()
+        if (spawnParticles) secondsSinceLastParticle += delta
         else return
 
-        val localTransform = transform * this.transform
+        val position = local.getTranslation(spawnPosition)
 
         val nextParticleDelay =
-            particleSpawnDelay.toSeconds() + (random() * 2 - 1) * particleSpawnDelaySpread.toSeconds()
-        while (secondsSinceLastParticle >= nextParticleDelay
-            && particles[nextParticle].lifetimeSeconds <= 0
-        ) {
-            if (spawnParticles) particles[nextParticle].apply {
-                if (particlesMoveWithEmitter) relativePosition.zero()
-                else relativePosition.set(localTransform.position)
-
-                if (!scatter.equals(0f, 0f, 0f)) {
-                    relativePosition.add(
-                        2f * random().toFloat() * scatter.x(),
-                        2f * random().toFloat() * scatter.y(),
-                        2f * random().toFloat() * scatter.z()
-                    ).sub(scatter)
-                }
-
-                baseColour.set(this@ParticleEmitter.baseColour)
-
-                initialVelocity(velocity)
-                velocity.mulDirection(transform.matrix)
-
-                this.transform.rotation(scatterAngleRange.lerp(random().toFloat()))
-                val rotationSpread = rotationSpread * (random().toFloat() * 2 - 1)
-                angularVelocity = (2 * PI_f * (rotationsPerSecond + rotationSpread) * sign(random() - 0.5).toFloat())
+            particleSpawnDelay.toSeconds() + (random.nextDouble() * 2 - 1) * particleSpawnDelaySpread.toSeconds()
+        while (secondsSinceLastParticle >= nextParticleDelay && !particles.isFull) {
+            spawn(position, node, offset)
+            secondsSinceLastParticle -= particleSpawnDelay.toSeconds().toFloat()
+        }
+    }
 
-                initialLifetimeSeconds = lifetime.toSeconds().toFloat() +
-                        lerp(
-                            -lifetimeSpread.toSeconds().toFloat(),
-                            lifetimeSpread.toSeconds().toFloat(),
-                            random().toFloat()
-                        )
-                lifetimeSeconds = initialLifetimeSeconds
+    private fun spawn(position: Vector3fc, node: Matrix4fc, emitterOffset: Vector3fc) = with(particles) {
+        val i = add()
+        val v = 3 * i
+        val c = 4 * i
 
-                update(0f, this@ParticleEmitter)
-                internalAliveParticles.add(this)
-                nextParticle = ++nextParticle % particles.size
-            }
+        if (particlesMoveWithEmitter) relativePositions.fill(0f, v, v + 3)
+        else position.copyTo(relativePositions, v)
 
-            secondsSinceLastParticle -= particleSpawnDelay.toSeconds().toFloat()
+        if (!scatter.equals(0f, 0f, 0f)) {
+            relativePositions[v] += 2f * random.nextFloat() * scatter.x() - scatter.x()
+            relativePositions[v + 1] += 2f * random.nextFloat() * scatter.y() - scatter.y()
+            relativePositions[v + 2] += 2f * random.nextFloat() * scatter.z() - scatter.z()
         }
+
+        val offset = if (particlesMoveWithEmitter) emitterOffset else ZERO
+        positions[v] = relativePositions[v] + offset.x()
+        positions[v + 1] = relativePositions[v + 1] + offset.y()
+        positions[v + 2] = relativePositions[v + 2] + offset.z()
+
+        initialVelocity(velocity)
+        velocity.mulDirection(node).copyTo(velocities, v)
+
+        rotations[i] = scatterAngleRange.lerp(random.nextFloat())
+        val rotationSpread = rotationSpread * (random.nextFloat() * 2 - 1)
+        angularVelocities[i] = 2 * PI_f * (rotationsPerSecond + rotationSpread) * sign(random.nextFloat() - 0.5f)
+
+        initialLifetimes[i] = lifetime.toSeconds().toFloat() +
+                lerp(
+                    -lifetimeSpread.toSeconds().toFloat(),
+                    lifetimeSpread.toSeconds().toFloat(),
+                    random.nextFloat()
+                )
+        lifetimes[i] = initialLifetimes[i]
+
+        baseColour.copyTo(baseColours, c)
+        colourUpdate(1f, colour.set(baseColour))
+        colour.copyTo(colours, c)
     }
 
     fun <T : Any> setParticles(source: List<T>, block: (source: T, target: Particle) -> Unit) {
         check(source.size <= maxNumParticles)
         { "Source contains too many entries (${source.size}) for emitter with max particle count of $maxNumParticles" }
 
-        internalAliveParticles.clear()
-        source.zip(particles).forEach {
-            block(it.first, it.second)
-            internalAliveParticles.add(it.second)
+        particles.clear()
+        for (element in source) {
+            setParticle.reset()
+            block(element, setParticle)
+
+            val i = particles.add()
+            with(setParticle) {
+                position.copyTo(particles.relativePositions, 3 * i)
+                position.copyTo(particles.positions, 3 * i)
+                velocity.copyTo(particles.velocities, 3 * i)
+                particles.rotations[i] = atan2(transform.m01(), transform.m00())
+                particles.angularVelocities[i] = angularVelocity
+                colour.copyTo(particles.baseColours, 4 * i)
+                colour.copyTo(particles.colours, 4 * i)
+                particles.lifetimes[i] = lifetimeSeconds
+                particles.initialLifetimes[i] = lifetimeSeconds
+            }
         }
     }
 
@@ -195,24 +245,53 @@ class ParticleEmitter(
 private fun Duration.toSeconds() = toDouble(DurationUnit.SECONDS)
 private fun ClosedRange<Float>.lerp(t: Float) = lerp(start, endInclusive, t)
 
-private operator fun Vector3f.plusAssign(other: Vector3fc) {
-    add(other)
+private val ZERO: Vector3fc = Vector3f()
+
+private fun Vector3fc.copyTo(array: FloatArray, offset: Int) {
+    array[offset] = x()
+    array[offset + 1] = y()
+    array[offset + 2] = z()
 }
 
+private fun Vector4fc.copyTo(array: FloatArray, offset: Int) {
+    array[offset] = x()
+    array[offset + 1] = y()
+    array[offset + 2] = z()
+    array[offset + 3] = w()
+}
+
+/**
+ * A tree of emitters sharing a common transform.
+ *
+ * The tree is flattened into arrays on the first [update], so neither the [emitters] nor the [children] of any node
+ * may change afterward. Each update first composes the transforms of all nodes and emitters in one pass, and then
+ * simulates the emitters, which do not share any state and may therefore run in parallel.
+ */
 class ParticleNode(
     val emitters: List<ParticleEmitter> = listOf(),
     val children: List<ParticleNode> = listOf(),
     val transform: Transform = Transform()
 ) {
 
-    fun update(delta: Double) {
-        update(delta, Transform())
-    }
+    private var flattened: FlattenedTree? = null
+
+    /**
+     * @param pool if set, the emitters are simulated in parallel on this pool
+     */
+    @JvmOverloads
+    fun update(delta: Double, pool: ForkJoinPool? = null) {
+        val tree = flattened ?: FlattenedTree(this).also { flattened = it }
+        tree.composeTransforms()
+
+        if (pool == null || tree.emitters.size < 2) {
+            //Forking off a pool thread would run on the common pool, so the serial path must not fork at all
+            for (i in tree.emitters.indices) tree.simulate(i, delta.toFloat())
+            return
+        }
 
-    private fun update(delta: Double, transform: TransformC) {
-        val transform = transform * this.transform
-        emitters.forEach { it.update(delta, transform) }
-        children.forEach { it.update(delta, Transform(transform)) }
+        val simulation = EmitterSimulation(tree, delta.toFloat(), 0, tree.emitters.size)
+        if ((Thread.currentThread() as? ForkJoinWorkerThread)?.pool === pool) simulation.invoke()
+        else pool.invoke(simulation)
     }
 
     fun setSpawnParticles(spawnParticles: Boolean) {
@@ -220,4 +299,86 @@ class ParticleNode(
         children.forEach { it.setSpawnParticles(spawnParticles) }
     }
 
+    /**
+     * The nodes of a tree in pre-order, so that every node comes after its parent, and the emitters of all nodes.
+     */
+    private class FlattenedTree(root: ParticleNode) {
+        val nodes: Array<ParticleNode>
+        private val parents: IntArray
+        private val nodeMatrices: Array<Matrix4f>
+
+        val emitters: Array<ParticleEmitter>
+        private val emitterNodes: IntArray
+        val emitterMatrices: Array<Matrix4f>
+        val emitterOffsets: Array<Vector3f>
+
+        init {
+            val nodes = mutableListOf<ParticleNode>()
+            val parents = mutableListOf<Int>()
+            val emitters = mutableListOf<ParticleEmitter>()
+            val emitterNodes = mutableListOf<Int>()
+
+            fun visit(node: ParticleNode, parent: Int) {
+                val index = nodes.size
+                nodes += node
+                parents += parent
+                for (emitter in node.emitters) {
+                    emitters += emitter
+                    emitterNodes += index
+                }
+                for (child in node.children) visit(child, index)
+            }
+            visit(root, -1)
+
+            this.nodes = nodes.toTypedArray()
+            this.parents = parents.toIntArray()
+            this.nodeMatrices = Array(nodes.size) { Matrix4f() }
+            this.emitters = emitters.toTypedArray()
+            this.emitterNodes = emitterNodes.toIntArray()
+            this.emitterMatrices = Array(emitters.size) { Matrix4f() }
+            this.emitterOffsets = Array(emitters.size) { Vector3f() }
+        }
+
+        fun simulate(emitter: Int, delta: Float) {
+            emitters[emitter].simulate(
+                delta, nodeMatrices[emitterNodes[emitter]], emitterMatrices[emitter], emitterOffsets[emitter]
+            )
+        }
+
+        fun composeTransforms() {
+            for (i in nodes.indices) {
+                val matrix = if (parents[i] < 0) nodeMatrices[i].identity() else nodeMatrices[i].set(nodeMatrices[parents[i]])
+                matrix.mul(nodes[i].transform.matrix)
+            }
+            for (i in emitters.indices) {
+                val transform = emitters[i].transform
+                emitterMatrices[i].set(nodeMatrices[emitterNodes[i]]).mul(transform.matrix)
+                emitterOffsets[i].set(transform.position)
+            }
+        }
+    }
+
+    /**
+     * Recursively halves a range of emitters until a single one is left to simulate.
+     */
+    private class EmitterSimulation(
+        private val tree: FlattenedTree,
+        private val delta: Float,
+        private val from: Int,
+        private val to: Int
+    ) : RecursiveAction() {
+        public override fun compute() {
+            if (to - from <= 1) {
+                for (i in from..<to) tree.simulate(i, delta)
+                return
+            }
+
+            val middle = (from + to) ushr 1
+            invokeAll(
+                EmitterSimulation(tree, delta, from, middle),
+                EmitterSimulation(tree, delta, middle, to)
+            )
+        }
+    }
+
 }
@@ -0,0 +1,145 @@
+package org.etieskrill.engine.graphics.queue;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.etieskrill.engine.graphics.camera.Camera;
+import org.etieskrill.engine.graphics.gl.shader.ShaderProgram;
+import org.etieskrill.engine.graphics.model.Material;
+import org.etieskrill.engine.graphics.model.Mesh;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link RenderBackend} which does not render anything, but counts the calls it receives and records the meshes in
+ * the order they are drawn along with their level of detail, e.g. to test or profile a {@link RenderQueue} without a graphics context.
+ */
+@Getter
+public class RecordingRenderBackend implements RenderBackend {
+
+    private int shaderChanges;
+    private int cameraUploads;
+    private int materialChanges;
+    private int meshChanges;
+    private int pipelineStateChanges;
+    private int transformUploads;
+    private int drawCalls;
+    private int instancedDrawCalls;
+    private int instances;
+    private int instancingChanges;
+    /**
+     * Draws of single meshes while instancing was enabled, which would read their model transform from the instance
+     * attributes instead of the uniform.
+     */
+    private int instancedSingleDraws;
+    @Getter(AccessLevel.NONE)
+    private boolean instancing;
+
+    private final List<Mesh> drawnMeshes = new ArrayList<>();
+    private final List<Integer> drawnLods = new ArrayList<>();
+
+    @Override
+    public void begin(@NotNull Camera camera) {
+    }
+
+    @Override
+    public void setShader(@NotNull ShaderProgram shader, @Nullable Camera camera) {
+        shaderChanges++;
+        if (camera != null) cameraUploads++;
+    }
+
+    @Override
+    public void setMaterial(@NotNull ShaderProgram shader, @NotNull Material material) {
+        materialChanges++;
+    }
+
+    @Override
+    public void setMesh(@NotNull ShaderProgram shader, @NotNull Mesh mesh) {
+        meshChanges++;
+    }
+
+    @Override
+    public void setCulling(boolean culling) {
+        pipelineStateChanges++;
+    }
+
+    @Override
+    public void setBlending(boolean blending) {
+        pipelineStateChanges++;
+    }
+
+    @Override
+    public void setOutline(boolean outline) {
+        pipelineStateChanges++;
+    }
+
+    @Override
+    public void setWireframe(boolean wireframe) {
+        pipelineStateChanges++;
+    }
+
+    @Override
+    public void setModelTransform(@NotNull ShaderProgram shader, float @NotNull [] matrices, int offset) {
+        transformUploads++;
+    }
+
+    @Override
+    public void setMeshTransform(@NotNull ShaderProgram shader, float @NotNull [] matrices, int offset) {
+        transformUploads++;
+    }
+
+    @Override
+    public void setTextureScale(@NotNull ShaderProgram shader, float x, float y) {
+    }
+
+    @Override
+    public void draw(@NotNull ShaderProgram shader, @NotNull Mesh mesh, int lod) {
+        drawCalls++;
+        if (instancing) instancedSingleDraws++;
+        drawnMeshes.add(mesh);
+        drawnLods.add(lod);
+    }
+
+    @Override
+    public void setInstances(float @NotNull [] matrices, int count) {
+        instances = count;
+    }
+
+    @Override
+    public void setInstancing(@NotNull ShaderProgram shader, boolean instancing) {
+        instancingChanges++;
+        this.instancing = instancing;
+    }
+
+    @Override
+    public void drawInstanced(@NotNull ShaderProgram shader, @NotNull Mesh mesh, int lod, int firstInstance, int count) {
+        drawCalls++;
+        instancedDrawCalls++;
+        for (int i = 0; i < count; i++) {
+            drawnMeshes.add(mesh);
+            drawnLods.add(lod);
+        }
+    }
+
+    @Override
+    public void end() {
+    }
+
+    /**
+     * @return the number of all shader, material, mesh, pipeline and instancing state changes
+     */
+    public int getStateChanges() {
+        return shaderChanges + materialChanges + meshChanges + pipelineStateChanges + instancingChanges;
+    }
+
+    public void reset() {
+        shaderChanges = cameraUploads = materialChanges = meshChanges = pipelineStateChanges = transformUploads = 0;
+        drawCalls = instancedDrawCalls = instances = instancingChanges = instancedSingleDraws = 0;
+        instancing = false;
+        drawnMeshes.clear();
+        drawnLods.clear();
+    }
+
+}
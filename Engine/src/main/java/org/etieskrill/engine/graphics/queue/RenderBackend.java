@@ -0,0 +1,87 @@
+package org.etieskrill.engine.graphics.queue;
+
+import org.etieskrill.engine.graphics.camera.Camera;
+import org.etieskrill.engine.graphics.gl.shader.ShaderProgram;
+import org.etieskrill.engine.graphics.model.Material;
+import org.etieskrill.engine.graphics.model.Mesh;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The state changes and draw calls a {@link RenderQueue} is submitted to. The queue only calls a setter if the state
+ * actually differs from the one previously set, so an implementation may apply every call as is.
+ */
+public interface RenderBackend {
+
+    /**
+     * Called once before any other call of a submission.
+     */
+    void begin(@NotNull Camera camera);
+
+    /**
+     * @param shader the shader to use for all following draws
+     * @param camera the camera, whose uniforms must be set if it is non-null, which is the case the first time the
+     *               shader is used in a submission
+     */
+    void setShader(@NotNull ShaderProgram shader, @Nullable Camera camera);
+
+    void setMaterial(@NotNull ShaderProgram shader, @NotNull Material material);
+
+    /**
+     * Binds the vertices of a mesh, and sets whether the shader must decode them from the compact layout.
+     */
+    void setMesh(@NotNull ShaderProgram shader, @NotNull Mesh mesh);
+
+    void setCulling(boolean culling);
+
+    void setBlending(boolean blending);
+
+    void setOutline(boolean outline);
+
+    void setWireframe(boolean wireframe);
+
+    /**
+     * @param matrices the column-major model matrix at {@code offset}, which is only valid for the duration of the call
+     */
+    void setModelTransform(@NotNull ShaderProgram shader, float @NotNull [] matrices, int offset);
+
+    /**
+     * @param matrices the column-major mesh matrix at {@code offset}, which is only valid for the duration of the call
+     */
+    void setMeshTransform(@NotNull ShaderProgram shader, float @NotNull [] matrices, int offset);
+
+    void setTextureScale(@NotNull ShaderProgram shader, float x, float y);
+
+    /**
+     * @param lod the index into the {@link Mesh#getLods() levels of detail} of the mesh
+     */
+    void draw(@NotNull ShaderProgram shader, @NotNull Mesh mesh, int lod);
+
+    /**
+     * Called at most once per submission, before any other draw.
+     *
+     * @param matrices the column-major model matrices of all instances drawn in the submission, which are only valid
+     *                 for the duration of the call
+     * @param count    the number of matrices
+     */
+    void setInstances(float @NotNull [] matrices, int count);
+
+    /**
+     * @param instancing whether the shader should take its model transform from the instances instead of the uniform,
+     *                   which is always disabled again before the submission ends
+     */
+    void setInstancing(@NotNull ShaderProgram shader, boolean instancing);
+
+    /**
+     * @param lod           the index into the {@link Mesh#getLods() levels of detail} of the mesh
+     * @param firstInstance the index of the first instance as passed to {@link #setInstances(float[], int)}
+     * @param count         the number of instances to draw
+     */
+    void drawInstanced(@NotNull ShaderProgram shader, @NotNull Mesh mesh, int lod, int firstInstance, int count);
+
+    /**
+     * Called once after all other calls of a submission.
+     */
+    void end();
+
+}
@@ -0,0 +1,450 @@
+package org.etieskrill.engine.graphics.queue;
+
+import org.etieskrill.engine.entity.component.TransformC;
+import org.etieskrill.engine.graphics.camera.Camera;
+import org.etieskrill.engine.graphics.gl.shader.ShaderProgram;
+import org.etieskrill.engine.graphics.model.Material;
+import org.etieskrill.engine.graphics.model.Mesh;
+import org.etieskrill.engine.graphics.model.Model;
+import org.etieskrill.engine.graphics.model.Node;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector2fc;
+
+import java.util.*;
+
+/**
+ * Collects the meshes to draw in a frame, and submits them to a {@link RenderBackend} in an order which minimises
+ * state changes, without any redundant ones.
+ * <p>
+ * Each mesh is represented by a 64-bit sort key. Opaque meshes are ordered by shader, material and mesh, and only then
+ * front to back, while transparent meshes are all drawn after the opaque ones, strictly back to front:
+ * <pre>
+ * opaque:      0 | shader (11) | material (12) | mesh (16) | depth (24)
+ * transparent: 1 | inverse depth (24) | shader (11) | material (12) | mesh (16)
+ * </pre>
+ * Shaders, materials and meshes are given ids the first time they are added, which wrap around once they exceed the
+ * number of bits in the key. This only makes the order less optimal, since state changes are filtered by identity.
+ * <p>
+ * Consecutive meshes flagged {@link #INSTANCEABLE}, which differ in nothing but their model transform, are drawn as
+ * one instanced batch. The model transforms of all batches are handed to the backend once, before drawing.
+ * <p>
+ * Each mesh is drawn at one of its {@link Mesh#getLods() levels of detail}, which is picked when it is added. Meshes at
+ * different levels are never batched together.
+ * <p>
+ * A {@code RenderQueue} is not thread safe.
+ */
+public final class RenderQueue {
+
+    public static final int CULLING = 1;
+    public static final int TRANSPARENT = 1 << 1;
+    public static final int OUTLINE = 1 << 2;
+    public static final int WIREFRAME = 1 << 3;
+    /**
+     * The shader reads the model transform from per-instance attributes when instancing is enabled.
+     */
+    public static final int INSTANCEABLE = 1 << 4;
+
+    static final int SHADER_BITS = 11, MATERIAL_BITS = 12, MESH_BITS = 16, DEPTH_BITS = 24;
+
+    private static final int MATRIX_SIZE = 16;
+    private static final int RADIX_BITS = 8, RADIX = 1 << RADIX_BITS;
+
+    private final Ids shaderIds = new Ids(SHADER_BITS);
+    private final Ids materialIds = new Ids(MATERIAL_BITS);
+    private final Ids meshIds = new Ids(MESH_BITS);
+
+    private int size;
+    private long[] keys;
+    private int[] order;
+    private ShaderProgram[] shaders;
+    private Material[] materials;
+    private Mesh[] meshes;
+    private int[] flags;
+    private int[] lods;
+    private float[] modelTransforms;
+    private float[] meshTransforms;
+    private float[] textureScales;
+
+    private long[] sortedKeys, keyScratch;
+    private int[] orderScratch;
+
+    private int minInstances = 2;
+    private int[] batchSizes, batchStarts;
+    private float[] instanceTransforms;
+    private final int[] counts = new int[RADIX];
+
+    private final Set<ShaderProgram> usedShaders = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<Matrix4f> nodeTransforms = new ArrayList<>();
+
+    public RenderQueue() {
+        this(256);
+    }
+
+    public RenderQueue(int initialCapacity) {
+        allocate(Math.max(1, initialCapacity));
+    }
+
+    /**
+     * Adds all meshes of a model.
+     *
+     * @param transform    the model transform
+     * @param depth        the distance to the camera, normalised to {@code [0, 1]}
+     * @param textureScale the texture scale, or {@code null} for none
+     * @param flags        any of {@link #OUTLINE} and {@link #WIREFRAME}, where {@link #CULLING} and
+     *                     {@link #TRANSPARENT} are set as described by the model and its materials
+     */
+    public void add(@NotNull TransformC transform, @NotNull Model model, @NotNull ShaderProgram shader, float depth,
+                    @Nullable Vector2fc textureScale, int flags) {
+        add(transform, model, shader, depth, textureScale, flags, 0);
+    }
+
+    /**
+     * Adds all meshes of a model, each at the coarsest level of detail which deviates from the full mesh by no more
+     * than the given error.
+     *
+     * @param maxLodError the largest acceptable deviation in model space, or zero to always draw the full meshes
+     * @see #add(TransformC, Model, ShaderProgram, float, Vector2fc, int)
+     */
+    public void add(@NotNull TransformC transform, @NotNull Model model, @NotNull ShaderProgram shader, float depth,
+                    @Nullable Vector2fc textureScale, int flags, float maxLodError) {
+        int modelFlags = flags & ~(CULLING | TRANSPARENT);
+        if (model.doCulling()) modelFlags |= CULLING;
+        if (model.hasTransparency()) modelFlags |= TRANSPARENT;
+
+        Node rootNode = model.getNodes().getFirst();
+        addNode(rootNode, 0, rootNode.getTransform().getMatrix(), transform.getMatrix(), shader, depth,
+                textureScale != null ? textureScale.x() : 1, textureScale != null ? textureScale.y() : 1,
+                modelFlags, maxLodError);
+    }
+
+    private void addNode(Node node, int level, Matrix4fc meshTransform, Matrix4fc modelTransform, ShaderProgram shader,
+                         float depth, float textureScaleX, float textureScaleY, int flags, float maxLodError) {
+        for (Mesh mesh : node.getMeshes()) {
+            int meshFlags = mesh.getMaterial().isTwoSided() ? flags & ~CULLING : flags;
+            add(shader, mesh.getMaterial(), mesh, modelTransform, meshTransform, depth,
+                    textureScaleX, textureScaleY, meshFlags, mesh.selectLod(maxLodError));
+        }
+
+        if (node.getChildren().isEmpty()) return;
+        if (nodeTransforms.size() <= level) nodeTransforms.add(new Matrix4f());
+        Matrix4f childTransform = nodeTransforms.get(level);
+        for (Node child : node.getChildren()) {
+            meshTransform.mul(child.getTransform().getMatrix(), childTransform);
+            addNode(child, level + 1, childTransform, modelTransform, shader, depth, textureScaleX, textureScaleY, flags,
+                    maxLodError);
+        }
+    }
+
+    /**
+     * Adds a single mesh.
+     *
+     * @param depth the distance to the camera, normalised to {@code [0, 1]}
+     * @param flags any of {@link #CULLING}, {@link #TRANSPARENT}, {@link #OUTLINE} and {@link #WIREFRAME}
+     */
+    public void add(@NotNull ShaderProgram shader, @NotNull Material material, @NotNull Mesh mesh,
+                    @NotNull Matrix4fc modelTransform, @NotNull Matrix4fc meshTransform, float depth,
+                    float textureScaleX, float textureScaleY, int flags) {
+        add(shader, material, mesh, modelTransform, meshTransform, depth, textureScaleX, textureScaleY, flags, 0);
+    }
+
+    /**
+     * Adds a single mesh at the given level of detail.
+     *
+     * @param lod the index into the {@link Mesh#getLods() levels of detail} of the mesh
+     * @see #add(ShaderProgram, Material, Mesh, Matrix4fc, Matrix4fc, float, float, float, int)
+     */
+    public void add(@NotNull ShaderProgram shader, @NotNull Material material, @NotNull Mesh mesh,
+                    @NotNull Matrix4fc modelTransform, @NotNull Matrix4fc meshTransform, float depth,
+                    float textureScaleX, float textureScaleY, int flags, int lod) {
+        if (size == keys.length) allocate(2 * size);
+
+        keys[size] = key((flags & TRANSPARENT) != 0,
+                shaderIds.get(shader),
+                materialIds.get(material),
+                meshIds.get(mesh),
+                quantiseDepth(depth));
+        shaders[size] = shader;
+        materials[size] = material;
+        meshes[size] = mesh;
+        this.flags[size] = flags;
+        lods[size] = lod;
+        modelTransform.get(modelTransforms, MATRIX_SIZE * size);
+        meshTransform.get(meshTransforms, MATRIX_SIZE * size);
+        textureScales[2 * size] = textureScaleX;
+        textureScales[2 * size + 1] = textureScaleY;
+
+        size++;
+    }
+
+    static long key(boolean transparent, int shader, int material, int mesh, int depth) {
+        if (!transparent) {
+            return (long) shader << (MATERIAL_BITS + MESH_BITS + DEPTH_BITS)
+                    | (long) material << (MESH_BITS + DEPTH_BITS)
+                    | (long) mesh << DEPTH_BITS
+                    | depth;
+        } else {
+            int inverseDepth = (1 << DEPTH_BITS) - 1 - depth;
+            return 1L << 63
+                    | (long) inverseDepth << (SHADER_BITS + MATERIAL_BITS + MESH_BITS)
+                    | (long) shader << (MATERIAL_BITS + MESH_BITS)
+                    | (long) material << MESH_BITS
+                    | mesh;
+        }
+    }
+
+    static int quantiseDepth(float depth) {
+        float clamped = Math.clamp(depth, 0f, 1f);
+        return (int) (clamped * ((1 << DEPTH_BITS) - 1));
+    }
+
+    /**
+     * Sorts the meshes by their keys, treated as unsigned. Passes in which all keys have the same digit are skipped,
+     * so in practice only the few bytes in which keys differ are sorted by.
+     */
+    void sort() {
+        System.arraycopy(this.keys, 0, sortedKeys, 0, size);
+        for (int i = 0; i < size; i++) order[i] = i;
+
+        long[] keys = sortedKeys, keysOut = keyScratch;
+        int[] order = this.order, orderOut = orderScratch;
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) counts[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+            if (counts[(int) (keys[0] >>> shift) & (RADIX - 1)] == size) continue;
+
+            for (int i = 0, offset = 0; i < RADIX; i++) {
+                int count = counts[i];
+                counts[i] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < size; i++) {
+                int slot = counts[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+                keysOut[slot] = keys[i];
+                orderOut[slot] = order[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = keysOut;
+            keysOut = swapKeys;
+            int[] swapOrder = order;
+            order = orderOut;
+            orderOut = swapOrder;
+        }
+
+        this.sortedKeys = keys;
+        this.keyScratch = keysOut;
+        this.order = order;
+        this.orderScratch = orderOut;
+    }
+
+    /**
+     * Sorts and submits all added meshes, omitting state changes which do not change the state. The queue keeps its
+     * meshes until it is {@link #clear() cleared}.
+     */
+    public void submit(@NotNull Camera camera, @NotNull RenderBackend backend) {
+        if (size == 0) return;
+        sort();
+
+        backend.begin(camera);
+        usedShaders.clear();
+
+        int numInstances = findBatches();
+        if (numInstances > 0) backend.setInstances(instanceTransforms, numInstances);
+
+        ShaderProgram shader = null;
+        Material material = null;
+        Mesh mesh = null;
+        int state = 0;
+        int modelTransform = -1, meshTransform = -1, textureScale = -1;
+        int instancing = -1;
+
+        for (int i = 0; i < size; i++) {
+            int item = order[i];
+
+            if (shaders[item] != shader) {
+                if (instancing == 1) backend.setInstancing(shader, false); //Shaders are left as they were found
+                shader = shaders[item];
+                backend.setShader(shader, usedShaders.add(shader) ? camera : null);
+                material = null; //Uniforms are per shader
+                mesh = null;
+                modelTransform = meshTransform = textureScale = instancing = -1;
+            }
+            if (materials[item] != material) {
+                material = materials[item];
+                backend.setMaterial(shader, material);
+            }
+            if (meshes[item] != mesh) {
+                mesh = meshes[item];
+                backend.setMesh(shader, mesh);
+            }
+
+            int itemState = flags[item];
+            int changed = i == 0 ? ~0 : state ^ itemState;
+            if ((changed & CULLING) != 0) backend.setCulling((itemState & CULLING) != 0);
+            if ((changed & TRANSPARENT) != 0) backend.setBlending((itemState & TRANSPARENT) != 0);
+            if ((changed & OUTLINE) != 0) backend.setOutline((itemState & OUTLINE) != 0);
+            if ((changed & WIREFRAME) != 0) backend.setWireframe((itemState & WIREFRAME) != 0);
+            state = itemState;
+
+            int batchSize = batchSizes[i];
+            if (batchSize > 1) {
+                if (instancing != 1) backend.setInstancing(shader, true);
+                instancing = 1;
+            } else {
+                if (instancing != 0) { //Also after a batch, which leaves the instance attributes disabled
+                    backend.setInstancing(shader, false);
+                    instancing = 0;
+                }
+
+                if (modelTransform == -1 || !sameRange(modelTransforms, modelTransform, item, MATRIX_SIZE)) {
+                    modelTransform = item;
+                    backend.setModelTransform(shader, modelTransforms, MATRIX_SIZE * item);
+                }
+            }
+            if (meshTransform == -1 || !sameRange(meshTransforms, meshTransform, item, MATRIX_SIZE)) {
+                meshTransform = item;
+                backend.setMeshTransform(shader, meshTransforms, MATRIX_SIZE * item);
+            }
+            if (textureScale == -1 || !sameRange(textureScales, textureScale, item, 2)) {
+                textureScale = item;
+                backend.setTextureScale(shader, textureScales[2 * item], textureScales[2 * item + 1]);
+            }
+
+            if (batchSize > 1) {
+                backend.drawInstanced(shader, mesh, lods[item], batchStarts[i], batchSize);
+                i += batchSize - 1;
+            } else {
+                backend.draw(shader, mesh, lods[item]);
+            }
+        }
+
+        if (instancing == 1) backend.setInstancing(shader, false);
+        backend.end();
+    }
+
+    /**
+     * Finds runs of sorted meshes which can be drawn as one instanced batch, and gathers their model transforms.
+     *
+     * @return the total number of instances in all batches
+     */
+    private int findBatches() {
+        int numInstances = 0;
+        for (int i = 0; i < size; ) {
+            int item = order[i];
+            int end = i + 1;
+            if ((flags[item] & INSTANCEABLE) != 0) {
+                while (end < size && isSameBatch(item, order[end])) end++;
+            }
+
+            int run = end - i;
+            if (run < minInstances) {
+                batchSizes[i++] = 1;
+                continue;
+            }
+
+            batchSizes[i] = run;
+            batchStarts[i] = numInstances;
+            for (int j = i; j < end; j++) {
+                System.arraycopy(modelTransforms, MATRIX_SIZE * order[j],
+                        instanceTransforms, MATRIX_SIZE * numInstances++, MATRIX_SIZE);
+            }
+            i = end;
+        }
+        return numInstances;
+    }
+
+    private boolean isSameBatch(int a, int b) {
+        return shaders[a] == shaders[b]
+                && materials[a] == materials[b]
+                && meshes[a] == meshes[b]
+                && flags[a] == flags[b]
+                && lods[a] == lods[b]
+                && sameRange(meshTransforms, a, b, MATRIX_SIZE)
+                && sameRange(textureScales, a, b, 2);
+    }
+
+    public int getMinInstances() {
+        return minInstances;
+    }
+
+    /**
+     * @param minInstances the smallest number of meshes drawn as an instanced batch, at least two
+     */
+    public void setMinInstances(int minInstances) {
+        if (minInstances < 2) throw new IllegalArgumentException("Batches must hold at least two instances");
+        this.minInstances = minInstances;
+    }
+
+    private static boolean sameRange(float[] values, int a, int b, int stride) {
+        return Arrays.equals(values, stride * a, stride * (a + 1), values, stride * b, stride * (b + 1));
+    }
+
+    /**
+     * Removes all meshes, keeping the allocated memory.
+     */
+    public void clear() {
+        Arrays.fill(shaders, 0, size, null);
+        Arrays.fill(materials, 0, size, null);
+        Arrays.fill(meshes, 0, size, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the sort key of the mesh drawn at the given position once {@link #sort() sorted}
+     */
+    long getSortedKey(int index) {
+        return sortedKeys[index];
+    }
+
+    private void allocate(int capacity) {
+        keys = keys == null ? new long[capacity] : Arrays.copyOf(keys, capacity);
+        order = new int[capacity];
+        shaders = shaders == null ? new ShaderProgram[capacity] : Arrays.copyOf(shaders, capacity);
+        materials = materials == null ? new Material[capacity] : Arrays.copyOf(materials, capacity);
+        meshes = meshes == null ? new Mesh[capacity] : Arrays.copyOf(meshes, capacity);
+        flags = flags == null ? new int[capacity] : Arrays.copyOf(flags, capacity);
+        lods = lods == null ? new int[capacity] : Arrays.copyOf(lods, capacity);
+        modelTransforms = modelTransforms == null
+                ? new float[MATRIX_SIZE * capacity]
+                : Arrays.copyOf(modelTransforms, MATRIX_SIZE * capacity);
+        meshTransforms = meshTransforms == null
+                ? new float[MATRIX_SIZE * capacity]
+                : Arrays.copyOf(meshTransforms, MATRIX_SIZE * capacity);
+        textureScales = textureScales == null ? new float[2 * capacity] : Arrays.copyOf(textureScales, 2 * capacity);
+
+        sortedKeys = new long[capacity];
+        keyScratch = new long[capacity];
+        orderScratch = new int[capacity];
+
+        batchSizes = new int[capacity];
+        batchStarts = new int[capacity];
+        instanceTransforms = new float[MATRIX_SIZE * capacity];
+    }
+
+    private static final class Ids {
+        private final Map<Object, Integer> ids = new WeakHashMap<>();
+        private final int mask;
+        private int next;
+
+        Ids(int bits) {
+            this.mask = (1 << bits) - 1;
+        }
+
+        int get(Object object) {
+            Integer id = ids.get(object);
+            if (id == null) {
+                id = next++;
+                ids.put(object, id);
+            }
+            return id & mask;
+        }
+    }
+
+}
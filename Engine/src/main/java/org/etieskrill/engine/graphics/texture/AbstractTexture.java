@@ -8,6 +8,8 @@ import org.jetbrains.annotations.NotNull;
 import org.joml.Vector2i;
 import org.joml.Vector2ic;
 import org.joml.Vector4fc;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
 
 import java.nio.ByteBuffer;
 import java.util.List;
@@ -17,6 +19,7 @@ import static org.etieskrill.engine.graphics.texture.AbstractTexture.Format.*;
 import static org.lwjgl.BufferUtils.createFloatBuffer;
 import static org.lwjgl.assimp.Assimp.*;
 import static org.lwjgl.opengl.GL40C.*;
+import static org.lwjgl.opengl.GL43C.glCopyImageSubData;
 
 /**
  * As this class makes use of the stb_image library, it can decode from all the image formats specified in the
@@ -382,6 +385,85 @@ public abstract class AbstractTexture implements Texture, Disposable {
         glBindTexture(GL_TEXTURE_2D, 0);
     }
 
+    /**
+     * Copies the base level of the given layers to the same layers of the destination texture, which must have the
+     * same target and format. Each face of a cube map counts as a layer, so a cube map array has six layers per cube.
+     * <p>
+     * Without OpenGL 4.3 or {@code ARB_copy_image}, every layer is blitted through a pair of temporary framebuffers
+     * instead, which leaves the framebuffer bindings as they were.
+     *
+     * @param destination the texture to copy to
+     * @param size        the size of the copied region, starting at the origin
+     * @param firstLayer  the first layer to copy
+     * @param layers      the number of layers to copy
+     */
+    public void copyLayersTo(AbstractTexture destination, Vector2ic size, int firstLayer, int layers) {
+        if (destination.target != target || destination.format != format)
+            throw new IllegalArgumentException("Cannot copy from " + this + " to " + destination);
+
+        GLCapabilities capabilities = GL.getCapabilities();
+        if (capabilities.OpenGL43 || capabilities.GL_ARB_copy_image) {
+            glCopyImageSubData(
+                    texture, target.gl(), 0, 0, 0, firstLayer,
+                    destination.texture, destination.target.gl(), 0, 0, 0, firstLayer,
+                    size.x(), size.y(), layers
+            );
+            return;
+        }
+
+        blitLayersTo(destination, size, firstLayer, layers);
+    }
+
+    private void blitLayersTo(AbstractTexture destination, Vector2ic size, int firstLayer, int layers) {
+        int previousReadFramebuffer = glGetInteger(GL_READ_FRAMEBUFFER_BINDING);
+        int previousDrawFramebuffer = glGetInteger(GL_DRAW_FRAMEBUFFER_BINDING);
+        int readFramebuffer = glGenFramebuffers();
+        int drawFramebuffer = glGenFramebuffers();
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, readFramebuffer);
+        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, drawFramebuffer);
+
+        int attachment, mask;
+        switch (format) {
+            case DEPTH -> {
+                attachment = GL_DEPTH_ATTACHMENT;
+                mask = GL_DEPTH_BUFFER_BIT;
+            }
+            case STENCIL, DEPTH_STENCIL -> {
+                attachment = GL_DEPTH_STENCIL_ATTACHMENT;
+                mask = GL_DEPTH_BUFFER_BIT | GL_STENCIL_BUFFER_BIT;
+            }
+            default -> {
+                attachment = GL_COLOR_ATTACHMENT0;
+                mask = GL_COLOR_BUFFER_BIT;
+            }
+        }
+        if (attachment != GL_COLOR_ATTACHMENT0) { //a colour buffer without attachment leaves the framebuffer incomplete
+            glReadBuffer(GL_NONE);
+            glDrawBuffer(GL_NONE);
+        }
+
+        for (int layer = firstLayer; layer < firstLayer + layers; layer++) {
+            attachLayer(GL_READ_FRAMEBUFFER, attachment, layer);
+            destination.attachLayer(GL_DRAW_FRAMEBUFFER, attachment, layer);
+            glBlitFramebuffer(0, 0, size.x(), size.y(), 0, 0, size.x(), size.y(), mask, GL_NEAREST);
+        }
+
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, previousReadFramebuffer);
+        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, previousDrawFramebuffer);
+        glDeleteFramebuffers(readFramebuffer);
+        glDeleteFramebuffers(drawFramebuffer);
+    }
+
+    private void attachLayer(int framebufferTarget, int attachment, int layer) {
+        switch (target) {
+            case TWO_D -> glFramebufferTexture2D(framebufferTarget, attachment, GL_TEXTURE_2D, texture, 0);
+            case CUBEMAP -> glFramebufferTexture2D(
+                    framebufferTarget, attachment, GL_TEXTURE_CUBE_MAP_POSITIVE_X + layer, texture, 0
+            );
+            case ARRAY, CUBEMAP_ARRAY -> glFramebufferTextureLayer(framebufferTarget, attachment, texture, 0, layer);
+        }
+    }
+
     protected int getID() {
         return texture;
     }
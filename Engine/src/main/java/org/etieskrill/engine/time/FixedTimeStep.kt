@@ -0,0 +1,60 @@
+package org.etieskrill.engine.time
+
+import kotlin.time.Duration
+import kotlin.time.DurationUnit.SECONDS
+
+/**
+ * Splits variable frame times, such as the [deltaTime](LoopPacer.deltaTime) of a [SystemNanoTimePacer], into a whole
+ * number of fixed size steps, carrying the remainder over to the next frame.
+ *
+ * @param stepTime the length of a single step
+ * @param maxSteps the most steps to run in a single frame; any time beyond that is dropped, so a slow frame does not
+ * cause even slower frames after it
+ */
+class FixedTimeStep @JvmOverloads constructor(
+    val stepTime: Duration,
+    val maxSteps: Int = 8
+) {
+
+    init {
+        require(stepTime.isPositive()) { "Step time must be positive, but was $stepTime" }
+        require(maxSteps > 0) { "Maximum number of steps must be positive, but was $maxSteps" }
+    }
+
+    val stepTimeSeconds = stepTime.toDouble(SECONDS)
+
+    private var accumulator = 0.0
+
+    /**
+     * How far time has progressed into the next step, as a fraction between zero and one. Use this to interpolate
+     * between the states before and after the last step.
+     */
+    var alpha = 0.0; private set
+
+    /**
+     * Adds the frame time to the accumulated time.
+     *
+     * @param delta the time passed since the last call in seconds
+     * @return the number of steps to run
+     */
+    fun advance(delta: Double): Int {
+        accumulator += delta
+
+        var steps = (accumulator / stepTimeSeconds).toInt()
+        if (steps > maxSteps) {
+            steps = maxSteps
+            accumulator %= stepTimeSeconds
+        } else {
+            accumulator -= steps * stepTimeSeconds
+        }
+
+        alpha = (accumulator / stepTimeSeconds).coerceIn(0.0, 1.0)
+        return steps
+    }
+
+    fun reset() {
+        accumulator = 0.0
+        alpha = 0.0
+    }
+
+}
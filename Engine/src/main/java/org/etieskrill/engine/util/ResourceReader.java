@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
@@ -56,6 +57,29 @@ public class ResourceReader {
         }
     }
 
+    /**
+     * Locates a resource in the same places and order it is read from, without opening it.
+     *
+     * @param name the resource to locate
+     * @return the location of the resource
+     */
+    public static URL getResourceUrl(String name) {
+        File file = new File(name);
+        if (file.isFile()) {
+            try {
+                return file.toURI().toURL();
+            } catch (IOException e) {
+                throw new ResourceLoadException(e);
+            }
+        }
+
+        URL url;
+        if ((url = ClassLoader.getSystemResource(name)) != null) return url;
+        if ((url = ClassLoader.getSystemResource(ENGINE_RESOURCE_PATH + name)) != null) return url;
+
+        throw new ResourceLoadException("Could not locate %s on classpath".formatted(name));
+    }
+
     private static InputStream resolveResource(
             String name,
             boolean includeExternal, boolean includeApplication, boolean includeEngine
@@ -28,9 +28,21 @@ uniform mat4 combined;
 uniform mat4 boneMatrices[MAX_BONES];
 
 uniform bool normalMapped;
+uniform bool compactVertices;
+
+#include "VertexCompression.glsl"
 
 void main()
 {
+    vec3 vertexNormal = a_Normal;
+    vec3 vertexTangent = a_Tangent;
+    vec3 vertexBiTangent = a_BiTangent;
+    if (compactVertices) { //the bitangent is not stored, but derived using the handedness in the tangent
+        vertexNormal = decodeOctahedral(a_Normal.xy);
+        vertexTangent = decodeOctahedral(a_Tangent.xy);
+        vertexBiTangent = cross(vertexNormal, vertexTangent) * a_Tangent.z;
+    }
+
     vec4 bonedPosition = vec4(0.0);
 
     vec3 bonedNormal = vec3(0.0);
@@ -48,19 +60,19 @@ void main()
         vec4 localPosition = boneMatrices[a_BoneIds[i]] * vec4(a_Position, 1.0);
         bonedPosition += localPosition * a_BoneWeights[i];
 
-        vec3 localNormal = mat3(boneMatrices[a_BoneIds[i]]) * a_Normal;
+        vec3 localNormal = mat3(boneMatrices[a_BoneIds[i]]) * vertexNormal;
         bonedNormal += localNormal * a_BoneWeights[i];
         if (normalMapped) {
-            vec3 localTangent = mat3(boneMatrices[a_BoneIds[i]]) * a_Tangent;
+            vec3 localTangent = mat3(boneMatrices[a_BoneIds[i]]) * vertexTangent;
             bonedTangent += localTangent * a_BoneWeights[i];
-            vec3 localBiTangent = mat3(boneMatrices[a_BoneIds[i]]) * a_BiTangent;
+            vec3 localBiTangent = mat3(boneMatrices[a_BoneIds[i]]) * vertexBiTangent;
             bonedBiTangent += localBiTangent * a_BoneWeights[i];
         }
     }
 
     if (bones == 0) { //no bones are set, thus vertex is not involved in animation
                       bonedPosition = vec4(a_Position, 1.0);
-                      bonedNormal = a_Normal;
+                      bonedNormal = vertexNormal;
     }
 
     vertex.normal = normalize(normal * bonedNormal);
@@ -61,27 +61,29 @@ in Data {
     mat3 tbn;
     vec2 texCoord;
     vec3 fragPos;
-    vec4 lightSpaceFragPos;
 } vert_out;
 
 layout (location = 0) out vec4 fragColour;
 layout (location = 1) out vec4 bloomColour;
 
-uniform vec3 viewPosition;
+//Written once per frame for all shaders, see FrameUniformsAccessor for the layout
+layout (std140) uniform Frame {
+    mat4 lightCombined;
+    vec3 viewPosition;
+    bool hasShadowMap;
+    bool hasPointShadowMaps;
+    float pointShadowFarPlane;
+    DirectionalLight globalLights[NR_DIRECTIONAL_LIGHTS];
+    PointLight lights[NR_POINT_LIGHTS];
+};
+
 uniform mat3 normal;
 
 uniform bool blinnPhong;
 
-uniform DirectionalLight globalLights[NR_DIRECTIONAL_LIGHTS];
-uniform PointLight lights[NR_POINT_LIGHTS];
-
-uniform bool hasShadowMap;
 uniform sampler2DShadow shadowMap;
-uniform bool hasPointShadowMaps;
 uniform samplerCubeArrayShadow pointShadowMaps0;
 
-uniform float pointShadowFarPlane;
-
 vec3 getDirLight(DirectionalLight light, vec3 normal, vec3 fragPosition, vec3 viewPosition, float inShadow);
 vec3 getPointLight(PointLight light, vec3 normal, vec3 fragPosition, vec3 viewPosition, float inShadow);
 
@@ -112,9 +114,10 @@ void main()
         if (texel.a == 0.0) discard;
     }
 
+    vec4 lightSpaceFragPos = lightCombined * vec4(vert_out.fragPos, 1.0);
     vec3 combinedLight = vec3(0.0);
     for (int i = 0; i < NR_DIRECTIONAL_LIGHTS; i++) {
-        float inShadow = getInShadow(vert_out.lightSpaceFragPos, globalLights[i].direction);
+        float inShadow = getInShadow(lightSpaceFragPos, globalLights[i].direction);
         vec3 dirLight = getDirLight(globalLights[i], normalVec, vert_out.fragPos, viewPosition, inShadow);
         combinedLight += dirLight;
     }
@@ -5,13 +5,13 @@ layout (location = 1) in vec3 a_Normal;
 layout (location = 2) in vec2 a_TexCoord;
 layout (location = 3) in vec3 a_Tangent;
 layout (location = 4) in vec3 a_BiTangent;
+layout (location = 7) in mat4 a_InstanceModel;
 
 out Data {
     vec3 normal;
     mat3 tbn;
     vec2 texCoord;
     vec3 fragPos;
-    vec4 lightSpaceFragPos;
 } vert_out;
 
 uniform mat4 mesh;
@@ -19,20 +19,34 @@ uniform mat4 model;
 uniform mat3 normal;
 uniform mat4 combined;
 
+uniform bool instanced;
+uniform bool compactVertices;
+
 uniform vec2 textureScale;
 
-uniform mat4 lightCombined;
+#include "VertexCompression.glsl"
 
 void main()
 {
-    vec3 normalVec = normalize(normal * a_Normal);
-    vec3 tangent = normalize(normal * a_Tangent);
-    vec3 biTangent = normalize(normal * a_BiTangent);
+    mat4 modelMatrix = instanced ? a_InstanceModel : model;
+    mat3 normalMatrix = instanced ? transpose(inverse(mat3(a_InstanceModel))) : normal;
+
+    vec3 vertexNormal = a_Normal;
+    vec3 vertexTangent = a_Tangent;
+    vec3 vertexBiTangent = a_BiTangent;
+    if (compactVertices) { //the bitangent is not stored, but derived using the handedness in the tangent
+        vertexNormal = decodeOctahedral(a_Normal.xy);
+        vertexTangent = decodeOctahedral(a_Tangent.xy);
+        vertexBiTangent = cross(vertexNormal, vertexTangent) * a_Tangent.z;
+    }
+
+    vec3 normalVec = normalize(normalMatrix * vertexNormal);
+    vec3 tangent = normalize(normalMatrix * vertexTangent);
+    vec3 biTangent = normalize(normalMatrix * vertexBiTangent);
     vert_out.normal = normalVec;
     vert_out.tbn = mat3(tangent, biTangent, normalVec);
 
     vert_out.texCoord = a_TexCoord * textureScale;
-    vert_out.fragPos = vec3(model * mesh * vec4(a_Position, 1.0));
-    vert_out.lightSpaceFragPos = lightCombined * vec4(vert_out.fragPos, 1.0);
-    gl_Position = combined * model * mesh * vec4(a_Position, 1.0);
+    vert_out.fragPos = vec3(modelMatrix * mesh * vec4(a_Position, 1.0));
+    gl_Position = combined * modelMatrix * mesh * vec4(a_Position, 1.0);
 }
\ No newline at end of file
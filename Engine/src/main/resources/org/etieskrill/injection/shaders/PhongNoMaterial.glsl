@@ -18,9 +18,14 @@ uniform mat4 combined;
 
 uniform mat4 lightCombined;
 
+uniform bool compactVertices;
+
+#include "VertexCompression.glsl"
+
 void main()
 {
-    vert_out.normal = normalize(normal * a_Normal);
+    vec3 vertexNormal = compactVertices ? decodeOctahedral(a_Normal.xy) : a_Normal;
+    vert_out.normal = normalize(normal * vertexNormal);
 
     vert_out.fragPos = vec3(model * mesh * vec4(a_Position, 1.0));
     vert_out.lightSpaceFragPos = lightCombined * vec4(vert_out.fragPos, 1.0);
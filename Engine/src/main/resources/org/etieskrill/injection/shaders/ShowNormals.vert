@@ -11,10 +11,20 @@ out Data {
     vec3 biTangent;
 } vert_out;
 
+uniform bool compactVertices;
+
+#include "VertexCompression.glsl"
+
 void main()
 {
-    vert_out.normal = a_Normal;
-    vert_out.tangent = a_Tangent;
-    vert_out.biTangent = a_BiTangent;
+    if (compactVertices) { //the bitangent is not stored, but derived using the handedness in the tangent
+        vert_out.normal = decodeOctahedral(a_Normal.xy);
+        vert_out.tangent = decodeOctahedral(a_Tangent.xy);
+        vert_out.biTangent = cross(vert_out.normal, vert_out.tangent) * a_Tangent.z;
+    } else {
+        vert_out.normal = a_Normal;
+        vert_out.tangent = a_Tangent;
+        vert_out.biTangent = a_BiTangent;
+    }
     gl_Position = vec4(a_Pos, 1.0);
 }
\ No newline at end of file
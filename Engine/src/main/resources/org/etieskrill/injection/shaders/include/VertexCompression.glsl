@@ -0,0 +1,9 @@
+//Inverse of the octahedral encoding of the compact vertex layout, see Vertex.Companion.CompactAccessor
+vec3 decodeOctahedral(vec2 encoded)
+{
+    vec3 vector = vec3(encoded, 1.0 - abs(encoded.x) - abs(encoded.y));
+    float fold = max(-vector.z, 0.0);
+    vector.x += vector.x >= 0.0 ? -fold : fold;
+    vector.y += vector.y >= 0.0 ? -fold : fold;
+    return normalize(vector);
+}
@@ -0,0 +1,101 @@
+package org.etieskrill.engine.entity.service.impl;
+
+import org.etieskrill.engine.entity.Entity;
+import org.etieskrill.engine.entity.component.DynamicCollider;
+import org.etieskrill.engine.entity.component.StaticCollider;
+import org.etieskrill.engine.entity.component.Transform;
+import org.etieskrill.engine.entity.component.WorldSpaceAABB;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+class BroadPhaseTest {
+
+    private static Stream<Supplier<BroadPhase>> broadPhases() {
+        return Stream.of(
+                SortAndSweepBroadPhase::new,
+                () -> new SortAndSweepBroadPhase(1),
+                () -> new UniformGridBroadPhase(4)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("broadPhases")
+    void shouldFindSameCandidatesAsBruteForce(Supplier<BroadPhase> broadPhaseSupplier) {
+        Random random = new Random(69);
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            float x = random.nextFloat(-50, 50), y = random.nextFloat(-50, 50), z = random.nextFloat(-50, 50);
+            float size = random.nextFloat(.5f, 5);
+            entities.add(collider(i, i % 3 == 0, x, y, z, x + size, y + size, z + size));
+        }
+        entities.add(collider(500, true, -100, -1, -100, 100, 1, 100));
+        entities.add(new Entity(501));
+
+        BroadPhase broadPhase = broadPhaseSupplier.get();
+        broadPhase.update(entities);
+
+        List<Entity> candidates = new ArrayList<>();
+        for (Entity entity : entities) {
+            WorldSpaceAABB bb = entity.getComponent(WorldSpaceAABB.class);
+            if (bb == null) continue;
+
+            broadPhase.collectCandidates(entity, bb, candidates);
+            assertThat(candidates, equalTo(bruteForce(entities, entity, bb)));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("broadPhases")
+    void shouldReindexStaticColliders_WhenMoved(Supplier<BroadPhase> broadPhaseSupplier) {
+        Entity dynamic = collider(0, false, 0, 0, 0, 1, 1, 1);
+        Entity wall = collider(1, true, 10, 0, 0, 11, 1, 1);
+        List<Entity> entities = List.of(dynamic, wall);
+        WorldSpaceAABB bb = dynamic.getComponent(WorldSpaceAABB.class);
+
+        BroadPhase broadPhase = broadPhaseSupplier.get();
+        List<Entity> candidates = new ArrayList<>();
+
+        broadPhase.update(entities);
+        broadPhase.collectCandidates(dynamic, bb, candidates);
+        assertThat(candidates, empty());
+
+        wall.getComponent(WorldSpaceAABB.class).setMin(.5f, 0, 0).setMax(1.5f, 1, 1);
+        broadPhase.update(entities);
+        broadPhase.collectCandidates(dynamic, bb, candidates);
+        assertThat(candidates, contains(wall));
+    }
+
+    private static List<Entity> bruteForce(List<Entity> entities, Entity entity, WorldSpaceAABB bb) {
+        List<Entity> candidates = new ArrayList<>();
+        for (Entity other : entities) {
+            WorldSpaceAABB otherBB = other.getComponent(WorldSpaceAABB.class);
+            if (other != entity && otherBB != null && bb.intersectsAABB(otherBB)) {
+                candidates.add(other);
+            }
+        }
+        return candidates;
+    }
+
+    private static Entity collider(int id, boolean isStatic,
+                                   float minX, float minY, float minZ,
+                                   float maxX, float maxY, float maxZ) {
+        Entity entity = new Entity(id);
+        entity.addComponent(new Transform());
+        entity.addComponent(isStatic ? new StaticCollider() : new DynamicCollider());
+        WorldSpaceAABB bb = entity.addComponent(new WorldSpaceAABB());
+        bb.setMin(minX, minY, minZ).setMax(maxX, maxY, maxZ);
+        return entity;
+    }
+
+}
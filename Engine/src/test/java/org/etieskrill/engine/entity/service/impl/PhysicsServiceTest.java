@@ -0,0 +1,83 @@
+package org.etieskrill.engine.entity.service.impl;
+
+import com.sun.management.ThreadMXBean;
+import org.etieskrill.engine.entity.Entity;
+import org.etieskrill.engine.entity.component.*;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.etieskrill.engine.entity.service.impl.PhysicsService.NarrowCollisionSolver.AABB_SOLVER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+class PhysicsServiceTest {
+
+    private static final double DELTA = 1 / 60d;
+
+    private static final int WINDOWS = 5;
+    private static final int UPDATES_PER_WINDOW = 100;
+    /**
+     * JIT compilation and deoptimisation may occasionally allocate a few objects on the calling thread. A single
+     * allocation per processed entity adds up to at least {@code 8 * UPDATES_PER_WINDOW * 16} bytes per window, which
+     * is well above this.
+     */
+    private static final long ALLOCATION_TOLERANCE = 1024;
+
+    PhysicsService fixture;
+    List<Entity> entities;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new PhysicsService(AABB_SOLVER);
+
+        entities = new ArrayList<>();
+        Entity ground = new Entity(0);
+        ground.addComponent(new Transform());
+        ground.addComponent(new StaticCollider());
+        ground.addComponent(new WorldSpaceAABB()).setMin(-10, -1, -10).setMax(10, 0, 10);
+        entities.add(ground);
+
+        for (int i = 1; i <= 8; i++) {
+            Entity entity = new Entity(i);
+            entity.addComponent(new Transform(new Vector3f(i * .5f, .4f, 0)));
+            entity.addComponent(new DynamicCollider());
+            entity.addComponent(new WorldSpaceAABB()).setMin(i * .5f - .5f, -.1f, -.5f).setMax(i * .5f + .5f, .9f, .5f);
+            entity.addComponent(new Friction(.5f));
+            entity.addComponent(new Acceleration(new Vector3f(0, -9.81f, 0), 1));
+            entity.addComponent(new DirectionalForceComponent(new Vector3f(1, 0, 0)));
+            entity.addComponent(new OnGround(1, 1, false));
+            entities.add(entity);
+        }
+    }
+
+    @Test
+    void process_DoesNotAllocate() {
+        fixture.preProcess(DELTA, entities);
+        for (int i = 0; i < 1000; i++) processAll();
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long start = threads.getCurrentThreadAllocatedBytes();
+        long overhead = threads.getCurrentThreadAllocatedBytes() - start;
+
+        for (int window = 0; window < WINDOWS; window++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < UPDATES_PER_WINDOW; i++) processAll();
+            long allocated = threads.getCurrentThreadAllocatedBytes() - before - overhead;
+
+            assertThat("Bytes allocated in window " + window, allocated, is(lessThan(ALLOCATION_TOLERANCE)));
+        }
+    }
+
+    private void processAll() {
+        for (int i = 1; i < entities.size(); i++) {
+            fixture.process(entities.get(i), entities, DELTA);
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package org.etieskrill.engine.graphics.animation;
+
+import org.etieskrill.engine.entity.component.Transform;
+import org.etieskrill.engine.graphics.model.Bone;
+import org.etieskrill.engine.graphics.model.Node;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.etieskrill.engine.graphics.animation.AnimationAssembler.MATRIX_SIZE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AnimationAssemblerTest {
+
+    Node root, hip, spine, head, leftLeg;
+    List<Transform> boneLocalTransforms;
+    float[] boneMatrices;
+
+    @BeforeEach
+    void setUp() {
+        root = node("root", null, transform(0, 1, 0, 0, 1));
+        hip = node("hip", root, transform(0, .5f, 0, .3f, 1), bone("hip", 0, transform(0, -1.5f, 0, 0, 1)));
+        spine = node("spine", hip, transform(0, .4f, 0, -.2f, 1));
+        head = node("head", spine, transform(0, .3f, .1f, .1f, .5f), bone("head", 2, transform(0, -2.2f, 0, 0, 2)));
+        leftLeg = node("leftLeg", hip, transform(.2f, -.1f, 0, 1.2f, 1), bone("leftLeg", 1, transform(-.2f, -1.4f, 0, 0, 1)));
+
+        boneLocalTransforms = new ArrayList<>();
+        for (int i = 0; i < 3; i++) boneLocalTransforms.add(new Transform());
+        boneLocalTransforms.get(0).set(transform(0, .6f, 0, .5f, 1));
+        boneLocalTransforms.get(1).set(transform(.25f, -.1f, .1f, -.7f, 1.1f));
+        boneLocalTransforms.get(2).set(transform(0, .3f, 0, 2, .9f));
+
+        boneMatrices = new float[3 * MATRIX_SIZE];
+    }
+
+    @Test
+    void shouldComputeSameBoneMatrices_AsMatrixHierarchy() {
+        AnimationAssembler assembler = new AnimationAssembler(root);
+        assembler.transformToModelSpace(boneLocalTransforms, boneMatrices, assembler.createWorkspace());
+
+        Matrix4f rootMatrix = new Matrix4f(root.getTransform().getMatrix());
+        Matrix4f hipMatrix = rootMatrix.mul(boneLocalTransforms.get(0).getMatrix(), new Matrix4f());
+        Matrix4f spineMatrix = hipMatrix.mul(spine.getTransform().getMatrix(), new Matrix4f());
+        Matrix4f headMatrix = spineMatrix.mul(boneLocalTransforms.get(2).getMatrix(), new Matrix4f());
+        Matrix4f leftLegMatrix = hipMatrix.mul(boneLocalTransforms.get(1).getMatrix(), new Matrix4f());
+
+        assertBoneMatrix(0, hipMatrix.mul(hip.getBone().offset().getMatrix()));
+        assertBoneMatrix(1, leftLegMatrix.mul(leftLeg.getBone().offset().getMatrix()));
+        assertBoneMatrix(2, headMatrix.mul(head.getBone().offset().getMatrix()));
+    }
+
+    @Test
+    void shouldFollowChangedLocalTransforms() {
+        AnimationAssembler assembler = new AnimationAssembler(root);
+        AnimationAssembler.Workspace workspace = assembler.createWorkspace();
+        assembler.transformToModelSpace(boneLocalTransforms, boneMatrices, workspace);
+        float[] expected = boneMatrices.clone();
+
+        boneLocalTransforms.get(0).getPosition().add(1, 0, 0);
+        assembler.transformToModelSpace(boneLocalTransforms, boneMatrices, workspace);
+        assertThat(boneMatrices[12] == expected[12], is(false));
+
+        boneLocalTransforms.get(0).getPosition().sub(1, 0, 0);
+        assembler.transformToModelSpace(boneLocalTransforms, boneMatrices, workspace);
+        assertThat(new Matrix4f().set(boneMatrices, 0).equals(new Matrix4f().set(expected, 0), 1e-6f), is(true));
+    }
+
+    @Test
+    void shouldComputeSameBoneMatrices_WhenSharedBetweenThreads() throws Exception {
+        AnimationAssembler assembler = new AnimationAssembler(root);
+        assembler.transformToModelSpace(boneLocalTransforms, boneMatrices, assembler.createWorkspace());
+
+        int numThreads = 8;
+        List<Callable<float[]>> tasks = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            tasks.add(() -> {
+                AnimationAssembler.Workspace workspace = assembler.createWorkspace();
+                float[] matrices = new float[boneMatrices.length];
+                for (int j = 0; j < 1000; j++)
+                    assembler.transformToModelSpace(boneLocalTransforms, matrices, workspace);
+                return matrices;
+            });
+        }
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(numThreads)) {
+            for (Future<float[]> result : executor.invokeAll(tasks)) {
+                assertThat(result.get(), is(boneMatrices));
+            }
+        }
+    }
+
+    @Test
+    void shouldThrow_WhenWorkspaceIsFromOtherAssembler() {
+        AnimationAssembler assembler = new AnimationAssembler(root);
+        AnimationAssembler.Workspace workspace = new AnimationAssembler(root).createWorkspace();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> assembler.transformToModelSpace(boneLocalTransforms, boneMatrices, workspace));
+    }
+
+    private void assertBoneMatrix(int boneId, Matrix4f expected) {
+        Matrix4f actual = new Matrix4f().set(boneMatrices, MATRIX_SIZE * boneId);
+        assertThat("bone " + boneId + ": expected " + expected + " but was " + actual,
+                actual.equals(expected, 1e-5f), is(true));
+    }
+
+    private static Node node(String name, Node parent, Transform transform) {
+        return node(name, parent, transform, null);
+    }
+
+    private static Node node(String name, Node parent, Transform transform, Bone bone) {
+        Node node = new Node(name, parent, transform, List.of(), bone);
+        if (parent != null) parent.getChildren().add(node);
+        return node;
+    }
+
+    private static Bone bone(String name, int id, Transform offset) {
+        return new Bone(name, id, offset);
+    }
+
+    private static Transform transform(float x, float y, float z, float angle, float scale) {
+        return new Transform(
+                new Vector3f(x, y, z),
+                new Quaternionf().rotateAxis(angle, new Vector3f(1, 2, 3).normalize()),
+                new Vector3f(scale, scale * 1.1f, scale)
+        );
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.etieskrill.engine.graphics.animation;
+
+import org.etieskrill.engine.entity.component.Transform;
+import org.etieskrill.engine.graphics.model.Bone;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.etieskrill.engine.graphics.animation.AnimationAssembler.TRS_SIZE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+class AnimationSampleCacheTest {
+
+    Bone bone;
+    Animation animation;
+    AnimationSampleCache fixture;
+
+    @BeforeEach
+    void setUp() {
+        bone = new Bone("bone", 1, new Transform());
+        BoneAnimation boneAnimation = new BoneAnimation(bone,
+                List.<Vector3fc>of(new Vector3f(0), new Vector3f(10, 0, 0)), new double[]{0, 10},
+                List.<Quaternionfc>of(new Quaternionf(), new Quaternionf().rotateY(1)), new double[]{0, 10},
+                List.<Vector3fc>of(new Vector3f(1), new Vector3f(2)), new double[]{0, 10},
+                Animation.Behaviour.DEFAULT, Animation.Behaviour.DEFAULT);
+        animation = new Animation("walk", 10, 20, List.of(new Bone("root", 0, new Transform()), bone),
+                List.of(boneAnimation), null, BakedAnimation.bake(List.of(boneAnimation), 2));
+
+        fixture = new AnimationSampleCache(10); //one sample every two ticks
+    }
+
+    @Test
+    void shouldSampleClosestPose() {
+        float[] pose = fixture.getPose(animation, 2.9);
+
+        assertThat((double) pose[TRS_SIZE], closeTo(2, 1e-6));
+        assertThat((double) pose[TRS_SIZE + 7], closeTo(1.2, 1e-6));
+    }
+
+    @Test
+    void shouldSampleEachPoseOnlyOnce() {
+        float[] pose = fixture.getPose(animation, 4);
+        for (int i = 0; i < 100; i++) {
+            assertThat(fixture.getPose(animation, 3.5 + i * .01), is(sameInstance(pose)));
+        }
+
+        assertThat(fixture.getMisses(), is(1L));
+        assertThat(fixture.getHits(), is(100L));
+    }
+
+    @Test
+    void shouldNotCache_WhenNotBaked() {
+        Animation notBaked = new Animation("idle", 10, 20, List.of(bone), List.of(), null);
+        assertThat(fixture.getPose(notBaked, 0), is(nullValue()));
+    }
+
+}
@@ -0,0 +1,166 @@
+package org.etieskrill.engine.graphics.animation;
+
+import org.etieskrill.engine.entity.component.Transform;
+import org.etieskrill.engine.graphics.model.Bone;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BakedAnimationTest {
+
+    private static final int NUM_BONES = 4;
+    private static final double DURATION = 100;
+
+    Random random;
+    List<BoneAnimation> boneAnimations;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(69);
+        boneAnimations = new ArrayList<>();
+        for (int id : new int[]{0, 2, 3}) {
+            boneAnimations.add(boneAnimation(id, random.nextInt(1, 50)));
+        }
+    }
+
+    @Test
+    void shouldSampleSameAsBoneAnimations() {
+        BakedAnimation baked = BakedAnimation.bake(boneAnimations, NUM_BONES);
+
+        Vector3f expectedVector = new Vector3f(), actualVector = new Vector3f();
+        Quaternionf expectedRotation = new Quaternionf(), actualRotation = new Quaternionf();
+        int[] cursors = new int[3 * NUM_BONES];
+        double ticks = 0;
+        for (int i = 0; i < 1000; i++) {
+            ticks = (ticks + random.nextDouble(0, 5)) % DURATION;
+            for (BoneAnimation boneAnimation : boneAnimations) {
+                int id = boneAnimation.bone().id();
+                assertTrue(baked.isAnimated(id));
+
+                cursors[3 * id] = baked.samplePosition(id, ticks, actualVector, cursors[3 * id]);
+                interpolate(ticks, boneAnimation.positionTimes(), boneAnimation.positions(), expectedVector);
+                assertThat(actualVector.equals(expectedVector, 1e-5f), is(true));
+
+                cursors[3 * id + 1] = baked.sampleRotation(id, ticks, actualRotation, cursors[3 * id + 1]);
+                interpolate(ticks, boneAnimation.rotationTimes(), boneAnimation.rotations(), expectedRotation);
+                assertThat(actualRotation.equals(expectedRotation, 1e-5f), is(true));
+
+                cursors[3 * id + 2] = baked.sampleScaling(id, ticks, actualVector, cursors[3 * id + 2]);
+                interpolate(ticks, boneAnimation.scaleTimes(), boneAnimation.scalings(), expectedVector);
+                assertThat(actualVector.equals(expectedVector, 1e-5f), is(true));
+            }
+        }
+    }
+
+    @Test
+    void shouldNotAnimateBones_WithoutBoneAnimation() {
+        BakedAnimation baked = BakedAnimation.bake(boneAnimations, NUM_BONES);
+
+        assertThat(baked.isAnimated(1), is(false));
+        assertThat(baked.isAnimated(NUM_BONES), is(false));
+    }
+
+    @Test
+    void shouldSampleSameAsBoneAnimations_WhenResampledOnKeys() {
+        boneAnimations.clear();
+        boneAnimations.add(boneAnimation(0, new double[]{0, 10, 20, 30, 40, 50, 60, 70, 80, 90, 100}));
+        BakedAnimation resampled = BakedAnimation.bake(boneAnimations, 1).resample(DURATION, 10);
+        assertThat(resampled.isResampled(), is(true));
+
+        BoneAnimation boneAnimation = boneAnimations.getFirst();
+        Vector3f expected = new Vector3f(), actual = new Vector3f();
+        Quaternionf expectedRotation = new Quaternionf(), actualRotation = new Quaternionf();
+        for (double ticks = 0; ticks < DURATION; ticks += .7) {
+            resampled.samplePosition(0, ticks, actual, 0);
+            interpolate(ticks, boneAnimation.positionTimes(), boneAnimation.positions(), expected);
+            assertThat(actual.equals(expected, 1e-4f), is(true));
+
+            resampled.sampleRotation(0, ticks, actualRotation, 0);
+            interpolate(ticks, boneAnimation.rotationTimes(), boneAnimation.rotations(), expectedRotation);
+            assertThat(isSameRotation(actualRotation, expectedRotation, 1e-4f), is(true));
+        }
+    }
+
+    @Test
+    void shouldSampleSameAsBoneAnimations_AtSampleTimes() {
+        BakedAnimation resampled = BakedAnimation.bake(boneAnimations, NUM_BONES).resample(DURATION, .25);
+
+        Vector3f expected = new Vector3f(), actual = new Vector3f();
+        for (BoneAnimation boneAnimation : boneAnimations) {
+            int id = boneAnimation.bone().id();
+            for (int sample = 0; sample * .25 < DURATION; sample++) {
+                resampled.samplePosition(id, sample * .25, actual, 0);
+                interpolate(sample * .25, boneAnimation.positionTimes(), boneAnimation.positions(), expected);
+                assertThat(actual.equals(expected, 1e-5f), is(true));
+            }
+        }
+    }
+
+    @Test
+    void shouldThrow_WhenBoneIsAnimatedTwice() {
+        boneAnimations.add(boneAnimation(0, 2));
+        assertThrows(IllegalArgumentException.class, () -> BakedAnimation.bake(boneAnimations, NUM_BONES));
+    }
+
+    @Test
+    void shouldThrow_WhenBoneIdIsOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> BakedAnimation.bake(boneAnimations, 2));
+    }
+
+    private BoneAnimation boneAnimation(int id, int numKeys) {
+        double[] times = new double[numKeys];
+        for (int i = 1; i < numKeys; i++) times[i] = times[i - 1] + random.nextDouble(.1, 2 * DURATION / numKeys);
+        return boneAnimation(id, times);
+    }
+
+    private BoneAnimation boneAnimation(int id, double[] times) {
+        List<Vector3fc> positions = new ArrayList<>(), scalings = new ArrayList<>();
+        List<Quaternionfc> rotations = new ArrayList<>();
+        for (int i = 0; i < times.length; i++) {
+            positions.add(new Vector3f(random.nextFloat(-5, 5), random.nextFloat(-5, 5), random.nextFloat(-5, 5)));
+            rotations.add(new Quaternionf().rotateXYZ(random.nextFloat(-3, 3), random.nextFloat(-3, 3), random.nextFloat(-3, 3)));
+            scalings.add(new Vector3f(random.nextFloat(.5f, 2)));
+        }
+        return new BoneAnimation(new Bone("bone" + id, id, new Transform()),
+                positions, times, rotations, times.clone(), scalings, times.clone(),
+                Animation.Behaviour.DEFAULT, Animation.Behaviour.DEFAULT);
+    }
+
+    private static boolean isSameRotation(Quaternionf actual, Quaternionf expected, float epsilon) {
+        //resampling at a key's time may flip its sign, which describes the same rotation
+        return actual.equals(expected, epsilon) || actual.equals(new Quaternionf(-expected.x, -expected.y, -expected.z, -expected.w), epsilon);
+    }
+
+    private static void interpolate(double ticks, double[] timings, List<Vector3fc> vectors, Vector3f target) {
+        int index = Keyframes.find(timings, ticks, 0);
+        if (index == -1) {
+            target.set(vectors.getFirst());
+            return;
+        }
+        double t = (ticks - timings[index]) / (timings[index + 1] - timings[index]);
+        vectors.get(index).lerp(vectors.get(index + 1), (float) t, target);
+    }
+
+    private static void interpolate(double ticks, double[] timings, List<Quaternionfc> quaternions, Quaternionf target) {
+        int index = Keyframes.find(timings, ticks, 0);
+        if (index == -1) {
+            target.set(quaternions.getFirst());
+            return;
+        }
+        double t = (ticks - timings[index]) / (timings[index + 1] - timings[index]);
+        quaternions.get(index).slerp(quaternions.get(index + 1), (float) t, target);
+    }
+
+}
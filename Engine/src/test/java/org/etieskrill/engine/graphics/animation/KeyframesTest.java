@@ -0,0 +1,68 @@
+package org.etieskrill.engine.graphics.animation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class KeyframesTest {
+
+    private static final double[] TIMINGS = {0, 1, 2.5, 3, 7};
+
+    @ParameterizedTest
+    @ValueSource(doubles = {-1, 0, .5, 1, 2, 2.5, 2.75, 3, 6.9, 7, 7.1})
+    void shouldFindSameKeyAsLinearScan_FromAnyCursor(double ticks) {
+        for (int cursor = -1; cursor <= TIMINGS.length; cursor++) {
+            assertThat(Keyframes.find(TIMINGS, ticks, cursor), is(linearScan(TIMINGS, ticks)));
+        }
+    }
+
+    @Test
+    void shouldFindSameKeyAsLinearScan_WhenPlayingBackRandomClip() {
+        Random random = new Random(69);
+        double[] timings = new double[1000];
+        for (int i = 1; i < timings.length; i++) timings[i] = timings[i - 1] + random.nextDouble(.01, 2);
+
+        int cursor = 0;
+        double ticks = 0;
+        for (int i = 0; i < 10_000; i++) {
+            ticks = (ticks + random.nextDouble(0, 3)) % timings[timings.length - 1];
+            int index = Keyframes.find(timings, ticks, cursor);
+            assertThat(index, is(linearScan(timings, ticks)));
+            if (index != -1) cursor = index;
+        }
+    }
+
+    @Test
+    void shouldNotFindKey_WithFewerThanTwoKeys() {
+        assertThat(Keyframes.find(new double[0], 0, 0), is(-1));
+        assertThat(Keyframes.find(new double[]{0}, 0, 0), is(-1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {-1, 0, .5, 1, 2, 2.5, 2.75, 3, 6.9, 7, 7.1})
+    void shouldOnlyFindKeysInRange(double ticks) {
+        double[] timings = new double[TIMINGS.length + 4];
+        timings[0] = timings[1] = -10;
+        System.arraycopy(TIMINGS, 0, timings, 2, TIMINGS.length);
+        timings[timings.length - 2] = timings[timings.length - 1] = 10;
+
+        int expected = linearScan(TIMINGS, ticks);
+        for (int cursor = -1; cursor <= timings.length; cursor++) {
+            int index = Keyframes.find(timings, 2, 2 + TIMINGS.length, ticks, cursor);
+            assertThat(index, is(expected == -1 ? -1 : expected + 2));
+        }
+    }
+
+    private static int linearScan(double[] timings, double ticks) {
+        for (int i = 0; i < timings.length - 1; i++) {
+            if (timings[i] <= ticks && timings[i + 1] >= ticks) return i;
+        }
+        return -1;
+    }
+
+}
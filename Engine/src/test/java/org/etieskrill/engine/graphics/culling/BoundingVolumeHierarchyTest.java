@@ -0,0 +1,155 @@
+package org.etieskrill.engine.graphics.culling;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.primitives.AABBf;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BoundingVolumeHierarchyTest {
+
+    static final float MARGIN = .5f;
+
+    Random random;
+    List<AABBf> boxes;
+    List<Integer> proxies;
+    List<Matrix4fc> views;
+
+    BoundingVolumeHierarchy<AABBf> fixture;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(69);
+        boxes = new ArrayList<>();
+        proxies = new ArrayList<>();
+        views = List.of(
+                new Matrix4f().perspective((float) Math.toRadians(60), 16 / 9f, .1f, 50)
+                        .lookAt(0, 10, 0, 20, 0, 20, 0, 1, 0),
+                new Matrix4f().ortho(-30, 30, -30, 30, 1, 100)
+                        .lookAt(-40, 40, -40, 0, 0, 0, 0, 1, 0)
+        );
+
+        fixture = new BoundingVolumeHierarchy<>(MARGIN);
+        for (int i = 0; i < 2000; i++) {
+            AABBf box = randomBox();
+            boxes.add(box);
+            proxies.add(fixture.insert(box, box));
+        }
+    }
+
+    @Test
+    void shouldCullSameAsBruteForce() {
+        assertThat(cull(), equalTo(bruteForce()));
+        assertThat(cull().get(0), not(empty()));
+        assertThat(cull().get(1), not(empty()));
+    }
+
+    @Test
+    void shouldCullSameAsBruteForce_AfterMoving() {
+        AABBf enlarged = new AABBf();
+        for (int frame = 0; frame < 20; frame++) {
+            for (int i = 0; i < boxes.size(); i++) {
+                AABBf box = boxes.get(i);
+                float dx = random.nextFloat(-2, 2), dz = random.nextFloat(-2, 2);
+                box.translate(dx, 0, dz);
+                fixture.update(proxies.get(i), box);
+
+                fixture.getBounds(proxies.get(i), enlarged);
+                assertThat(enlarged.minX <= box.minX && enlarged.minZ <= box.minZ, is(true));
+                assertThat(enlarged.maxX >= box.maxX && enlarged.maxZ >= box.maxZ, is(true));
+            }
+            assertThat(cull(), equalTo(bruteForce()));
+        }
+    }
+
+    @Test
+    void shouldCullSameAsBruteForce_AfterRemoving() {
+        for (int i = boxes.size() - 1; i >= 0; i -= 2) {
+            fixture.remove(proxies.remove(i));
+            boxes.remove(i);
+        }
+
+        assertThat(fixture.size(), is(1000));
+        assertThat(cull(), equalTo(bruteForce()));
+    }
+
+    @Test
+    void shouldQuerySameAsBruteForce() {
+        AABBf bounds = new AABBf(-10, -5, -10, 15, 5, 5);
+        Set<AABBf> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        fixture.query(bounds, result::add);
+
+        Set<AABBf> expected = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (AABBf box : boxes) {
+            if (new AABBf(box).setMin(box.minX - MARGIN, box.minY - MARGIN, box.minZ - MARGIN)
+                    .setMax(box.maxX + MARGIN, box.maxY + MARGIN, box.maxZ + MARGIN)
+                    .intersectsAABB(bounds)) {
+                expected.add(box);
+            }
+        }
+        assertThat(result, equalTo(expected));
+    }
+
+    @Test
+    void shouldNotReinsert_WhenMovedWithinMargin() {
+        AABBf box = boxes.getFirst();
+        assertThat(fixture.update(proxies.getFirst(), box.translate(MARGIN / 2, 0, 0)), is(false));
+        assertThat(fixture.update(proxies.getFirst(), box.translate(MARGIN, 0, 0)), is(true));
+        assertThat(fixture.getItem(proxies.getFirst()), is(sameInstance(box)));
+    }
+
+    @Test
+    void shouldStayBalanced_WhenInsertedInOrder() {
+        fixture.clear();
+        for (int i = 0; i < 10_000; i++) fixture.insert(new AABBf(), new AABBf(i, 0, 0, i + 1, 1, 1));
+
+        assertThat(fixture.size(), is(10_000));
+        assertThat(fixture.getHeight(), is(lessThanOrEqualTo(2 * 14)));
+    }
+
+    @Test
+    void shouldThrow_WhenProxyIsInvalid() {
+        int proxy = proxies.getFirst();
+        fixture.remove(proxy);
+        assertThrows(IllegalArgumentException.class, () -> fixture.remove(proxy));
+        assertThrows(IllegalArgumentException.class, () -> fixture.getItem(-1));
+    }
+
+    private AABBf randomBox() {
+        float x = random.nextFloat(-100, 100), y = random.nextFloat(-5, 5), z = random.nextFloat(-100, 100);
+        float size = random.nextFloat(.5f, 4);
+        return new AABBf(x, y, z, x + size, y + size, z + size);
+    }
+
+    private List<Set<AABBf>> cull() {
+        List<Set<AABBf>> visible = List.of(
+                Collections.newSetFromMap(new IdentityHashMap<>()),
+                Collections.newSetFromMap(new IdentityHashMap<>())
+        );
+        fixture.cull(views, (box, view) -> assertThat(visible.get(view).add(box), is(true)));
+        return visible;
+    }
+
+    private List<Set<AABBf>> bruteForce() {
+        List<Set<AABBf>> visible = new ArrayList<>();
+        AABBf enlarged = new AABBf();
+        for (Matrix4fc view : views) {
+            Set<AABBf> set = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < boxes.size(); i++) {
+                fixture.getBounds(proxies.get(i), enlarged);
+                if (view.testAab(enlarged.minX, enlarged.minY, enlarged.minZ, enlarged.maxX, enlarged.maxY, enlarged.maxZ)) {
+                    set.add(boxes.get(i));
+                }
+            }
+            visible.add(set);
+        }
+        return visible;
+    }
+
+}
@@ -0,0 +1,96 @@
+package org.etieskrill.engine.graphics.gl.shader;
+
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class UniformCacheTest {
+
+    UniformCache fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new UniformCache();
+    }
+
+    @Test
+    void shouldSkipUpload_WhenValueIsUnchanged() {
+        assertThat(fixture.update(0, 1f, 2f, 3f), is(true));
+        assertThat(fixture.update(0, 1f, 2f, 3f), is(false));
+        assertThat(fixture.update(0, 1f, 2f, 4f), is(true));
+
+        assertThat(fixture.getIssued(), is(2));
+        assertThat(fixture.getSkipped(), is(1));
+    }
+
+    @Test
+    void shouldCacheEveryLocationSeparately() {
+        assertThat(fixture.update(3, 5), is(true));
+        assertThat(fixture.update(100, 5), is(true));
+        assertThat(fixture.update(3, 5), is(false));
+        assertThat(fixture.update(100, 5), is(false));
+        assertThat(fixture.update(4, 5), is(true));
+    }
+
+    @Test
+    void shouldUpload_WhenLocationWasNeverSet() {
+        assertThat(fixture.update(0, 0), is(true));
+        assertThat(fixture.update(1, 0f, 0f, 0f, 0f), is(true));
+    }
+
+    @Test
+    void shouldCompareBits_NotNumbers() {
+        fixture.update(0, 0f);
+        assertThat(fixture.update(0, -0f), is(true));
+
+        fixture.update(1, Float.NaN);
+        assertThat(fixture.update(1, Float.NaN), is(false));
+    }
+
+    @Test
+    void shouldUpload_WhenValueHasDifferentLength() {
+        fixture.update(0, 1f, 1f);
+        assertThat(fixture.update(0, 1f, 1f, 1f), is(true));
+        assertThat(fixture.update(0, 1f), is(true));
+    }
+
+    @Test
+    void shouldCompareWholeMatrix() {
+        float[] values = new Matrix4f().translate(1, 2, 3).get(new float[16]);
+        assertThat(fixture.update(0, values, 16), is(true));
+        assertThat(fixture.update(0, values.clone(), 16), is(false));
+
+        values[15] = 2;
+        assertThat(fixture.update(0, values, 16), is(true));
+        assertThat(fixture.update(0, values, 16), is(false));
+    }
+
+    @Test
+    void shouldForgetOverwrittenLocations_WhenBypassed() {
+        fixture.update(0, 1);
+        fixture.update(1, 1);
+        fixture.update(2, 1);
+
+        fixture.bypass(0, 2);
+
+        assertThat(fixture.update(0, 1), is(true));
+        assertThat(fixture.update(1, 1), is(true));
+        assertThat(fixture.update(2, 1), is(false));
+        assertThat(fixture.getIssued(), is(6));
+    }
+
+    @Test
+    void shouldResetCounters() {
+        fixture.update(0, 1);
+        fixture.update(0, 1);
+        fixture.resetCounters();
+
+        assertThat(fixture.getIssued(), is(0));
+        assertThat(fixture.getSkipped(), is(0));
+        assertThat(fixture.update(0, 1), is(false));
+    }
+
+}
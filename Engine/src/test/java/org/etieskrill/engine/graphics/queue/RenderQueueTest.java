@@ -0,0 +1,248 @@
+package org.etieskrill.engine.graphics.queue;
+
+import org.etieskrill.engine.graphics.camera.Camera;
+import org.etieskrill.engine.graphics.gl.shader.ShaderProgram;
+import org.etieskrill.engine.graphics.model.Material;
+import org.etieskrill.engine.graphics.model.Mesh;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.etieskrill.engine.graphics.queue.RenderQueue.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Mockito.mock;
+
+class RenderQueueTest {
+
+    static final Matrix4fc IDENTITY = new Matrix4f();
+
+    Camera camera;
+    ShaderProgram shader1, shader2;
+    Material material1, material2;
+    Mesh mesh1, mesh2, mesh3;
+
+    RenderQueue fixture;
+    RecordingRenderBackend backend;
+
+    @BeforeEach
+    void setUp() {
+        camera = mock(Camera.class);
+        shader1 = mock(ShaderProgram.class);
+        shader2 = mock(ShaderProgram.class);
+        material1 = mock(Material.class);
+        material2 = mock(Material.class);
+        mesh1 = mock(Mesh.class);
+        mesh2 = mock(Mesh.class);
+        mesh3 = mock(Mesh.class);
+
+        fixture = new RenderQueue(2);
+        backend = new RecordingRenderBackend();
+    }
+
+    @Test
+    void shouldGroupByShaderAndMaterial() {
+        for (int i = 0; i < 10; i++) {
+            add(i % 2 == 0 ? shader1 : shader2, i % 3 == 0 ? material1 : material2, mesh1, IDENTITY, .5f, CULLING);
+        }
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getDrawCalls(), is(10));
+        assertThat(backend.getShaderChanges(), is(2));
+        assertThat(backend.getCameraUploads(), is(2));
+        assertThat(backend.getMaterialChanges(), is(4));
+    }
+
+    @Test
+    void shouldDrawOpaqueFrontToBack_ThenTransparentBackToFront() {
+        add(shader1, material1, mesh1, IDENTITY, .8f, TRANSPARENT);
+        add(shader1, material1, mesh2, IDENTITY, .3f, 0);
+        add(shader1, material1, mesh3, IDENTITY, .2f, TRANSPARENT);
+        add(shader1, material1, mesh2, IDENTITY, .1f, 0);
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getDrawnMeshes(), contains(mesh2, mesh2, mesh1, mesh3));
+    }
+
+    @Test
+    void shouldDrawTransparentBackToFront_AcrossShaders() {
+        add(shader1, material1, mesh1, IDENTITY, .2f, TRANSPARENT);
+        add(shader2, material2, mesh2, IDENTITY, .6f, TRANSPARENT);
+        add(shader1, material1, mesh3, IDENTITY, .8f, TRANSPARENT);
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getDrawnMeshes(), contains(mesh3, mesh2, mesh1));
+        assertThat(backend.getShaderChanges(), is(3));
+        assertThat(backend.getCameraUploads(), is(2));
+    }
+
+    @Test
+    void shouldOmitRedundantStateChanges() {
+        for (int i = 0; i < 5; i++) add(shader1, material1, mesh1, IDENTITY, i / 5f, CULLING | OUTLINE);
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getDrawCalls(), is(5));
+        assertThat(backend.getShaderChanges(), is(1));
+        assertThat(backend.getMaterialChanges(), is(1));
+        assertThat(backend.getMeshChanges(), is(1));
+        assertThat(backend.getPipelineStateChanges(), is(4)); //Only the initial state
+        assertThat(backend.getTransformUploads(), is(2));
+    }
+
+    @Test
+    void shouldOnlyUploadChangedTransforms() {
+        Matrix4fc translated = new Matrix4f().translate(1, 2, 3);
+        add(shader1, material1, mesh1, IDENTITY, .1f, 0);
+        add(shader1, material1, mesh1, IDENTITY, .2f, 0);
+        add(shader1, material1, mesh1, translated, .3f, 0);
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getTransformUploads(), is(3)); //Model and mesh once, then only the model
+    }
+
+    @Test
+    void shouldKeepMeshesUntilCleared() {
+        add(shader1, material1, mesh1, IDENTITY, .1f, 0);
+        fixture.submit(camera, backend);
+        fixture.submit(camera, backend);
+        assertThat(backend.getDrawCalls(), is(2));
+
+        fixture.clear();
+        fixture.submit(camera, backend);
+        assertThat(backend.getDrawCalls(), is(2));
+        assertThat(fixture.size(), is(0));
+    }
+
+    @Test
+    void shouldSortKeysAsUnsigned() {
+        Random random = new Random(69);
+        List<ShaderProgram> shaders = List.of(shader1, shader2);
+        List<Material> materials = List.of(material1, material2);
+        List<Mesh> meshes = List.of(mesh1, mesh2, mesh3);
+        for (int i = 0; i < 1000; i++) {
+            add(shaders.get(random.nextInt(2)), materials.get(random.nextInt(2)), meshes.get(random.nextInt(3)),
+                    IDENTITY, random.nextFloat(), random.nextBoolean() ? TRANSPARENT : 0);
+        }
+
+        fixture.sort();
+
+        for (int i = 1; i < fixture.size(); i++) {
+            assertThat(Long.compareUnsigned(fixture.getSortedKey(i - 1), fixture.getSortedKey(i)), is(lessThanOrEqualTo(0)));
+        }
+    }
+
+    @Test
+    void shouldOrderKeysByStateBeforeDepth() {
+        long near = key(false, 0, 1, 0, quantiseDepth(0));
+        long far = key(false, 0, 0, 0, quantiseDepth(1));
+        long transparent = key(true, 0, 0, 0, quantiseDepth(1));
+
+        assertThat(Long.compareUnsigned(far, near) < 0, is(true));
+        assertThat(Long.compareUnsigned(near, transparent) < 0, is(true));
+    }
+
+    @Test
+    void shouldBatchIdenticalMeshes() {
+        for (int i = 0; i < 5; i++) {
+            add(shader1, material1, mesh1, new Matrix4f().translate(i, 0, 0), i / 5f, CULLING | INSTANCEABLE);
+        }
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getDrawCalls(), is(1));
+        assertThat(backend.getInstancedDrawCalls(), is(1));
+        assertThat(backend.getInstances(), is(5));
+        assertThat(backend.getDrawnMeshes(), contains(mesh1, mesh1, mesh1, mesh1, mesh1));
+        assertThat(backend.getTransformUploads(), is(1)); //Only the mesh transform, models are per instance
+        assertThat(backend.getInstancingChanges(), is(2)); //Enabled for the batch, disabled after submitting
+    }
+
+    @Test
+    void shouldBatchEachMeshSeparately() {
+        for (int i = 0; i < 3; i++) add(shader1, material1, mesh1, IDENTITY, i / 5f, INSTANCEABLE);
+        for (int i = 0; i < 3; i++) add(shader1, material1, mesh2, IDENTITY, i / 5f, INSTANCEABLE);
+        add(shader1, material1, mesh3, IDENTITY, .5f, INSTANCEABLE);
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getDrawCalls(), is(3));
+        assertThat(backend.getInstancedDrawCalls(), is(2));
+        assertThat(backend.getInstances(), is(6));
+        assertThat(backend.getDrawnMeshes().size(), is(7));
+    }
+
+    @Test
+    void shouldNotBatch_WhenNotInstanceable() {
+        for (int i = 0; i < 5; i++) add(shader1, material1, mesh1, IDENTITY, i / 5f, CULLING);
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getDrawCalls(), is(5));
+        assertThat(backend.getInstancedDrawCalls(), is(0));
+        assertThat(backend.getInstancingChanges(), is(1)); //Only disabled, in case it was left enabled
+    }
+
+    @Test
+    void shouldDisableInstancing_ForNonInstanceableMeshAfterBatch() {
+        for (int i = 0; i < 3; i++) add(shader1, material1, mesh1, IDENTITY, i / 5f, INSTANCEABLE);
+        add(shader1, material1, mesh2, IDENTITY, .5f, CULLING);
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getInstancedDrawCalls(), is(1));
+        assertThat(backend.getDrawCalls(), is(2));
+        assertThat(backend.getInstancedSingleDraws(), is(0));
+    }
+
+    @Test
+    void shouldNotBatch_WhenTextureScaleDiffers() {
+        for (int i = 0; i < 4; i++) {
+            fixture.add(shader1, material1, mesh1, IDENTITY, IDENTITY, i / 5f, i / 2 + 1, 1, INSTANCEABLE);
+        }
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getInstancedDrawCalls(), is(2));
+        assertThat(backend.getInstances(), is(4));
+    }
+
+    @Test
+    void shouldNotBatch_WhenLodDiffers() {
+        for (int i = 0; i < 4; i++) {
+            fixture.add(shader1, material1, mesh1, IDENTITY, IDENTITY, i / 5f, 1, 1, INSTANCEABLE, i / 2);
+        }
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getInstancedDrawCalls(), is(2));
+        assertThat(backend.getDrawnLods(), contains(0, 0, 1, 1));
+    }
+
+    @Test
+    void shouldNotBatch_BelowMinInstances() {
+        fixture.setMinInstances(4);
+        for (int i = 0; i < 3; i++) add(shader1, material1, mesh1, IDENTITY, i / 5f, INSTANCEABLE);
+
+        fixture.submit(camera, backend);
+
+        assertThat(backend.getDrawCalls(), is(3));
+        assertThat(backend.getInstancedDrawCalls(), is(0));
+        assertThat(backend.getInstancingChanges(), is(1)); //Only disabled, in case it was left enabled
+    }
+
+    private void add(ShaderProgram shader, Material material, Mesh mesh, Matrix4fc model, float depth, int flags) {
+        fixture.add(shader, material, mesh, model, IDENTITY, depth, 1, 1, flags);
+    }
+
+}
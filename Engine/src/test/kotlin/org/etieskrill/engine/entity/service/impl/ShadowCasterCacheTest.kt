@@ -0,0 +1,97 @@
+package org.etieskrill.engine.entity.service.impl
+
+import org.etieskrill.engine.entity.Entity
+import org.etieskrill.engine.entity.component.DynamicCollider
+import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.entity.component.WorldSpaceAABB
+import org.joml.Matrix4f
+import org.joml.Vector3f
+import org.joml.primitives.AABBf
+import kotlin.test.*
+
+class ShadowCasterCacheTest {
+
+    private val light = Matrix4f().ortho(-10f, 10f, -10f, 10f, 1f, 50f)
+    private val fixture = ShadowCasterCache()
+
+    private val wall = staticCaster(0, 0f)
+    private val pillar = staticCaster(1, 5f)
+    private val player = Entity(2).withComponent(bounds(0f)).withComponent(DynamicCollider())
+    private val unbounded = Entity(3)
+
+    @Test
+    fun shouldSortCasters() {
+        fixture.update(listOf(wall, player, pillar, unbounded), light)
+
+        assertEquals(listOf(wall, pillar), fixture.staticCasters)
+        assertEquals(listOf(player, unbounded), fixture.dynamicCasters)
+    }
+
+    @Test
+    fun shouldDrawStatics_OnlyOnFirstUpdate() {
+        assertTrue(fixture.update(listOf(wall, pillar, player), light))
+        assertFalse(fixture.update(listOf(wall, pillar, player), light))
+        assertFalse(fixture.update(listOf(wall, pillar, player), light))
+    }
+
+    @Test
+    fun shouldNotDrawStatics_WhenDynamicCasterMoves() {
+        fixture.update(listOf(wall, player), light)
+        player.getComponent<WorldSpaceAABB>()!!.translate(1f, 0f, 0f)
+        assertFalse(fixture.update(listOf(wall, player), light))
+        assertFalse(fixture.update(listOf(wall), light))
+    }
+
+    @Test
+    fun shouldDrawStatics_WhenStaticCasterMoves() {
+        fixture.update(listOf(wall, pillar), light)
+        pillar.getComponent<WorldSpaceAABB>()!!.translate(0f, .001f, 0f)
+        assertTrue(fixture.update(listOf(wall, pillar), light))
+        assertFalse(fixture.update(listOf(wall, pillar), light))
+    }
+
+    @Test
+    fun shouldDrawStatics_WhenStaticCasterRotatesWithinItsBounds() {
+        val crate = staticCaster(4, 0f).withComponent(Transform())
+        fixture.update(listOf(wall, crate), light)
+        crate.getComponent<Transform>()!!.rotation.rotateY(Math.PI.toFloat() / 2)
+        assertTrue(fixture.update(listOf(wall, crate), light))
+        assertFalse(fixture.update(listOf(wall, crate), light))
+    }
+
+    @Test
+    fun shouldDrawStatics_WhenStaticCasterIsAddedOrRemoved() {
+        fixture.update(listOf(wall), light)
+        assertTrue(fixture.update(listOf(wall, pillar), light))
+        assertTrue(fixture.update(listOf(pillar), light))
+        assertTrue(fixture.update(listOf(staticCaster(1, 5f)), light))
+    }
+
+    @Test
+    fun shouldDrawStatics_WhenLightChanges() {
+        fixture.update(listOf(wall), light)
+        assertTrue(fixture.update(listOf(wall), Matrix4f(light).translate(1f, 0f, 0f)))
+        assertTrue(fixture.update(listOf(wall), light))
+    }
+
+    @Test
+    fun shouldDrawStatics_WhenInvalidated() {
+        fixture.update(listOf(wall), light)
+        fixture.invalidate()
+        assertTrue(fixture.update(listOf(wall), light))
+    }
+
+    @Test
+    fun shouldTestRangeAgainstClosestPoint() {
+        val bounds = AABBf(2f, -1f, -1f, 4f, 1f, 1f)
+        assertTrue(ShadowCasterCache.isInRange(bounds, Vector3f(), 2f))
+        assertFalse(ShadowCasterCache.isInRange(bounds, Vector3f(), 1.9f))
+        assertTrue(ShadowCasterCache.isInRange(bounds, Vector3f(3f, 0f, 0f), 0f))
+        assertFalse(ShadowCasterCache.isInRange(bounds, Vector3f(0f, 3f, 3f), 3.4f))
+    }
+
+    private fun staticCaster(id: Int, x: Float) = Entity(id).withComponent(bounds(x))
+
+    private fun bounds(x: Float) = WorldSpaceAABB().apply { setMin(x, 0f, 0f); setMax(x + 1, 1f, 1f) }
+
+}
@@ -0,0 +1,78 @@
+package org.etieskrill.engine.entity.system
+
+import org.etieskrill.engine.entity.Entity
+import org.etieskrill.engine.entity.component.DynamicCollider
+import org.etieskrill.engine.entity.component.Friction
+import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.entity.service.Service
+import java.util.concurrent.ForkJoinPool
+import kotlin.reflect.KClass
+import kotlin.test.*
+
+class ArchetypeStorageTest {
+
+    private val fixture = EntitySystem(ComponentStorageMode.ARCHETYPE)
+
+    @Test
+    fun shouldGroupEntitiesWithSameComponentsIntoOneArchetype() {
+        repeat(3) { fixture.createEntity { +Transform(); +Friction(1f) } }
+        fixture.createEntity { +Transform() }
+
+        val archetypes = fixture.archetypesWith(Transform::class, Friction::class)
+        assertEquals(1, archetypes.size)
+        assertEquals(3, archetypes.single().size)
+        assertEquals(2, fixture.archetypesWith(Transform::class).size)
+    }
+
+    @Test
+    fun shouldKeepComponentsWhenMovedBetweenArchetypes() {
+        val transform = Transform()
+        val entity = fixture.createEntity { +transform }
+        val other = fixture.createEntity { +Transform() }
+
+        val collider = entity.addComponent(DynamicCollider())
+
+        assertSame(transform, entity.getComponent<Transform>())
+        assertSame(collider, entity.getComponent<DynamicCollider>())
+        assertNull(other.getComponent<DynamicCollider>())
+        assertTrue(entity.hasComponents<Transform, DynamicCollider>())
+        assertEquals(setOf(Transform::class, DynamicCollider::class), entity.components.keys)
+    }
+
+    @Test
+    fun shouldKeepRowsDenseWhenEntityIsRemoved() {
+        val entities = List(3) { i -> fixture.createEntity { +Friction(i.toFloat()) } }
+        fixture.update(0.0)
+
+        fixture.removeEntity(entities[0])
+        fixture.update(0.0)
+
+        val archetype = fixture.archetypesWith(Friction::class).single()
+        assertEquals(2, archetype.size)
+        assertEquals(2f, entities[2].getComponent<Friction>()!!.coefficient)
+        assertSame(entities[2], archetype.entity(entities[2].archetypeRow))
+        assertEquals(0f, entities[0].getComponent<Friction>()!!.coefficient, "released entity keeps its components")
+    }
+
+    @Test
+    fun shouldRejectComponentChanges_WhileProcessingOnPool() {
+        val pool = ForkJoinPool(2)
+        val system = EntitySystem(ComponentStorageMode.ARCHETYPE, pool)
+        system.addService(object : Service {
+            override val requiredComponents: Set<KClass<*>> = setOf(Friction::class)
+            override val isContextBound = false
+
+            override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
+                targetEntity.addComponent(Transform())
+            }
+        })
+        val entity = system.createEntity { +Friction(1f) }
+        system.update(0.0)
+
+        assertFailsWith<IllegalStateException> { system.update(0.0) }
+        entity.addComponent(Transform())
+        assertTrue(entity.hasComponents<Friction, Transform>())
+        pool.shutdown()
+    }
+
+}
@@ -0,0 +1,146 @@
+package org.etieskrill.engine.entity.system
+
+import org.etieskrill.engine.entity.Entity
+import org.etieskrill.engine.entity.component.Enabled
+import org.etieskrill.engine.entity.component.Friction
+import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.entity.service.Service
+import java.util.concurrent.ForkJoinPool
+import kotlin.reflect.KClass
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class EntitySystemTest {
+
+    private class RecordingService : Service {
+        val processed = mutableListOf<Int>()
+
+        override val requiredComponents: Set<KClass<*>> = setOf(Transform::class, Friction::class)
+
+        override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
+            processed += targetEntity.id
+        }
+    }
+
+    private lateinit var fixture: EntitySystem
+    private lateinit var service: RecordingService
+
+    @BeforeTest
+    fun setUp() {
+        fixture = EntitySystem()
+        service = RecordingService()
+        fixture.addService(service)
+    }
+
+    private fun update(): List<Int> {
+        service.processed.clear()
+        fixture.update(0.0)
+        return service.processed.toList()
+    }
+
+    @Test
+    fun shouldOnlyProcessMatchingEntities_FromTheFrameAfterCreation() {
+        repeat(4) { i -> fixture.createEntity { +Transform(); if (i % 2 == 0) +Friction(1f) } }
+
+        assertEquals(listOf(), update())
+        assertEquals(listOf(0, 2), update())
+    }
+
+    @Test
+    fun shouldUpdateMembership_WhenComponentsAreAddedOrRemoved() {
+        val entities = List(3) { fixture.createEntity { +Transform(); +Friction(1f) } }
+        update()
+
+        entities[0].removeComponent<Friction>()
+        fixture.createEntity { +Transform() }.also { update() }.addComponent(Friction(1f))
+
+        assertEquals(listOf(1, 2, 3), update())
+    }
+
+    @Test
+    fun shouldDropRemovedEntities() {
+        val entities = List(3) { fixture.createEntity { +Transform(); +Friction(1f) } }
+        update()
+
+        fixture.removeEntity(entities[1])
+        update()
+
+        assertEquals(listOf(0, 2), update())
+    }
+
+    @Test
+    fun shouldSkipDisabledEntities() {
+        fixture.createEntity { +Transform(); +Friction(1f) }
+        val disabled = Enabled(false)
+        fixture.createEntity { +Transform(); +Friction(1f); +disabled }
+        update()
+
+        assertEquals(listOf(0), update())
+        disabled.enabled = true
+        assertEquals(listOf(0, 1), update())
+    }
+
+    @Test
+    fun shouldPickUpExistingEntities_WhenServiceIsAddedLate() {
+        repeat(2) { fixture.createEntity { +Transform(); +Friction(1f) } }
+        update()
+
+        val lateService = RecordingService()
+        fixture.addService(lateService)
+        fixture.update(0.0)
+
+        assertEquals(listOf(0, 1), lateService.processed)
+    }
+
+    @Test
+    fun shouldPassSortedEntities_ToCallbacksOfQueryServiceWithComparator() {
+        val sortedService = object : Service {
+            var preProcessed = listOf<Int>()
+            val processed = mutableListOf<Int>()
+
+            override val requiredComponents: Set<KClass<*>> = setOf(Friction::class)
+            override val comparator = compareByDescending<Entity> { it.id }
+
+            override fun preProcess(delta: Double, entities: List<Entity>) {
+                preProcessed = entities.map(Entity::id)
+            }
+
+            override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
+                processed += targetEntity.id
+            }
+        }
+        fixture.addService(sortedService)
+        repeat(3) { i -> fixture.createEntity { if (i != 1) +Friction(1f) } }
+
+        update()
+        update()
+
+        assertEquals(listOf(2, 1, 0), sortedService.preProcessed)
+        assertEquals(listOf(2, 0), sortedService.processed)
+    }
+
+    @Test
+    fun shouldProcessEveryEntityExactlyOnce_WhenProcessedInChunks() {
+        val entityLocalService = object : Service {
+            override val requiredComponents: Set<KClass<*>> = setOf(Friction::class)
+            override val isContextBound get() = false
+            override val isEntityLocal get() = true
+
+            override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) {
+                targetEntity.getComponent<Friction>()!!.coefficient++
+            }
+        }
+
+        val pool = ForkJoinPool(4)
+        fixture = EntitySystem(pool = pool).apply { addService(entityLocalService) }
+        val entities = List(10_000) { fixture.createEntity { +Friction(0f) } }
+
+        repeat(3) { fixture.update(0.0) }
+        pool.shutdown()
+
+        assertTrue(entities.all { it.getComponent<Friction>()!!.coefficient == 2f })
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.etieskrill.engine.entity.system
+
+import org.etieskrill.engine.entity.Entity
+import org.etieskrill.engine.entity.component.Friction
+import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.entity.service.ComponentAccess
+import org.etieskrill.engine.entity.service.Service
+import kotlin.reflect.KClass
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class ServiceExecutionPlanTest {
+
+    private open class TestService(
+        override val componentAccess: ComponentAccess? = ComponentAccess(),
+        override val priority: Int = 0,
+        override val runAfter: Set<KClass<out Service>> = setOf(),
+        override val runBefore: Set<KClass<out Service>> = setOf()
+    ) : Service {
+        override fun canProcess(entity: Entity) = true
+        override fun process(targetEntity: Entity, entities: List<Entity>, delta: Double) = Unit
+    }
+
+    private class First(runAfter: Set<KClass<out Service>> = setOf()) : TestService(runAfter = runAfter)
+    private class Second(runAfter: Set<KClass<out Service>> = setOf()) : TestService(runAfter = runAfter)
+    private class Third(runBefore: Set<KClass<out Service>> = setOf()) : TestService(runBefore = runBefore)
+
+    @Test
+    fun shouldKeepInsertionOrder_WithoutConstraints() {
+        val services = List(3) { TestService() }
+
+        assertEquals(services, ServiceExecutionPlan(services).services)
+    }
+
+    @Test
+    fun shouldOrderByDeclaredDependencies() {
+        val first = First(runAfter = setOf(Second::class))
+        val second = Second()
+        val third = Third(runBefore = setOf(Second::class))
+
+        assertEquals(listOf(third, second, first), ServiceExecutionPlan(listOf(first, second, third)).services)
+    }
+
+    @Test
+    fun shouldOrderByPriority_WhenUnconstrained() {
+        val low = TestService(priority = -1)
+        val high = TestService(priority = 1)
+
+        assertEquals(listOf(high, low), ServiceExecutionPlan(listOf(low, high)).services)
+    }
+
+    @Test
+    fun shouldOnlyDependOnConflictingServices() {
+        val writer = TestService(ComponentAccess(writes = setOf(Transform::class)))
+        val unrelated = TestService(ComponentAccess(writes = setOf(Friction::class)))
+        val reader = TestService(ComponentAccess(reads = setOf(Transform::class)))
+        val unknown = TestService(componentAccess = null)
+
+        val plan = ServiceExecutionPlan(listOf(writer, unrelated, reader, unknown))
+
+        assertContentEquals(intArrayOf(), plan.dependencies[1])
+        assertContentEquals(intArrayOf(0), plan.dependencies[2])
+        assertContentEquals(intArrayOf(0, 1, 2), plan.dependencies[3])
+        assertContentEquals(intArrayOf(2, 3), plan.dependents[0])
+    }
+
+    @Test
+    fun shouldFailOnCyclicDependencies() {
+        assertFailsWith<IllegalStateException> {
+            ServiceExecutionPlan(listOf(First(runAfter = setOf(Second::class)), Second(runAfter = setOf(First::class))))
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.etieskrill.engine.graphics.animation
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class AnimationLodTest {
+
+    private val fixture = AnimationLod(floatArrayOf(10f, 50f), intArrayOf(2, 8))
+
+    @Test
+    fun shouldUpdateEveryFrame_WhenClose() {
+        assertEquals(1, fixture.getUpdateInterval(0f))
+        assertEquals(1, fixture.getUpdateInterval(9.9f))
+    }
+
+    @Test
+    fun shouldUpdateLessOften_WithDistance() {
+        assertEquals(2, fixture.getUpdateInterval(10f))
+        assertEquals(2, fixture.getUpdateInterval(49f))
+        assertEquals(8, fixture.getUpdateInterval(50f))
+        assertEquals(8, fixture.getUpdateInterval(Float.POSITIVE_INFINITY))
+    }
+
+    @Test
+    fun shouldAlwaysUpdate_WithoutLevels() {
+        assertEquals(1, AnimationLod.NONE.getUpdateInterval(1000f))
+    }
+
+    @Test
+    fun shouldThrow_WhenDistancesAreNotAscending() {
+        assertFailsWith<IllegalArgumentException> { AnimationLod(floatArrayOf(50f, 10f), intArrayOf(2, 8)) }
+    }
+
+}
@@ -0,0 +1,127 @@
+package org.etieskrill.engine.graphics.data
+
+import io.github.etieskrill.injection.extension.shader.Buffer
+import io.github.etieskrill.injection.extension.shader.BufferAccessor
+import org.joml.Matrix4f
+import org.joml.Vector3f
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class FrameUniformsAccessorTest {
+
+    private val frame = FrameUniforms()
+    private val buffer = CpuBuffer()
+
+    @BeforeTest
+    fun setUp() {
+        frame.lightCombined.translation(1f, 2f, 3f)
+        frame.viewPosition.set(4f, 5f, 6f)
+        frame.hasShadowMap = true
+        frame.pointShadowFarPlane = 40f
+        frame.directionalLights += DirectionalLight(Vector3f(0f, -1f, 0f), Vector3f(.1f), Vector3f(.2f), Vector3f(.3f))
+        frame.pointLights += pointLight(0f)
+        frame.pointLights += pointLight(10f)
+    }
+
+    @Test
+    fun shouldHaveStd140BlockSize() {
+        assertEquals(560, FrameUniformsAccessor.elementByteSize)
+
+        buffer.setData(listOf(frame))
+        assertEquals(560, buffer.data.remaining())
+    }
+
+    @Test
+    fun shouldPackScalarsAndMatrix() {
+        val bytes = pack()
+
+        assertEquals(Matrix4f().translation(1f, 2f, 3f), Matrix4f().set(0, bytes))
+        assertEquals(Vector3f(4f, 5f, 6f), Vector3f(0, bytes))
+        assertEquals(1, bytes.getInt(76))
+        assertEquals(0, bytes.getInt(80))
+        assertEquals(40f, bytes.getFloat(84))
+    }
+
+    @Test
+    fun shouldPackShadowDefaults_AfterClear() {
+        frame.clear()
+        val bytes = pack()
+
+        assertEquals(0, bytes.getInt(76))
+        assertEquals(0, bytes.getInt(80))
+        assertEquals(FrameUniforms.DEFAULT_POINT_SHADOW_FAR_PLANE, bytes.getFloat(84))
+    }
+
+    @Test
+    fun shouldPackDirectionalLights() {
+        val bytes = pack()
+
+        assertEquals(Vector3f(0f, -1f, 0f), Vector3f(96, bytes))
+        assertEquals(Vector3f(.1f), Vector3f(96 + 16, bytes))
+        assertEquals(Vector3f(.2f), Vector3f(96 + 32, bytes))
+        assertEquals(Vector3f(.3f), Vector3f(96 + 48, bytes))
+    }
+
+    @Test
+    fun shouldPackPointLights() {
+        val bytes = pack()
+
+        val second = 160 + 80
+        assertEquals(Vector3f(10f, 0f, 0f), Vector3f(second, bytes))
+        assertEquals(Vector3f(.4f), Vector3f(second + 16, bytes))
+        assertEquals(Vector3f(.5f), Vector3f(second + 32, bytes))
+        assertEquals(Vector3f(.6f), Vector3f(second + 48, bytes))
+        assertEquals(1f, bytes.getFloat(second + 60))
+        assertEquals(.09f, bytes.getFloat(second + 64))
+        assertEquals(.032f, bytes.getFloat(second + 68))
+    }
+
+    @Test
+    fun shouldZeroMissingLights() {
+        val bytes = ByteBuffer.allocateDirect(560).order(ByteOrder.nativeOrder())
+        for (i in 0..<560) bytes.put(i, (-1).toByte())
+
+        FrameUniformsAccessor.pack(frame, bytes)
+
+        for (i in 160 + 2 * 80..<560) assertEquals(0.toByte(), bytes.get(i), "byte $i")
+    }
+
+    @Test
+    fun shouldIgnoreExcessLights() {
+        repeat(FrameUniforms.MAX_POINT_LIGHTS) { frame.pointLights += pointLight(100f) }
+        frame.directionalLights += DirectionalLight(Vector3f(1f))
+
+        val bytes = pack()
+
+        assertEquals(Vector3f(0f, -1f, 0f), Vector3f(96, bytes))
+        assertEquals(Vector3f(100f, 0f, 0f), Vector3f(160 + 4 * 80, bytes))
+    }
+
+    private fun pack(): ByteBuffer {
+        buffer.setData(listOf(frame))
+        return buffer.data
+    }
+
+    private fun pointLight(x: Float) =
+        PointLight(Vector3f(x, 0f, 0f), Vector3f(.4f), Vector3f(.5f), Vector3f(.6f), 1f, .09f, .032f)
+
+    private class CpuBuffer : Buffer<FrameUniforms> {
+        override val buffer: ByteBuffer = ByteBuffer.allocateDirect(FrameUniformsAccessor.elementByteSize)
+            .order(ByteOrder.nativeOrder())
+        override val accessor: BufferAccessor<FrameUniforms> = FrameUniformsAccessor
+
+        lateinit var data: ByteBuffer
+
+        override fun setData(elements: Collection<FrameUniforms>) = accessor.map(elements, this)
+        override fun setData(data: ByteBuffer) {
+            this.data = data
+        }
+
+        override fun bind() {}
+        override fun unbind() {}
+    }
+
+}
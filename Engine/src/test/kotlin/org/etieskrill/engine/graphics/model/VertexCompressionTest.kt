@@ -0,0 +1,110 @@
+package org.etieskrill.engine.graphics.model
+
+import org.joml.Vector2f
+import org.joml.Vector3f
+import java.lang.Float.float16ToFloat
+import java.lang.Float.floatToFloat16
+import kotlin.math.abs
+import kotlin.random.Random
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class VertexCompressionTest {
+
+    private val random = Random(42)
+
+    @Test
+    fun shouldPackVertex_IntoLessThanHalf() {
+        assertEquals(36, Vertex.Companion.CompactAccessor.elementByteSize)
+        assertTrue(2 * Vertex.Companion.CompactAccessor.elementByteSize < Vertex.Companion.Accessor.elementByteSize)
+    }
+
+    @Test
+    fun shouldRoundTripDirections_WithinOctahedralPrecision() {
+        val directions = List(10_000) { randomDirection() } + listOf(
+            Vector3f(1f, 0f, 0f), Vector3f(-1f, 0f, 0f), Vector3f(0f, 1f, 0f),
+            Vector3f(0f, -1f, 0f), Vector3f(0f, 0f, 1f), Vector3f(0f, 0f, -1f)
+        )
+
+        for (direction in directions) {
+            val decoded = roundTrip(direction)
+
+            assertTrue(direction.distance(decoded) < 1e-4f, "$direction was decoded as $decoded")
+        }
+    }
+
+    @Test
+    fun shouldRoundTripTextureCoords_WithinHalfPrecision() {
+        repeat(10_000) {
+            val coordinate = random.nextFloat()
+
+            val decoded = float16ToFloat(floatToFloat16(coordinate))
+
+            assertTrue(abs(coordinate - decoded) <= 1 / 4096f, "$coordinate was decoded as $decoded")
+        }
+    }
+
+    @Test
+    fun shouldDeriveBiTangent_FromHandedness() {
+        val normal = Vector3f(0f, 0f, 1f)
+        val tangent = Vector3f(1f, 0f, 0f)
+
+        for (biTangent in listOf(Vector3f(0f, 1f, 0f), Vector3f(0f, -1f, 0f))) {
+            val handedness = fromSnorm16(toSnorm16(handedness(
+                normal.x, normal.y, normal.z, tangent.x, tangent.y, tangent.z, biTangent.x, biTangent.y, biTangent.z
+            )))
+
+            val derived = roundTrip(normal).cross(roundTrip(tangent)).mul(handedness)
+
+            assertTrue(biTangent.distance(derived) < 1e-4f, "$biTangent was derived as $derived")
+        }
+    }
+
+    @Test
+    fun shouldQuantiseBoneWeights_WithoutChangingTheirSum() {
+        val quantised = ByteArray(4)
+
+        repeat(10_000) {
+            val weights = FloatArray(4) { random.nextFloat() }
+            val sum = weights.sum()
+            for (i in weights.indices) weights[i] /= sum
+
+            quantiseBoneWeights(weights, quantised)
+
+            assertEquals(Byte.MAX_VALUE.toInt(), quantised.sum())
+            for (i in weights.indices) {
+                val decoded = fromSnorm8(quantised[i])
+                assertTrue(abs(weights[i] - decoded) <= 2.5f / Byte.MAX_VALUE, "${weights[i]} was decoded as $decoded")
+            }
+        }
+    }
+
+    @Test
+    fun shouldMoveRoundingError_ToLargestWeight() {
+        val quantised = ByteArray(4)
+
+        quantiseBoneWeights(floatArrayOf(0.25f, 0.25f, 0.25f, 0.25f), quantised)
+        assertContentEquals(byteArrayOf(31, 32, 32, 32), quantised)
+
+        quantiseBoneWeights(floatArrayOf(1f, 0f, 0f, 0f), quantised)
+        assertContentEquals(byteArrayOf(127, 0, 0, 0), quantised)
+
+        quantiseBoneWeights(floatArrayOf(0f, 0f, 0f, 0f), quantised)
+        assertContentEquals(byteArrayOf(0, 0, 0, 0), quantised)
+    }
+
+    private fun randomDirection(): Vector3f {
+        while (true) {
+            val vector = Vector3f(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1)
+            if (vector.lengthSquared() in 1e-4f..1f) return vector.normalize()
+        }
+    }
+
+    private fun roundTrip(direction: Vector3f): Vector3f {
+        val encoded = encodeOctahedral(direction.x, direction.y, direction.z, Vector2f())
+        return decodeOctahedral(fromSnorm16(toSnorm16(encoded.x)), fromSnorm16(toSnorm16(encoded.y)), Vector3f())
+    }
+
+}
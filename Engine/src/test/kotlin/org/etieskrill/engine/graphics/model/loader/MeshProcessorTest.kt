@@ -0,0 +1,283 @@
+package org.etieskrill.engine.graphics.model.loader
+
+import io.github.etieskrill.injection.extension.shader.Buffer
+import io.github.etieskrill.injection.extension.shader.BufferAccessor
+import org.etieskrill.engine.graphics.model.Mesh
+import org.etieskrill.engine.graphics.model.Vertex
+import org.joml.Vector2f
+import org.joml.Vector3f
+import org.joml.Vector4f
+import org.joml.Vector4i
+import org.joml.primitives.AABBf
+import org.lwjgl.BufferUtils
+import java.nio.ByteBuffer
+import java.nio.FloatBuffer
+import java.nio.IntBuffer
+import kotlin.math.cos
+import kotlin.math.sin
+import kotlin.random.Random
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class MeshProcessorTest {
+
+    private val positions = floats(1f, 2f, 3f, -4f, 5f, -6f)
+    private val normals = floats(0f, 1f, 0f, 1f, 0f, 0f)
+    private val textureCoords = floats(0.25f, 0.5f, 9f, 0.75f, 1f, 9f) //the third component is never used
+    private val tangents = floats(1f, 0f, 0f, 0f, 0f, 1f)
+    private val biTangents = floats(0f, 0f, 1f, 0f, 1f, 0f)
+
+    @Test
+    fun shouldInterleaveLikeVertexAccessor() {
+        val weights = VertexBoneWeights(2).apply {
+            add(0, 3, 0.75f)
+            add(0, 1, 0.25f)
+            add(1, 2, 1f)
+        }
+        val expected = map(
+            Vertex(
+                Vector3f(1f, 2f, 3f), Vector3f(0f, 1f, 0f), Vector2f(0.25f, 0.5f),
+                Vector3f(1f, 0f, 0f), Vector3f(0f, 0f, 1f), Vector4i(3, 1, -1, -1), Vector4f(0.75f, 0.25f, 0f, 0f)
+            ),
+            Vertex(
+                Vector3f(-4f, 5f, -6f), Vector3f(1f, 0f, 0f), Vector2f(0.75f, 1f),
+                Vector3f(0f, 0f, 1f), Vector3f(0f, 1f, 0f), Vector4i(2, -1, -1, -1), Vector4f(1f, 0f, 0f, 0f)
+            )
+        )
+
+        val actual = BufferUtils.createByteBuffer(2 * Vertex.Companion.Accessor.elementByteSize)
+        interleaveVertices(2, positions, normals, textureCoords, tangents, biTangents, weights, actual)
+
+        assertContentEquals(expected.bytes(), actual.bytes())
+    }
+
+    @Test
+    fun shouldZeroMissingAttributes_AndNotReferenceBones() {
+        val expected = map(
+            Vertex(Vector3f(1f, 2f, 3f), bones = Vector4i(-1), boneWeights = Vector4f(0f)),
+            Vertex(Vector3f(-4f, 5f, -6f), bones = Vector4i(-1), boneWeights = Vector4f(0f))
+        )
+
+        val actual = BufferUtils.createByteBuffer(2 * Vertex.Companion.Accessor.elementByteSize)
+        interleaveVertices(2, positions, null, null, null, null, null, actual)
+
+        assertContentEquals(expected.bytes(), actual.bytes())
+    }
+
+    @Test
+    fun shouldCalculateBoundingBox() {
+        val boundingBox = interleaveVertices(
+            2, positions, null, null, null, null, null,
+            BufferUtils.createByteBuffer(2 * Vertex.Companion.Accessor.elementByteSize)
+        )
+
+        assertEquals(AABBf(-4f, 2f, -6f, 1f, 5f, 3f), boundingBox)
+    }
+
+    @Test
+    fun shouldCompactLikeCompactAccessor() {
+        val vertices = arrayOf(
+            Vertex(
+                Vector3f(1f, 2f, 3f), Vector3f(0f, 1f, 0f), Vector2f(0.25f, 0.5f),
+                Vector3f(1f, 0f, 0f), Vector3f(0f, 0f, 1f), Vector4i(3, 1, -1, -1), Vector4f(0.75f, 0.25f, 0f, 0f)
+            ),
+            Vertex(
+                Vector3f(-4f, 5f, -6f), Vector3f(0.6f, 0f, -0.8f), Vector2f(0.75f, 3f),
+                Vector3f(0.8f, 0f, 0.6f), Vector3f(0f, -1f, 0f), Vector4i(2, 0, 1, -1), Vector4f(0.4f, 0.3f, 0.3f, 0f)
+            )
+        )
+        val expected = map(*vertices, accessor = Vertex.Companion.CompactAccessor)
+
+        val actual = BufferUtils.createByteBuffer(2 * Vertex.Companion.CompactAccessor.elementByteSize)
+        compactVertices(2, map(*vertices), actual)
+
+        assertContentEquals(expected.bytes(), actual.bytes())
+    }
+
+    @Test
+    fun shouldFillFreeBoneSlots_UntilFull() {
+        val weights = VertexBoneWeights(2)
+
+        assertTrue(weights.add(1, 7, 0.5f))
+        assertTrue(weights.add(1, 7, 0.1f)) //already present, so ignored
+        repeat(3) { assertTrue(weights.add(1, it, 0.1f)) }
+        assertFalse(weights.add(1, 4, 0.1f))
+
+        assertContentEquals(intArrayOf(-1, -1, -1, -1, 7, 0, 1, 2), weights.bones)
+        assertContentEquals(floatArrayOf(0f, 0f, 0f, 0f, 0.5f, 0.1f, 0.1f, 0.1f), weights.boneWeights)
+    }
+
+    @Test
+    fun shouldGenerateLods_WithinErrorBound() {
+        val grid = Grid(33) { x, z -> 0.3f * sin(x) * cos(z) }
+        val maxError = 0.05f
+
+        val (indexData, lods) = simplifyLods(
+            grid.indices, grid.positions, grid.numVertices, 3 * Float.SIZE_BYTES, floatArrayOf(0.5f, 0.25f, 0.125f), maxError
+        )
+        val indices = indexData.asIntBuffer()
+
+        assertEquals(Mesh.Lod(0, grid.indices.capacity(), 0f), lods.first())
+        assertTrue(lods.size > 1, "No levels of detail were generated")
+        assertEquals(indices.capacity(), lods.sumOf { it.numIndices })
+        assertEquals(grid.indices, indices.duplicate().limit(grid.indices.capacity()))
+        for ((previous, lod) in lods.zipWithNext()) {
+            assertEquals(previous.firstIndex + previous.numIndices, lod.firstIndex)
+            assertEquals(0, lod.numIndices % 3)
+            assertTrue(lod.numIndices < previous.numIndices, "$lod has no fewer indices than $previous")
+            assertTrue(lod.error <= maxError * grid.extent, "$lod deviates by more than ${maxError * grid.extent}")
+        }
+        for (i in 0..<indices.capacity()) assertTrue(indices[i] in 0..<grid.numVertices)
+    }
+
+    @Test
+    fun shouldReachTargetIndexCounts_OfFlatMesh() {
+        val grid = Grid(33) { _, _ -> 0f }
+        val ratios = floatArrayOf(0.5f, 0.25f)
+
+        val (_, lods) = simplifyLods(grid.indices, grid.positions, grid.numVertices, 3 * Float.SIZE_BYTES, ratios, 0.01f)
+
+        assertEquals(3, lods.size)
+        for ((lod, ratio) in lods.drop(1).zip(ratios.toList())) {
+            assertTrue(lod.numIndices <= ratio * grid.indices.capacity(), "$lod has more indices than targeted")
+            assertTrue(lod.error < 1e-4f, "$lod deviates from a flat mesh")
+        }
+    }
+
+    @Test
+    fun shouldOmitLods_WhichExceedErrorBound() {
+        val random = Random(42)
+        val grid = Grid(17) { _, _ -> random.nextFloat() }
+
+        val (indexData, lods) = simplifyLods(
+            grid.indices, grid.positions, grid.numVertices, 3 * Float.SIZE_BYTES, floatArrayOf(0.5f, 0.25f), 1e-4f
+        )
+
+        assertEquals(listOf(Mesh.Lod(0, grid.indices.capacity(), 0f)), lods)
+        assertEquals(grid.indices, indexData.asIntBuffer())
+    }
+
+    @Test
+    fun shouldAnalyseVertexOrder() {
+        val statistics = analyseVertexOrder(ints(0, 1, 2, 2, 1, 3), 4, 3 * Float.SIZE_BYTES)
+
+        assertEquals(2f, statistics.acmr)
+        assertEquals(1f, statistics.atvr)
+    }
+
+    @Test
+    fun shouldImproveVertexOrder_WithoutChangingTriangles() {
+        val grid = Grid(33) { x, z -> 0.3f * sin(x) * cos(z) }.shuffled(Random(42))
+        val stride = 3 * Float.SIZE_BYTES
+        val vertexData = BufferUtils.createByteBuffer((grid.numVertices + 1) * stride) //the last is never referenced
+        vertexData.asFloatBuffer().put(grid.positions.duplicate()).put(floatArrayOf(-1f, -1f, -1f))
+        val indexData = BufferUtils.createByteBuffer(grid.indices.capacity() * Int.SIZE_BYTES)
+        indexData.asIntBuffer().put(grid.indices.duplicate())
+        val before = analyseVertexOrder(indexData.asIntBuffer(), grid.numVertices, stride)
+
+        val optimisedVertexData = optimiseVertexOrder(vertexData, indexData, stride)
+        val after = analyseVertexOrder(indexData.asIntBuffer(), grid.numVertices, stride)
+
+        assertEquals(grid.numVertices * stride, optimisedVertexData.limit())
+        assertTrue(after.acmr < before.acmr, "ACMR did not improve from ${before.acmr} to ${after.acmr}")
+        assertTrue(after.acmr < 1f, "ACMR of ${after.acmr} is far from optimal")
+        assertTrue(after.atvr < before.atvr, "ATVR did not improve from ${before.atvr} to ${after.atvr}")
+        assertTrue(
+            after.overfetch < before.overfetch,
+            "Overfetch did not improve from ${before.overfetch} to ${after.overfetch}"
+        )
+        assertEquals(
+            triangles(grid.positions, grid.indices),
+            triangles(optimisedVertexData.asFloatBuffer(), indexData.asIntBuffer())
+        )
+    }
+
+    private fun floats(vararg values: Float): FloatBuffer = BufferUtils.createFloatBuffer(values.size).put(values).rewind()
+
+    private fun ints(vararg values: Int): IntBuffer = BufferUtils.createIntBuffer(values.size).put(values).rewind()
+
+    /**
+     * Collects the triangles by the positions of their vertices, each starting at the smallest one to keep the winding
+     * order comparable.
+     */
+    private fun triangles(positions: FloatBuffer, indices: IntBuffer): Map<List<Vector3f>, Int> {
+        val comparator = compareBy<Vector3f>({ it.x }, { it.y }, { it.z })
+        return (0..<indices.capacity() / 3)
+            .map { triangle ->
+                val vertices = List(3) { i ->
+                    val index = indices[3 * triangle + i]
+                    Vector3f(positions[3 * index], positions[3 * index + 1], positions[3 * index + 2])
+                }
+                val first = vertices.indexOf(vertices.minWith(comparator))
+                List(3) { vertices[(first + it) % 3] }
+            }
+            .groupingBy { it }
+            .eachCount()
+    }
+
+    private fun map(
+        vararg vertices: Vertex,
+        accessor: BufferAccessor<Vertex> = Vertex.Companion.Accessor
+    ): ByteBuffer = CpuBuffer(vertices.size, accessor)
+        .also { it.setData(vertices.toList()) }
+        .buffer
+
+    private fun ByteBuffer.bytes() = ByteArray(capacity()).also { duplicate().rewind().get(it) }
+
+    /**
+     * A square height field on the xz plane, spanning [extent] units in either direction.
+     */
+    private class Grid(size: Int, height: (x: Float, z: Float) -> Float) {
+        val extent = 10f
+        val numVertices = size * size
+        val positions: FloatBuffer = BufferUtils.createFloatBuffer(3 * numVertices)
+        val indices: IntBuffer = BufferUtils.createIntBuffer(6 * (size - 1) * (size - 1))
+
+        init {
+            for (row in 0..<size) for (column in 0..<size) {
+                val x = extent * column / (size - 1)
+                val z = extent * row / (size - 1)
+                positions.put(x).put(height(x, z)).put(z)
+            }
+            for (row in 0..<size - 1) for (column in 0..<size - 1) {
+                val vertex = row * size + column
+                indices.put(vertex).put(vertex + size).put(vertex + 1)
+                indices.put(vertex + 1).put(vertex + size).put(vertex + size + 1)
+            }
+            positions.rewind()
+            indices.rewind()
+        }
+
+        /**
+         * Shuffles the vertices and the order of the triangles, which leaves the mesh itself as it is.
+         */
+        fun shuffled(random: Random): Grid = apply {
+            val vertexOrder = (0..<numVertices).shuffled(random)
+            val oldPositions = FloatArray(3 * numVertices).also { positions.get(it).rewind() }
+            for (vertex in 0..<numVertices) for (i in 0..<3) {
+                positions.put(3 * vertexOrder[vertex] + i, oldPositions[3 * vertex + i])
+            }
+
+            val triangles = List(indices.capacity() / 3) { triangle ->
+                IntArray(3) { vertexOrder[indices[3 * triangle + it]] }
+            }.shuffled(random)
+            triangles.forEachIndexed { triangle, vertices ->
+                vertices.forEachIndexed { i, vertex -> indices.put(3 * triangle + i, vertex) }
+            }
+        }
+    }
+
+    private class CpuBuffer(count: Int, override val accessor: BufferAccessor<Vertex>) : Buffer<Vertex> {
+        override val buffer: ByteBuffer = BufferUtils.createByteBuffer(count * accessor.elementByteSize)
+
+        override fun setData(elements: Collection<Vertex>) = accessor.map(elements, this)
+        override fun setData(data: ByteBuffer) {}
+
+        override fun bind() {}
+        override fun unbind() {}
+    }
+
+}
@@ -0,0 +1,151 @@
+package org.etieskrill.engine.graphics.model.loader
+
+import org.etieskrill.engine.entity.component.Transform
+import org.etieskrill.engine.graphics.animation.Animation
+import org.etieskrill.engine.graphics.animation.BoneAnimation
+import org.etieskrill.engine.graphics.model.Bone
+import org.etieskrill.engine.graphics.model.Node
+import org.joml.Quaternionf
+import org.joml.Vector3f
+import org.joml.Vector3fc
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+import kotlin.test.fail
+
+class ModelCacheTest {
+
+    private val key = ModelCache.Key(
+        1234, 1_700_000_000_000, flipUVs = true, flipWinding = false, MeshImportOptions(lodRatios = listOf(0.5f, 0.25f))
+    )
+    private val checksum = 0x5eed
+
+    @Test
+    fun shouldAcceptHeader_WithSameKey_WithoutChecksum() {
+        val header = write { writeHeader(key, checksum) }
+
+        assertTrue(header.readHeader(key.copy()) { fail("Checksum should not be computed") })
+    }
+
+    @Test
+    fun shouldRejectHeader_WithChangedSourceOrOptions() {
+        assertFalse(write { writeHeader(key, checksum) }.readHeader(key.copy(sourceSize = 1235)) { checksum })
+        assertFalse(write { writeHeader(key, checksum) }.readHeader(key.copy(flipUVs = false)) { checksum })
+        assertFalse(write { writeHeader(key, checksum) }
+            .readHeader(key.copy(meshOptions = key.meshOptions.withOptimisedVertexOrder())) { checksum })
+        assertFalse(write { writeHeader(key, checksum) }
+            .readHeader(key.copy(meshOptions = key.meshOptions.withLods())) { checksum })
+        assertFalse(write { writeHeader(key, checksum) }
+            .readHeader(key.copy(meshOptions = key.meshOptions.withCompressedVertices())) { checksum })
+    }
+
+    @Test
+    fun shouldFallBackToChecksum_WhenModificationTimeChanged() {
+        val modified = key.copy(sourceModified = key.sourceModified + 1000)
+
+        assertTrue(write { writeHeader(key, checksum) }.readHeader(modified) { checksum })
+        assertFalse(write { writeHeader(key, checksum) }.readHeader(modified) { 0 })
+    }
+
+    @Test
+    fun shouldFallBackToChecksum_WhenModificationTimeUnknown() {
+        val unknown = key.copy(sourceModified = ModelCache.Key.UNKNOWN_MODIFIED)
+
+        assertTrue(write { writeHeader(unknown, checksum) }.readHeader(unknown) { checksum })
+        assertFalse(write { writeHeader(unknown, checksum) }.readHeader(unknown) { 0 })
+    }
+
+    @Test
+    fun shouldRejectHeader_OfOtherVersion() {
+        val header = write { writeHeader(key, checksum) }
+        header.putInt(Int.SIZE_BYTES, ModelCache.VERSION + 1)
+
+        assertFalse(header.readHeader(key) { checksum })
+    }
+
+    @Test
+    fun shouldRestoreNodeHierarchy() {
+        val bones = listOf(
+            Bone("hip", 0, Transform(Vector3f(0f, 1f, 0f))),
+            Bone("thigh", 1, Transform(Vector3f(1f), Quaternionf().rotateX(1f), Vector3f(2f)))
+        )
+        val root = Node("root", null, Transform(Vector3f(5f, 0f, 0f)), mutableListOf(), null)
+        val hip = Node("hip", root, Transform(), mutableListOf(), bones[0])
+        val thigh = Node("thigh", hip, Transform(scale = Vector3f(0.5f)), mutableListOf(), bones[1])
+        root.children += hip
+        hip.children += thigh
+
+        val data = write {
+            writeBones(bones)
+            writeNodes(listOf(root, hip, thigh), emptyList(), bones)
+        }
+        val readBones = data.readBones()
+        val nodes = data.readNodes(emptyList(), readBones)
+
+        assertEquals(bones, readBones)
+        assertEquals(bones.map { it.offset }, readBones.map { it.offset })
+        assertEquals(listOf("root", "hip", "thigh"), nodes.map { it.name })
+        assertNull(nodes[0].parent)
+        assertSame(nodes[0], nodes[1].parent)
+        assertSame(nodes[1], nodes[2].parent)
+        assertEquals(listOf(nodes[1]), nodes[0].children)
+        assertSame(readBones[1], nodes[2].bone)
+        assertEquals(thigh.transform, nodes[2].transform)
+        assertEquals(root.transform, nodes[0].transform)
+    }
+
+    @Test
+    fun shouldRestoreAnimationKeys_AndBakeThem() {
+        val bones = listOf(Bone("hip", 0, Transform()), Bone("thigh", 1, Transform()))
+        val animation = Animation(
+            "walk", 20, 30.0, bones,
+            listOf(
+                BoneAnimation(
+                    bones[1],
+                    listOf(Vector3f(0f), Vector3f(1f, 2f, 3f)), doubleArrayOf(0.0, 10.0),
+                    listOf(Quaternionf().rotateY(0.5f)), doubleArrayOf(0.0),
+                    listOf<Vector3fc>(Vector3f(1f)), doubleArrayOf(5.0),
+                    Animation.Behaviour.DEFAULT, Animation.Behaviour.REPEAT
+                )
+            ),
+            null
+        )
+
+        val data = write { writeAnimations(listOf(animation), bones) }
+        val read = data.readAnimations(bones).single()
+
+        assertEquals("walk", read.name)
+        assertEquals(20, read.durationTicks)
+        assertEquals(30.0, read.ticksPerSecond)
+
+        val expected = animation.boneAnimations.single()
+        val actual = read.boneAnimations.single()
+        assertSame(bones[1], actual.bone)
+        assertEquals(expected.positions, actual.positions)
+        assertContentEquals(expected.positionTimes, actual.positionTimes)
+        assertEquals(expected.rotations, actual.rotations)
+        assertContentEquals(expected.rotationTimes, actual.rotationTimes)
+        assertEquals(expected.scalings, actual.scalings)
+        assertContentEquals(expected.scaleTimes, actual.scaleTimes)
+        assertEquals(Animation.Behaviour.REPEAT, actual.postBehaviour)
+
+        val baked = assertNotNull(read.baked)
+        assertTrue(baked.isAnimated(1))
+        assertFalse(baked.isAnimated(0))
+    }
+
+    private fun write(block: DataOutputStream.() -> Unit): ByteBuffer {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use(block)
+        return ByteBuffer.wrap(bytes.toByteArray())
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.etieskrill.engine.graphics.particle
+
+import org.etieskrill.engine.entity.component.Transform
+import org.joml.Vector3f
+import java.util.concurrent.ForkJoinPool
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertNotEquals
+import kotlin.time.Duration.Companion.seconds
+
+class ParticleNodeTest {
+
+    private val pool = ForkJoinPool(4)
+
+    @AfterTest
+    fun tearDown() {
+        pool.shutdown()
+    }
+
+    @Test
+    fun shouldReplaySimulation_WithSameSeed() {
+        val first = emitter(seed = 42)
+        val second = emitter(seed = 42)
+
+        simulate(ParticleNode(listOf(first)), null)
+        simulate(ParticleNode(listOf(second)), null)
+
+        assertParticlesEqual(first, second)
+    }
+
+    @Test
+    fun shouldDiffer_WithDifferentSeed() {
+        val first = emitter(seed = 1)
+        val second = emitter(seed = 2)
+
+        simulate(ParticleNode(listOf(first)), null)
+        simulate(ParticleNode(listOf(second)), null)
+
+        assertNotEquals(first.particles.relativePositions.toList(), second.particles.relativePositions.toList())
+    }
+
+    @Test
+    fun shouldSimulateInParallel_LikeInSeries() {
+        val serial = List(12) { emitter(seed = it.toLong()) }
+        val parallel = List(12) { emitter(seed = it.toLong()) }
+
+        simulate(tree(serial), null)
+        simulate(tree(parallel), pool)
+
+        serial.zip(parallel).forEach { (expected, actual) -> assertParticlesEqual(expected, actual) }
+    }
+
+    @Test
+    fun shouldSpawnAtComposedTransform() {
+        val emitter = ParticleEmitter(
+            transform = Transform(Vector3f(0f, 0f, 1f)),
+            numParticles = 1,
+            lifetime = 10.seconds,
+            seed = 0
+        )
+        val child = ParticleNode(listOf(emitter), transform = Transform(Vector3f(0f, 2f, 0f)))
+        val root = ParticleNode(children = listOf(child), transform = Transform(Vector3f(3f, 0f, 0f)))
+
+        root.update(0.1)
+
+        assertEquals(1, emitter.particles.size)
+        assertContentEquals(floatArrayOf(3f, 2f, 1f), emitter.particles.positions.copyOfRange(0, 3))
+    }
+
+    @Test
+    fun shouldFollowMovedNode() {
+        val emitter = ParticleEmitter(numParticles = 2, lifetime = 10.seconds, particleSpawnDelay = 1.seconds, seed = 0)
+        val node = ParticleNode(listOf(emitter))
+
+        node.update(1.0)
+        node.transform.position = Vector3f(5f, 0f, 0f)
+        node.update(1.0)
+
+        assertEquals(2, emitter.particles.size)
+        assertEquals(5f, emitter.particles.positions[3])
+    }
+
+    private fun emitter(seed: Long) = ParticleEmitter(
+        lifetime = 1.seconds,
+        lifetimeSpread = 0.5.seconds,
+        particlesPerSecond = 200f,
+        particleSpawnDelaySpread = 0.01.seconds,
+        randomVelocity = 2f,
+        scatter = Vector3f(1f),
+        rotationsPerSecond = 1f,
+        seed = seed
+    )
+
+    /**
+     * Spreads the emitters over a root and two levels of children, each with its own transform.
+     */
+    private fun tree(emitters: List<ParticleEmitter>): ParticleNode {
+        val leaves = emitters.chunked(4).drop(1).mapIndexed { i, chunk ->
+            ParticleNode(chunk, transform = Transform(Vector3f(i.toFloat(), 1f, 0f)))
+        }
+        val branch = ParticleNode(children = leaves, transform = Transform(Vector3f(0f, 0f, 2f)))
+        return ParticleNode(emitters.take(4), listOf(branch))
+    }
+
+    private fun simulate(node: ParticleNode, pool: ForkJoinPool?) {
+        repeat(120) { node.update(1 / 60.0, pool) }
+    }
+
+    private fun assertParticlesEqual(expected: ParticleEmitter, actual: ParticleEmitter) {
+        assertEquals(expected.particles.size, actual.particles.size)
+        assertContentEquals(expected.particles.positions, actual.particles.positions)
+        assertContentEquals(expected.particles.velocities, actual.particles.velocities)
+        assertContentEquals(expected.particles.rotations, actual.particles.rotations)
+        assertContentEquals(expected.particles.colours, actual.particles.colours)
+        assertContentEquals(expected.particles.lifetimes, actual.particles.lifetimes)
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.etieskrill.engine.graphics.particle
+
+import org.joml.Matrix2f
+import org.joml.Vector4f
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import kotlin.math.PI
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+class ParticlePoolTest {
+
+    private val fixture = ParticlePool(4)
+
+    @Test
+    fun shouldSwapLastParticleIntoRemovedSlot() {
+        repeat(3) { add(lifetime = it + 1f, x = it.toFloat()) }
+
+        fixture.remove(0)
+
+        assertEquals(2, fixture.size)
+        assertEquals(3f, fixture.lifetimes[0])
+        assertEquals(2f, fixture.relativePositions[0])
+        assertEquals(2f, fixture.lifetimes[1])
+        assertEquals(1f, fixture.relativePositions[3])
+    }
+
+    @Test
+    fun shouldRemoveExpiredParticles_AndUpdateMovedOnes() {
+        add(lifetime = 0.5f, x = 0f)
+        add(lifetime = 2f, x = 10f)
+        add(lifetime = 0.5f, x = 20f)
+        add(lifetime = 2f, x = 30f)
+
+        fixture.update(1f)
+
+        assertEquals(2, fixture.size)
+        assertEquals(setOf(11f, 31f), setOf(fixture.relativePositions[0], fixture.relativePositions[3]))
+        assertEquals(1f, fixture.lifetimes[0])
+        assertEquals(1f, fixture.lifetimes[1])
+    }
+
+    @Test
+    fun shouldOffsetPositions() {
+        add(lifetime = 2f, x = 1f)
+
+        fixture.update(1f, 5f, 6f, 7f)
+
+        assertEquals(2f, fixture.relativePositions[0])
+        assertEquals(7f, fixture.positions[0])
+        assertEquals(6f, fixture.positions[1])
+        assertEquals(7f, fixture.positions[2])
+    }
+
+    @Test
+    fun shouldNotExceedCapacity() {
+        repeat(4) { fixture.add() }
+
+        assertTrue(fixture.isFull)
+        assertFailsWith<IllegalStateException> { fixture.add() }
+        assertFailsWith<IndexOutOfBoundsException> { fixture.remove(4) }
+    }
+
+    @Test
+    fun shouldUpdateColoursFromBaseColour() {
+        add(lifetime = 2f, x = 0f)
+        fixture.baseColours.fill(0.5f, 0, 4)
+
+        fixture.update(0.5f)
+        fixture.updateColours(Vector4f()) { lifetime, colour -> colour.w = lifetime }
+
+        assertEquals(0.5f, fixture.colours[0])
+        assertEquals(0.75f, fixture.colours[3])
+    }
+
+    @Test
+    fun shouldWriteVerticesInAccessorLayout() {
+        assertEquals(ParticleVertexAccessor.elementByteSize, ParticlePool.VERTEX_BYTE_SIZE)
+
+        add(lifetime = 1f, x = 0f)
+        add(lifetime = 1f, x = 1f)
+        fixture.positions[3] = 1f
+        fixture.rotations[1] = (PI / 2).toFloat()
+        fixture.colours.fill(0.25f, 4, 8)
+
+        val buffer = ByteBuffer.allocateDirect(4 * ParticlePool.VERTEX_BYTE_SIZE).order(ByteOrder.nativeOrder())
+        buffer.position(ParticlePool.VERTEX_BYTE_SIZE) //writes start at the position
+        assertEquals(2 * ParticlePool.VERTEX_BYTE_SIZE, fixture.writeVertices(buffer))
+
+        val second = buffer.rewind().asFloatBuffer().position(2 * 11)
+        assertEquals(1f, second.get())
+        second.position(second.position() + 2)
+        val rotation = Matrix2f(second.get(), second.get(), second.get(), second.get())
+        assertTrue(Matrix2f().rotation((PI / 2).toFloat()).equals(rotation, 1e-6f))
+        repeat(4) { assertEquals(0.25f, second.get()) }
+    }
+
+    @Test
+    fun shouldWriteMoreVerticesThanStaged() {
+        val pool = ParticlePool(3000)
+        repeat(3000) {
+            val i = pool.add()
+            pool.positions[3 * i] = i.toFloat()
+        }
+
+        val buffer = ByteBuffer.allocateDirect(3000 * ParticlePool.VERTEX_BYTE_SIZE).order(ByteOrder.nativeOrder())
+        pool.writeVertices(buffer)
+
+        val floats = buffer.asFloatBuffer()
+        assertEquals(1024f, floats.get(1024 * 11))
+        assertEquals(2999f, floats.get(2999 * 11))
+    }
+
+    private fun add(lifetime: Float, x: Float) {
+        val i = fixture.add()
+        fixture.relativePositions[3 * i] = x
+        fixture.velocities[3 * i] = 1f
+        fixture.lifetimes[i] = lifetime
+        fixture.initialLifetimes[i] = lifetime
+    }
+
+}
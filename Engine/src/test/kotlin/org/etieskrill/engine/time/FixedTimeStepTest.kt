@@ -0,0 +1,43 @@
+package org.etieskrill.engine.time
+
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.time.Duration.Companion.milliseconds
+
+class FixedTimeStepTest {
+
+    private lateinit var fixture: FixedTimeStep
+
+    @BeforeTest
+    fun setUp() {
+        fixture = FixedTimeStep(10.milliseconds, maxSteps = 4)
+    }
+
+    @Test
+    fun shouldCarryRemainderOverToNextFrame() {
+        assertEquals(0, fixture.advance(0.006))
+        assertEquals(0.6, fixture.alpha, 1e-9)
+
+        assertEquals(1, fixture.advance(0.006))
+        assertEquals(0.2, fixture.alpha, 1e-9)
+    }
+
+    @Test
+    fun shouldRunSameNumberOfSteps_RegardlessOfFrameTimes() {
+        val even = (1..30).sumOf { fixture.advance(0.01) }
+        fixture.reset()
+        val uneven = (1..30).sumOf { fixture.advance(if (it % 2 == 0) 0.015 else 0.005) }
+
+        assertEquals(30, even)
+        assertEquals(even, uneven)
+    }
+
+    @Test
+    fun shouldDropTime_WhenTooManyStepsAreDue() {
+        assertEquals(4, fixture.advance(0.0525))
+        assertEquals(0.25, fixture.alpha, 1e-9)
+        assertEquals(0, fixture.advance(0.0))
+    }
+
+}
@@ -4,7 +4,10 @@ import org.etieskrill.engine.entity.component.Transform;
 import org.etieskrill.engine.graphics.Renderer;
 import org.etieskrill.engine.graphics.camera.PerspectiveCamera;
 import org.etieskrill.engine.graphics.data.DirectionalLight;
+import org.etieskrill.engine.graphics.data.FrameUniforms;
+import org.etieskrill.engine.graphics.data.FrameUniformsAccessor;
 import org.etieskrill.engine.graphics.data.PointLight;
+import org.etieskrill.engine.graphics.gl.UniformBufferObject;
 import org.etieskrill.engine.graphics.gl.framebuffer.FrameBuffer;
 import org.etieskrill.engine.graphics.gl.framebuffer.FrameBufferAttachment;
 import org.etieskrill.engine.graphics.gl.framebuffer.FrameBufferAttachment.BufferAttachmentType;
@@ -58,6 +61,9 @@ public class DemCubez {
     ShaderProgram backpackShader;
     ShaderProgram skyboxShader;
 
+    FrameUniforms frameUniforms;
+    UniformBufferObject<FrameUniforms> frameUniformBuffer;
+
     CubeMapModel skybox;
     Model[] models;
     List<Model> grassModels;
@@ -390,6 +396,9 @@ public class DemCubez {
 
     private void loadShaders() {
         containerShader = new StaticShader();//getContainerShader();
+        containerShader.bindUniformBlock(FrameUniforms.BLOCK_NAME, FrameUniforms.BINDING);
+        frameUniforms = new FrameUniforms();
+        frameUniformBuffer = new UniformBufferObject<>(FrameUniformsAccessor.INSTANCE);
         lightShader = Shaders.getLightSourceShader();
         swordShader = new Shaders.SwordShader();
         backpackShader = Shaders.getBackpackShader();
@@ -415,16 +424,22 @@ public class DemCubez {
     }
 
     private void setShaderUniforms() {
-        ShaderProgram[] doLighting = {containerShader, swordShader, backpackShader};
+        ShaderProgram[] doLighting = {swordShader, backpackShader};
 
         for (ShaderProgram shader : doLighting) {
             shader.setUniformArray("globalLights[$]", 0, globalLight);
             shader.setUniformArray("lights[$]", lights);
         }
 
+        frameUniforms.clear();
+        frameUniforms.getDirectionalLights().add(globalLight);
+        frameUniforms.getPointLights().addAll(List.of(lights));
+        frameUniforms.getViewPosition().set(camera.getPosition());
+        frameUniformBuffer.setData(frameUniforms);
+        frameUniformBuffer.bind(FrameUniforms.BINDING);
+
         //TODO consider passing fragment position to frag shader with view applied,
         // so this nonsense becomes unnecessary
-        containerShader.setUniform("viewPosition", camera.getPosition());
         containerShader.setUniform("time", (float) pacer.getTime(), false);
 
         swordShader.setUniform("viewPosition", camera.getPosition());
@@ -492,6 +507,7 @@ public class DemCubez {
         backpackShader.dispose();
         lightShader.dispose();
         skyboxShader.dispose();
+        frameUniformBuffer.dispose();
 
         modelLoader.dispose();
 
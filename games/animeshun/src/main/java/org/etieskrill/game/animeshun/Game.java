@@ -9,13 +9,15 @@ import org.etieskrill.engine.graphics.animation.NodeFilter;
 import org.etieskrill.engine.graphics.camera.Camera;
 import org.etieskrill.engine.graphics.camera.PerspectiveCamera;
 import org.etieskrill.engine.graphics.data.DirectionalLight;
+import org.etieskrill.engine.graphics.data.FrameUniforms;
+import org.etieskrill.engine.graphics.data.FrameUniformsAccessor;
 import org.etieskrill.engine.graphics.gl.GLUtils;
+import org.etieskrill.engine.graphics.gl.UniformBufferObject;
 import org.etieskrill.engine.graphics.gl.renderer.GLRenderer;
 import org.etieskrill.engine.graphics.gl.shader.Shaders;
 import org.etieskrill.engine.graphics.gl.shader.impl.AnimationShader;
 import org.etieskrill.engine.graphics.gl.shader.impl.AnimationShaderKt;
 import org.etieskrill.engine.graphics.gl.shader.impl.StaticShader;
-import org.etieskrill.engine.graphics.gl.shader.impl.StaticShaderKt;
 import org.etieskrill.engine.graphics.model.CubeMapModel;
 import org.etieskrill.engine.graphics.model.Model;
 import org.etieskrill.engine.graphics.model.Node;
@@ -83,6 +85,8 @@ public class Game {
     private Model cube;
     private Transform cubeTransform;
     private StaticShader shader;
+    private FrameUniforms frameUniforms;
+    private UniformBufferObject<FrameUniforms> frameUniformBuffer;
 
     private DirectionalLight globalLight;
 
@@ -212,6 +216,9 @@ public class Game {
         cubeTransform = new Transform(new Vector3f(2, -6, 0), new Quaternionf(), new Vector3f(10));
 
         shader = new StaticShader();
+        shader.bindUniformBlock(FrameUniforms.BLOCK_NAME, FrameUniforms.BINDING);
+        frameUniforms = new FrameUniforms();
+        frameUniformBuffer = new UniformBufferObject<>(FrameUniformsAccessor.INSTANCE);
 
         globalLight = new DirectionalLight(new Vector3f(1, -1, 1), new Vector3f(2), new Vector3f(2), new Vector3f(2));
 
@@ -333,7 +340,11 @@ public class Game {
             AnimationShaderKt.setBoneMatrices(vampyShader, vampyAnimator.getTransformMatricesArray());
             AnimationShaderKt.setGlobalLights(vampyShader, new Object[]{globalLight});
 
-            StaticShaderKt.setGlobalLights(shader, new Object[]{globalLight});
+            frameUniforms.clear();
+            frameUniforms.getDirectionalLights().add(globalLight);
+            frameUniforms.getViewPosition().set(camera.getPosition());
+            frameUniformBuffer.setData(frameUniforms);
+            frameUniformBuffer.bind(FrameUniforms.BINDING);
 
             diff = thirdPerson ? 1 - perspectiveTransition : -perspectiveTransition;
             perspectiveTransition += (float) (diff * delta * 10);
@@ -392,6 +403,7 @@ public class Game {
             interrupt(window);
         }
 
+        frameUniformBuffer.dispose();
         window.dispose();
     }
 
@@ -40,10 +40,13 @@ public class DebugInterface extends Scene {
 
     @Override
     public void update(double delta) {
-        fpsLabel.setText("Fps: %s\nRender calls: %d\nTriangles: %d".formatted(
+        fpsLabel.setText("Fps: %s\nRender calls: %d (%d instanced)\nMeshes: %d\nTriangles: %d (%d saved by LODs)".formatted(
                 pacer != null ? String.valueOf(Math.round(pacer.getAverageFPS())) : "n/a",
                 renderer.getRenderCalls(),
-                renderer.getTrianglesDrawn()
+                renderer.getInstancedRenderCalls(),
+                renderer.getMeshesSubmitted(),
+                renderer.getTrianglesDrawn(),
+                renderer.getTrianglesSaved()
         ));
         super.update(delta);
     }
@@ -4,6 +4,7 @@ import io.github.oshai.kotlinlogging.KotlinLogging
 import org.etieskrill.engine.application.App
 import org.etieskrill.engine.entity.service.impl.AnimationService
 import org.etieskrill.engine.entity.service.impl.BoundingBoxService
+import org.etieskrill.engine.entity.service.impl.CullingService
 import org.etieskrill.engine.entity.service.impl.DirectionalShadowMappingService
 import org.etieskrill.engine.entity.service.impl.ParticleUpdateService
 import org.etieskrill.engine.entity.service.impl.PhysicsService
@@ -79,7 +80,9 @@ object EntityApplication : App(
 
         world = World(entitySystem)
 
+        val cullingService = CullingService()
         renderService = RenderService(window.screenBuffer, renderer, camera, window.size)
+            .cullingService(cullingService)
         secondaryRenderService = RenderService(
             window.screenBuffer, renderer,
             PerspectiveCamera(window.size).apply {
@@ -90,6 +93,7 @@ object EntityApplication : App(
             window.size / 4f
         ).apply {
             cullingCamera(camera)
+            cullingService(cullingService)
             blur(false)
             customViewport(
                 Vector4i(
@@ -101,8 +105,9 @@ object EntityApplication : App(
 
         entitySystem.addServices(
             BoundingBoxService(),
-            DirectionalShadowMappingService(renderer),
-            PointShadowMappingService(renderer, DepthCubeMapArrayShader()), // DepthCubeMapArrayAnimatedShader()
+            cullingService,
+            DirectionalShadowMappingService(renderer, cullingService = cullingService),
+            PointShadowMappingService(renderer, DepthCubeMapArrayShader(), cullingService), // DepthCubeMapArrayAnimatedShader()
             AnimationService(),
             ParticleUpdateService(),
 
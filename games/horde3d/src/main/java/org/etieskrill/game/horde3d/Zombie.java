@@ -7,6 +7,7 @@ import org.etieskrill.engine.graphics.animation.Animation;
 import org.etieskrill.engine.graphics.animation.Animator;
 import org.etieskrill.engine.graphics.model.Model;
 import org.etieskrill.engine.graphics.model.loader.Loader;
+import org.etieskrill.engine.graphics.model.loader.MeshImportOptions;
 import org.etieskrill.engine.util.EngineAnimationLoader;
 import org.etieskrill.engine.util.EngineModelLoader;
 import org.joml.Math;
@@ -36,9 +37,9 @@ public class Zombie extends Entity {
         addComponent(new WorldSpaceAABB());
 
         Model model = EngineModelLoader.INSTANCE.load("zombie", () ->
-                new Model.Builder("mixamo_zombie_skinned_walking.glb")
+                new Model.Builder("mixamo_zombie_skinned_walking.glb",
+                        MeshImportOptions.NONE.withOptimisedVertexOrder().withLods())
                         .setName("zombie")
-                        .optimiseMeshes(5000, 0.01f)
                         .build());
 //        addComponent(new Drawable(model, ShaderLoader.get().load("animation_shader", AnimationShader::new))); //FIXME
         addComponent(new Drawable(model, new ZombieShader(), true, false, false, 0.05f, new Vector2f((1f))));
@@ -6,8 +6,10 @@ import org.etieskrill.engine.graphics.Renderer
 import org.etieskrill.engine.graphics.camera.Camera
 import org.etieskrill.engine.graphics.camera.PerspectiveCamera
 import org.etieskrill.engine.graphics.data.DirectionalLight
+import org.etieskrill.engine.graphics.data.FrameUniforms
+import org.etieskrill.engine.graphics.data.FrameUniformsAccessor
+import org.etieskrill.engine.graphics.gl.UniformBufferObject
 import org.etieskrill.engine.graphics.gl.shader.impl.StaticShader
-import org.etieskrill.engine.graphics.gl.shader.impl.globalLights
 import org.etieskrill.engine.graphics.model.model
 import org.etieskrill.engine.graphics.model.sphere
 import org.etieskrill.engine.input.controller.CursorCameraController
@@ -104,7 +106,16 @@ class ClothPhysicsService(val pacer: LoopPacer) : Service {
 
 class ClothRenderService(val renderer: Renderer, val camera: Camera) : Service {
     val pointModel = model("clothPoint") { sphere(0.01f, 20) }
-    val shader = StaticShader()
+    val shader = StaticShader().apply { bindUniformBlock(FrameUniforms.BLOCK_NAME, FrameUniforms.BINDING) }
+    val frameUniforms = FrameUniforms().apply {
+        directionalLights += DirectionalLight(
+            Vector3f(-1f),
+            Vector3f(0.05f),
+            Vector3f(1f),
+            Vector3f(1f),
+        )
+    }
+    val frameUniformBuffer = UniformBufferObject(FrameUniformsAccessor)
 
     override fun canProcess(entity: Entity) = entity.hasComponents(ClothCollider::class.java)
 
@@ -112,20 +123,15 @@ class ClothRenderService(val renderer: Renderer, val camera: Camera) : Service {
         val transform = targetEntity.getComponent<Transform>()!!
         val clothCollider = targetEntity.getComponent<ClothCollider>()!!
 
+        frameUniforms.viewPosition.set(camera.viewPosition)
+        frameUniformBuffer.setData(frameUniforms)
+        frameUniformBuffer.bind(FrameUniforms.BINDING)
+
         val pointTransform = Transform()
         for (point in clothCollider.points) {
             pointTransform.set(transform)
                 .translate(point.position)
 
-            shader.globalLights = arrayOf(
-                DirectionalLight(
-                    Vector3f(-1f),
-                    Vector3f(0.05f),
-                    Vector3f(1f),
-                    Vector3f(1f),
-                )
-            )
-
             renderer.render(pointTransform, pointModel, shader, camera)
         }
     }